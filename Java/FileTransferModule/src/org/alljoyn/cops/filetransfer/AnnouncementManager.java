@@ -204,14 +204,22 @@ public class AnnouncementManager implements AnnouncementManagerListener
 	 * is called when the user wishes to stop announcing specific file. All files that match  
 	 * one of the provided paths are removed from the list of announced files and a new announcement
 	 * is sent to all session peers. This function will also return an array of paths for the
-	 * files that failed to unannounce.
+	 * files that failed to unannounce. Any memory mappings of the unannounced files are released.
 	 * 
 	 * @param pathList  specifies a list of absolute paths to files that need to be unannounced
 	 * @return array of paths that failed to unannounce
 	 */
 	public ArrayList<String> stopAnnounce(ArrayList<String> pathList)
 	{
+		ArrayList<String> unannouncedPaths = new ArrayList<String>(pathList);
+		
 		pathList = permissionsManager.removeAnnouncedLocalFiles(pathList);
+		unannouncedPaths.removeAll(pathList);
+		
+		for (String path : unannouncedPaths)
+		{
+			fsa.unmapFile(path);
+		}
 		
 		sendAnnouncement(null, false);
 		
@@ -0,0 +1,424 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.alljoyn.cops.filetransfer.data.StatusCode;
+
+/**
+ * The Bandwidth Limiter caps the rate at which file data is sent using a hierarchy of token
+ * buckets. Every data chunk must draw tokens from the global bucket, from the bucket of the
+ * peer receiving it and from the bucket of its transfer, which covers all the ranges of one
+ * file sent to one peer. Each bucket fills at its limit, in bytes per second, and holds at most
+ * BURST_INTERVAL milliseconds worth of tokens. A bucket may go into debt so a chunk larger than
+ * the burst is still sent, and the next chunk waits until the debt is repaid. A limit of zero
+ * leaves the level unlimited, which is the default for every level.
+ * <p>
+ * A caller that must not block can ask how long the data would have to wait with getWaitTime()
+ * and draw the tokens with draw() once the wait is over. Otherwise acquire() blocks until the
+ * tokens are available and draws them.
+ * <p>
+ * The limiter also measures the rate achieved by each bucket over MEASURE_INTERVAL windows so
+ * the achieved rate can be compared to the configured limit. Peer and transfer buckets that have
+ * been idle for IDLE_TIMEOUT milliseconds are discarded.
+ * <p>
+ * Note: This class is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link FileTransferModule} class.
+ */
+public class BandwidthLimiter
+{
+	//Internal Static class to hold the state of a single token bucket
+	private static class TokenBucket
+	{
+		public long tokens;
+		public long lastRefill;
+		public long lastUsed;
+		public long windowStart;
+		public long windowBytes;
+		public long rate;
+
+		public TokenBucket(long currentTime)
+		{
+			this.tokens = 0;
+			this.lastRefill = currentTime;
+			this.lastUsed = currentTime;
+			this.windowStart = currentTime;
+			this.windowBytes = 0;
+			this.rate = 0;
+		}
+	};
+
+	/** Class Constant **/
+	private static final long BURST_INTERVAL = 100;
+	private static final long MEASURE_INTERVAL = 1000;
+	private static final long IDLE_TIMEOUT = 10000;
+
+	/** Member Variables **/
+	private TokenBucket globalBucket;
+	private HashMap<String, TokenBucket> peerBuckets;
+	private HashMap<String, TokenBucket> transferBuckets;
+	private long globalLimit;
+	private long peerLimit;
+	private long transferLimit;
+	private long lastPurge;
+
+	/*------------------------------------------------------------------------*
+     * Constructor
+     *------------------------------------------------------------------------*/
+	/**
+	 * BandwidthLimiter()
+	 * constructs an instance of the Bandwidth Limiter class with every level unlimited.
+	 */
+	public BandwidthLimiter()
+	{
+		long currentTime = System.currentTimeMillis();
+
+		globalBucket = new TokenBucket(currentTime);
+		peerBuckets = new HashMap<String, TokenBucket>();
+		transferBuckets = new HashMap<String, TokenBucket>();
+		globalLimit = 0;
+		peerLimit = 0;
+		transferLimit = 0;
+		lastPurge = currentTime;
+	}
+
+	/*------------------------------------------------------------------------*
+     * API Methods
+     *------------------------------------------------------------------------*/
+	/**
+	 * setLimits()
+	 * specifies the maximum rate, in bytes per second, of all outgoing file data, of the data
+	 * sent to each peer and of the data of each transfer. A limit of zero leaves the level
+	 * unlimited. The new limits apply to chunks waiting in acquire() as well.
+	 *
+	 * @param globalLimit  specifies the limit across all peers
+	 * @param peerLimit  specifies the limit for each peer
+	 * @param transferLimit  specifies the limit for each transfer
+	 * @return OK or INVALID
+	 */
+	public synchronized int setLimits(long globalLimit, long peerLimit, long transferLimit)
+	{
+		if ((globalLimit < 0) || (peerLimit < 0) || (transferLimit < 0))
+		{
+			return StatusCode.INVALID;
+		}
+
+		this.globalLimit = globalLimit;
+		this.peerLimit = peerLimit;
+		this.transferLimit = transferLimit;
+
+		notifyAll();
+		return StatusCode.OK;
+	}
+
+	/**
+	 * getGlobalLimit()
+	 * returns the limit across all peers.
+	 *
+	 * @return limit in bytes per second, zero if unlimited
+	 */
+	public synchronized long getGlobalLimit()
+	{
+		return globalLimit;
+	}
+
+	/**
+	 * getPeerLimit()
+	 * returns the limit for each peer.
+	 *
+	 * @return limit in bytes per second, zero if unlimited
+	 */
+	public synchronized long getPeerLimit()
+	{
+		return peerLimit;
+	}
+
+	/**
+	 * getTransferLimit()
+	 * returns the limit for each transfer.
+	 *
+	 * @return limit in bytes per second, zero if unlimited
+	 */
+	public synchronized long getTransferLimit()
+	{
+		return transferLimit;
+	}
+
+	/**
+	 * acquire()
+	 * blocks until the specified number of bytes may be sent to the specified peer for the
+	 * specified file and then draws them from the global, peer and transfer buckets.
+	 *
+	 * @param peer  specifies the peer receiving the data
+	 * @param fileID  specifies the file ID of the file being sent
+	 * @param length  specifies the number of bytes being sent
+	 * @throws InterruptedException  if the thread is interrupted while waiting
+	 */
+	public synchronized void acquire(String peer, byte[] fileID, int length) throws InterruptedException
+	{
+		while (true)
+		{
+			long waitTime = getWaitTime(peer, fileID);
+
+			if (waitTime <= 0)
+			{
+				break;
+			}
+			wait(waitTime);
+		}
+
+		draw(peer, fileID, length);
+	}
+
+	/**
+	 * getWaitTime()
+	 * returns how long data for the specified file must wait before it may be sent to the
+	 * specified peer, which is until the global, peer and transfer buckets are all out of debt.
+	 *
+	 * @param peer  specifies the peer receiving the data
+	 * @param fileID  specifies the file ID of the file being sent
+	 * @return wait time in milliseconds, zero or less if the data may be sent now
+	 */
+	public synchronized long getWaitTime(String peer, byte[] fileID)
+	{
+		long currentTime = System.currentTimeMillis();
+
+		return Math.max(refill(globalBucket, globalLimit, currentTime),
+				Math.max(refill(getBucket(peerBuckets, peer), peerLimit, currentTime),
+						refill(getBucket(transferBuckets, getTransferKey(fileID, peer)), transferLimit, 
+								currentTime)));
+	}
+
+	/**
+	 * draw()
+	 * draws the specified number of bytes sent to the specified peer for the specified file from
+	 * the global, peer and transfer buckets without waiting. The buckets go into debt if they do
+	 * not hold enough tokens.
+	 *
+	 * @param peer  specifies the peer receiving the data
+	 * @param fileID  specifies the file ID of the file being sent
+	 * @param length  specifies the number of bytes being sent
+	 */
+	public synchronized void draw(String peer, byte[] fileID, int length)
+	{
+		long currentTime = System.currentTimeMillis();
+
+		consume(globalBucket, length, currentTime);
+		consume(getBucket(peerBuckets, peer), length, currentTime);
+		consume(getBucket(transferBuckets, getTransferKey(fileID, peer)), length, currentTime);
+		purgeIdleBuckets(currentTime);
+	}
+
+	/**
+	 * getGlobalRate()
+	 * returns the rate at which file data was sent to all peers during the last measurement
+	 * window.
+	 *
+	 * @return achieved rate in bytes per second
+	 */
+	public synchronized long getGlobalRate()
+	{
+		return getRate(globalBucket);
+	}
+
+	/**
+	 * getPeerRate()
+	 * returns the rate at which file data was sent to the specified peer during the last
+	 * measurement window.
+	 *
+	 * @param peer  specifies the peer
+	 * @return achieved rate in bytes per second, zero if nothing was sent recently
+	 */
+	public synchronized long getPeerRate(String peer)
+	{
+		return getRate(peerBuckets.get(peer));
+	}
+
+	/**
+	 * getTransferRate()
+	 * returns the rate at which the specified file was sent to the specified peer during the
+	 * last measurement window.
+	 *
+	 * @param fileID  specifies the file ID of the file being sent
+	 * @param peer  specifies the peer receiving the file
+	 * @return achieved rate in bytes per second, zero if nothing was sent recently
+	 */
+	public synchronized long getTransferRate(byte[] fileID, String peer)
+	{
+		return getRate(transferBuckets.get(getTransferKey(fileID, peer)));
+	}
+
+	/**
+	 * refill()
+	 * is a private helper function that adds the tokens earned by the specified bucket since
+	 * its last refill and returns how long the bucket must wait until it is out of debt. The
+	 * caller must hold the lock of the limiter.
+	 *
+	 * @param bucket  specifies the bucket
+	 * @param limit  specifies the limit of the bucket, zero if unlimited
+	 * @param currentTime  specifies the current time in milliseconds
+	 * @return wait time in milliseconds, zero or less if the bucket may be used now
+	 */
+	private static long refill(TokenBucket bucket, long limit, long currentTime)
+	{
+		long elapsedTime = currentTime - bucket.lastRefill;
+
+		if (limit == 0)
+		{
+			bucket.tokens = 0;
+			bucket.lastRefill = currentTime;
+			return 0;
+		}
+
+		long earned = (elapsedTime * limit) / 1000;
+
+		if (earned > 0)
+		{
+			bucket.tokens = Math.min(bucket.tokens + earned, (limit * BURST_INTERVAL) / 1000);
+			bucket.lastRefill = currentTime;
+		}
+
+		if (bucket.tokens >= 0)
+		{
+			return 0;
+		}
+		return Math.max(((-bucket.tokens * 1000) + limit - 1) / limit, 1);
+	}
+
+	/**
+	 * consume()
+	 * is a private helper function that draws the specified number of bytes from the bucket
+	 * and adds them to its measurement window. The caller must hold the lock of the limiter.
+	 *
+	 * @param bucket  specifies the bucket
+	 * @param length  specifies the number of bytes
+	 * @param currentTime  specifies the current time in milliseconds
+	 */
+	private static void consume(TokenBucket bucket, int length, long currentTime)
+	{
+		long elapsedTime = currentTime - bucket.windowStart;
+
+		if (elapsedTime >= MEASURE_INTERVAL)
+		{
+			bucket.rate = (elapsedTime < (2 * MEASURE_INTERVAL)) ? (bucket.windowBytes * 1000) / elapsedTime : 0;
+			bucket.windowStart = currentTime;
+			bucket.windowBytes = 0;
+		}
+
+		bucket.tokens -= length;
+		bucket.windowBytes += length;
+		bucket.lastUsed = currentTime;
+	}
+
+	/**
+	 * getRate()
+	 * is a private helper function that returns the rate measured by the specified bucket.
+	 * A bucket whose window closed long ago has not sent anything recently. The caller must
+	 * hold the lock of the limiter.
+	 *
+	 * @param bucket  specifies the bucket, can be null
+	 * @return achieved rate in bytes per second
+	 */
+	private static long getRate(TokenBucket bucket)
+	{
+		if ((bucket == null) || ((System.currentTimeMillis() - bucket.windowStart) >= (2 * MEASURE_INTERVAL)))
+		{
+			return 0;
+		}
+		return bucket.rate;
+	}
+
+	/**
+	 * getBucket()
+	 * is a private helper function that returns the bucket stored under the specified key,
+	 * creating it if necessary. The caller must hold the lock of the limiter.
+	 *
+	 * @param buckets  specifies the map of buckets
+	 * @param key  specifies the key of the bucket
+	 * @return bucket for the key
+	 */
+	private static TokenBucket getBucket(HashMap<String, TokenBucket> buckets, String key)
+	{
+		TokenBucket bucket = buckets.get(key);
+
+		if (bucket == null)
+		{
+			bucket = new TokenBucket(System.currentTimeMillis());
+			buckets.put(key, bucket);
+		}
+		return bucket;
+	}
+
+	/**
+	 * purgeIdleBuckets()
+	 * is a private helper function that discards the peer and transfer buckets that have not
+	 * been used for IDLE_TIMEOUT milliseconds. The buckets are checked at most once every
+	 * IDLE_TIMEOUT milliseconds. The caller must hold the lock of the limiter.
+	 *
+	 * @param currentTime  specifies the current time in milliseconds
+	 */
+	private void purgeIdleBuckets(long currentTime)
+	{
+		if ((currentTime - lastPurge) < IDLE_TIMEOUT)
+		{
+			return;
+		}
+
+		purgeIdleBuckets(peerBuckets, currentTime);
+		purgeIdleBuckets(transferBuckets, currentTime);
+		lastPurge = currentTime;
+	}
+
+	/**
+	 * purgeIdleBuckets()
+	 * is a private helper function that removes the buckets of the specified map that have
+	 * not been used for IDLE_TIMEOUT milliseconds. The caller must hold the lock of the limiter.
+	 *
+	 * @param buckets  specifies the map of buckets
+	 * @param currentTime  specifies the current time in milliseconds
+	 */
+	private static void purgeIdleBuckets(HashMap<String, TokenBucket> buckets, long currentTime)
+	{
+		Iterator<TokenBucket> iterator = buckets.values().iterator();
+
+		while (iterator.hasNext())
+		{
+			if ((currentTime - iterator.next().lastUsed) >= IDLE_TIMEOUT)
+			{
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * getTransferKey()
+	 * is a private helper function that builds the key of the transfer of the specified file
+	 * to the specified peer. All the ranges of the file sent to the peer share the key.
+	 *
+	 * @param fileID  specifies the file ID of the file being sent
+	 * @param peer  specifies the peer receiving the file
+	 * @return the transfer key
+	 */
+	private static String getTransferKey(byte[] fileID, String peer)
+	{
+		return Arrays.toString(fileID) + peer;
+	}
+}
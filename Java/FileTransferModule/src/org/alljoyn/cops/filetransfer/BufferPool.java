@@ -0,0 +1,186 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * The Buffer Pool recycles the byte arrays used to hold outgoing file chunks so a
+ * steady stream of chunks does not allocate a new array for every chunk. Buffers are
+ * pooled by exact size because the whole array is marshalled into the AllJoyn signal,
+ * and every chunk of a transfer except the last has the same size. The Send Manager
+ * acquires a buffer when reading a chunk and the Dispatcher releases it once the chunk
+ * has been transmitted or discarded. The pool keeps allocation and reuse counters so
+ * steady state behavior can be verified. This class is implemented as a singleton
+ * since the buffers are shared by every instance of the File Transfer Module. The
+ * static function getInstance() returns the single instance of the Buffer Pool.
+ * <p>
+ * Note: This class is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link FileTransferModule} class.
+ */
+public class BufferPool
+{
+	/** Class Constant **/
+	private static final int MAX_BUFFERS_PER_SIZE = 32;
+	private static final int MAX_POOLED_BYTES = 4194304;
+
+	/** Member Variables **/
+	private static BufferPool instance;
+	private HashMap<Integer, ArrayDeque<byte[]>> pooledBuffers;
+	private int numPooledBytes;
+	private long numAllocations;
+	private long numReuses;
+
+	/*------------------------------------------------------------------------*
+     * Constructor
+     *------------------------------------------------------------------------*/
+	/**
+	 * BufferPool()
+	 * constructs an instance of the Buffer Pool class. The constructor does not
+	 * take any parameters and initializes member variables.
+	 */
+	protected BufferPool()
+	{
+		pooledBuffers = new HashMap<Integer, ArrayDeque<byte[]>>();
+		numPooledBytes = 0;
+		numAllocations = 0;
+		numReuses = 0;
+	}
+
+	/*------------------------------------------------------------------------*
+     * API Methods
+     *------------------------------------------------------------------------*/
+	/**
+	 * getInstance()
+	 * is a static function that returns the single instance of the Buffer Pool.
+	 * The first time this function is called the instance of the pool will be
+	 * created.
+	 *
+	 * @return instance of the Buffer Pool class
+	 */
+	public static synchronized BufferPool getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new BufferPool();
+		}
+		return instance;
+	}
+
+	/**
+	 * acquire()
+	 * returns a buffer of exactly the specified length. A pooled buffer is reused
+	 * when one is available, otherwise a new buffer is allocated. The contents of
+	 * a reused buffer are not cleared.
+	 *
+	 * @param length  specifies the length of the buffer
+	 * @return byte array of the specified length
+	 */
+	public synchronized byte[] acquire(int length)
+	{
+		ArrayDeque<byte[]> buffers = pooledBuffers.get(length);
+
+		if ((buffers != null) && !buffers.isEmpty())
+		{
+			numPooledBytes -= length;
+			numReuses++;
+			return buffers.poll();
+		}
+
+		numAllocations++;
+		return new byte[length];
+	}
+
+	/**
+	 * release()
+	 * returns the specified buffer to the pool so it can be reused. The buffer is
+	 * dropped if the pool already holds the maximum number of buffers of its size or
+	 * the maximum number of bytes. The caller must not use the buffer after releasing it.
+	 *
+	 * @param buffer  specifies the buffer to release, can be null
+	 */
+	public synchronized void release(byte[] buffer)
+	{
+		if ((buffer == null) || (buffer.length == 0)
+				|| ((numPooledBytes + buffer.length) > MAX_POOLED_BYTES))
+		{
+			return;
+		}
+
+		ArrayDeque<byte[]> buffers = pooledBuffers.get(buffer.length);
+
+		if (buffers == null)
+		{
+			buffers = new ArrayDeque<byte[]>();
+			pooledBuffers.put(buffer.length, buffers);
+		}
+
+		if (buffers.size() < MAX_BUFFERS_PER_SIZE)
+		{
+			buffers.add(buffer);
+			numPooledBytes += buffer.length;
+		}
+	}
+
+	/**
+	 * getNumAllocations()
+	 * returns the number of buffers the pool has had to allocate because no pooled
+	 * buffer of the requested size was available.
+	 *
+	 * @return number of allocations
+	 */
+	public synchronized long getNumAllocations()
+	{
+		return numAllocations;
+	}
+
+	/**
+	 * getNumReuses()
+	 * returns the number of buffer requests that were served with a pooled buffer.
+	 *
+	 * @return number of reuses
+	 */
+	public synchronized long getNumReuses()
+	{
+		return numReuses;
+	}
+
+	/**
+	 * getNumPooledBytes()
+	 * returns the total number of bytes held in pooled buffers.
+	 *
+	 * @return number of pooled bytes
+	 */
+	public synchronized int getNumPooledBytes()
+	{
+		return numPooledBytes;
+	}
+
+	/**
+	 * clear()
+	 * drops every pooled buffer and resets the allocation and reuse counters.
+	 */
+	public synchronized void clear()
+	{
+		pooledBuffers.clear();
+		numPooledBytes = 0;
+		numAllocations = 0;
+		numReuses = 0;
+	}
+}
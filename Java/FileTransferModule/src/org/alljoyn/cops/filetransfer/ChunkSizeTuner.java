@@ -0,0 +1,287 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer;
+
+import java.util.HashMap;
+
+import org.alljoyn.cops.filetransfer.data.StatusCode;
+
+/**
+ * The Chunk Size Tuner chooses the maximum chunk length requested from each peer when
+ * adaptive chunk sizing is enabled. For every peer the tuner measures the round trip time
+ * from a data request to the first chunk it produces, and the throughput of the chunks
+ * received over successive measurement windows. Each window lasts at least MEASURE_INTERVAL
+ * milliseconds and at least MIN_WINDOW_ROUND_TRIPS round trips. At the end of each window the
+ * tuner keeps doubling or halving the chunk length while throughput holds up, and reverses
+ * direction when throughput drops by more than THROUGHPUT_TOLERANCE percent. The chunk length
+ * always stays within the configured bounds.
+ * <p>
+ * Note: This class is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link FileTransferModule} class.
+ */
+public class ChunkSizeTuner
+{
+	//Internal Static class to hold the measurements of a peer
+	private static class PeerStats
+	{
+		public int chunkSize;
+		public int direction;
+		public long requestTime;
+		public long roundTripTime;
+		public long windowStart;
+		public long lastChunkTime;
+		public long windowBytes;
+		public long lastThroughput;
+
+		public PeerStats(int chunkSize)
+		{
+			this.chunkSize = chunkSize;
+			this.direction = 1;
+			this.requestTime = 0;
+			this.roundTripTime = 0;
+			this.windowStart = 0;
+			this.lastChunkTime = 0;
+			this.windowBytes = 0;
+			this.lastThroughput = 0;
+		}
+	};
+
+	/** Class Constant **/
+	public static final int DEFAULT_MIN_CHUNK_SIZE = 1024;
+	public static final int DEFAULT_MAX_CHUNK_SIZE = 65536;
+	private static final long MEASURE_INTERVAL = 500;
+	private static final int MIN_WINDOW_ROUND_TRIPS = 4;
+	private static final int THROUGHPUT_TOLERANCE = 10;
+
+	/** Member Variables **/
+	private HashMap<String, PeerStats> peerStats;
+	private int minChunkSize;
+	private int maxChunkSize;
+
+	/*------------------------------------------------------------------------*
+     * Constructor
+     *------------------------------------------------------------------------*/
+	/**
+	 * ChunkSizeTuner()
+	 * constructs an instance of the Chunk Size Tuner class with the default bounds.
+	 */
+	public ChunkSizeTuner()
+	{
+		peerStats = new HashMap<String, PeerStats>();
+		minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+		maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+	}
+
+	/*------------------------------------------------------------------------*
+     * API Methods
+     *------------------------------------------------------------------------*/
+	/**
+	 * setBounds()
+	 * specifies the smallest and largest chunk length the tuner may choose. The minimum
+	 * must be greater than zero and not greater than the maximum. The chunk length of
+	 * every peer is clamped to the new bounds.
+	 *
+	 * @param minChunkSize  specifies the smallest chunk length
+	 * @param maxChunkSize  specifies the largest chunk length
+	 * @return OK or INVALID
+	 */
+	public synchronized int setBounds(int minChunkSize, int maxChunkSize)
+	{
+		if ((minChunkSize <= 0) || (minChunkSize > maxChunkSize))
+		{
+			return StatusCode.INVALID;
+		}
+
+		this.minChunkSize = minChunkSize;
+		this.maxChunkSize = maxChunkSize;
+
+		for (PeerStats stats : peerStats.values())
+		{
+			stats.chunkSize = clamp(stats.chunkSize);
+		}
+		return StatusCode.OK;
+	}
+
+	/**
+	 * getMinChunkSize()
+	 * returns the smallest chunk length the tuner may choose.
+	 *
+	 * @return minimum chunk length
+	 */
+	public synchronized int getMinChunkSize()
+	{
+		return minChunkSize;
+	}
+
+	/**
+	 * getMaxChunkSize()
+	 * returns the largest chunk length the tuner may choose.
+	 *
+	 * @return maximum chunk length
+	 */
+	public synchronized int getMaxChunkSize()
+	{
+		return maxChunkSize;
+	}
+
+	/**
+	 * getChunkSize()
+	 * returns the chunk length to request from the specified peer. A peer without any
+	 * measurements starts at the specified initial length, clamped to the bounds.
+	 *
+	 * @param peer  specifies the peer
+	 * @param initialChunkSize  specifies the chunk length used for a new peer
+	 * @return chunk length to request
+	 */
+	public synchronized int getChunkSize(String peer, int initialChunkSize)
+	{
+		return getPeerStats(peer, initialChunkSize).chunkSize;
+	}
+
+	/**
+	 * getRoundTripTime()
+	 * returns the smoothed round trip time measured for the specified peer.
+	 *
+	 * @param peer  specifies the peer
+	 * @return round trip time in milliseconds, zero if it has not been measured
+	 */
+	public synchronized long getRoundTripTime(String peer)
+	{
+		PeerStats stats = peerStats.get(peer);
+		return (stats == null) ? 0 : stats.roundTripTime;
+	}
+
+	/**
+	 * requestSent()
+	 * is called when a data request is sent to the specified peer. The round trip time is
+	 * measured from this point to the arrival of the next chunk.
+	 *
+	 * @param peer  specifies the peer
+	 */
+	public synchronized void requestSent(String peer)
+	{
+		PeerStats stats = peerStats.get(peer);
+
+		if ((stats != null) && (stats.requestTime == 0))
+		{
+			stats.requestTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * chunkReceived()
+	 * records the arrival of a chunk from the specified peer and, at the end of a measurement
+	 * window, adjusts the chunk length of the peer. A gap of more than MEASURE_INTERVAL between
+	 * chunks restarts the window since the link was idle rather than slow.
+	 *
+	 * @param peer  specifies the peer
+	 * @param length  specifies the length of the chunk
+	 * @return true if the chunk length of the peer changed, false otherwise
+	 */
+	public synchronized boolean chunkReceived(String peer, int length)
+	{
+		PeerStats stats = peerStats.get(peer);
+
+		if (stats == null)
+		{
+			return false;
+		}
+
+		long currentTime = System.currentTimeMillis();
+
+		if (stats.requestTime != 0)
+		{
+			long sample = currentTime - stats.requestTime;
+			stats.roundTripTime = (stats.roundTripTime == 0) ? sample
+					: ((stats.roundTripTime * 7) + sample) / 8;
+			stats.requestTime = 0;
+		}
+
+		if ((stats.windowStart == 0) || ((currentTime - stats.lastChunkTime) > MEASURE_INTERVAL))
+		{
+			stats.windowStart = currentTime;
+			stats.windowBytes = 0;
+		}
+		stats.lastChunkTime = currentTime;
+		stats.windowBytes += length;
+
+		long elapsedTime = currentTime - stats.windowStart;
+
+		if ((elapsedTime < MEASURE_INTERVAL) || (elapsedTime < (stats.roundTripTime * MIN_WINDOW_ROUND_TRIPS)))
+		{
+			return false;
+		}
+
+		long throughput = (stats.windowBytes * 1000) / elapsedTime;
+
+		if (throughput < ((stats.lastThroughput * (100 - THROUGHPUT_TOLERANCE)) / 100))
+		{
+			stats.direction = -stats.direction;
+		}
+
+		int previousChunkSize = stats.chunkSize;
+		stats.chunkSize = clamp((stats.direction > 0) ? stats.chunkSize * 2 : stats.chunkSize / 2);
+		stats.lastThroughput = throughput;
+		stats.windowStart = currentTime;
+		stats.windowBytes = 0;
+
+		return stats.chunkSize != previousChunkSize;
+	}
+
+	/**
+	 * resetState()
+	 * discards the measurements of every peer.
+	 */
+	public synchronized void resetState()
+	{
+		peerStats.clear();
+	}
+
+	/**
+	 * getPeerStats()
+	 * is a private helper function that returns the measurements of the specified peer,
+	 * creating them if necessary. The caller must hold the lock of the tuner.
+	 *
+	 * @param peer  specifies the peer
+	 * @param initialChunkSize  specifies the chunk length used for a new peer
+	 * @return measurements of the peer
+	 */
+	private PeerStats getPeerStats(String peer, int initialChunkSize)
+	{
+		PeerStats stats = peerStats.get(peer);
+
+		if (stats == null)
+		{
+			stats = new PeerStats(clamp(initialChunkSize));
+			peerStats.put(peer, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * clamp()
+	 * is a private helper function that limits the specified chunk length to the bounds.
+	 *
+	 * @param chunkSize  specifies the chunk length
+	 * @return chunk length within the bounds
+	 */
+	private int clamp(int chunkSize)
+	{
+		return Math.max(minChunkSize, Math.min(maxChunkSize, chunkSize));
+	}
+}
@@ -36,6 +36,10 @@ import org.alljoyn.cops.filetransfer.listener.UnannouncedFileRequestListener;
  * deny any and all requests for unannounced files. To enable this behavior, the
  * user must register the {@link UnannouncedFileRequestListener}.
  * <p>
+ * When an inline threshold is set, the directed announcement of a file no larger than the
+ * threshold is followed by the contents of the file, so the requester can save the file
+ * without requesting it.
+ * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
  * {@link FileTransferModule} class. 
@@ -53,6 +57,7 @@ public class DirectedAnnouncementManager implements DirectedAnnouncementManagerL
 	private FileAnnouncementReceivedListener fileAnnouncementReceivedListener;	
 	private final Object unannouncedFileRequestListenerLock;
 	private final Object fileAnnouncementReceivedListenerLock;
+	private int inlineThreshold;
 	
 	/*------------------------------------------------------------------------*
      * Constructor
@@ -95,6 +100,7 @@ public class DirectedAnnouncementManager implements DirectedAnnouncementManagerL
 		this.localBusID = localBusID;		
 		this.unannouncedFileRequestListenerLock = new Object();
 		this.fileAnnouncementReceivedListenerLock = new Object();
+		this.inlineThreshold = 0;
 	}
 	
 	/**
@@ -217,7 +223,7 @@ public class DirectedAnnouncementManager implements DirectedAnnouncementManagerL
 	 * insertSingleDescriptorAnnouncement()
 	 * is a private method called by handleOfferRequest(). This method will take the file
 	 * descriptor parameter, wrap it into an array, and send an announce action to the specified
-	 * peer.
+	 * peer, followed by the contents of the file if it is small enough to be sent inline.
 	 *          
 	 * @param descriptor  file descriptor of the file to be announced 
 	 * @param peer  specifies the peer to receive the announcement 
@@ -251,6 +257,37 @@ public class DirectedAnnouncementManager implements DirectedAnnouncementManagerL
 		action.parameters.add(isFileIdResponse);
 		action.peer = peer;
 		dispatcher.insertAction(action);
+		
+		insertInlineContentAction(descriptor, peer);
+	}
+	
+	/**
+	 * insertInlineContentAction()
+	 * is a private method called after a directed announcement has been inserted. If the announced
+	 * file is no larger than the inline threshold, this method reads the file and inserts an
+	 * INLINE_CONTENT action carrying its contents to the specified peer.
+	 *          
+	 * @param descriptor  file descriptor of the announced file 
+	 * @param peer  specifies the peer that received the announcement 
+	 */
+	private void insertInlineContentAction(FileDescriptor descriptor, String peer)
+	{
+		if ((inlineThreshold == 0) || !descriptor.isSizeKnown() || (descriptor.getSize() > inlineThreshold))
+		{
+			return;
+		}
+		
+		byte[] content = fsa.getFileContent(fsa.buildPathFromDescriptor(descriptor), (int) descriptor.getSize());
+		
+		if (content != null)
+		{
+			Action action = new Action();
+			action.actionType = ActionType.INLINE_CONTENT;
+			action.parameters.add(descriptor.fileID);
+			action.parameters.add(content);
+			action.peer = peer;
+			dispatcher.insertAction(action);
+		}
 	}
 	
 	/**
@@ -304,7 +341,8 @@ public class DirectedAnnouncementManager implements DirectedAnnouncementManagerL
 	 * is a callback method that is invoked when the Dispatcher encounters the FILE_ID_RESPONSE
 	 * action. This function will build the file descriptor for the file with the specified path
 	 * and insert an announce action, containing the newly created file descriptor, into the
-	 * Dispatcher. The announce signal with be directed to the specified peer.
+	 * Dispatcher. The announce signal with be directed to the specified peer, followed by the
+	 * contents of the file if it is small enough to be sent inline.
 	 *          
 	 * @param action  instance of FILE_ID_REPONSE action
 	 */
@@ -337,6 +375,8 @@ public class DirectedAnnouncementManager implements DirectedAnnouncementManagerL
 			announceAction.parameters.add(isFileIdResponse);
 			announceAction.peer = peer;
 			dispatcher.insertAction(announceAction);
+			
+			insertInlineContentAction(generatedDescriptor, peer);
 		}
 	}
 	
@@ -377,6 +417,18 @@ public class DirectedAnnouncementManager implements DirectedAnnouncementManagerL
 		}
 	}
 	
+	/**
+	 * setInlineThreshold()
+	 * specifies the size, in bytes, up to which the contents of a file are sent along with its
+	 * directed announcement. A threshold of zero disables inline contents.
+	 *          
+	 * @param threshold  specifies the inline threshold
+	 */
+	public void setInlineThreshold(int threshold)
+	{
+		inlineThreshold = threshold;
+	}
+	
 	/**
 	 * setShowRelativePath()
 	 * allows the user to specify whether they want remote peers to be able to see the relative
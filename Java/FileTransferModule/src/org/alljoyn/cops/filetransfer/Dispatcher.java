@@ -16,7 +16,11 @@
 
 package org.alljoyn.cops.filetransfer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import org.alljoyn.bus.BusAttachment;
 import org.alljoyn.cops.filetransfer.alljoyn.FileTransferBusObject;
 import org.alljoyn.cops.filetransfer.data.Action;
@@ -35,15 +39,52 @@ import org.alljoyn.cops.filetransfer.utility.Logger;
  * bypasses the Dispatcher queue so alljoyn method calls can be transmitted immediately. This is only
  * done for alljoyn method calls and not for alljoyn signals.
  * <p>
+ * Actions are sorted into priority lanes so control traffic is not stuck behind queued file data.
+ * Control actions are serviced before discovery actions, which are serviced before bulk data. A lane
+ * that has been passed over too many times in a row is serviced next so bulk data is never starved.
+ * Actions within a lane are serviced in the order received.
+ * <p>
+ * The Dispatcher can service actions on several threads. Actions are assigned to a thread based on
+ * their peer, so all actions for a given peer are serviced in order while a slow peer does not hold
+ * up the actions for other peers. Actions without a peer are always serviced by the first thread.
+ * <p>
+ * The Dispatcher holds the {@link BandwidthLimiter} that caps the rate of outgoing file data. The
+ * limits are applied before chunks are queued, so the dispatcher threads never wait for them: the
+ * Send Manager defers the transfers that are over their limits, and bundles wait on their own
+ * thread. Control actions are never limited.
+ * <p>
+ * The Dispatcher counts the bytes held by the data and bundle chunks waiting in its queues against
+ * a memory budget. The Send Manager checks the budget with hasQueueCapacity() before queueing a
+ * chunk and defers its transfers while the budget is used up, while bundles are streamed from a
+ * separate thread that blocks in awaitQueueCapacity(). Other actions are always admitted. The
+ * bytes currently queued and their high-water mark can be observed.
+ * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
  * {@link FileTransferModule} class.
  */
 public class Dispatcher implements Runnable
 {
+	/** Class Enumerator **/
+	public enum Lane
+	{
+		CONTROL,
+		DISCOVERY,
+		BULK
+	};
+	
+	/** Class Constant **/
+	private static final int MAX_SKIPPED_TURNS = 16;
+	private static final long DEFAULT_MAX_QUEUED_BYTES = 1048576;
+	
 	/** Member Variables **/
-	private LinkedBlockingQueue<Action> dispatcherQueue;
+	private ArrayList<Shard> shards;
 	private Transmitter transmitter;	
+	private BandwidthLimiter bandwidthLimiter;
+	private long maxQueuedBytes;
+	private long queuedBytes;
+	private long queuedBytesHighWater;
+	private final Object queuedBytesLock;
 	private SendManagerListener sendManagerListener;
 	private DirectedAnnouncementManagerListener directedAnnouncementManagerListener;
 	
@@ -61,7 +102,23 @@ public class Dispatcher implements Runnable
 	 */
 	public Dispatcher(FileTransferBusObject fileTransferBusObject, BusAttachment busAttachment, int sessionID)
 	{		
-		this(new Transmitter(fileTransferBusObject, busAttachment, sessionID));
+		this(fileTransferBusObject, busAttachment, sessionID, 1);
+	}
+	
+	/**
+	 * Dispatcher()
+	 * constructs an instance of the Dispatcher class that services actions on the specified
+	 * number of threads and uses the provided parameters to initialize class member variables.
+	 * 
+	 * @param fileTransferBusObject  instance of alljoyn bus object
+	 * @param busAttachment  instance of alljoyn bus attachment
+	 * @param sessionID  specifies the ID of the alljoyn session
+	 * @param numThreads  specifies the number of dispatcher threads, values less than one use one thread
+	 */
+	public Dispatcher(FileTransferBusObject fileTransferBusObject, BusAttachment busAttachment, int sessionID, 
+			int numThreads)
+	{		
+		this(new Transmitter(fileTransferBusObject, busAttachment, sessionID), numThreads);
 	}
 	
 	/**
@@ -76,8 +133,36 @@ public class Dispatcher implements Runnable
 	 */
 	public Dispatcher(Transmitter transmitter)
 	{
-		this.dispatcherQueue = new LinkedBlockingQueue<Action>();
+		this(transmitter, 1);
+	}
+	
+	/**
+	 * Dispatcher()
+	 * constructs an instance of the Dispatcher class that services actions on the specified
+	 * number of threads and uses the provided Transmitter parameter to allow each action to
+	 * be passed down to transmitter for servicing.
+	 * <p>
+	 * Note: this secondary constructor is used for testing purposes only when we need to specify
+	 * a separate instance of the Transmitter.
+	 * 
+	 * @param transmitter  instance of the Transmitter Module
+	 * @param numThreads  specifies the number of dispatcher threads, values less than one use one thread
+	 */
+	public Dispatcher(Transmitter transmitter, int numThreads)
+	{
+		this.shards = new ArrayList<Shard>();
+		
+		for (int i = 0; i < Math.max(numThreads, 1); i++)
+		{
+			shards.add(new Shard());
+		}
+		
 		this.transmitter = transmitter;
+		this.bandwidthLimiter = new BandwidthLimiter();
+		this.maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+		this.queuedBytes = 0;
+		this.queuedBytesHighWater = 0;
+		this.queuedBytesLock = new Object();
 	}
 	
 	/*------------------------------------------------------------------------*
@@ -87,18 +172,46 @@ public class Dispatcher implements Runnable
 	 * run()
 	 * is the implementation of the Runnable interface and will execute in a separate
 	 * background thread to ensure that all actions are serviced outside of the application
-	 * thread. This function runs in an infinite loop and waits until an action is inserted
-	 * into the queue. When an action is inserted the appropriate action is taken based on
+	 * thread. If the Dispatcher uses more than one thread, the additional threads are started
+	 * here and this thread services the first shard of actions. See serviceShard().
+	 */
+	@Override
+	public void run()
+	{
+		for (int i = 1; i < shards.size(); i++)
+		{
+			final Shard shard = shards.get(i);
+			
+			Thread shardThread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					serviceShard(shard);
+				}
+			});
+			shardThread.start();
+		}
+		
+		serviceShard(shards.get(0));
+	}
+	
+	/**
+	 * serviceShard()
+	 * is a private function that runs in an infinite loop and waits until an action is inserted
+	 * into the specified shard. When an action is inserted the appropriate action is taken based on
 	 * the action type. Most actions are simply passed to the transmitter for servicing 
 	 * except three. The FILE_ID_RESPONSE action calls back to the DirectedAnnouncement
 	 * Manager so a file descriptor can be generated and sent as an announcement. And the 
-	 * DATA_CHUNK action calls back to the SendManager so the next chunk of the file 
-	 * can be inserted for transmission. And lastly, the SHUTDOWN_THREAD action is used
+	 * DATA_CHUNK action, once transmitted, calls back to the SendManager so the next chunk of the
+	 * file can be inserted for transmission. A transmitted BUNDLE_CHUNK also calls back to the
+	 * SendManager, since the budget it frees may let deferred transfers continue. The chunk is
+	 * released and the SendManager is called back even if the transmission fails, so the queue
+	 * budget and the slot of the chunk are freed. And lastly, the SHUTDOWN_THREAD action is used
 	 * only for unit testing and provides a cleanup mechanism to ensure all dispatcher
 	 * threads can be terminated.
 	 */
-	@Override
-	public void run()
+	private void serviceShard(Shard shard)
 	{
 	    boolean isRunning = true;
 	    
@@ -106,9 +219,13 @@ public class Dispatcher implements Runnable
 		{
 	        try
 	        {
-				Action action = dispatcherQueue.take();
+				Action action = shard.takeAction();
 				
-				if (action.actionType == ActionType.FILE_ID_RESPONSE)
+				if (action == null)
+				{
+					continue;
+				}
+				else if (action.actionType == ActionType.FILE_ID_RESPONSE)
 				{
 					directedAnnouncementManagerListener.generateFileDescriptor(action);
 				}
@@ -118,11 +235,23 @@ public class Dispatcher implements Runnable
 				}
 				else
 				{
-					transmitter.transmit(action);
-
-					if (action.actionType == ActionType.DATA_CHUNK)
+					try
+					{
+						transmitter.transmit(action);
+					}
+					finally
 					{
-						sendManagerListener.dataSent();
+						if (action.actionType == ActionType.DATA_CHUNK)
+						{
+							releaseChunk(action);
+							sendManagerListener.dataSent((byte[]) action.parameters.get(0), 
+									(Long) action.parameters.get(1), action.peer);
+						}
+						else if (action.actionType == ActionType.BUNDLE_CHUNK)
+						{
+							releaseChunk(action);
+							sendManagerListener.queueCapacityReleased();
+						}
 					}
 				}
 	        }
@@ -135,13 +264,338 @@ public class Dispatcher implements Runnable
 	
 	/**
 	 * insertAction()
-	 * simply inserts the action parameter into the Dispatcher queue for processing.
+	 * inserts the action parameter into the Dispatcher queue of its priority lane for processing.
+	 * The SHUTDOWN_THREAD action is inserted for every dispatcher thread. The bytes of DATA_CHUNK
+	 * and BUNDLE_CHUNK actions are added to the queued bytes until the chunk is released.
 	 * 
 	 * @param action  specifies the action to be inserted in the queue
 	 */
 	public void insertAction(Action action)
 	{
-		dispatcherQueue.add(action);
+		if (getChunk(action) != null)
+		{
+			synchronized(queuedBytesLock)
+			{
+				queuedBytes += getChunkMemory(action);
+				queuedBytesHighWater = Math.max(queuedBytesHighWater, queuedBytes);
+			}
+		}
+		
+		if (action.actionType == ActionType.SHUTDOWN_THREAD)
+		{
+			for (Shard shard : shards)
+			{
+				shard.insertAction(action);
+			}
+		}
+		else
+		{
+			getShard(action.peer).insertAction(action);
+		}
+	}
+	
+	/**
+	 * getShard()
+	 * is a private function that returns the shard servicing the actions for the specified peer.
+	 * 
+	 * @param peer  specifies the peer, can be null
+	 * @return the shard for the peer
+	 */
+	private Shard getShard(String peer)
+	{
+		int index = (peer == null) ? 0 : ((peer.hashCode() & Integer.MAX_VALUE) % shards.size());
+		return shards.get(index);
+	}
+	
+	/**
+	 * releaseChunk()
+	 * is a private function that removes the bytes of the specified DATA_CHUNK or BUNDLE_CHUNK
+	 * action from the queued bytes, wakes up the threads waiting for room in the budget, and
+	 * returns the buffer of a DATA_CHUNK action to the BufferPool. Compressed and bundle chunks are
+	 * not taken from the pool and are left to the garbage collector, so their odd sizes do not fill
+	 * up the pool.
+	 * 
+	 * @param action  specifies the DATA_CHUNK or BUNDLE_CHUNK action
+	 */
+	private void releaseChunk(Action action)
+	{
+		synchronized(queuedBytesLock)
+		{
+			queuedBytes = Math.max(queuedBytes - getChunkMemory(action), 0);
+			queuedBytesLock.notifyAll();
+		}
+		
+		if (action.actionType == ActionType.BUNDLE_CHUNK)
+		{
+			return;
+		}
+		else if ((action.parameters.size() < 5) || !((Boolean) action.parameters.get(4)))
+		{
+			BufferPool.getInstance().release((byte[]) action.parameters.get(3));
+		}
+	}
+	
+	/**
+	 * getChunk()
+	 * is a private function that returns the chunk buffer held by the specified action. Only
+	 * DATA_CHUNK and BUNDLE_CHUNK actions hold a chunk.
+	 * 
+	 * @param action  specifies the action
+	 * @return chunk buffer, or null if the action holds no chunk
+	 */
+	private static byte[] getChunk(Action action)
+	{
+		int index;
+		
+		if (action.actionType == ActionType.DATA_CHUNK)
+		{
+			index = 3;
+		}
+		else if (action.actionType == ActionType.BUNDLE_CHUNK)
+		{
+			index = 2;
+		}
+		else
+		{
+			return null;
+		}
+		
+		if ((action.parameters.size() <= index) || !(action.parameters.get(index) instanceof byte[]))
+		{
+			return null;
+		}
+		return (byte[]) action.parameters.get(index);
+	}
+	
+	/**
+	 * getChunkMemory()
+	 * is a private function that returns the number of bytes held by the chunk buffer of the
+	 * specified action.
+	 * 
+	 * @param action  specifies the action
+	 * @return size of the chunk buffer, zero if the action holds no chunk
+	 */
+	private static int getChunkMemory(Action action)
+	{
+		byte[] chunk = getChunk(action);
+		return (chunk == null) ? 0 : chunk.length;
+	}
+	
+	/**
+	 * getLane()
+	 * returns the priority lane used for actions of the specified type. Transfer control actions
+	 * use the CONTROL lane, announcements, offers and requests use the DISCOVERY lane, and file and
+	 * bundle data use the BULK lane. The SHUTDOWN_THREAD action uses the BULK lane so it is serviced after all
+	 * previously queued actions.
+	 * 
+	 * @param actionType  specifies the type of action
+	 * @return the priority lane of the action type
+	 */
+	public static Lane getLane(ActionType actionType)
+	{
+		switch (actionType)
+		{
+			case STOP_XFER:
+			case XFER_CANCELLED:
+			case DATA_CHUNK_ACK:
+				return Lane.CONTROL;
+			case DATA_CHUNK:
+			case BUNDLE_CHUNK:
+			case SHUTDOWN_THREAD:
+				return Lane.BULK;
+			default:
+				return Lane.DISCOVERY;
+		}
+	}
+	
+	/**
+	 * getQueueDepth()
+	 * returns the number of actions currently waiting in the specified priority lane across
+	 * all dispatcher threads.
+	 * 
+	 * @param lane  specifies the priority lane
+	 * @return number of queued actions
+	 */
+	public int getQueueDepth(Lane lane)
+	{
+		int depth = 0;
+		
+		for (Shard shard : shards)
+		{
+			depth += shard.getQueueDepth(lane);
+		}
+		
+		return depth;
+	}
+	
+	/**
+	 * hasQueueCapacity()
+	 * determines whether a data chunk of the specified size can be queued without exceeding the
+	 * memory budget. A chunk is always admitted when no other chunk is queued, so chunks larger
+	 * than the budget still make progress.
+	 * 
+	 * @param numBytes  specifies the size of the chunk
+	 * @return true if the chunk fits in the budget, false otherwise
+	 */
+	public boolean hasQueueCapacity(int numBytes)
+	{
+		synchronized(queuedBytesLock)
+		{
+			return (queuedBytes == 0) || ((queuedBytes + numBytes) <= maxQueuedBytes);
+		}
+	}
+	
+	/**
+	 * awaitQueueCapacity()
+	 * blocks until a chunk of the specified size can be queued without exceeding the memory
+	 * budget. This must not be called on a dispatcher thread, since only the dispatcher threads
+	 * free the budget.
+	 * 
+	 * @param numBytes  specifies the size of the chunk
+	 * @throws InterruptedException  if the thread is interrupted while waiting
+	 */
+	public void awaitQueueCapacity(int numBytes) throws InterruptedException
+	{
+		synchronized(queuedBytesLock)
+		{
+			while ((queuedBytes != 0) && ((queuedBytes + numBytes) > maxQueuedBytes))
+			{
+				queuedBytesLock.wait();
+			}
+		}
+	}
+	
+	/**
+	 * setMaxQueuedBytes()
+	 * specifies the memory budget for the data chunks waiting in the Dispatcher queues. The
+	 * budget must be greater than zero. The default budget is 1 MB.
+	 * 
+	 * @param maxQueuedBytes  specifies the budget in bytes
+	 * @return OK or INVALID
+	 */
+	public int setMaxQueuedBytes(long maxQueuedBytes)
+	{
+		if (maxQueuedBytes <= 0)
+		{
+			return StatusCode.INVALID;
+		}
+		
+		synchronized(queuedBytesLock)
+		{
+			this.maxQueuedBytes = maxQueuedBytes;
+		}
+		return StatusCode.OK;
+	}
+	
+	/**
+	 * getMaxQueuedBytes()
+	 * returns the memory budget for the data chunks waiting in the Dispatcher queues.
+	 * 
+	 * @return budget in bytes
+	 */
+	public long getMaxQueuedBytes()
+	{
+		synchronized(queuedBytesLock)
+		{
+			return maxQueuedBytes;
+		}
+	}
+	
+	/**
+	 * getQueuedBytes()
+	 * returns the number of bytes held by the data chunks currently waiting in the Dispatcher
+	 * queues or being transmitted.
+	 * 
+	 * @return number of queued bytes
+	 */
+	public long getQueuedBytes()
+	{
+		synchronized(queuedBytesLock)
+		{
+			return queuedBytes;
+		}
+	}
+	
+	/**
+	 * getQueuedBytesHighWater()
+	 * returns the largest number of bytes that have been held by queued data chunks at once
+	 * since the Dispatcher was created or the mark was last reset.
+	 * 
+	 * @return high-water mark in bytes
+	 */
+	public long getQueuedBytesHighWater()
+	{
+		synchronized(queuedBytesLock)
+		{
+			return queuedBytesHighWater;
+		}
+	}
+	
+	/**
+	 * resetQueuedBytesHighWater()
+	 * resets the high-water mark of the queued bytes to the number of bytes currently queued.
+	 */
+	public void resetQueuedBytesHighWater()
+	{
+		synchronized(queuedBytesLock)
+		{
+			queuedBytesHighWater = queuedBytes;
+		}
+	}
+	
+	/**
+	 * getNumThreads()
+	 * returns the number of threads used to service actions.
+	 * 
+	 * @return number of dispatcher threads
+	 */
+	public int getNumThreads()
+	{
+		return shards.size();
+	}
+	
+	/**
+	 * getBandwidthLimiter()
+	 * returns the Bandwidth Limiter that caps the rate of the data chunks sent by the Dispatcher.
+	 * 
+	 * @return instance of the Bandwidth Limiter
+	 */
+	public BandwidthLimiter getBandwidthLimiter()
+	{
+		return bandwidthLimiter;
+	}
+	
+	/**
+	 * removeActions()
+	 * removes every action from the Dispatcher queue that matches the specified action type, file ID
+	 * and peer. This is used to purge the data chunks of a transfer that has been cancelled or stopped
+	 * so they are not sent over the wire. Actions that are already being transmitted are not affected.
+	 * 
+	 * @param actionType  specifies the type of actions to remove
+	 * @param fileID  specifies the file ID stored as the first parameter of the actions
+	 * @param peer  specifies the peer the actions are addressed to
+	 * @return the number of actions removed
+	 */
+	public int removeActions(ActionType actionType, byte[] fileID, String peer)
+	{
+		return getShard(peer).removeActions(actionType, fileID, peer, 0, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * removeActions()
+	 * removes every DATA_CHUNK action from the Dispatcher queue for the specified file and peer whose
+	 * chunk starts within the specified range. This is used to purge the data chunks of one range of
+	 * a file when the same file is being sent to the peer as several ranges in parallel.
+	 * 
+	 * @param fileID  specifies the file ID stored as the first parameter of the actions
+	 * @param peer  specifies the peer the actions are addressed to
+	 * @param startByte  specifies the first byte of the range
+	 * @param endByte  specifies the byte after the last byte of the range
+	 * @return the number of actions removed
+	 */
+	public int removeActions(byte[] fileID, String peer, long startByte, long endByte)
+	{
+		return getShard(peer).removeActions(ActionType.DATA_CHUNK, fileID, peer, startByte, endByte);
 	}
 	
 	/**
@@ -193,11 +647,34 @@ public class Dispatcher implements Runnable
 		}
 	}
 
+	/**
+	 * invalidatePeer()
+	 * is called by the File Transfer Module when a peer leaves the AllJoyn session. The signal
+	 * emitter and proxy bus object cached for the peer are discarded.
+	 * 
+	 * @param peer  specifies the bus id of the peer
+	 */
+	public void invalidatePeer(String peer)
+	{
+		transmitter.invalidatePeer(peer);
+	}
+	
+	/**
+	 * invalidatePeers()
+	 * is called by the File Transfer Module when the AllJoyn session is lost. Every cached
+	 * signal emitter and proxy bus object is discarded.
+	 */
+	public void invalidatePeers()
+	{
+		transmitter.clearCache();
+	}
+
 	/**
 	 * resetState()
 	 * is called by the File Transfer Module when specifies a new AllJoyn session to be used.
 	 * This function is passed the bus attachement, new AllJoyn bus object, and bus ID of the bus
-	 * attachment. 
+	 * attachment. The signal emitters and proxy bus objects cached for the previous session are
+	 * released.
 	 * <p>
 	 * Note: in the case where the user calls uninitialize() on the FTC, the localBusID and bus
 	 * attachment parameters will be null.
@@ -209,6 +686,152 @@ public class Dispatcher implements Runnable
 	public void resetState(FileTransferBusObject busObject,
 			BusAttachment busAttachment, int sessionID)
 	{
+		transmitter.clearCache();
 		transmitter = new Transmitter(busObject, busAttachment, sessionID);		
 	}
+	
+	/**
+	 * The Shard class holds the priority lanes serviced by a single dispatcher thread. The
+	 * shard counts the queued actions so its thread can block until an action is available.
+	 * Chunks removed from a shard are released through the Dispatcher so their bytes leave
+	 * the queued bytes.
+	 */
+	private class Shard
+	{
+		/** Member Variables **/
+		private ArrayList<LinkedBlockingQueue<Action>> laneQueues;
+		private int[] skippedTurns;
+		private Semaphore queuedActions;
+		
+		/**
+		 * Shard()
+		 * constructs an instance of the Shard class with an empty queue for every lane.
+		 */
+		public Shard()
+		{
+			this.laneQueues = new ArrayList<LinkedBlockingQueue<Action>>();
+			
+			for (int i = 0; i < Lane.values().length; i++)
+			{
+				laneQueues.add(new LinkedBlockingQueue<Action>());
+			}
+			
+			this.skippedTurns = new int[Lane.values().length];
+			this.queuedActions = new Semaphore(0);
+		}
+		
+		/**
+		 * insertAction()
+		 * inserts the action into the queue of its priority lane.
+		 * 
+		 * @param action  specifies the action to be inserted
+		 */
+		public void insertAction(Action action)
+		{
+			laneQueues.get(getLane(action.actionType).ordinal()).add(action);
+			queuedActions.release();
+		}
+		
+		/**
+		 * takeAction()
+		 * blocks until an action is queued and then removes the next action to be serviced. The
+		 * action is taken from the highest priority lane that is not empty, unless a lower priority
+		 * lane has been passed over MAX_SKIPPED_TURNS times in a row, in which case that lane is
+		 * serviced instead.
+		 * 
+		 * @return the next action, or null if the action was removed while waiting
+		 * @throws InterruptedException  if the thread is interrupted while waiting
+		 */
+		public Action takeAction() throws InterruptedException
+		{
+			queuedActions.acquire();
+			
+			int selectedLane = -1;
+			
+			for (int i = 0; i < laneQueues.size(); i++)
+			{
+				if (laneQueues.get(i).isEmpty())
+				{
+					skippedTurns[i] = 0;
+				}
+				else if ((selectedLane == -1) || (skippedTurns[i] >= MAX_SKIPPED_TURNS))
+				{
+					if (selectedLane != -1)
+					{
+						skippedTurns[selectedLane]++;
+					}
+					selectedLane = i;
+				}
+				else
+				{
+					skippedTurns[i]++;
+				}
+			}
+			
+			if (selectedLane == -1)
+			{
+				return null;
+			}
+			
+			skippedTurns[selectedLane] = 0;
+			return laneQueues.get(selectedLane).poll();
+		}
+		
+		/**
+		 * removeActions()
+		 * removes every queued action that matches the specified action type, file ID and peer.
+		 * DATA_CHUNK actions are only removed if their chunk starts within the specified range.
+		 * The bytes of removed DATA_CHUNK and BUNDLE_CHUNK actions leave the queued bytes, and the
+		 * uncompressed chunk buffers of removed DATA_CHUNK actions are returned to the BufferPool.
+		 * 
+		 * @param actionType  specifies the type of actions to remove
+		 * @param fileID  specifies the file ID stored as the first parameter of the actions
+		 * @param peer  specifies the peer the actions are addressed to
+		 * @param startByte  specifies the first byte of the range
+		 * @param endByte  specifies the byte after the last byte of the range
+		 * @return the number of actions removed
+		 */
+		public int removeActions(ActionType actionType, byte[] fileID, String peer, long startByte, 
+				long endByte)
+		{
+			int numRemoved = 0;
+			Iterator<Action> iterator = laneQueues.get(getLane(actionType).ordinal()).iterator();
+			
+			while (iterator.hasNext())
+			{
+				Action action = iterator.next();
+				
+				if ((action.actionType == actionType) && (action.peer != null) && action.peer.equals(peer)
+						&& !action.parameters.isEmpty() && (action.parameters.get(0) instanceof byte[])
+						&& Arrays.equals(fileID, (byte[]) action.parameters.get(0))
+						&& ((action.actionType != ActionType.DATA_CHUNK) 
+								|| (((Long) action.parameters.get(1) >= startByte) 
+										&& ((Long) action.parameters.get(1) < endByte))))
+				{
+					iterator.remove();
+					queuedActions.tryAcquire();
+					numRemoved++;
+					
+					if (getChunk(action) != null)
+					{
+						releaseChunk(action);
+					}
+				}
+			}
+			
+			return numRemoved;
+		}
+		
+		/**
+		 * getQueueDepth()
+		 * returns the number of actions waiting in the specified lane.
+		 * 
+		 * @param lane  specifies the priority lane
+		 * @return number of queued actions
+		 */
+		public int getQueueDepth(Lane lane)
+		{
+			return laneQueues.get(lane.ordinal()).size();
+		}
+	}
 }
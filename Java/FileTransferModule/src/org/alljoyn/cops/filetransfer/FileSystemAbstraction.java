@@ -25,14 +25,20 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.HashMap;
 import org.alljoyn.cops.filetransfer.data.FileDescriptor;
+import org.alljoyn.cops.filetransfer.data.StatusCode;
+import org.alljoyn.cops.filetransfer.utility.BlockHashes;
 import org.alljoyn.cops.filetransfer.utility.Logger;
 
 /**
@@ -46,6 +52,24 @@ import org.alljoyn.cops.filetransfer.utility.Logger;
  * is needed but many modules must interact with the FSA. The static function getInstance()
  * returns the single instance of the FSA when needed.
  * <p>
+ * The hashes of the blocks of each file, as defined by {@link BlockHashes}, are computed in the
+ * same pass as the file ID and kept in the attribute cache with it. They are handed to receivers
+ * that verify each block of the file as it is written.
+ * <p>
+ * Files being read or written in chunks are kept open between chunks. The FSA caches a
+ * bounded number of open files and closes the least recently used file when the cache is
+ * full, or any file that has not been used for MAX_IDLE_TIME milliseconds. The Send and
+ * Receive Managers close a file as soon as its transfer completes or is cancelled. The cache
+ * is only locked to look up a file, and the file is pinned while it is read or written, so
+ * chunks of different files, and of the same file, are read and written in parallel. A file
+ * closed while pinned is closed once the last read or write using it finishes.
+ * <p>
+ * Optionally, files at least as large as the memory map threshold are served from read-only
+ * memory mappings. Each file is mapped lazily in windows of MAP_WINDOW_SIZE bytes and chunk
+ * reads copy straight from the mapping, which avoids a read system call for every chunk when
+ * many peers download the same large file. A mapping is dropped when the file is unannounced,
+ * written, deleted or modified on disk.
+ * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
  * {@link FileTransferModule} class.
@@ -58,19 +82,69 @@ public class FileSystemAbstraction
         private static final long serialVersionUID = 1L;
         
         public byte[] fileID;
+        public byte[] blockHashes;
         public long lastModified;
         
-        public FileAttributes(byte[] fileID, long lastModified)
+        public FileAttributes(byte[] fileID, byte[] blockHashes, long lastModified)
         {
             this.fileID = fileID;
+            this.blockHashes = blockHashes;
+            this.lastModified = lastModified;
+        }
+    };
+    
+    //Internal Static class to hold a cached open file
+    private static class OpenFile
+    {
+        public RandomAccessFile file;
+        public FileChannel channel;
+        public boolean isWritable;
+        public long lastUsed;
+        public int numUsers;
+        public boolean isRetired;
+        
+        public OpenFile(RandomAccessFile file, boolean isWritable)
+        {
+            this.file = file;
+            this.channel = file.getChannel();
+            this.isWritable = isWritable;
+            this.lastUsed = System.currentTimeMillis();
+            this.numUsers = 0;
+            this.isRetired = false;
+        }
+    };
+    
+    //Internal Static class to hold the memory mapped windows of a file
+    private static class MappedFile
+    {
+        public long length;
+        public long lastModified;
+        public long lastChecked;
+        public MappedByteBuffer[] windows;
+        
+        public MappedFile(long length, long lastModified)
+        {
+            this.length = length;
             this.lastModified = lastModified;
+            this.lastChecked = System.currentTimeMillis();
+            this.windows = new MappedByteBuffer[(int) ((length + MAP_WINDOW_SIZE - 1) / MAP_WINDOW_SIZE)];
         }
     };
     
+	/** Class Constant **/
+	private static final int MAX_OPEN_FILES = 16;
+	private static final long MAX_IDLE_TIME = 30000;
+	private static final int MAX_MAPPED_FILES = 16;
+	private static final long MAP_WINDOW_SIZE = 16777216;
+	private static final long MAP_CHECK_INTERVAL = 1000;
+    
 		/** Member Variables **/
     private static FileSystemAbstraction instance;
 	private File attributeCacheFile;
 	private Map<File, FileAttributes> attributeCache;
+	private LinkedHashMap<String, OpenFile> openFiles;
+	private LinkedHashMap<String, MappedFile> mappedFiles;
+	private long memoryMapThreshold;
 	
 	/*------------------------------------------------------------------------*
      * Constructor
@@ -84,6 +158,9 @@ public class FileSystemAbstraction
 	{
 	    attributeCacheFile = null;
 	    attributeCache = null;
+	    openFiles = new LinkedHashMap<String, OpenFile>(16, 0.75f, true);
+	    mappedFiles = new LinkedHashMap<String, MappedFile>(16, 0.75f, true);
+	    memoryMapThreshold = 0;
 	}
 	
 	/*------------------------------------------------------------------------*
@@ -378,7 +455,11 @@ public class FileSystemAbstraction
 	    // Try to create the file descriptor (uses the known file ID if available)
         try
         {
-            fileDescriptor = buildDescriptor(file, fileID, localBusID, sharedPath);
+            if (fileID == null)
+            {
+                fileInfo = calculateAttributes(file);
+            }
+            fileDescriptor = buildDescriptor(file, fileInfo.fileID, localBusID, sharedPath);
         } 
         catch (Exception e)
         {
@@ -393,7 +474,7 @@ public class FileSystemAbstraction
             
             if ((fileID == null) && (attributeCache != null))
             {
-                attributeCache.put(file, new FileAttributes(fileDescriptor.fileID, file.lastModified()));
+                attributeCache.put(file, fileInfo);
                 writeCacheToFile(attributeCacheFile);
             }
         }
@@ -405,25 +486,21 @@ public class FileSystemAbstraction
 
 	/**
 	 * buildDescriptor()
-	 * takes the file, localBusID, and sharedPath input parameter and builds the file descriptor
-	 * for the specified file. If this function throws one of the exceptions listed below, this
-	 * will cause the path for the file to be added to the failedPath list. 
+	 * takes the file, fileID, localBusID, and sharedPath input parameter and builds the file
+	 * descriptor for the specified file.
 	 * 
 	 * @param file  instance of the file being announced
+	 * @param fileID  specifies the file ID of the file
 	 * @param localBusID  specifies the local bus ID of the file owner
 	 * @param sharedPath  specifies the shared path of the file
 	 * @return file descriptor
-	 * @throws FileNotFoundException
-	 * @throws NoSuchAlgorithmException
-	 * @throws IOException
 	 */
 	private FileDescriptor buildDescriptor(File file, byte[] fileID, String localBusID, String sharedPath) 
-			throws FileNotFoundException, NoSuchAlgorithmException, IOException
 	{
 		FileDescriptor fd = new FileDescriptor();
 		fd.owner = localBusID;
 		fd.sharedPath = sharedPath;
-		fd.size = (int) file.length();
+		fd.setSize(file.length());
 		fd.filename = file.getName();
 		
 		int spLength = sharedPath.length();
@@ -443,50 +520,121 @@ public class FileSystemAbstraction
 			Logger.log("File path is smaller than shared path length!");
 		}
 		
-		// If the file ID was already known, we use it. Calculating the
-		// ID can be time consuming, so we avoid it if possible.
-		fd.fileID = fileID == null ? calculateId(file) : fileID;
+		fd.fileID = fileID;
 		
 		return fd;
 	}
 	
 	/**
-	 * calculateID()
-	 * will calculate the SHA-1 hash of the specified file. The SHA-1 hash is used to denote the
-	 * file ID for the file in the corresponding file descriptor. If one of the exceptions is thrown
-	 * the path for the file will be added to failedPaths list.
+	 * calculateAttributes()
+	 * will calculate the SHA-1 hash of the specified file together with the hashes of its blocks
+	 * in a single pass over the file. The SHA-1 hash is used to denote the file ID for the file in
+	 * the corresponding file descriptor. Calculating the hashes can be time consuming, so they are
+	 * kept in the attribute cache when one is set. If one of the exceptions is thrown the path for
+	 * the file will be added to failedPaths list.
 	 * 
 	 * @param file  instance of the file being announced
-	 * @return file ID for the specified file
+	 * @return file attributes holding the file ID and block hashes of the specified file
 	 * @throws FileNotFoundException
 	 * @throws IOException
 	 * @throws NoSuchAlgorithmException
 	 */
-	private byte[] calculateId(File file) throws FileNotFoundException, IOException, NoSuchAlgorithmException
+	private FileAttributes calculateAttributes(File file) throws FileNotFoundException, IOException, 
+		NoSuchAlgorithmException
 	{
 		MessageDigest sha1 = null;
 
 		sha1 = MessageDigest.getInstance("SHA-1");
 		sha1.reset();
+		
+		long lastModified = file.lastModified();
+		long length = file.length();
+		int blockSize = BlockHashes.getBlockSize(length);
+		int numBlocks = BlockHashes.getNumBlocks(length);
+		byte[] blockHashes = new byte[numBlocks * BlockHashes.HASH_LENGTH];
+		MessageDigest blockDigest = BlockHashes.createDigest();
+		int block = 0;
+		long offset = 0;
 
 		FileInputStream fis = new FileInputStream(file);
-		byte[] fileData = new byte[1024];
+		byte[] fileData = new byte[65536];
 		int read = 0;
 		
 		while((read = fis.read(fileData)) != -1)
 		{
 			sha1.update(fileData, 0, read);
+			
+			for (int position = 0; position < read; )
+			{
+				int numBytes = (int) Math.min(read - position, blockSize - (offset % blockSize));
+				blockDigest.update(fileData, position, numBytes);
+				position += numBytes;
+				offset += numBytes;
+				
+				if (((offset % blockSize) == 0) && (block < numBlocks))
+				{
+					System.arraycopy(blockDigest.digest(), 0, blockHashes, block * BlockHashes.HASH_LENGTH, 
+							BlockHashes.HASH_LENGTH);
+					block++;
+				}
+			}
+		}
+		
+		if (((offset % blockSize) != 0) && (block < numBlocks))
+		{
+			System.arraycopy(blockDigest.digest(), 0, blockHashes, block * BlockHashes.HASH_LENGTH, 
+					BlockHashes.HASH_LENGTH);
 		}
 		
 		fis.close();
-		return sha1.digest();
+		return new FileAttributes(sha1.digest(), blockHashes, lastModified);
+	}
+	
+	/**
+	 * getBlockHashes()
+	 * returns the hashes of the blocks of the file at the specified path. The hashes are taken
+	 * from the attribute cache if the file has not been modified since they were calculated,
+	 * otherwise they are calculated and cached. Without an attribute cache the hashes are
+	 * calculated every time.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 * @return hashes of the blocks one after the other, null if the file could not be read
+	 */
+	public byte[] getBlockHashes(String path)
+	{
+		File file = new File(path);
+		FileAttributes fileInfo = attributeCache != null ? attributeCache.get(file) : null;
+		
+		if ((fileInfo != null) && (fileInfo.lastModified == file.lastModified()) && (fileInfo.blockHashes != null))
+		{
+			return fileInfo.blockHashes;
+		}
+		
+		try
+		{
+			fileInfo = calculateAttributes(file);
+		}
+		catch (Exception e)
+		{
+			Logger.log(e.toString());
+			return null;
+		}
+		
+		if (attributeCache != null)
+		{
+			attributeCache.put(file, fileInfo);
+			writeCacheToFile(attributeCacheFile);
+		}
+		return fileInfo.blockHashes;
 	}
 
 	/**
 	 * getChunk()
-	 * opens the file at the specified file path and reads the number of bytes equal to the length parameter
+	 * reads the number of bytes equal to the length parameter from the file at the specified file path
 	 * starting from the startOffset parameter. The bytes read from the file are stored in the chunk array. 
-	 * The total number of bytes successfully read from the file are returned to the function caller.  
+	 * The total number of bytes successfully read from the file are returned to the function caller. The
+	 * file is kept open for subsequent chunks until closeFile() is called or it is evicted from the cache.
+	 * Files at least as large as the memory map threshold are read from a memory mapping instead.
 	 * 
 	 * @param path  specifies the absolute file path of the file
 	 * @param chunk  specifies the byte array where the data of the file will be copied to
@@ -494,23 +642,86 @@ public class FileSystemAbstraction
 	 * @param length  specifies the number of bytes to read from the starting offset
 	 * @return number of bytes read from file path
 	 */
-	public int getChunk(String path, byte[] chunk, int startOffset, int length) throws 
+	public int getChunk(String path, byte[] chunk, long startOffset, int length) throws 
 		FileNotFoundException, IOException
 	{
-		RandomAccessFile file = new RandomAccessFile(path, "r");
-		file.skipBytes(startOffset);
+		MappedFile mappedFile = null;
+		OpenFile openFile = null;
 		
-		int status = file.read(chunk, 0, length);
+		synchronized(openFiles)
+		{
+			mappedFile = getMappedFile(path);
+			
+			if (mappedFile == null)
+			{
+				openFile = getOpenFile(path, false);
+				openFile.numUsers++;
+			}
+		}
 		
-		file.close();
-		return status;
+		if (mappedFile != null)
+		{
+			return getMappedChunk(path, mappedFile, chunk, startOffset, length);
+		}
+		
+		try
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+			int numBytesRead = 0;
+			
+			while (buffer.hasRemaining())
+			{
+				int status = openFile.channel.read(buffer, startOffset + numBytesRead);
+				
+				if (status < 0)
+				{
+					break;
+				}
+				numBytesRead += status;
+			}
+			
+			return (numBytesRead == 0) && (length > 0) ? -1 : numBytesRead;
+		}
+		finally
+		{
+			unpin(openFile);
+		}
+	}
+	
+	/**
+	 * getFileContent()
+	 * is called when the contents of a small file are sent along with its offer or announcement.
+	 * This function reads the whole file into memory.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 * @param length  specifies the length of the file
+	 * @return contents of the file, or null if the file could not be read completely
+	 */
+	public byte[] getFileContent(String path, int length)
+	{
+		byte[] content = new byte[length];
+		
+		try
+		{
+			if ((length > 0) && (getChunk(path, content, 0, length) != length))
+			{
+				return null;
+			}
+		}
+		catch (Exception e)
+		{
+			Logger.log(e.toString());
+			return null;
+		}
+		return content;
 	}
 	
 	/**
 	 * addChunk()
 	 * is called when a file chunk is received during a file transfer. This function is responsible
 	 * for appending the new data to the file beginning from the startOffset parameter. The function
-	 * will return one if the addChunk operation is successful, and zero if the operation fails. 
+	 * will return one if the addChunk operation is successful, and zero if the operation fails. The
+	 * file is kept open for subsequent chunks until closeFile() is called or it is evicted from the cache.
 	 * 
 	 * @param  path  specifies the absolute file path of the file
 	 * @param  chunk  specifies the byte array containing the data to be appended
@@ -518,7 +729,7 @@ public class FileSystemAbstraction
 	 * @param  length  specifies the number of bytes to append from the starting offset
 	 * @return  1 for success, 0 for fail
 	 */
-	public int addChunk(String path, byte[] chunk, int startOffset, int length) throws FileNotFoundException, IOException
+	public int addChunk(String path, byte[] chunk, long startOffset, int length) throws FileNotFoundException, IOException
 	{
 		int status = 0;
 		
@@ -532,23 +743,459 @@ public class FileSystemAbstraction
 			}			
 		}
 		
-		RandomAccessFile raFile = new RandomAccessFile(file, "rw");
-		raFile.skipBytes(startOffset);		
+		OpenFile openFile = null;
+		
+		synchronized(openFiles)
+		{
+			mappedFiles.remove(path);
+			openFile = getOpenFile(path, true);
+			openFile.numUsers++;
+		}
+		
 		try
 		{
-			raFile.write(chunk, 0, length);
+			ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+			
+			while (buffer.hasRemaining())
+			{
+				openFile.channel.write(buffer, startOffset + buffer.position());
+			}
+			status = 1;
 		} 
 		catch (Exception e) 
 		{
 			Logger.log(e.toString());
+			closeFile(path);
 			status = 0;
 		}
+		finally
+		{
+			unpin(openFile);
+		}
 		
-		status = 1;
-		raFile.close();
 		return status;
 	}
 	
+	/**
+	 * getMappedFile()
+	 * is a private helper function that returns the memory mapping of the specified file, or null
+	 * if the file should be read through its channel because memory mapping is disabled or the
+	 * file is smaller than the threshold. The file on disk is checked at most once every
+	 * MAP_CHECK_INTERVAL milliseconds and a mapping of a file that changed is replaced. When
+	 * MAX_MAPPED_FILES files are mapped, the least recently used mapping is dropped. The caller
+	 * must hold the openFiles lock.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 * @return the mapped file or null
+	 */
+	private MappedFile getMappedFile(String path)
+	{
+		if (memoryMapThreshold <= 0)
+		{
+			return null;
+		}
+		
+		long currentTime = System.currentTimeMillis();
+		MappedFile mappedFile = mappedFiles.get(path);
+		
+		if ((mappedFile != null) && ((currentTime - mappedFile.lastChecked) < MAP_CHECK_INTERVAL))
+		{
+			return mappedFile;
+		}
+		
+		File file = new File(path);
+		long length = file.length();
+		
+		if (length < memoryMapThreshold)
+		{
+			mappedFiles.remove(path);
+			return null;
+		}
+		
+		if ((mappedFile == null) || (mappedFile.length != length)
+				|| (mappedFile.lastModified != file.lastModified()))
+		{
+			if ((mappedFile == null) && (mappedFiles.size() >= MAX_MAPPED_FILES))
+			{
+				Iterator<String> iterator = mappedFiles.keySet().iterator();
+				iterator.next();
+				iterator.remove();
+			}
+			
+			mappedFile = new MappedFile(length, file.lastModified());
+			mappedFiles.put(path, mappedFile);
+		}
+		
+		mappedFile.lastChecked = currentTime;
+		return mappedFile;
+	}
+	
+	/**
+	 * getMappedChunk()
+	 * is a private helper function called by getChunk() that copies the requested bytes from the
+	 * memory mapping of the file. Windows that have not been mapped yet are mapped on demand. The
+	 * openFiles lock is only held to map a window, not while the bytes are copied.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 * @param mappedFile  specifies the mapping of the file
+	 * @param chunk  specifies the byte array where the data of the file will be copied to
+	 * @param startOffset  specifies the starting byte offset of where to read the data
+	 * @param length  specifies the number of bytes to read from the starting offset
+	 * @return number of bytes read, -1 if the start offset is at the end of the file
+	 * @throws IOException  if a window of the file cannot be mapped
+	 */
+	private int getMappedChunk(String path, MappedFile mappedFile, byte[] chunk, long startOffset, int length) 
+		throws IOException
+	{
+		int numBytesRead = 0;
+		
+		while ((numBytesRead < length) && ((startOffset + numBytesRead) < mappedFile.length))
+		{
+			long offset = startOffset + numBytesRead;
+			int windowIndex = (int) (offset / MAP_WINDOW_SIZE);
+			long windowStart = windowIndex * MAP_WINDOW_SIZE;
+			
+			ByteBuffer window = null;
+			
+			synchronized(openFiles)
+			{
+				if (mappedFile.windows[windowIndex] == null)
+				{
+					FileChannel channel = getOpenFile(path, false).channel;
+					long windowLength = Math.min(MAP_WINDOW_SIZE, mappedFile.length - windowStart);
+					mappedFile.windows[windowIndex] = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, 
+							windowLength);
+				}
+				window = mappedFile.windows[windowIndex].duplicate();
+			}
+			
+			window.position((int) (offset - windowStart));
+			
+			int numBytes = Math.min(length - numBytesRead, window.remaining());
+			window.get(chunk, numBytesRead, numBytes);
+			numBytesRead += numBytes;
+		}
+		
+		return (numBytesRead == 0) && (length > 0) ? -1 : numBytesRead;
+	}
+	
+	/**
+	 * setMemoryMapThreshold()
+	 * specifies the minimum size of a file, in bytes, for its chunks to be served from a memory
+	 * mapping. A threshold of zero disables memory mapping and drops every existing mapping,
+	 * which is the default.
+	 * 
+	 * @param threshold  specifies the minimum file size in bytes, or zero
+	 * @return OK or INVALID
+	 */
+	public int setMemoryMapThreshold(long threshold)
+	{
+		if (threshold < 0)
+		{
+			return StatusCode.INVALID;
+		}
+		
+		synchronized(openFiles)
+		{
+			memoryMapThreshold = threshold;
+			
+			if (threshold == 0)
+			{
+				mappedFiles.clear();
+			}
+		}
+		return StatusCode.OK;
+	}
+	
+	/**
+	 * getMemoryMapThreshold()
+	 * returns the minimum size of a file, in bytes, for its chunks to be served from a memory
+	 * mapping. Zero means memory mapping is disabled.
+	 * 
+	 * @return current memory map threshold
+	 */
+	public long getMemoryMapThreshold()
+	{
+		synchronized(openFiles)
+		{
+			return memoryMapThreshold;
+		}
+	}
+	
+	/**
+	 * unmapFile()
+	 * drops the memory mapping of the specified file, if there is one. This is called when the
+	 * file is no longer announced. The mapped memory is released once the mapping is garbage
+	 * collected.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 */
+	public void unmapFile(String path)
+	{
+		synchronized(openFiles)
+		{
+			mappedFiles.remove(path);
+		}
+	}
+	
+	/**
+	 * isMapped()
+	 * returns true if chunks of the specified file are currently served from a memory mapping.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 * @return true if the file is mapped, false otherwise
+	 */
+	public boolean isMapped(String path)
+	{
+		synchronized(openFiles)
+		{
+			return mappedFiles.containsKey(path);
+		}
+	}
+	
+	/**
+	 * getOpenFile()
+	 * is a private helper function that returns the cached open file for the specified path,
+	 * opening the file if necessary. A file cached for reading is reopened when write access is
+	 * requested. Files idle for longer than MAX_IDLE_TIME are closed and, when the cache is full,
+	 * the least recently used file is closed. Files still pinned by a read or write are closed
+	 * once they are unpinned. The caller must hold the openFiles lock.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 * @param isWritable  specifies whether the file must be opened for writing
+	 * @return the open file
+	 * @throws FileNotFoundException  if the file cannot be opened
+	 */
+	private OpenFile getOpenFile(String path, boolean isWritable) throws FileNotFoundException
+	{
+		long currentTime = System.currentTimeMillis();
+		Iterator<Map.Entry<String, OpenFile>> iterator = openFiles.entrySet().iterator();
+		
+		while (iterator.hasNext())
+		{
+			OpenFile openFile = iterator.next().getValue();
+			
+			if ((currentTime - openFile.lastUsed) < MAX_IDLE_TIME)
+			{
+				break;
+			}
+			retire(openFile);
+			iterator.remove();
+		}
+		
+		OpenFile openFile = openFiles.get(path);
+		
+		if ((openFile != null) && isWritable && !openFile.isWritable)
+		{
+			retire(openFiles.remove(path));
+			openFile = null;
+		}
+		
+		if (openFile == null)
+		{
+			if (openFiles.size() >= MAX_OPEN_FILES)
+			{
+				iterator = openFiles.entrySet().iterator();
+				retire(iterator.next().getValue());
+				iterator.remove();
+			}
+			
+			openFile = new OpenFile(new RandomAccessFile(path, isWritable ? "rw" : "r"), isWritable);
+			openFiles.put(path, openFile);
+		}
+		
+		openFile.lastUsed = currentTime;
+		return openFile;
+	}
+	
+	/**
+	 * hasSpace()
+	 * is called before a file transfer starts to check that the volume the file is saved to has
+	 * room for the part of the file that has not been written yet. Directories that do not exist
+	 * yet are checked on the volume of their closest existing parent.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 * @param length  specifies the length of the file
+	 * @return true if the remaining bytes of the file fit on the volume
+	 */
+	public boolean hasSpace(String path, long length)
+	{
+		File file = new File(path).getAbsoluteFile();
+		long numBytesNeeded = length - (file.isFile() ? file.length() : 0);
+		File directory = file.getParentFile();
+		
+		while ((directory != null) && !directory.exists())
+		{
+			directory = directory.getParentFile();
+		}
+		
+		return (numBytesNeeded <= 0) || ((directory != null) && (directory.getUsableSpace() >= numBytesNeeded));
+	}
+	
+	/**
+	 * preallocate()
+	 * is called when a file transfer starts to extend the file to its full length at once, so it
+	 * does not grow one chunk at a time and the file system can lay it out in one piece. The file
+	 * is extended sparsely on file systems that support it. Files that are already at least as
+	 * long are left untouched so resumed transfers keep their data.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 * @param length  specifies the length of the file
+	 * @return OK or BAD_FILE_PATH
+	 */
+	public int preallocate(String path, long length)
+	{
+		File file = new File(path);
+		File parent = file.getParentFile();
+		
+		if ((parent != null) && !parent.exists())
+		{
+			parent.mkdirs();
+		}
+		
+		synchronized(openFiles)
+		{
+			mappedFiles.remove(path);
+			
+			try
+			{
+				RandomAccessFile randomAccessFile = getOpenFile(path, true).file;
+				
+				if (randomAccessFile.length() < length)
+				{
+					randomAccessFile.setLength(length);
+				}
+			}
+			catch (Exception e)
+			{
+				Logger.log(e.toString());
+				closeFile(path);
+				return StatusCode.BAD_FILE_PATH;
+			}
+		}
+		return StatusCode.OK;
+	}
+	
+	/**
+	 * sync()
+	 * forces the data and size of the file at the specified path to the storage device, so the
+	 * chunks written so far survive a crash or power loss. The file is opened if it is not open
+	 * already. Files that do not exist are ignored.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 * @return OK or BAD_FILE_PATH
+	 */
+	public int sync(String path)
+	{
+		if (!new File(path).isFile())
+		{
+			return StatusCode.OK;
+		}
+		
+		OpenFile openFile = null;
+		
+		try
+		{
+			synchronized(openFiles)
+			{
+				openFile = getOpenFile(path, true);
+				openFile.numUsers++;
+			}
+			
+			openFile.channel.force(true);
+			return StatusCode.OK;
+		}
+		catch (Exception e)
+		{
+			Logger.log(e.toString());
+			return StatusCode.BAD_FILE_PATH;
+		}
+		finally
+		{
+			if (openFile != null)
+			{
+				unpin(openFile);
+			}
+		}
+	}
+	
+	/**
+	 * closeFile()
+	 * closes the cached open file for the specified path, if there is one. This is called
+	 * when a file transfer completes or is cancelled. A file that is being read or written is
+	 * closed once the read or write finishes.
+	 * 
+	 * @param path  specifies the absolute file path of the file
+	 */
+	public void closeFile(String path)
+	{
+		synchronized(openFiles)
+		{
+			OpenFile openFile = openFiles.remove(path);
+			
+			if (openFile != null)
+			{
+				retire(openFile);
+			}
+		}
+	}
+	
+	/**
+	 * retire()
+	 * is a private helper function that closes an open file that has been removed from the cache,
+	 * or marks it to be closed when it is unpinned if it is still being read or written. The
+	 * caller must hold the openFiles lock.
+	 * 
+	 * @param openFile  specifies the open file
+	 */
+	private void retire(OpenFile openFile)
+	{
+		openFile.isRetired = true;
+		
+		if (openFile.numUsers == 0)
+		{
+			close(openFile);
+		}
+	}
+	
+	/**
+	 * unpin()
+	 * is a private helper function called once a read or write of the specified open file has
+	 * finished. The file is closed if it was removed from the cache in the meantime.
+	 * 
+	 * @param openFile  specifies the open file
+	 */
+	private void unpin(OpenFile openFile)
+	{
+		synchronized(openFiles)
+		{
+			openFile.numUsers--;
+			
+			if ((openFile.numUsers == 0) && openFile.isRetired)
+			{
+				close(openFile);
+			}
+		}
+	}
+	
+	/**
+	 * close()
+	 * is a private helper function that closes an open file and logs any failure.
+	 * 
+	 * @param openFile  specifies the open file
+	 */
+	private void close(OpenFile openFile)
+	{
+		try
+		{
+			openFile.file.close();
+		}
+		catch (IOException e)
+		{
+			Logger.log(e.toString());
+		}
+	}
+	
 	/**
 	 * delete()
 	 * is called when the file at the specified path needs to be deleted. This function
@@ -563,6 +1210,9 @@ public class FileSystemAbstraction
 	{
 		Logger.log("removing: " + path);
 		
+		unmapFile(path);
+		closeFile(path);
+		
 		File f = new File(path);
 		boolean success = false;
 		
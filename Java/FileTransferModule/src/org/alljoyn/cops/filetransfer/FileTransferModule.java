@@ -46,6 +46,9 @@ import org.alljoyn.cops.filetransfer.listener.*;
  */
 public class FileTransferModule 
 {
+	/** Class Constant **/
+	private static final int DEFAULT_DISPATCHER_THREADS = 4;
+	
 	/** Member Variables **/
 	private Dispatcher dispatcher;
 	private AnnouncementManager announcementManager;
@@ -83,6 +86,25 @@ public class FileTransferModule
 	 * @param sessionID  the ID of the AllJoyn session to use for file transfers
 	 */
 	public FileTransferModule(BusAttachment busAttachment, int sessionID)
+	{		
+		this(busAttachment, sessionID, DEFAULT_DISPATCHER_THREADS);
+	}
+	
+	/**
+	 * FileTransferModule()
+	 * constructs an instance of the FileTransferModule and uses the provided
+	 * bus attachment to allow all file transfers to be sent over an existing
+	 * AllJoyn session. Outgoing signals and method calls are serviced by the
+	 * specified number of dispatcher threads. Traffic for each peer is always
+	 * serviced in order by the same thread, so a slow peer only delays the peers
+	 * sharing its thread. Specifying one thread services all traffic on a single
+	 * thread. The other constructors use 4 threads.
+	 * 
+	 * @param busAttachment  the AllJoyn BusAttachment to use for file transfers
+	 * @param sessionID  the ID of the AllJoyn session to use for file transfers
+	 * @param numDispatcherThreads  the number of dispatcher threads, must be at least one
+	 */
+	public FileTransferModule(BusAttachment busAttachment, int sessionID, int numDispatcherThreads)
 	{		
 		//Set bus object and extract localBusID
 		this.busObject = new FileTransferBusObject(busAttachment);				
@@ -92,7 +114,7 @@ public class FileTransferModule
 		this.fileSystemAbstraction = FileSystemAbstraction.getInstance();
 		this.permissionsManager = new PermissionsManager();
 		
-		this.dispatcher = new Dispatcher(busObject, busAttachment, sessionID);		
+		this.dispatcher = new Dispatcher(busObject, busAttachment, sessionID, numDispatcherThreads);		
 		this.announcementManager = new AnnouncementManager(dispatcher, permissionsManager, localBusID);
 		this.offerManager = new OfferManager(dispatcher, permissionsManager, localBusID);
 		this.directedAnnouncementManager = new DirectedAnnouncementManager(dispatcher, permissionsManager, localBusID);		
@@ -110,7 +132,7 @@ public class FileTransferModule
 		busObject.setDirectedAnnouncementManagerListener(directedAnnouncementManager);
 		busObject.setOfferManagerListener(offerManager);
 
-		//Start dispatcher thread
+		//Start dispatcher threads
 		new Thread(dispatcher).start();		
 	}
 
@@ -170,6 +192,29 @@ public class FileTransferModule
 		initialize(null, 0);
 	}
 	
+	/**
+	 * sessionMemberRemoved()
+	 * should be called from the sessionMemberRemoved() callback of the session listener when
+	 * a peer leaves the AllJoyn session. The objects cached to reach the peer are discarded so
+	 * they are not reused if the peer joins again.
+	 * 
+	 * @param peer  specifies the bus id of the peer that left the session
+	 */
+	public void sessionMemberRemoved(String peer)
+	{
+		dispatcher.invalidatePeer(peer);
+	}
+	
+	/**
+	 * sessionLost()
+	 * should be called from the sessionLost() callback of the session listener when the
+	 * AllJoyn session is lost. The objects cached to reach every peer are discarded.
+	 */
+	public void sessionLost()
+	{
+		dispatcher.invalidatePeers();
+	}
+	
     /**
      * destroy()
      * is called to clean up all resources used by an instance of the File Transfer Module
@@ -457,6 +502,42 @@ public class FileTransferModule
     {
         fileSystemAbstraction.cleanCacheFile();    
     }
+
+    /**
+     * setJournalFile()
+     * allows the user to specify the path for a file that will be used to journal the progress
+     * of the files being received. With a journal, a download interrupted by an application
+     * restart or a lost session is resumed from the missing ranges of the file when the file is
+     * requested again with the same save location, instead of being downloaded from scratch.
+     * <p>
+     * Note: journaling is disabled by default. 
+     * <p>
+     * Note: passing in null disables journaling.
+     * 
+     * @param path  specifies the path to the file used for journaling
+     */
+    public void setJournalFile(String path)
+    {
+        receiveManager.setJournalFile(path != null ? new File(path) : (File)null);
+    }
+
+    /**
+     * setJournalFile()
+     * allows the user to provide the file object that will be used to journal the progress
+     * of the files being received. With a journal, a download interrupted by an application
+     * restart or a lost session is resumed from the missing ranges of the file when the file is
+     * requested again with the same save location, instead of being downloaded from scratch.
+     * <p>
+     * Note: journaling is disabled by default. 
+     * <p>
+     * Note: passing in null disables journaling.
+     * 
+     * @param file  instance of a File object to be used as the journal file
+     */
+    public void setJournalFile(File file)
+    {
+        receiveManager.setJournalFile(file);
+    }
     
 	
 	/**
@@ -482,6 +563,430 @@ public class FileTransferModule
 		return receiveManager.getMaxChunkSize();
 	}
 	
+	/**
+	 * setAdaptiveChunkSize()
+	 * enables or disables adaptive chunk sizing. When enabled, the chunk length requested from
+	 * each peer is tuned from the measured round trip time and throughput of its transfers, within
+	 * the bounds given to setChunkSizeBounds(). New peers start at the chunk size specified by
+	 * setChunkSize(). The chunk length used by each transfer is reported in its progress
+	 * descriptor. Adaptive chunk sizing is disabled by default.
+	 * 
+	 * @param isEnabled  specifies whether adaptive chunk sizing is enabled
+	 */
+	public void setAdaptiveChunkSize(boolean isEnabled)
+	{
+		receiveManager.setAdaptiveChunkSize(isEnabled);
+	}
+	
+	/**
+	 * isAdaptiveChunkSize()
+	 * returns to the user whether adaptive chunk sizing is enabled.
+	 * 
+	 * @return true if adaptive chunk sizing is enabled, false otherwise
+	 */
+	public boolean isAdaptiveChunkSize()
+	{
+		return receiveManager.isAdaptiveChunkSize();
+	}
+	
+	/**
+	 * setChunkSizeBounds()
+	 * specifies the smallest and largest chunk length that adaptive chunk sizing may request.
+	 * The minimum must be greater than zero and not greater than the maximum. The default
+	 * bounds are 1024 and 65536 bytes.
+	 * 
+	 * @param minChunkSize  the smallest chunk length
+	 * @param maxChunkSize  the largest chunk length
+	 * @return OK or INVALID
+	 */
+	public int setChunkSizeBounds(int minChunkSize, int maxChunkSize)
+	{
+		return receiveManager.setChunkSizeBounds(minChunkSize, maxChunkSize);
+	}
+
+	/**
+	 * setNumParallelRanges()
+	 * specifies how many ranges of a file are requested in parallel when the file is requested
+	 * from a single peer. Requesting several ranges at once keeps high latency links busy. Files
+	 * smaller than 64 KB are always requested as a single range. The number of ranges must be
+	 * greater than zero. The default is 1.
+	 *
+	 * @param numRanges  the number of ranges requested in parallel
+	 * @return OK or INVALID
+	 */
+	public int setNumParallelRanges(int numRanges)
+	{
+		return receiveManager.setNumParallelRanges(numRanges);
+	}
+
+	/**
+	 * getNumParallelRanges()
+	 * returns to the user how many ranges of a file are requested in parallel from a single peer.
+	 *
+	 * @return number of parallel ranges
+	 */
+	public int getNumParallelRanges()
+	{
+		return receiveManager.getNumParallelRanges();
+	}
+
+	/**
+	 * setCompressionLevel()
+	 * specifies the compression level requested for the files received from other peers. The
+	 * level ranges from 0, which disables compression, to 9, which gives the best compression
+	 * at the cost of more processing on the sender. Senders that do not support compression, or
+	 * files that are already compressed such as archives, images and video, are transferred
+	 * uncompressed. The bytes that crossed the network are reported in the bytesOnWire field of
+	 * the receive progress list. The default is 0.
+	 *
+	 * @param level  the compression level
+	 * @return OK or INVALID
+	 */
+	public int setCompressionLevel(int level)
+	{
+		return receiveManager.setCompressionLevel(level);
+	}
+
+	/**
+	 * getCompressionLevel()
+	 * returns to the user the compression level requested for the files received from other peers.
+	 *
+	 * @return compression level
+	 */
+	public int getCompressionLevel()
+	{
+		return receiveManager.getCompressionLevel();
+	}
+
+	/**
+	 * setInlineThreshold()
+	 * specifies the size, in bytes, of the files whose contents are sent along with their offer
+	 * or directed announcement instead of being requested afterwards. Small files then complete
+	 * without any further round trip. The threshold applies to the files offered and announced
+	 * by this peer as well as to the inline contents accepted from other peers, and both peers
+	 * must set a threshold for a file to be sent inline. Peers that do not support inline
+	 * contents receive ordinary offers. The threshold cannot exceed 65536 bytes. The default
+	 * is 0, which disables inline contents.
+	 *
+	 * @param threshold  the inline threshold in bytes
+	 * @return OK or INVALID
+	 */
+	public int setInlineThreshold(int threshold)
+	{
+		int statusCode = receiveManager.setInlineThreshold(threshold);
+		
+		if (statusCode == StatusCode.OK)
+		{
+			offerManager.setInlineThreshold(threshold);
+			directedAnnouncementManager.setInlineThreshold(threshold);
+		}
+		return statusCode;
+	}
+
+	/**
+	 * getInlineThreshold()
+	 * returns the size of the files whose contents are sent inline.
+	 *
+	 * @return the inline threshold in bytes
+	 */
+	public int getInlineThreshold()
+	{
+		return receiveManager.getInlineThreshold();
+	}
+
+	/**
+	 * setBlockVerification()
+	 * enables or disables block verification of the files received from other peers. When enabled,
+	 * the hashes of the blocks of each file are requested from its owner along with the file, and
+	 * every block is verified as soon as it has been saved. A corrupt block is requested again on
+	 * its own. Owners that do not support block verification send their files without it. Block
+	 * verification is disabled by default.
+	 *
+	 * @param isEnabled  specifies whether block verification is enabled
+	 */
+	public void setBlockVerification(boolean isEnabled)
+	{
+		receiveManager.setBlockVerification(isEnabled);
+	}
+
+	/**
+	 * isBlockVerification()
+	 * returns to the user whether block verification is enabled.
+	 *
+	 * @return true if block verification is enabled, false otherwise
+	 */
+	public boolean isBlockVerification()
+	{
+		return receiveManager.isBlockVerification();
+	}
+
+	/**
+	 * setPreallocation()
+	 * enables or disables preallocation of the files received from other peers. When enabled,
+	 * each file is extended to its full size as soon as its transfer starts instead of growing
+	 * one chunk at a time, which lets the file system keep the file in one piece. The file is
+	 * extended sparsely where the file system supports it. Whether or not preallocation is
+	 * enabled, a transfer is refused with INSUFFICIENT_SPACE if the file does not fit. Preallocation
+	 * is disabled by default.
+	 *
+	 * @param isEnabled  specifies whether preallocation is enabled
+	 */
+	public void setPreallocation(boolean isEnabled)
+	{
+		receiveManager.setPreallocation(isEnabled);
+	}
+
+	/**
+	 * isPreallocation()
+	 * returns to the user whether preallocation is enabled.
+	 *
+	 * @return true if preallocation is enabled, false otherwise
+	 */
+	public boolean isPreallocation()
+	{
+		return receiveManager.isPreallocation();
+	}
+
+	/**
+	 * setSendWindowSize()
+	 * specifies the maximum number of data chunks each outgoing transfer may have in flight.
+	 * Chunks stay in flight until the receiver acknowledges them. Receivers that do not send
+	 * acknowledgements are served with a window that slides as chunks are transmitted. The
+	 * window size must be greater than zero. The default window size is 4.
+	 * 
+	 * @param windowSize  the number of chunks in flight per transfer
+	 * @return OK or INVALID
+	 */
+	public int setSendWindowSize(int windowSize)
+	{
+		return sendManager.setWindowSize(windowSize);
+	}
+	
+	/**
+	 * getSendWindowSize()
+	 * returns to the user the current maximum number of data chunks each outgoing transfer
+	 * may have in flight.
+	 * 
+	 * @return current send window size
+	 */
+	public int getSendWindowSize()
+	{
+		return sendManager.getWindowSize();
+	}
+	
+	/**
+	 * setPrefetchDepth()
+	 * specifies the number of chunks each outgoing transfer reads from disk ahead of
+	 * transmission. Reading ahead on a background thread hides disk latency behind the
+	 * bus. Specifying zero disables read-ahead. The default prefetch depth is 2.
+	 * 
+	 * @param prefetchDepth  the number of chunks to read ahead per transfer
+	 * @return OK or INVALID
+	 */
+	public int setPrefetchDepth(int prefetchDepth)
+	{
+		return sendManager.setPrefetchDepth(prefetchDepth);
+	}
+	
+	/**
+	 * getPrefetchDepth()
+	 * returns to the user the number of chunks each outgoing transfer reads ahead.
+	 * 
+	 * @return current prefetch depth
+	 */
+	public int getPrefetchDepth()
+	{
+		return sendManager.getPrefetchDepth();
+	}
+	
+	/**
+	 * setPrefetchMemoryLimit()
+	 * specifies the maximum number of bytes held in read-ahead chunks across all outgoing
+	 * transfers. The limit must be greater than zero. The default limit is 1 MB.
+	 * 
+	 * @param prefetchMemoryLimit  the limit in bytes
+	 * @return OK or INVALID
+	 */
+	public int setPrefetchMemoryLimit(int prefetchMemoryLimit)
+	{
+		return sendManager.setPrefetchMemoryLimit(prefetchMemoryLimit);
+	}
+	
+	/**
+	 * getPrefetchMemoryLimit()
+	 * returns to the user the maximum number of bytes held in read-ahead chunks.
+	 * 
+	 * @return current prefetch memory limit in bytes
+	 */
+	public int getPrefetchMemoryLimit()
+	{
+		return sendManager.getPrefetchMemoryLimit();
+	}
+	
+	/**
+	 * setMemoryMapThreshold()
+	 * specifies the minimum size, in bytes, of a file for its chunks to be served from a
+	 * memory mapping of the file instead of being read for every chunk. Memory mapping
+	 * benefits large files downloaded by many peers. A threshold of zero disables memory
+	 * mapping, which is the default. Mappings are released when the file is unannounced.
+	 * 
+	 * @param threshold  the minimum file size in bytes, or zero
+	 * @return OK or INVALID
+	 */
+	public int setMemoryMapThreshold(long threshold)
+	{
+		return fileSystemAbstraction.setMemoryMapThreshold(threshold);
+	}
+	
+	/**
+	 * getMemoryMapThreshold()
+	 * returns to the user the minimum size of a file for its chunks to be served from a
+	 * memory mapping.
+	 * 
+	 * @return current memory map threshold in bytes, zero if disabled
+	 */
+	public long getMemoryMapThreshold()
+	{
+		return fileSystemAbstraction.getMemoryMapThreshold();
+	}
+	
+	/**
+	 * setBandwidthLimits()
+	 * specifies the maximum rate, in bytes per second, at which file data is sent. The global
+	 * limit caps the data sent to all peers together, the peer limit caps the data sent to each
+	 * peer and the transfer limit caps the data of each file sent to each peer. A limit of zero
+	 * leaves that level unlimited, which is the default. The limits can be changed at any time
+	 * and apply to transfers already in progress. Announcements, offers and transfer control
+	 * messages are never limited.
+	 * 
+	 * @param globalLimit  the limit across all peers in bytes per second, or zero
+	 * @param peerLimit  the limit for each peer in bytes per second, or zero
+	 * @param transferLimit  the limit for each transfer in bytes per second, or zero
+	 * @return OK or INVALID
+	 */
+	public int setBandwidthLimits(long globalLimit, long peerLimit, long transferLimit)
+	{
+		return dispatcher.getBandwidthLimiter().setLimits(globalLimit, peerLimit, transferLimit);
+	}
+	
+	/**
+	 * getGlobalBandwidthLimit()
+	 * returns to the user the maximum rate at which file data is sent to all peers together.
+	 * 
+	 * @return current global limit in bytes per second, zero if unlimited
+	 */
+	public long getGlobalBandwidthLimit()
+	{
+		return dispatcher.getBandwidthLimiter().getGlobalLimit();
+	}
+	
+	/**
+	 * getPeerBandwidthLimit()
+	 * returns to the user the maximum rate at which file data is sent to each peer.
+	 * 
+	 * @return current peer limit in bytes per second, zero if unlimited
+	 */
+	public long getPeerBandwidthLimit()
+	{
+		return dispatcher.getBandwidthLimiter().getPeerLimit();
+	}
+	
+	/**
+	 * getTransferBandwidthLimit()
+	 * returns to the user the maximum rate at which each file is sent to each peer.
+	 * 
+	 * @return current transfer limit in bytes per second, zero if unlimited
+	 */
+	public long getTransferBandwidthLimit()
+	{
+		return dispatcher.getBandwidthLimiter().getTransferLimit();
+	}
+	
+	/**
+	 * getSendRate()
+	 * returns to the user the rate at which file data was sent to all peers during the last
+	 * second, to be compared with the global bandwidth limit. The rate of each transfer is
+	 * given by the progress descriptors of getSendingProgressList().
+	 * 
+	 * @return achieved rate in bytes per second
+	 */
+	public long getSendRate()
+	{
+		return dispatcher.getBandwidthLimiter().getGlobalRate();
+	}
+	
+	/**
+	 * getSendRate()
+	 * returns to the user the rate at which file data was sent to the specified peer during
+	 * the last second, to be compared with the peer bandwidth limit.
+	 * 
+	 * @param peer  the peer receiving the data
+	 * @return achieved rate in bytes per second
+	 */
+	public long getSendRate(String peer)
+	{
+		return dispatcher.getBandwidthLimiter().getPeerRate(peer);
+	}
+	
+	/**
+	 * setQueueMemoryLimit()
+	 * specifies the maximum number of bytes held by file chunks waiting to be sent. Outgoing
+	 * transfers are held back while the queued chunks use up the limit, so many simultaneous
+	 * requests do not fill the heap. Announcements, offers and transfer control messages are
+	 * always queued. The limit must be greater than zero. The default limit is 1 MB.
+	 * 
+	 * @param limit  the limit in bytes
+	 * @return OK or INVALID
+	 */
+	public int setQueueMemoryLimit(long limit)
+	{
+		return dispatcher.setMaxQueuedBytes(limit);
+	}
+	
+	/**
+	 * getQueueMemoryLimit()
+	 * returns to the user the maximum number of bytes held by file chunks waiting to be sent.
+	 * 
+	 * @return current queue memory limit in bytes
+	 */
+	public long getQueueMemoryLimit()
+	{
+		return dispatcher.getMaxQueuedBytes();
+	}
+	
+	/**
+	 * getQueuedBytes()
+	 * returns to the user the number of bytes currently held by file chunks waiting to be sent.
+	 * 
+	 * @return number of queued bytes
+	 */
+	public long getQueuedBytes()
+	{
+		return dispatcher.getQueuedBytes();
+	}
+	
+	/**
+	 * getQueuedBytesHighWater()
+	 * returns to the user the largest number of bytes held by file chunks waiting to be sent
+	 * at any one time since the mark was last reset.
+	 * 
+	 * @return high-water mark in bytes
+	 */
+	public long getQueuedBytesHighWater()
+	{
+		return dispatcher.getQueuedBytesHighWater();
+	}
+	
+	/**
+	 * resetQueuedBytesHighWater()
+	 * resets the high-water mark of the bytes held by file chunks waiting to be sent to the
+	 * number of bytes currently queued.
+	 */
+	public void resetQueuedBytesHighWater()
+	{
+		dispatcher.resetQueuedBytesHighWater();
+	}
+	
 	/**
 	 * requestFile()
 	 * sends a file request to the specified peer for the file matching the fileID parameter. 
@@ -490,11 +995,15 @@ public class FileTransferModule
 	 * Each session peer can then request any file that is made available using this function. 
 	 * The function will return one of the following status codes: OK, BAD_FILE_ID, BAD_FILE_PATH, 
 	 * or FILE_NOT_BEING_TRANSFERRED. If you get the return code OK the file is on its way. 
+	 * FILE_TOO_LARGE is returned if the file is 2 GB or larger and the peer does not support
+	 * large files. INSUFFICIENT_SPACE is returned, before anything is requested, if the file does
+	 * not fit on the volume it would be saved to.
 	 * 
 	 * @param peer  specifies the peer to send the file request 
 	 * @param fileID  specifies the file ID of the file being requested
 	 * @param saveFileName  specifies the name for which to save the file
-	 * @return OK, BAD_FILE_ID, BAD_FILE_PATH, or FILE_NOT_BEING_TRANSFERRED
+	 * @return OK, BAD_FILE_ID, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, or
+	 * FILE_NOT_BEING_TRANSFERRED
 	 */
 	public int requestFile(String peer, byte[] fileID, String saveFileName)
 	{
@@ -509,18 +1018,90 @@ public class FileTransferModule
 	 * Each session peer can then request any file that is made available using this function. 
 	 * The function will return one of the following status codes: OK, BAD_FILE_ID, BAD_FILE_PATH,
 	 * or FILE_NOT_BEING_TRANSFERRED. If you get the return code OK the file is on its way. 
+	 * FILE_TOO_LARGE is returned if the file is 2 GB or larger and the peer does not support
+	 * large files. INSUFFICIENT_SPACE is returned, before anything is requested, if the file does
+	 * not fit on the volume it would be saved to.
 	 * 
 	 * @param peer  specifies the peer to send the file request  
 	 * @param fileID  specifies the file ID of the file being requested
 	 * @param saveFileName  specifies the name for which to save the file
 	 * @param saveDirectory  specifies the directory of where to save the file
-	 * @return OK, BAD_FILE_ID, BAD_FILE_PATH, or FILE_NOT_BEING_TRANSFERRED
+	 * @return OK, BAD_FILE_ID, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, or
+	 * FILE_NOT_BEING_TRANSFERRED
 	 */
 	public int requestFile(String peer, byte[] fileID, String saveFileName, String saveDirectory)
 	{	
-		return receiveManager.requestFile(peer, fileID, saveFileName, saveDirectory);	
+		return receiveManager.requestFile(peer, fileID, saveFileName, saveDirectory);
 	}
-	
+
+	/**
+	 * requestFileFromSwarm()
+	 * downloads the file matching the fileID parameter from every session peer that has
+	 * announced or offered it. The file is split into ranges that are requested from the peers
+	 * in parallel, with faster peers serving more of the file, and the file completed listener
+	 * is called once when the whole file has been received. The function will return OK if at
+	 * least one peer accepted the request. Otherwise, the function returns BAD_FILE_ID if no
+	 * peer has the file, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, or
+	 * FILE_NOT_BEING_TRANSFERRED. A swarm
+	 * download is paused and cancelled in the same way as any other file being received.
+	 *
+	 * @param fileID  specifies the file ID of the file being requested
+	 * @param saveFileName  specifies the name for which to save the file
+	 * @param saveDirectory  specifies the directory of where to save the file, can be null to
+	 * use the default save directory
+	 * @return OK, BAD_FILE_ID, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, or
+	 * FILE_NOT_BEING_TRANSFERRED
+	 */
+	public int requestFileFromSwarm(byte[] fileID, String saveFileName, String saveDirectory)
+	{
+		return receiveManager.requestFileFromSwarm(fileID, saveFileName, saveDirectory);
+	}
+
+	/**
+	 * requestFileDelta()
+	 * requests a new version of a file of which an older copy is saved locally, such as a
+	 * shared file that has been updated since it was last downloaded. The older copy is
+	 * compared with the file of the peer block by block, the parts that are unchanged are
+	 * copied from the older copy, and only the parts that changed are transferred. The older
+	 * copy must be a different file than the one being saved. If the older copy does not
+	 * exist, or the peer does not support delta transfers, the whole file is requested. The
+	 * function returns the same status codes as requestFile().
+	 *
+	 * @param peer  specifies the peer to send the file request
+	 * @param fileID  specifies the file ID of the file being requested
+	 * @param saveFileName  specifies the name for which to save the file
+	 * @param saveDirectory  specifies the directory of where to save the file, can be null to
+	 * use the default save directory
+	 * @param basisPath  specifies the absolute path of the older copy of the file
+	 * @return OK, BAD_FILE_ID, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, or
+	 * FILE_NOT_BEING_TRANSFERRED
+	 */
+	public int requestFileDelta(String peer, byte[] fileID, String saveFileName, String saveDirectory,
+			String basisPath)
+	{
+		return receiveManager.requestFileDelta(peer, fileID, saveFileName, saveDirectory, basisPath);
+	}
+
+	/**
+	 * requestBundle()
+	 * requests several small files from the same peer with a single request. The peer sends
+	 * the files back to back in shared chunks, which saves a request and a response for every
+	 * file. The files are saved with their announced names in the specified directory and the
+	 * FileCompletedListener is called for each of them. If the peer does not support bundles,
+	 * each file is requested separately.
+	 *
+	 * @param peer  specifies the peer to send the request
+	 * @param fileIDs  specifies the file IDs of the files being requested
+	 * @param saveDirectory  specifies the directory of where to save the files, can be null to
+	 * use the default save directory
+	 * @return OK, BAD_FILE_ID, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, INVALID, or
+	 * FILE_NOT_BEING_TRANSFERRED
+	 */
+	public int requestBundle(String peer, ArrayList<byte[]> fileIDs, String saveDirectory)
+	{
+		return receiveManager.requestBundle(peer, fileIDs, saveDirectory);
+	}
+
 	/**
 	 * offerFileToPeer()
 	 * allows you to offer a file, that has not explicitly been announced, to the specified peer. 
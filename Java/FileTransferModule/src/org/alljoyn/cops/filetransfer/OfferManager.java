@@ -39,6 +39,11 @@ import org.alljoyn.cops.filetransfer.listener.SendManagerListener;
  * will notify the Receive Manager to immediately request the file from the
  * remote session peer. 
  * <p>
+ * When an inline threshold is set, files no larger than the threshold are offered together
+ * with their contents. If the peer accepts such an offer it saves the file right away, so the
+ * transfer completes without a file request. Peers that do not support inline offers, or use a
+ * smaller threshold, are sent an ordinary offer instead.
+ * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
  * {@link FileTransferModule} class.
@@ -60,6 +65,7 @@ public class OfferManager implements OfferManagerListener
 	private ReceiveManagerListener receiveManagerListener;
     private Object offeredFileDescriptorLock;
     private Object offerListenerLock;
+    private int inlineThreshold;
 	
     /*------------------------------------------------------------------------*
      * Constructor
@@ -104,6 +110,7 @@ public class OfferManager implements OfferManagerListener
 		
         this.offeredFileDescriptorLock = new Object();
 		this.offerListenerLock = new Object();
+		this.inlineThreshold = 0;
 	}
 	
 	/**
@@ -128,7 +135,8 @@ public class OfferManager implements OfferManagerListener
 	 * we will wait a default of 5 seconds for a response. Otherwise, we will wait the specified amount
 	 * of time. This function will return OK if the peer accepts your file offer, OFFER_REJECTED if the
 	 * peer rejects your offer, OFFER_TIMEOUT if the timeout interval is exceeded before response, or
-	 * BAD_FILE_PATH if the specified path is invalid.
+	 * BAD_FILE_PATH if the specified path is invalid. A file offered with its contents is saved by
+	 * the peer when the offer is accepted, so OK is returned without waiting.
 	 * 
 	 * @param peer  specifies the peer you want to offer the file to
 	 * @param path  specifies the absolute path to the file being offered
@@ -167,7 +175,7 @@ public class OfferManager implements OfferManagerListener
             {
                 setMemberVariables(fileDescriptor);
                 
-                int response = transmitOfferFileAction(fileDescriptor, peer);
+                int response = transmitOfferFileAction(fileDescriptor, getInlineContent(fileDescriptor), peer);
                 
     		    if (response == StatusCode.OFFER_ACCEPTED)
     		    {
@@ -284,6 +292,23 @@ public class OfferManager implements OfferManagerListener
 		return offeredDescriptor;
 	}
 	
+	/**
+	 * getInlineContent()
+	 * is a private function that is used by offerFile() to read the contents of the offered file
+	 * when the file is small enough to be offered inline.
+	 * 
+	 * @param fileDescriptor  specifies the file descriptor for the file offered
+	 * @return contents of the file, or null if the file is not offered inline
+	 */
+	private byte[] getInlineContent(FileDescriptor fileDescriptor)
+	{
+		if ((inlineThreshold == 0) || !fileDescriptor.isSizeKnown() || (fileDescriptor.getSize() > inlineThreshold))
+		{
+			return null;
+		}
+		return fsa.getFileContent(fsa.buildPathFromDescriptor(fileDescriptor), (int) fileDescriptor.getSize());
+	}
+	
 	/**
 	 * transmitOfferFileAction()
 	 * is a private function that is used by offerFile() to build the OFFER_FILE action
@@ -292,14 +317,20 @@ public class OfferManager implements OfferManagerListener
 	 * stop executing. 
 	 * 
 	 * @param fileDescriptor  specifies the file descriptor for the file offered
+	 * @param content  specifies the contents of the file, null if the file is not offered inline
 	 * @param peer  specifies the peer to send the offer
 	 */
-	private int transmitOfferFileAction(FileDescriptor fd, String peer)
+	private int transmitOfferFileAction(FileDescriptor fd, byte[] content, String peer)
 	{
 		Action action = new Action();
 		action.actionType = ActionType.OFFER_FILE;
 		action.parameters.add(fd);
 		action.peer = peer;		
+		
+		if (content != null)
+		{
+			action.parameters.add(content);
+		}
 					
 		return dispatcher.transmitImmediately(action);
 	}
@@ -358,11 +389,12 @@ public class OfferManager implements OfferManagerListener
 	 * @param length  specifies the number of bytes to be sent (usually the length of the file)
 	 * @param peer  specifies the intended recipient of the file
 	 * @param maxChunkLength  specifies the maximum chunk size
+	 * @param compressionLevel  specifies the compression level requested by the peer
      * @return OK or BAD_FILE_ID
      */
     @Override
-	public int handleFileRequest(byte[] fileID, int startByte, int length,
-			String peer, int maxChunkLength)
+	public int handleFileRequest(byte[] fileID, long startByte, long length,
+			String peer, int maxChunkLength, int compressionLevel)
 	{
 		synchronized(offeredFileDescriptorLock)
 	    {
@@ -377,7 +409,8 @@ public class OfferManager implements OfferManagerListener
 	    {
 	    	return StatusCode.REQUEST_DENIED;
 	    }
-		return sendManagerListener.sendFile(fileID, startByte, length, peer, maxChunkLength);
+		return sendManagerListener.sendFile(fileID, startByte, length, peer, maxChunkLength,
+				compressionLevel);
 	}
 	
 	/** 
@@ -418,6 +451,45 @@ public class OfferManager implements OfferManagerListener
 		return StatusCode.OFFER_REJECTED;
 	}
 	
+	/** 
+	 * handleInlineOffer()
+	 * is called when a file offer carrying the contents of the file is received from a remote
+	 * session peer. The contents are handed to the Receive Manager, which declines them if they
+	 * exceed its inline threshold or do not match the file ID. Otherwise the offer is handled
+	 * like any other offer, and when it is accepted the Receive Manager saves the file from the
+	 * contents it was handed.
+	 * 
+	 * @param file  specifies the descriptor of offered file
+	 * @param content  specifies the contents of the offered file
+	 * @param peer  specifies the peer offering the file
+	 * @return OK if the file was accepted and saved, OFFER_REJECTED, or REQUEST_DENIED if the 
+	 * contents were declined
+	 */
+    @Override
+	public int handleInlineOffer(FileDescriptor file, byte[] content, String peer)
+	{
+		if ((receiveManagerListener == null) 
+				|| (receiveManagerListener.handleInlineContent(file.fileID, content, peer) != StatusCode.OK))
+		{
+			return StatusCode.REQUEST_DENIED;
+		}
+		
+		int response = handleOffer(file, peer);
+		return (response == StatusCode.OFFER_ACCEPTED) ? StatusCode.OK : response;
+	}
+	
+	/**
+	 * setInlineThreshold()
+	 * specifies the size, in bytes, up to which files are offered together with their contents.
+	 * A threshold of zero disables inline offers.
+	 * 
+	 * @param threshold  specifies the inline threshold
+	 */
+	public void setInlineThreshold(int threshold)
+	{
+		inlineThreshold = threshold;
+	}
+	
 	/** 
 	 * setOfferReceivedListener()
 	 * registers the {@link OfferReceivedListener} listener that will be called whenever a 
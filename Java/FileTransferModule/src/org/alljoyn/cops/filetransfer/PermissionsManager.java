@@ -421,6 +421,47 @@ public class PermissionsManager
 		return null;
     }
 	
+	/**
+	 * getKnownFileOwners()
+	 * is called by the ReceiveManager and returns the peers that have announced or offered
+	 * the file matching the provided file ID. Each peer appears once in the list. If no peer
+	 * is known to have the file, the list will be empty.
+	 * 
+	 * @param fileID  specifies the ID of the file being requested
+	 * @return list of peers that own the file
+	 */
+	public ArrayList<String> getKnownFileOwners(byte[] fileID)
+	{
+		ArrayList<String> peers = new ArrayList<String>();
+		
+		synchronized(announcedRemoteFileList)
+		{
+			peers.addAll(announcedRemoteFileList.keySet());
+		}
+		
+		synchronized(offeredRemoteFileList)
+		{
+			for (String peer : offeredRemoteFileList.keySet())
+			{
+				if (!peers.contains(peer))
+				{
+					peers.add(peer);
+				}
+			}
+		}
+		
+		ArrayList<String> owners = new ArrayList<String>();
+		
+		for (String peer : peers)
+		{
+			if (getKnownFileDescriptor(fileID, peer) != null)
+			{
+				owners.add(peer);
+			}
+		}
+		return owners;
+	}
+	
 	/**
 	 * resetState()
 	 * is called by the File Transfer Module when specifies a new AllJoyn session to be used.
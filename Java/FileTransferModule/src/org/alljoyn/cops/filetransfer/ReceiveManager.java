@@ -17,19 +17,35 @@
 package org.alljoyn.cops.filetransfer;
 
 import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import org.alljoyn.cops.filetransfer.data.Action;
 import org.alljoyn.cops.filetransfer.data.Action.ActionType;
 import org.alljoyn.cops.filetransfer.data.FileDescriptor;
 import org.alljoyn.cops.filetransfer.data.FileStatus;
 import org.alljoyn.cops.filetransfer.data.ProgressDescriptor;
+import org.alljoyn.cops.filetransfer.data.RangeRequest;
 import org.alljoyn.cops.filetransfer.data.StatusCode;
 import org.alljoyn.cops.filetransfer.listener.FileCompletedListener;
 import org.alljoyn.cops.filetransfer.listener.ReceiveManagerListener;
+import org.alljoyn.cops.filetransfer.utility.BlockHashes;
+import org.alljoyn.cops.filetransfer.utility.BlockSignatures;
+import org.alljoyn.cops.filetransfer.utility.BundleFrame;
+import org.alljoyn.cops.filetransfer.utility.ChunkCompressor;
 import org.alljoyn.cops.filetransfer.utility.Logger;
+import org.alljoyn.cops.filetransfer.utility.RangeSet;
 
 /**
  * The ReceiveManager (RM) is a major piece of the file transfer module. The RMs
@@ -38,12 +54,134 @@ import org.alljoyn.cops.filetransfer.utility.Logger;
  * and handling cancelled transfers by the remote peer. From the file receiving perspective, 
  * this module is the driving force behind receiving files from remote session peers.  
  * <p>
+ * Received chunks are not written on the AllJoyn signal thread. They are queued in a bounded
+ * write pipeline and a writer thread saves them, coalescing chunks that are adjacent in the
+ * same file into a single sequential write of up to MAX_COALESCED_BYTES. When the pipeline
+ * holds MAX_QUEUED_WRITE_BYTES the signal thread blocks until the writer catches up, which
+ * in turn holds back the acknowledgements that open the send window of the sender.
+ * <p>
+ * When a journal file is set, the ranges written for each file are recorded in the
+ * {@link TransferJournal} so a download interrupted by a restart or a lost session resumes
+ * where it stopped. A resumed transfer requests the missing ranges of the file one at a time.
+ * <p>
+ * When adaptive chunk sizing is enabled, the maximum chunk length requested from each peer is
+ * chosen by the {@link ChunkSizeTuner} from the measured round trip time and throughput. When the
+ * tuner changes the chunk length of a peer, the remaining range of each transfer from that peer
+ * is requested again with the new chunk length.
+ * <p>
+ * A file announced or offered by several peers can be downloaded from all of them at once. The
+ * missing ranges of the file are split between the peers and each peer works on one range at a
+ * time. A peer starts with a range of MIN_SWARM_RANGE bytes and every following range is sized
+ * so the peer needs about SWARM_RANGE_INTERVAL milliseconds for it at the throughput it achieved
+ * on its last range, so faster peers serve more of the file. When no unrequested ranges remain,
+ * a peer that runs out of work requests the unreceived end of the largest outstanding range of
+ * another peer, and whichever copy arrives first is kept. The transfer completes once, no matter
+ * how many peers sent it.
+ * <p>
+ * A file requested from a single peer can also be split into several ranges that are requested
+ * from the peer in parallel, which keeps a high latency link busy. The parallel ranges are
+ * scheduled in the same way as the ranges of a download from several peers.
+ * <p>
+ * When a compression level is set, files are requested with compression. Senders that support
+ * it send the chunks that get smaller compressed, and the chunks are decompressed before they
+ * enter the write pipeline. The number of bytes that crossed the network is reported with the
+ * progress of each transfer so the compression ratio can be observed.
+ * <p>
+ * A file that has changed since an older copy was saved locally can be requested as a delta.
+ * The signatures of the blocks of the older copy are sent to the owner, which replies with the
+ * ranges of the new file that match those blocks. The matching ranges are copied from the older
+ * copy and only the remaining ranges are requested. The older copy has at most MAX_DELTA_BLOCKS
+ * blocks of at least MIN_DELTA_BLOCK_SIZE bytes so the signatures fit in a single message.
+ * <p>
+ * When block verification is enabled, the hashes of the blocks of each file, as defined by
+ * {@link BlockHashes}, are requested from its owner before the file. Every block is hashed as
+ * soon as it has been written completely, from the written chunks when the block was written at
+ * once or otherwise by reading it back. A block that does not match its hash is dropped from the
+ * received ranges and requested again, so corruption costs one block instead of the whole file.
+ * Owners that do not support block verification send the file without it.
+ * <p>
+ * Every file is checked against its file ID, which is the SHA-1 hash of its contents, without
+ * reading it again once complete. The writer thread feeds the digest with each run it writes
+ * that continues the digested prefix of the file. Runs written out of order wait on disk until
+ * the prefix reaches them and are then read back and folded in. A completed file that does not
+ * match its file ID is reported with FILE_ID_MISMATCH instead of OK.
+ * <p>
+ * Many small files can be requested from one owner as a bundle with a single request. The owner
+ * streams the files back to back, each preceded by the header described by {@link BundleFrame},
+ * and the files are written as their data arrives since they are too small to be worth queueing
+ * in the write pipeline. Each file of the bundle completes on its own. Owners that do not support
+ * bundles are sent an ordinary request for each file instead.
+ * <p>
+ * When an inline threshold is set, peers may send the contents of files no larger than the
+ * threshold along with their offers and directed announcements. Contents that match their file ID
+ * are kept, up to MAX_INLINE_CACHE_BYTES in total, and a request for such a file saves it from the
+ * kept contents and completes at once without contacting the owner.
+ * <p>
+ * Before a transfer starts, the volume the file is saved to is checked for room for the part of
+ * the file not written yet, and the request fails with INSUFFICIENT_SPACE before any bytes move
+ * if it does not fit. Bundles and files saved from inline contents are checked the same way.
+ * When preallocation is enabled, the file is also extended to its full length
+ * at once instead of growing one chunk at a time.
+ * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
  * {@link FileTransferModule} class.
  */
 public class ReceiveManager implements ReceiveManagerListener
 {	
+	//Internal Static class to hold a received chunk waiting to be written
+	private static class PendingWrite
+	{
+		public FileStatus status;
+		public String peer;
+		public long startByte;
+		public int length;
+		public byte[] chunk;
+		
+		public PendingWrite(FileStatus status, String peer, long startByte, int length, byte[] chunk)
+		{
+			this.status = status;
+			this.peer = peer;
+			this.startByte = startByte;
+			this.length = length;
+			this.chunk = chunk;
+		}
+	};
+	
+	//Internal Static class to hold the state of a bundle being received
+	private static class BundleStatus
+	{
+		public String peer;
+		public ArrayList<FileStatus> files;
+		public int fileIndex;
+		public byte[] header;
+		public int numHeaderBytes;
+		public long nextStartByte;
+		
+		public BundleStatus(String peer)
+		{
+			this.peer = peer;
+			this.files = new ArrayList<FileStatus>();
+			this.fileIndex = 0;
+			this.header = new byte[BundleFrame.HEADER_LENGTH];
+			this.numHeaderBytes = 0;
+			this.nextStartByte = 0;
+		}
+	};
+	
+	/** Class Constant **/
+	private static final int MAX_QUEUED_WRITE_BYTES = 1048576;
+	private static final int MAX_COALESCED_BYTES = 262144;
+	private static final long MIN_SWARM_RANGE = 65536;
+	private static final long MAX_SWARM_RANGE = 16777216;
+	private static final int MIN_DELTA_BLOCK_SIZE = 2048;
+	private static final int MAX_DELTA_BLOCK_SIZE = 16777216;
+	private static final int MAX_DELTA_BLOCKS = 4096;
+	private static final int MAX_BUNDLE_FILES = 4096;
+	private static final int MAX_INLINE_THRESHOLD = 65536;
+	private static final int MAX_INLINE_CACHE_BYTES = 1048576;
+	private static final long SWARM_RANGE_INTERVAL = 2000;
+	
 	/** Member Variables **/
 	private Dispatcher dispatcher;
 	private FileSystemAbstraction fsa;
@@ -54,6 +192,24 @@ public class ReceiveManager implements ReceiveManagerListener
 	private FileCompletedListener fileCompletedListener;	
 	private Object completedListenerLock;	
 	private Object savePathLock;
+	private ArrayDeque<PendingWrite> pendingWrites;
+	private int numQueuedWriteBytes;
+	private boolean isWriterScheduled;
+	private FileStatus writingStatus;
+	private Object writeLock;
+	private ExecutorService writeExecutor;
+	private TransferJournal transferJournal;
+	private ChunkSizeTuner chunkSizeTuner;
+	private boolean isAdaptiveChunkSize;
+	private int numParallelRanges;
+	private int compressionLevel;
+	private boolean isBlockVerification;
+	private HashMap<String, BundleStatus> bundles;
+	private Random bundleIDGenerator;
+	private int inlineThreshold;
+	private LinkedHashMap<String, byte[]> inlineContents;
+	private int numInlineBytes;
+	private boolean isPreallocation;
 	
 	/*------------------------------------------------------------------------*
      * Constructor
@@ -94,6 +250,34 @@ public class ReceiveManager implements ReceiveManagerListener
 		completedListenerLock = new Object();
 		savePathLock = new Object();
 		
+		pendingWrites = new ArrayDeque<PendingWrite>();
+		numQueuedWriteBytes = 0;
+		isWriterScheduled = false;
+		writingStatus = null;
+		writeLock = new Object();
+		transferJournal = new TransferJournal(fsa);
+		chunkSizeTuner = new ChunkSizeTuner();
+		isAdaptiveChunkSize = false;
+		numParallelRanges = 1;
+		compressionLevel = 0;
+		isBlockVerification = false;
+		bundles = new HashMap<String, BundleStatus>();
+		bundleIDGenerator = new Random();
+		inlineThreshold = 0;
+		inlineContents = new LinkedHashMap<String, byte[]>();
+		numInlineBytes = 0;
+		isPreallocation = false;
+		writeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread writerThread = new Thread(runnable);
+				writerThread.setDaemon(true);
+				return writerThread;
+			}
+		});
+		
 		setDefaultSaveDirectory("/mnt/sdcard/download");
 	}
 	
@@ -177,6 +361,200 @@ public class ReceiveManager implements ReceiveManagerListener
 	{
 		return maxChunkSize;
 	}
+	
+	/** 
+	 * setAdaptiveChunkSize()
+	 * enables or disables adaptive chunk sizing. When enabled, the maximum chunk length of each
+	 * request is chosen per peer within the chunk size bounds, starting from the max chunk size.
+	 * Adaptive chunk sizing is disabled by default.
+	 * 
+	 * @param isEnabled  specifies whether adaptive chunk sizing is enabled
+	 */
+	public void setAdaptiveChunkSize(boolean isEnabled)
+	{
+		isAdaptiveChunkSize = isEnabled;
+	}
+	
+	/** 
+	 * isAdaptiveChunkSize()
+	 * returns true if adaptive chunk sizing is enabled.
+	 * 
+	 * @return true if adaptive chunk sizing is enabled, false otherwise
+	 */
+	public boolean isAdaptiveChunkSize()
+	{
+		return isAdaptiveChunkSize;
+	}
+	
+	/** 
+	 * setChunkSizeBounds()
+	 * specifies the smallest and largest chunk length that adaptive chunk sizing may request.
+	 * The minimum must be greater than zero and not greater than the maximum.
+	 * 
+	 * @param minChunkSize  specifies the smallest chunk length
+	 * @param maxChunkSize  specifies the largest chunk length
+	 * @return OK or INVALID
+	 */
+	public int setChunkSizeBounds(int minChunkSize, int maxChunkSize)
+	{
+		return chunkSizeTuner.setBounds(minChunkSize, maxChunkSize);
+	}
+	
+	/** 
+	 * setNumParallelRanges()
+	 * specifies how many ranges of a file are requested in parallel when a file is requested from
+	 * a single peer. Files smaller than MIN_SWARM_RANGE are always requested as a single range. The
+	 * number of ranges must be greater than zero and the default setting is 1.
+	 * 
+	 * @param numRanges  specifies the number of parallel ranges
+	 * @return OK or INVALID
+	 */
+	public int setNumParallelRanges(int numRanges)
+	{
+		if (numRanges > 0)
+		{
+			numParallelRanges = numRanges;
+			return StatusCode.OK;
+		}
+		return StatusCode.INVALID;
+	}
+	
+	/** 
+	 * getNumParallelRanges()
+	 * returns how many ranges of a file are requested in parallel from a single peer.
+	 * 
+	 * @return number of parallel ranges
+	 */
+	public int getNumParallelRanges()
+	{
+		return numParallelRanges;
+	}
+	
+	/** 
+	 * setCompressionLevel()
+	 * specifies the compression level requested for the chunks of the files being received.
+	 * The level ranges from 0, which disables compression, to 9, which gives the best
+	 * compression. Senders that do not support compression send uncompressed chunks. The
+	 * default setting is 0.
+	 * 
+	 * @param level  specifies the compression level
+	 * @return OK or INVALID
+	 */
+	public int setCompressionLevel(int level)
+	{
+		if ((level >= ChunkCompressor.NO_COMPRESSION) && (level <= ChunkCompressor.BEST_COMPRESSION))
+		{
+			compressionLevel = level;
+			return StatusCode.OK;
+		}
+		return StatusCode.INVALID;
+	}
+	
+	/** 
+	 * getCompressionLevel()
+	 * returns the compression level requested for the chunks of the files being received.
+	 * 
+	 * @return compression level
+	 */
+	public int getCompressionLevel()
+	{
+		return compressionLevel;
+	}
+	
+	/** 
+	 * setInlineThreshold()
+	 * specifies the size, in bytes, up to which the contents of files sent along with offers and
+	 * directed announcements are accepted. The threshold cannot exceed MAX_INLINE_THRESHOLD. A
+	 * threshold of zero, the default, declines all inline contents.
+	 * 
+	 * @param threshold  specifies the inline threshold
+	 * @return OK or INVALID
+	 */
+	public int setInlineThreshold(int threshold)
+	{
+		if ((threshold < 0) || (threshold > MAX_INLINE_THRESHOLD))
+		{
+			return StatusCode.INVALID;
+		}
+		
+		synchronized(inlineContents)
+		{
+			inlineThreshold = threshold;
+		}
+		return StatusCode.OK;
+	}
+	
+	/** 
+	 * getInlineThreshold()
+	 * returns the size up to which the contents of files sent inline are accepted.
+	 * 
+	 * @return inline threshold
+	 */
+	public int getInlineThreshold()
+	{
+		return inlineThreshold;
+	}
+	
+	/** 
+	 * setBlockVerification()
+	 * enables or disables block verification. When enabled, the hashes of the blocks of each
+	 * file are requested from its owner and every block is verified once it has been written.
+	 * Corrupt blocks are requested again. Block verification is disabled by default.
+	 * 
+	 * @param isEnabled  specifies whether block verification is enabled
+	 */
+	public void setBlockVerification(boolean isEnabled)
+	{
+		isBlockVerification = isEnabled;
+	}
+	
+	/** 
+	 * isBlockVerification()
+	 * returns whether block verification is enabled.
+	 * 
+	 * @return true if block verification is enabled, false otherwise
+	 */
+	public boolean isBlockVerification()
+	{
+		return isBlockVerification;
+	}
+	
+	/** 
+	 * setPreallocation()
+	 * enables or disables preallocation. When enabled, each file is extended to its full length
+	 * when its transfer starts so it does not grow one chunk at a time. Preallocation is disabled
+	 * by default.
+	 * 
+	 * @param isEnabled  specifies whether preallocation is enabled
+	 */
+	public void setPreallocation(boolean isEnabled)
+	{
+		isPreallocation = isEnabled;
+	}
+	
+	/** 
+	 * isPreallocation()
+	 * returns whether preallocation is enabled.
+	 * 
+	 * @return true if preallocation is enabled, false otherwise
+	 */
+	public boolean isPreallocation()
+	{
+		return isPreallocation;
+	}
+	
+	/** 
+	 * setJournalFile()
+	 * specifies the file used to journal the progress of the files being received so that
+	 * interrupted transfers can be resumed. Passing in null disables journaling, which is
+	 * the default.
+	 * 
+	 * @param file  specifies the journal file, can be null
+	 */
+	public void setJournalFile(File file)
+	{
+		transferJournal.setJournalFile(file);
+	}
 
 	/** 
 	 * getProgressList()
@@ -202,6 +580,8 @@ public class ReceiveManager implements ReceiveManagerListener
 				descriptor.fileID = status.fileId;
 				descriptor.fileSize = status.length;
 				descriptor.bytesTransferred = status.numBytesSent;
+				descriptor.chunkSize = status.chunkLength;
+				descriptor.bytesOnWire = status.numBytesOnWire;
 				
 				progressList.add(descriptor);
 			}
@@ -221,7 +601,7 @@ public class ReceiveManager implements ReceiveManagerListener
 	 * @param fileID  specifies the id of the requested file
 	 * @param saveFileName  specifies the name to save the requested file as
 	 * @param saveFileDirectory  specifies the directory to save requested file to
-	 * @return  OK, BAD_FILE_ID, BAD_FILE_PATH, or FILE_NOT_BEING_TRANSFERRED
+	 * @return  OK, BAD_FILE_ID, BAD_FILE_PATH, INSUFFICIENT_SPACE, or FILE_NOT_BEING_TRANSFERRED
 	 */
 	public int requestFile(String owner, byte[] fileID, String saveFileName,
 			String saveFileDirectory)
@@ -241,12 +621,20 @@ public class ReceiveManager implements ReceiveManagerListener
 	 * is a private helper function used by requestFile(). This function performs error checking
 	 * for the provided parameters before the formal request is sent to the remote peer. After
 	 * error checking is completed, the file request action is built and sent to the transmitter. 
+	 * If the file descriptor could not describe the size of the file because the file is 2 GB or
+	 * larger, the size is requested from the owner first, and when block verification is enabled
+	 * the block hashes are requested from the owner too. These requests are method calls, so
+	 * when the Dispatcher must be used the file is requested from a separate thread instead. When
+	 * more than one parallel range is configured and enough of the file is missing, the file is
+	 * requested from the owner as several ranges. A file whose contents have been received inline
+	 * is saved from them right away. A new transfer fails with INSUFFICIENT_SPACE before anything
+	 * is requested if the file does not fit on its volume, and is dropped if it cannot be requested.
 	 * 
 	 * @param file  instance of the FileDescriptor for the requested file
 	 * @param saveFileName  specifies the name to save the requested file as
 	 * @param saveDirectory  specifies the directory to save the file
 	 * @param useDispatcher  specifies whether or not to insert the action into the Dispatcher 
-	 * @return  OK, BAD_FILE_PATH, or FILE_NOT_BEING_TRANSFERRED
+	 * @return  OK, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, or FILE_NOT_BEING_TRANSFERRED
 	 */
 	@Override
 	public int requestFile(FileDescriptor file, String saveFileName, String saveDirectory, 
@@ -270,194 +658,2354 @@ public class ReceiveManager implements ReceiveManagerListener
 		//get FileStatus to handle receiving requested file
 		FileStatus status = getFileStatus(file.fileID);
 		
+		if (status == null)
+		{
+			byte[] content = takeInlineContent(file.fileID);
+			
+			if (content != null)
+			{
+				return saveInlineFile(file, saveFileName, saveDirectory, content);
+			}
+		}
+		
+		if ((status == null) && (!file.isSizeKnown() || isBlockVerification))
+		{
+			if (useDispatcher)
+			{
+				final FileDescriptor largeFile = file;
+				final String largeFileName = saveFileName;
+				final String largeFileDirectory = saveDirectory;
+				
+				new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						int statusCode = requestFile(largeFile, largeFileName, largeFileDirectory, false);
+						Logger.log("requesting large file returned: " + statusCode);
+					}
+				}).start();
+				return StatusCode.OK;
+			}
+		}
+		
+		if ((status == null) && !file.isSizeKnown())
+		{
+			file = new FileDescriptor(file);
+			int statusCode = requestFileSize(file);
+			
+			if (statusCode != StatusCode.OK)
+			{
+				return statusCode;
+			}
+		}
+		
+		boolean isNewTransfer = (status == null);
+		
 		if (status == null)
 		{
 			status = buildStatus(file, saveFileName, saveDirectory);
+			int statusCode = addTransfer(status, file.owner);
 			
-			synchronized(fileStatuses)
+			if (statusCode != StatusCode.OK)
 			{
-				fileStatuses.put(Arrays.toString(status.fileId), status);
+				return statusCode;
 			}
-		}		
+		}
 		
-		//request file 
-		Action action = buildDataRequestAction(file, status);
+		int statusCode = sendFileRequests(status, file.owner, useDispatcher);
 		
-		if (useDispatcher)
+		if (isNewTransfer && (statusCode != StatusCode.OK))
 		{
-			dispatcher.insertAction(action);
-			return StatusCode.OK;	
+			dropTransfer(status);
 		}
-		else
-		{				
-			return dispatcher.transmitImmediately(action);
-		}		
+		return statusCode;
 	}
-
+	
 	/**
-	 * buildDataRequestAction()
-	 * is called to build the REQUEST_DATA action. The function receives an instance of the
-	 * File Descriptor and File Status objects for the requested file. This allows the function
-	 * to place the necessary data inside the REQUEST_DATA action.
+	 * sendFileRequests()
+	 * is a private helper function that requests the missing ranges of the specified transfer from
+	 * the specified owner. The first missing range is requested, or several ranges in parallel when
+	 * more than one parallel range is configured and enough of the file is missing.
 	 * 
-	 * @param file  instance of file descriptor object
 	 * @param status  instance of file status object
-	 * @return  REQUEST_DATA action
-	 */
-	private Action buildDataRequestAction(FileDescriptor file, FileStatus status)
-	{
-		Action action = new Action();
-		action.actionType = ActionType.REQUEST_DATA;
-		action.parameters.add(file.fileID);
-		action.parameters.add(status.numBytesSent);
-		action.parameters.add(file.size);
-		action.parameters.add(maxChunkSize);
-		action.peer = file.owner;
-		return action;
-	}
-
-	/**
-	 * buildStatus()
-	 * is a private function used to build the file status object for the requested file. The file
-	 * status object provides the details to monitor the progress of the file transfer.
-	 * 
-	 * @param file  instance of file descriptor for requested file
-	 * @param saveFileName  specifies the name to save the file as
-	 * @param saveFileDirectory  specifies the location to save the file to
-	 * @return  file status object
+	 * @param owner  specifies the peer to request the file from
+	 * @param useDispatcher  specifies whether or not to insert the actions into the Dispatcher 
+	 * @return  OK, FILE_TOO_LARGE, or FILE_NOT_BEING_TRANSFERRED
 	 */
-	private FileStatus buildStatus(FileDescriptor file, String saveFileName, String saveFileDirectory)
+	private int sendFileRequests(FileStatus status, String owner, boolean useDispatcher)
 	{
-		FileStatus status = new FileStatus();
-		status.fileId = file.fileID;
-		status.startByte = 0;
-		status.length = file.size;
-		status.peer = file.owner;
-		status.numBytesSent = 0;
-		status.saveFileName = saveFileName;		
-		status.saveFilePath = new File(saveFileDirectory, file.relativePath).getAbsolutePath();		
-		return status;
-	}	
-
-	/** 
-	 * handleFileChunk()
-	 * is called when a chunk of a given file is received from a remote peer. This function determines
-	 * which temporary file this chunk belongs to, updates the sending progress, and sends the chunk
-	 * to the FileSystemAbstraction to be appended to the appropriate temporary file.			 
-	 * 
-	 * @param fileID  specifies the ID of the file the chunk belongs to
-	 * @param startByte  specifies the starting index of chunk relative to file
-	 * @param chunkLength  specifies the length of chunk
-	 * @param chunk  actual file data
-	 */
-	@Override
-	public void handleFileChunk(byte[] fileID, int startByte, int chunkLength, byte[] chunk)
-	{		
-		FileStatus status = getFileStatus(fileID);
+		boolean isParallel = false;
 		
-		if (startByte < status.numBytesSent)
+		synchronized(status)
 		{
-			Logger.log("out of order file chunk received");			
-		}		
-		else if (status != null)
-		{			
-			try
-			{
-				String path = new File(status.saveFilePath, status.saveFileName).getAbsolutePath();
-				fsa.addChunk(path, chunk, startByte, chunkLength);
-			} 
-			catch (Exception e)
-			{
-				Logger.log(e.toString());
-			}
+			status.peer = owner;
+			status.rangeRequests = null;
 			
-			status.numBytesSent += chunkLength;
-			
-			if (status.numBytesSent >= status.length)
+			if ((numParallelRanges > 1) 
+					&& ((status.length - status.receivedRanges.getNumBytesCovered()) > MIN_SWARM_RANGE))
 			{
-				Logger.log("transfer completed");
+				status.rangeRequests = new ArrayList<RangeRequest>();
 				
-				synchronized(fileStatuses)
+				for (int i = 0; i < numParallelRanges; i++)
 				{
-					fileStatuses.remove(Arrays.toString(fileID));
+					status.rangeRequests.add(new RangeRequest(owner));
 				}
-				
-				fireCompletedListener(status.saveFileName, StatusCode.OK);
+				isParallel = true;
 			}
-		}		
-	}
-
-	/** 
-	 * handleDataXferCancelled()
-	 * is called when the sender cancels a file transfer and sends the DataXferCancelled
-	 * signal to notify the remote peer of the cancellation. This function will check to
-	 * ensure that file was truly cancelled and then notify the user that the transfer has
-	 * been completed.
-	 * <p>
-	 * Note: transfers cancelled by the sender do not cause the temporary
-	 * files to be deleted. The temporary files are saved so the transfer can be resumed
-	 * at a later time. 	  			 
-	 * 
-	 * @param fileID  specifies the ID of file being cancelled
-	 * @param peer  specifies peer who cancelled the transfer
-	 */
-	@Override
-	public void handleDataXferCancelled(byte[] fileID, String peer)
-	{		
-		FileStatus status = getFileStatus(fileID);		
-
-		if (status != null)
-		{
-			String filename = status.saveFileName;
-				
-			fireCompletedListener(filename, StatusCode.CANCELLED);
-		}		
-	}
-
-	/** 
-	 * pauseFile()
-	 * is called when the receiver wishes to pause a file transfer. The function will first
-	 * check to see if the provided file ID matches a pending file transfer. If it does not,
-	 * the function will return BAD_FILE_ID. Otherwise, the function will build a STOP_XFER
-	 * action to be sent to the file sender and return the status code OK. 	  			 
-	 * 
-	 * @param fileID  specifies the fileId of the file to pause
-	 * @return OK or BAD_FILE_ID
-	 */
-	public int pauseFile(byte[] fileID)
-	{		
-		FileStatus status = getFileStatus(fileID);
+		}
 		
-		if (status == null)
+		if (isParallel)
 		{
-			return StatusCode.BAD_FILE_ID;
+			return sendRangeRequests(status, useDispatcher);
 		}
 		
-		Action action = buildStopXferAction(fileID, status);
-		dispatcher.insertAction(action);
+		Action action = buildDataRequestAction(status);
 		
-		return StatusCode.OK;
-	}
+		if (useDispatcher)
+		{
+			dispatcher.insertAction(action);
+			return StatusCode.OK;	
+		}
+		else
+		{				
+			return dispatcher.transmitImmediately(action);
+		}		
+	}
+	
+	/**
+	 * requestFileFromSwarm()
+	 * is called when the user wishes to download a file specified by fileID from every session
+	 * peer that has announced or offered it. The missing ranges of the file are requested from
+	 * the peers in parallel. If only one peer has the file, it is requested as usual. This function
+	 * returns OK if at least one peer accepted its range request, otherwise it returns the status
+	 * code of the last request that failed.
+	 * 
+	 * @param fileID  specifies the id of the requested file
+	 * @param saveFileName  specifies the name to save the requested file as
+	 * @param saveDirectory  specifies the directory to save requested file to
+	 * @return  OK, BAD_FILE_ID, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, or
+	 * FILE_NOT_BEING_TRANSFERRED
+	 */
+	public int requestFileFromSwarm(byte[] fileID, String saveFileName, String saveDirectory)
+	{
+		ArrayList<String> owners = permissionsManager.getKnownFileOwners(fileID);
+		
+		if (owners.isEmpty())
+		{
+			return StatusCode.BAD_FILE_ID;
+		}
+		
+		FileDescriptor file = permissionsManager.getKnownFileDescriptor(fileID, owners.get(0));
+		
+		if ((owners.size() == 1) || (file.getSize() == 0))
+		{
+			return requestFile(file, saveFileName, saveDirectory, false);
+		}
+		
+		if (saveDirectory == null)
+		{
+			synchronized(savePathLock)
+			{
+				saveDirectory = defaultSaveDirectory;
+			}			
+		}
+		
+		if (!fsa.isValid(saveDirectory))
+		{
+			return StatusCode.BAD_FILE_PATH;
+		}
+		
+		FileStatus status = getFileStatus(fileID);
+		
+		if ((status == null) && !file.isSizeKnown())
+		{
+			file = new FileDescriptor(file);
+			int statusCode = requestFileSize(file);
+			
+			if (statusCode != StatusCode.OK)
+			{
+				return statusCode;
+			}
+		}
+		
+		boolean isNewTransfer = (status == null);
+		
+		if (status == null)
+		{
+			status = buildStatus(file, saveFileName, saveDirectory);
+			int statusCode = addTransfer(status, file.owner);
+			
+			if (statusCode != StatusCode.OK)
+			{
+				return statusCode;
+			}
+		}
+		
+		ArrayList<RangeRequest> rangeRequests = new ArrayList<RangeRequest>();
+		
+		for (String owner : owners)
+		{
+			rangeRequests.add(new RangeRequest(owner));
+		}
+		
+		synchronized(status)
+		{
+			status.peer = file.owner;
+			status.rangeRequests = rangeRequests;
+		}
+		
+		int statusCode = sendRangeRequests(status, false);
+		
+		if (isNewTransfer && (statusCode != StatusCode.OK))
+		{
+			dropTransfer(status);
+		}
+		return statusCode;
+	}
+	
+	/**
+	 * requestFileDelta()
+	 * is called when the user wishes to download a new version of a file of which an older copy
+	 * is saved locally. The block signatures of the older copy are sent to the owner of the file,
+	 * which replies with the ranges of the file that can be copied from the older copy. Only the
+	 * remaining ranges are then requested. The older copy must not be the file being saved. If the
+	 * older copy is too small or missing, the file is being transferred already, or the owner does
+	 * not support delta transfers, the whole file is requested as usual.
+	 * 
+	 * @param owner  specifies the peer that owns the file
+	 * @param fileID  specifies the id of the requested file
+	 * @param saveFileName  specifies the name to save the requested file as
+	 * @param saveDirectory  specifies the directory to save requested file to
+	 * @param basisPath  specifies the path of the older copy of the file
+	 * @return  OK, BAD_FILE_ID, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, or
+	 * FILE_NOT_BEING_TRANSFERRED
+	 */
+	public int requestFileDelta(String owner, byte[] fileID, String saveFileName, String saveDirectory,
+			String basisPath)
+	{
+		FileDescriptor file = permissionsManager.getKnownFileDescriptor(fileID, owner);
+		
+		if (file == null)
+		{
+			return StatusCode.BAD_FILE_ID;
+		}
+		
+		File basisFile = (basisPath == null) ? null : new File(basisPath).getAbsoluteFile();
+		
+		if ((basisFile == null) || !basisFile.isFile() || (basisFile.length() < MIN_DELTA_BLOCK_SIZE)
+				|| !file.isSizeKnown() || (getFileStatus(fileID) != null))
+		{
+			return requestFile(file, saveFileName, saveDirectory, false);
+		}
+		
+		if (saveDirectory == null)
+		{
+			synchronized(savePathLock)
+			{
+				saveDirectory = defaultSaveDirectory;
+			}			
+		}
+		
+		if (!fsa.isValid(saveDirectory))
+		{
+			return StatusCode.BAD_FILE_PATH;
+		}
+		
+		FileStatus status = buildStatus(file, saveFileName, saveDirectory);
+		
+		if (basisFile.equals(new File(status.saveFilePath, status.saveFileName).getAbsoluteFile()))
+		{
+			return StatusCode.BAD_FILE_PATH;
+		}
+		
+		int statusCode = addTransfer(status, file.owner);
+		
+		if (statusCode != StatusCode.OK)
+		{
+			return statusCode;
+		}
+		
+		BlockSignatures signatures = null;
+		
+		if (status.writtenRanges.getNumBytesCovered() == 0)
+		{
+			signatures = getBlockSignatures(basisFile.getPath());
+		}
+		
+		if (signatures != null)
+		{
+			synchronized(status)
+			{
+				status.basisPath = basisFile.getPath();
+				status.deltaBlockSize = signatures.getBlockSize();
+			}
+			
+			if (dispatcher.transmitImmediately(buildDeltaRequestAction(status, signatures)) == StatusCode.OK)
+			{
+				return StatusCode.OK;
+			}
+			
+			Logger.log("delta request refused, requesting whole file");
+			
+			synchronized(status)
+			{
+				status.basisPath = null;
+			}
+		}
+		
+		statusCode = sendFileRequests(status, file.owner, false);
+		
+		if (statusCode != StatusCode.OK)
+		{
+			dropTransfer(status);
+		}
+		return statusCode;
+	}
+	
+	/**
+	 * requestBlockHashes()
+	 * is a private helper function that requests the hashes of the blocks of the specified file
+	 * from its owner. The hashes are kept in the file status if the owner supports block
+	 * verification and sent one hash for every block of the file, otherwise the file is received
+	 * without block verification.
+	 * 
+	 * @param status  instance of file status object
+	 * @param owner  specifies the peer that owns the file
+	 */
+	private void requestBlockHashes(FileStatus status, String owner)
+	{
+		Action action = buildBlockHashesRequestAction(status.fileId, owner);
+		int statusCode = dispatcher.transmitImmediately(action);
+		
+		if (statusCode != StatusCode.OK)
+		{
+			Logger.log("block hashes not available, receiving file without block verification");
+			return;
+		}
+		
+		byte[] blockHashes = (byte[]) action.parameters.get(1);
+		
+		if (blockHashes.length != (BlockHashes.getNumBlocks(status.length) * BlockHashes.HASH_LENGTH))
+		{
+			Logger.log("invalid block hashes received, receiving file without block verification");
+			return;
+		}
+		status.blockHashes = blockHashes;
+	}
+	
+	/**
+	 * getBlockSignatures()
+	 * is a private helper function called by requestFileDelta() that computes the signatures of
+	 * the blocks of the specified file. The block size is chosen so the file has at most
+	 * MAX_DELTA_BLOCKS blocks. A trailing partial block is not signed.
+	 * 
+	 * @param path  specifies the path of the older copy of the file
+	 * @return  block signatures, or null if the file could not be read
+	 */
+	private BlockSignatures getBlockSignatures(String path)
+	{
+		long basisLength = new File(path).length();
+		int blockSize = (int) Math.min(MAX_DELTA_BLOCK_SIZE, 
+				Math.max(MIN_DELTA_BLOCK_SIZE, (basisLength + MAX_DELTA_BLOCKS - 1) / MAX_DELTA_BLOCKS));
+		int numBlocks = (int) Math.min(MAX_DELTA_BLOCKS, basisLength / blockSize);
+		int blocksPerRead = Math.max(1, MAX_COALESCED_BYTES / blockSize);
+		
+		BlockSignatures signatures = new BlockSignatures(blockSize, numBlocks);
+		byte[] buffer = new byte[blocksPerRead * blockSize];
+		
+		try
+		{
+			for (int block = 0; block < numBlocks; block += blocksPerRead)
+			{
+				int numRead = Math.min(blocksPerRead, numBlocks - block);
+				fsa.getChunk(path, buffer, (long) block * blockSize, numRead * blockSize);
+				
+				for (int i = 0; i < numRead; i++)
+				{
+					signatures.setBlock(block + i, buffer, i * blockSize);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			Logger.log(e.toString());
+			return null;
+		}
+		finally
+		{
+			fsa.closeFile(path);
+		}
+		
+		return signatures;
+	}
+	
+	/**
+	 * sendRangeRequests()
+	 * is a private function that requests the first range for every range request of the specified
+	 * transfer. A peer that refuses its request is dropped from the transfer.
+	 * 
+	 * @param status  instance of file status object
+	 * @param useDispatcher  specifies whether or not to insert the actions into the Dispatcher
+	 * @return  OK if at least one request was accepted, the status code of the last refusal otherwise
+	 */
+	private int sendRangeRequests(FileStatus status, boolean useDispatcher)
+	{
+		int statusCode = StatusCode.OK;
+		boolean isAccepted = false;
+		ArrayList<String> refusingPeers = new ArrayList<String>();
+		
+		for (Action action : scheduleRangeRequests(status))
+		{
+			if (useDispatcher)
+			{
+				dispatcher.insertAction(action);
+				isAccepted = true;
+				continue;
+			}
+			else if (refusingPeers.contains(action.peer))
+			{
+				continue;
+			}
+			
+			statusCode = dispatcher.transmitImmediately(action);
+			
+			if (statusCode == StatusCode.OK)
+			{
+				isAccepted = true;
+			}
+			else
+			{
+				refusingPeers.add(action.peer);
+				
+				synchronized(status)
+				{
+					removeRangeRequests(status, action.peer);
+				}
+			}
+		}
+		
+		if (!isAccepted)
+		{
+			synchronized(status)
+			{
+				status.rangeRequests = null;
+			}
+		}
+		return isAccepted ? StatusCode.OK : statusCode;
+	}
+	
+	/**
+	 * requestFileSize()
+	 * is a private helper function used when the file descriptor of a requested file could not
+	 * describe its size because the file is 2 GB or larger. The size is requested from the owner
+	 * of the file and stored in the specified file descriptor.
+	 * 
+	 * @param file  specifies a copy of the file descriptor for the requested file
+	 * @return  OK, BAD_FILE_ID, or FILE_TOO_LARGE
+	 */
+	private int requestFileSize(FileDescriptor file)
+	{
+		Action action = buildFileSizeRequestAction(file);
+		int statusCode = dispatcher.transmitImmediately(action);
+		
+		if (statusCode == StatusCode.OK)
+		{
+			file.setSize((Long) action.parameters.get(1));
+		}
+		return statusCode;
+	}
+	
+	/**
+	 * scheduleRangeRequests()
+	 * is a private function that assigns a range of the file to every peer of a swarm download
+	 * that is not working on one, and returns the REQUEST_DATA actions for the new ranges.
+	 * 
+	 * @param status  instance of file status object
+	 * @return  REQUEST_DATA actions to be sent
+	 */
+	private ArrayList<Action> scheduleRangeRequests(FileStatus status)
+	{
+		ArrayList<Action> actions = new ArrayList<Action>();
+		ArrayList<RangeRequest> newRequests = new ArrayList<RangeRequest>();
+		
+		synchronized(status)
+		{
+			if (status.rangeRequests == null)
+			{
+				return actions;
+			}
+			
+			for (RangeRequest rangeRequest : status.rangeRequests)
+			{
+				if (!rangeRequest.isActive && assignRange(status, rangeRequest))
+				{
+					newRequests.add(rangeRequest);
+				}
+			}
+		}
+		
+		for (RangeRequest rangeRequest : newRequests)
+		{
+			actions.add(buildRangeRequestAction(status, rangeRequest.peer, rangeRequest.startByte, 
+					rangeRequest.endByte - rangeRequest.startByte));
+		}
+		return actions;
+	}
+	
+	/**
+	 * assignRange()
+	 * is a private function called by scheduleRangeRequests() that picks the next range for a
+	 * peer of a swarm download. The peer gets the first range that has neither been received nor
+	 * requested from another peer, sized from the throughput of the peer. When every range has
+	 * been requested the peer duplicates the unreceived end of the largest outstanding range of
+	 * another peer that is not already duplicated. The caller must hold the lock of the file status.
+	 * 
+	 * @param status  instance of file status object
+	 * @param rangeRequest  specifies the range request of the peer
+	 * @return true if a range was assigned, false if there is nothing left to request
+	 */
+	private boolean assignRange(FileStatus status, RangeRequest rangeRequest)
+	{
+		RangeSet requestedRanges = new RangeSet(status.receivedRanges);
+		
+		for (RangeRequest other : status.rangeRequests)
+		{
+			if (other.isActive)
+			{
+				requestedRanges.add(other.startByte, other.endByte);
+			}
+		}
+		
+		long startByte = requestedRanges.getFirstMissing(0);
+		long endByte = 0;
+		boolean isDuplicate = false;
+		
+		if (startByte < status.length)
+		{
+			long rangeSize = MIN_SWARM_RANGE;
+			
+			if (rangeRequest.throughput > 0)
+			{
+				rangeSize = Math.max(MIN_SWARM_RANGE, Math.min(MAX_SWARM_RANGE, 
+						(rangeRequest.throughput * SWARM_RANGE_INTERVAL) / 1000));
+			}
+			endByte = requestedRanges.getMissingEnd(startByte, Math.min(status.length, startByte + rangeSize));
+		}
+		else
+		{
+			startByte = 0;
+			
+			for (RangeRequest other : status.rangeRequests)
+			{
+				if (!other.isActive || other.peer.equals(rangeRequest.peer))
+				{
+					continue;
+				}
+				
+				long missingByte = status.receivedRanges.getFirstMissing(other.startByte);
+				
+				if ((missingByte >= other.endByte) || ((other.endByte - missingByte) <= (endByte - startByte))
+						|| isDuplicated(status, other, missingByte))
+				{
+					continue;
+				}
+				startByte = missingByte;
+				endByte = other.endByte;
+				isDuplicate = true;
+			}
+			
+			if (!isDuplicate)
+			{
+				return false;
+			}
+		}
+		
+		rangeRequest.startByte = startByte;
+		rangeRequest.endByte = endByte;
+		rangeRequest.requestTime = System.currentTimeMillis();
+		rangeRequest.isActive = true;
+		rangeRequest.isDuplicate = isDuplicate;
+		return true;
+	}
+	
+	/**
+	 * isDuplicated()
+	 * is a private helper function that returns true if a peer other than the owner of the
+	 * specified range request has requested the specified byte. The caller must hold the lock
+	 * of the file status.
+	 * 
+	 * @param status  instance of file status object
+	 * @param rangeRequest  specifies the outstanding range request
+	 * @param byteIndex  specifies the byte to look for
+	 * @return true if the byte was requested from another peer, false otherwise
+	 */
+	private boolean isDuplicated(FileStatus status, RangeRequest rangeRequest, long byteIndex)
+	{
+		for (RangeRequest other : status.rangeRequests)
+		{
+			if ((other != rangeRequest) && other.isActive 
+					&& (other.startByte <= byteIndex) && (byteIndex < other.endByte))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * updateRangeRequests()
+	 * is a private function called by handleFileChunk() after new bytes of a swarm download have
+	 * been received. Every range request whose range has been received completely is finished,
+	 * recording the throughput of the peer unless the range was a duplicate, and the peers that
+	 * are out of work are given new ranges. The caller must hold the lock of the file status.
+	 * 
+	 * @param status  instance of file status object
+	 * @return true if a range request was finished, false otherwise
+	 */
+	private boolean updateRangeRequests(FileStatus status)
+	{
+		boolean isFinished = false;
+		long currentTime = System.currentTimeMillis();
+		
+		for (RangeRequest rangeRequest : status.rangeRequests)
+		{
+			if (rangeRequest.isActive 
+					&& status.receivedRanges.covers(rangeRequest.startByte, rangeRequest.endByte))
+			{
+				if (!rangeRequest.isDuplicate)
+				{
+					long elapsedTime = Math.max(1, currentTime - rangeRequest.requestTime);
+					rangeRequest.throughput = ((rangeRequest.endByte - rangeRequest.startByte) * 1000) / elapsedTime;
+				}
+				rangeRequest.isActive = false;
+				isFinished = true;
+			}
+		}
+		return isFinished;
+	}
+	
+	/**
+	 * removeRangeRequests()
+	 * is a private function that drops the specified peer from a swarm download. The range it was
+	 * working on is requested from the remaining peers as they run out of work. The caller must
+	 * hold the lock of the file status.
+	 * 
+	 * @param status  instance of file status object
+	 * @param peer  specifies the peer to remove
+	 */
+	private void removeRangeRequests(FileStatus status, String peer)
+	{
+		if (status.rangeRequests == null)
+		{
+			return;
+		}
+		
+		for (int i = status.rangeRequests.size() - 1; i >= 0; i--)
+		{
+			if (status.rangeRequests.get(i).peer.equals(peer))
+			{
+				status.rangeRequests.remove(i);
+			}
+		}
+	}
+	
+	/**
+	 * getTransferPeers()
+	 * is a private helper function that returns every peer the specified file is being received
+	 * from. Each peer appears once in the list.
+	 * 
+	 * @param status  instance of file status object
+	 * @return list of peers
+	 */
+	private ArrayList<String> getTransferPeers(FileStatus status)
+	{
+		ArrayList<String> peers = new ArrayList<String>();
+		
+		synchronized(status)
+		{
+			peers.add(status.peer);
+			
+			if (status.rangeRequests != null)
+			{
+				for (RangeRequest rangeRequest : status.rangeRequests)
+				{
+					if (!peers.contains(rangeRequest.peer))
+					{
+						peers.add(rangeRequest.peer);
+					}
+				}
+			}
+		}
+		return peers;
+	}
+
+	/**
+	 * buildDataRequestAction()
+	 * is called to build the REQUEST_DATA action. The function receives the File Status object
+	 * for the requested file. This allows the function to place the necessary data inside the
+	 * REQUEST_DATA action. Only the first range of the file that has not been received yet is
+	 * requested, and the range is recorded in the file status so the next missing range can be
+	 * requested once it has been written. The chunk length is chosen by the Chunk Size Tuner when
+	 * adaptive chunk sizing is enabled.
+	 * 
+	 * @param status  instance of file status object
+	 * @return  REQUEST_DATA action
+	 */
+	private Action buildDataRequestAction(FileStatus status)
+	{
+		long startByte;
+		long length;
+		
+		synchronized(status)
+		{
+			startByte = status.receivedRanges.getFirstMissing(0);
+			length = status.receivedRanges.getMissingEnd(startByte, status.length) - startByte;
+			status.startByte = startByte;
+			status.numBytesRequested = length;
+		}
+		
+		return buildRangeRequestAction(status, status.peer, startByte, length);
+	}
+	
+	/**
+	 * buildRangeRequestAction()
+	 * is a private function that builds the REQUEST_DATA action asking the specified peer for
+	 * the specified range of the file. The chunk length is chosen by the Chunk Size Tuner when
+	 * adaptive chunk sizing is enabled.
+	 * 
+	 * @param status  instance of file status object
+	 * @param peer  specifies the peer to request the range from
+	 * @param startByte  specifies the first byte of the range
+	 * @param length  specifies the length of the range
+	 * @return  REQUEST_DATA action
+	 */
+	private Action buildRangeRequestAction(FileStatus status, String peer, long startByte, long length)
+	{
+		int chunkSize = maxChunkSize;
+		
+		if (isAdaptiveChunkSize)
+		{
+			chunkSize = chunkSizeTuner.getChunkSize(peer, maxChunkSize);
+			chunkSizeTuner.requestSent(peer);
+		}
+		status.chunkLength = chunkSize;
+		
+		Action action = new Action();
+		action.actionType = ActionType.REQUEST_DATA;
+		action.parameters.add(status.fileId);
+		action.parameters.add(startByte);
+		action.parameters.add(length);
+		action.parameters.add(chunkSize);
+		
+		if (compressionLevel > 0)
+		{
+			action.parameters.add(compressionLevel);
+		}
+		action.peer = peer;
+		return action;
+	}
+
+	/**
+	 * buildDeltaRequestAction()
+	 * is a private function called by requestFileDelta(). This function will build a REQUEST_DELTA
+	 * action that sends the block signatures of the older copy of the file to its owner.
+	 * 
+	 * @param status  instance of file status object
+	 * @param signatures  specifies the block signatures of the older copy
+	 * @return REQUEST_DELTA action
+	 */
+	private Action buildDeltaRequestAction(FileStatus status, BlockSignatures signatures)
+	{
+		Action action = new Action();
+		action.actionType = ActionType.REQUEST_DELTA;
+		action.parameters.add(status.fileId);
+		action.parameters.add(signatures.getBlockSize());
+		action.parameters.add(signatures.getWeakChecksums());
+		action.parameters.add(signatures.getStrongHashes());
+		action.peer = status.peer;
+		return action;
+	}
+
+	/**
+	 * buildFileSizeRequestAction()
+	 * is a private function called by requestFile(). This function will build a REQUEST_FILE_SIZE
+	 * action asking the owner of the file for its size. The transmitter appends the size returned
+	 * by the owner to the parameters of the action.
+	 * 
+	 * @param file  instance of file descriptor for requested file
+	 * @return REQUEST_FILE_SIZE action
+	 */
+	private Action buildFileSizeRequestAction(FileDescriptor file)
+	{
+		Action action = new Action();
+		action.actionType = ActionType.REQUEST_FILE_SIZE;
+		action.parameters.add(file.fileID);
+		action.peer = file.owner;
+		return action;
+	}
+
+	/**
+	 * buildBlockHashesRequestAction()
+	 * is a private function called by requestBlockHashes(). This function will build a
+	 * REQUEST_BLOCK_HASHES action asking the owner of the file for the hashes of its blocks. The
+	 * transmitter appends the hashes returned by the owner to the parameters of the action.
+	 * 
+	 * @param fileID  specifies the ID of the file
+	 * @param owner  specifies the peer that owns the file
+	 * @return REQUEST_BLOCK_HASHES action
+	 */
+	private Action buildBlockHashesRequestAction(byte[] fileID, String owner)
+	{
+		Action action = new Action();
+		action.actionType = ActionType.REQUEST_BLOCK_HASHES;
+		action.parameters.add(fileID);
+		action.peer = owner;
+		return action;
+	}
+
+	/**
+	 * buildDataChunkAckAction()
+	 * is a private function called by writeChunks(). This function will build a DATA_CHUNK_ACK
+	 * action telling the sender that the chunk has been saved, allowing the sender to slide its
+	 * send window forward. A single acknowledgement covers all of the chunks of a coalesced write,
+	 * which are always chunks from the same peer.
+	 * 
+	 * @param fileID  specifies the ID of the file the chunk belongs to
+	 * @param startByte  specifies the starting index of chunk relative to file
+	 * @param chunkLength  specifies the length of chunk
+	 * @param peer  specifies the peer that sent the chunk
+	 * @return DATA_CHUNK_ACK action
+	 */
+	private Action buildDataChunkAckAction(byte[] fileID, long startByte, int chunkLength, String peer)
+	{
+		Action action = new Action();
+		action.actionType = ActionType.DATA_CHUNK_ACK;
+		action.parameters.add(fileID);
+		action.parameters.add(startByte);
+		action.parameters.add(chunkLength);
+		action.peer = peer;
+		return action;
+	}
+
+	/**
+	 * requestBundle()
+	 * is called when the user wishes to request several small files from the same remote session
+	 * peer with a single request. The files are saved with their announced names in the specified
+	 * directory and the file completed listener is called for each of them. Files the owner no
+	 * longer shares complete with BAD_FILE_ID. If the owner does not support bundles, each file is
+	 * requested separately and the status code of the last request that failed is returned. The
+	 * files are checked for free space together, as they are normally saved on the same volume.
+	 * 
+	 * @param owner  specifies the remote peer's unique bus ID
+	 * @param fileIDs  specifies the ids of the requested files
+	 * @param saveDirectory  specifies the directory to save the requested files to
+	 * @return  OK, BAD_FILE_ID, BAD_FILE_PATH, FILE_TOO_LARGE, INSUFFICIENT_SPACE, INVALID, or
+	 * FILE_NOT_BEING_TRANSFERRED
+	 */
+	public int requestBundle(String owner, ArrayList<byte[]> fileIDs, String saveDirectory)
+	{
+		if ((fileIDs == null) || fileIDs.isEmpty() || (fileIDs.size() > MAX_BUNDLE_FILES))
+		{
+			return StatusCode.INVALID;
+		}
+		
+		if (saveDirectory == null)
+		{
+			synchronized(savePathLock)
+			{
+				saveDirectory = defaultSaveDirectory;
+			}			
+		}
+		
+		if (!fsa.isValid(saveDirectory))
+		{
+			return StatusCode.BAD_FILE_PATH;
+		}
+		
+		ArrayList<FileDescriptor> files = new ArrayList<FileDescriptor>();
+		
+		for (byte[] fileID : fileIDs)
+		{
+			FileDescriptor file = permissionsManager.getKnownFileDescriptor(fileID, owner);
+			
+			if ((file == null) || (fileID.length != BundleFrame.FILE_ID_LENGTH))
+			{
+				return StatusCode.BAD_FILE_ID;
+			}
+			
+			if (!file.isSizeKnown())
+			{
+				return StatusCode.FILE_TOO_LARGE;
+			}
+			files.add(file);
+		}
+		
+		BundleStatus bundle = new BundleStatus(owner);
+		byte[] bundleID = new byte[BundleFrame.FILE_ID_LENGTH];
+		byte[] concatenatedIDs = new byte[files.size() * BundleFrame.FILE_ID_LENGTH];
+		long numBytes = 0;
+		
+		for (int i = 0; i < files.size(); i++)
+		{
+			FileDescriptor file = files.get(i);
+			FileStatus status = buildStatus(file, file.filename, saveDirectory);
+			String path = new File(status.saveFilePath, status.saveFileName).getAbsolutePath();
+			numBytes += status.length;
+			
+			if (!fsa.hasSpace(path, numBytes))
+			{
+				return StatusCode.INSUFFICIENT_SPACE;
+			}
+			bundle.files.add(status);
+			System.arraycopy(file.fileID, 0, concatenatedIDs, i * BundleFrame.FILE_ID_LENGTH, 
+					BundleFrame.FILE_ID_LENGTH);
+		}
+		
+		synchronized(bundles)
+		{
+			bundleIDGenerator.nextBytes(bundleID);
+			bundles.put(Arrays.toString(bundleID), bundle);
+		}
+		
+		Action action = new Action();
+		action.actionType = ActionType.REQUEST_BUNDLE;
+		action.parameters.add(bundleID);
+		action.parameters.add(concatenatedIDs);
+		action.parameters.add(maxChunkSize);
+		action.peer = owner;
+		
+		int statusCode = dispatcher.transmitImmediately(action);
+		
+		if (statusCode == StatusCode.OK)
+		{
+			return statusCode;
+		}
+		
+		synchronized(bundles)
+		{
+			bundles.remove(Arrays.toString(bundleID));
+		}
+		
+		if (statusCode != StatusCode.REQUEST_DENIED)
+		{
+			return statusCode;
+		}
+		
+		Logger.log("bundles not supported by owner, requesting files separately");
+		statusCode = StatusCode.OK;
+		
+		for (FileDescriptor file : files)
+		{
+			int fileStatusCode = requestFile(file, file.filename, saveDirectory, false);
+			
+			if (fileStatusCode != StatusCode.OK)
+			{
+				statusCode = fileStatusCode;
+			}
+		}
+		return statusCode;
+	}
+	
+	/**
+	 * addTransfer()
+	 * is a private helper function that sets up the specified new transfer before anything is
+	 * requested. Space is reserved for the file, the progress recorded in the journal is restored,
+	 * the block hashes are requested from the owner when block verification is enabled, and the
+	 * file status is stored so chunks of the file are accepted.
+	 * 
+	 * @param status  instance of file status object
+	 * @param owner  specifies the peer that owns the file
+	 * @return  OK, BAD_FILE_PATH, or INSUFFICIENT_SPACE
+	 */
+	private int addTransfer(FileStatus status, String owner)
+	{
+		int statusCode = reserveSpace(status);
+		
+		if (statusCode != StatusCode.OK)
+		{
+			return statusCode;
+		}
+		
+		if (transferJournal.restore(status))
+		{
+			Logger.log("resuming transfer from journal");
+		}
+		
+		if (isBlockVerification)
+		{
+			requestBlockHashes(status, owner);
+		}
+		
+		synchronized(fileStatuses)
+		{
+			fileStatuses.put(Arrays.toString(status.fileId), status);
+		}
+		return StatusCode.OK;
+	}
+	
+	/**
+	 * reserveSpace()
+	 * is a private helper function that checks the volume the specified transfer is saved to has
+	 * room for the part of the file not written yet and, when preallocation is enabled, extends
+	 * the file to its full length. It is called by addTransfer() before the transfer is stored or
+	 * requested so a file that does not fit fails before any bytes move. The file status notes
+	 * whether the file was created by preallocation so it can be removed if the transfer cannot be
+	 * requested.
+	 * 
+	 * @param status  instance of file status object
+	 * @return  OK, BAD_FILE_PATH, or INSUFFICIENT_SPACE
+	 */
+	private int reserveSpace(FileStatus status)
+	{
+		String path = new File(status.saveFilePath, status.saveFileName).getAbsolutePath();
+		
+		if (!fsa.hasSpace(path, status.length))
+		{
+			return StatusCode.INSUFFICIENT_SPACE;
+		}
+		
+		if (isPreallocation && (status.length > 0))
+		{
+			boolean isNewFile = !new File(path).exists();
+			int statusCode = fsa.preallocate(path, status.length);
+			
+			if ((statusCode != StatusCode.OK) && isNewFile)
+			{
+				fsa.delete(path);
+			}
+			status.isPreallocated = isNewFile && (statusCode == StatusCode.OK);
+			return statusCode;
+		}
+		return StatusCode.OK;
+	}
+	
+	/**
+	 * dropTransfer()
+	 * is a private helper function called when a new transfer could not be requested from any
+	 * peer. The file status is removed and the file is closed. A file created by preallocation is
+	 * deleted so an empty file of the full length is not left behind.
+	 * 
+	 * @param status  instance of file status object
+	 */
+	private void dropTransfer(FileStatus status)
+	{
+		synchronized(fileStatuses)
+		{
+			if (fileStatuses.get(Arrays.toString(status.fileId)) == status)
+			{
+				fileStatuses.remove(Arrays.toString(status.fileId));
+			}
+		}
+		
+		String path = new File(status.saveFilePath, status.saveFileName).getAbsolutePath();
+		fsa.closeFile(path);
+		
+		if (status.isPreallocated)
+		{
+			synchronized(writeLock)
+			{
+				fsa.delete(path);
+			}
+		}
+	}
+	
+	/**
+	 * buildStatus()
+	 * is a private function used to build the file status object for the requested file. The file
+	 * status object provides the details to monitor the progress of the file transfer.
+	 * 
+	 * @param file  instance of file descriptor for requested file
+	 * @param saveFileName  specifies the name to save the file as
+	 * @param saveFileDirectory  specifies the location to save the file to
+	 * @return  file status object
+	 */
+	private FileStatus buildStatus(FileDescriptor file, String saveFileName, String saveFileDirectory)
+	{
+		FileStatus status = new FileStatus();
+		status.fileId = file.fileID;
+		status.startByte = 0;
+		status.length = file.getSize();
+		status.peer = file.owner;
+		status.numBytesSent = 0;
+		status.numBytesOnWire = 0;
+		status.saveFileName = saveFileName;		
+		status.saveFilePath = new File(saveFileDirectory, file.relativePath).getAbsolutePath();		
+		status.receivedRanges = new RangeSet();
+		status.writtenRanges = new RangeSet();
+		status.numBytesDigested = 0;
+		
+		try
+		{
+			status.fileDigest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			Logger.log(e.toString());
+			status.fileDigest = null;
+		}
+		return status;
+	}	
+
+	/** 
+	 * handleFileChunk()
+	 * is called when a chunk of a given file is received from a remote peer. This function determines
+	 * which temporary file this chunk belongs to, updates the receiving progress, and queues the chunk
+	 * in the write pipeline to be written at its offset in the appropriate temporary file by the
+	 * writer thread. Chunks are accepted in any order; a chunk whose bytes have all been received
+	 * already is ignored. If the write pipeline is full this function blocks until the writer has
+	 * caught up. When the file is downloaded from several peers, the peers whose ranges have been
+	 * received are given their next range.
+	 * 
+	 * @param fileID  specifies the ID of the file the chunk belongs to
+	 * @param startByte  specifies the starting index of chunk relative to file
+	 * @param chunkLength  specifies the length of chunk
+	 * @param chunk  actual file data
+	 * @param peer  specifies the peer that sent the chunk
+	 */
+	@Override
+	public void handleFileChunk(byte[] fileID, long startByte, int chunkLength, byte[] chunk, String peer)
+	{		
+		receiveFileChunk(fileID, startByte, chunkLength, chunk, chunkLength, peer);
+	}
+	
+	/** 
+	 * handleCompressedFileChunk()
+	 * is called when a compressed chunk of a given file is received from a remote peer. The chunk
+	 * is decompressed and then handled in the same way as an uncompressed chunk. Chunks that do not
+	 * decompress to the specified length are dropped.
+	 * 
+	 * @param fileID  specifies the ID of the file the chunk belongs to
+	 * @param startByte  specifies the starting index of chunk relative to file
+	 * @param chunkLength  specifies the length of chunk before compression
+	 * @param compressedChunk  compressed file data
+	 * @param peer  specifies the peer that sent the chunk
+	 */
+	@Override
+	public void handleCompressedFileChunk(byte[] fileID, long startByte, int chunkLength, byte[] compressedChunk,
+			String peer)
+	{
+		FileStatus status = getFileStatus(fileID);
+		
+		if ((status == null) || (chunkLength < 0) || (chunkLength > status.length))
+		{
+			Logger.log("invalid compressed file chunk received");
+			return;
+		}
+		
+		byte[] chunk = ChunkCompressor.decompress(compressedChunk, chunkLength);
+		
+		if (chunk == null)
+		{
+			Logger.log("corrupt compressed file chunk received");
+			return;
+		}
+		receiveFileChunk(fileID, startByte, chunkLength, chunk, compressedChunk.length, peer);
+	}
+	
+	/** 
+	 * receiveFileChunk()
+	 * is a private function called by handleFileChunk() and handleCompressedFileChunk(). See
+	 * handleFileChunk() for an explanation of how the chunk is handled.
+	 * 
+	 * @param fileID  specifies the ID of the file the chunk belongs to
+	 * @param startByte  specifies the starting index of chunk relative to file
+	 * @param chunkLength  specifies the length of chunk
+	 * @param chunk  actual file data
+	 * @param numWireBytes  specifies the number of bytes the chunk took on the network
+	 * @param peer  specifies the peer that sent the chunk
+	 */
+	private void receiveFileChunk(byte[] fileID, long startByte, int chunkLength, byte[] chunk, 
+			int numWireBytes, String peer)
+	{
+		FileStatus status = getFileStatus(fileID);
+		
+		if (status == null)
+		{
+			Logger.log("file chunk received for unknown file");
+			return;
+		}
+		else if ((startByte < 0) || (chunkLength < 0) || (chunkLength > chunk.length)
+				|| (startByte + chunkLength > status.length))
+		{
+			Logger.log("invalid file chunk received");
+			return;
+		}
+		
+		boolean isRangeFinished = false;
+		
+		synchronized(status)
+		{
+			long numNewBytes = status.receivedRanges.add(startByte, startByte + chunkLength);
+			
+			if ((chunkLength > 0) && (numNewBytes == 0))
+			{
+				Logger.log("duplicate file chunk received");
+				return;
+			}
+			status.numBytesSent += numNewBytes;
+			status.numBytesOnWire += numWireBytes;
+			isRangeFinished = (status.rangeRequests != null) && updateRangeRequests(status);
+		}
+		
+		queueWrite(new PendingWrite(status, peer, startByte, chunkLength, chunk));
+		
+		if (isRangeFinished)
+		{
+			for (Action action : scheduleRangeRequests(status))
+			{
+				dispatcher.insertAction(action);
+			}
+		}
+		
+		if (isAdaptiveChunkSize && chunkSizeTuner.chunkReceived(peer, chunkLength))
+		{
+			requestRemainingChunks(peer);
+		}
+	}
+	
+	/** 
+	 * handleBundleChunk()
+	 * is called when a chunk of a requested bundle is received from a remote peer. This function
+	 * reads the headers of the files in the chunk and writes their data to the files, which are
+	 * checked against their file IDs as they are written. The listener is called for each file
+	 * completed by the chunk. Chunks are expected in order since signals from the same peer are
+	 * delivered in order. If a chunk is missing or a header does not match the requested file,
+	 * the remaining files of the bundle complete with INVALID and the sender is told to stop
+	 * the bundle. The same happens when a file cannot be written, which completes with
+	 * BAD_FILE_PATH.
+	 * 
+	 * @param bundleID  specifies the ID of the bundle the chunk belongs to
+	 * @param startByte  specifies the starting index of the chunk relative to the bundle
+	 * @param chunk  specifies the data of the chunk
+	 * @param peer  specifies the peer that sent the chunk
+	 */
+	@Override
+	public void handleBundleChunk(byte[] bundleID, long startByte, byte[] chunk, String peer)
+	{
+		BundleStatus bundle = null;
+		
+		synchronized(bundles)
+		{
+			bundle = bundles.get(Arrays.toString(bundleID));
+		}
+		
+		if ((bundle == null) || !bundle.peer.equals(peer))
+		{
+			return;
+		}
+		
+		ArrayList<FileStatus> completedFiles = new ArrayList<FileStatus>();
+		ArrayList<Integer> completedStatusCodes = new ArrayList<Integer>();
+		
+		synchronized(bundle)
+		{
+			boolean isValid = startByte == bundle.nextStartByte;
+			bundle.nextStartByte += chunk.length;
+			int offset = 0;
+			
+			try
+			{
+				while (isValid && (offset < chunk.length) && (bundle.fileIndex < bundle.files.size()))
+				{
+					FileStatus status = bundle.files.get(bundle.fileIndex);
+					
+					if (bundle.numHeaderBytes < BundleFrame.HEADER_LENGTH)
+					{
+						int numBytes = Math.min(chunk.length - offset, BundleFrame.HEADER_LENGTH - bundle.numHeaderBytes);
+						System.arraycopy(chunk, offset, bundle.header, bundle.numHeaderBytes, numBytes);
+						bundle.numHeaderBytes += numBytes;
+						offset += numBytes;
+						
+						if (bundle.numHeaderBytes < BundleFrame.HEADER_LENGTH)
+						{
+							break;
+						}
+						
+						long length = BundleFrame.readLength(bundle.header);
+						
+						if (!Arrays.equals(BundleFrame.readFileID(bundle.header), status.fileId)
+								|| (length < BundleFrame.UNAVAILABLE))
+						{
+							isValid = false;
+						}
+						else if (length == BundleFrame.UNAVAILABLE)
+						{
+							nextBundleFile(bundle, StatusCode.BAD_FILE_ID, completedFiles, completedStatusCodes);
+						}
+						else
+						{
+							status.length = length;
+							
+							if (!writeBundleData(status, chunk, offset, 0))
+							{
+								nextBundleFile(bundle, getCompletedStatusCode(status), completedFiles, 
+										completedStatusCodes);
+							}
+						}
+						continue;
+					}
+					
+					int numBytes = (int) Math.min(chunk.length - offset, status.length - status.numBytesSent);
+					
+					if (!writeBundleData(status, chunk, offset, numBytes))
+					{
+						nextBundleFile(bundle, getCompletedStatusCode(status), completedFiles, completedStatusCodes);
+					}
+					offset += numBytes;
+				}
+			}
+			catch (IOException e)
+			{
+				Logger.log(e.toString());
+				nextBundleFile(bundle, StatusCode.BAD_FILE_PATH, completedFiles, completedStatusCodes);
+				isValid = false;
+			}
+			
+			if (!isValid)
+			{
+				Logger.log("bundle stream is corrupt or cannot be written, dropping remaining files");
+				dispatcher.insertAction(buildStopXferAction(bundleID, peer));
+				
+				while (bundle.fileIndex < bundle.files.size())
+				{
+					nextBundleFile(bundle, StatusCode.INVALID, completedFiles, completedStatusCodes);
+				}
+			}
+			
+			if (bundle.fileIndex == bundle.files.size())
+			{
+				synchronized(bundles)
+				{
+					bundles.remove(Arrays.toString(bundleID));
+				}
+			}
+		}
+		
+		for (int i = 0; i < completedFiles.size(); i++)
+		{
+			fireCompletedListener(completedFiles.get(i).saveFileName, completedStatusCodes.get(i));
+		}
+	}
+	
+	/**
+	 * writeBundleData()
+	 * is a private helper function called by handleBundleChunk() that writes the specified data of
+	 * a file of a bundle at the end of the file and adds it to the digest of the file.
+	 * 
+	 * @param status  specifies the file status of the file
+	 * @param chunk  specifies the chunk of the bundle holding the data
+	 * @param offset  specifies the offset of the data within the chunk
+	 * @param length  specifies the length of the data
+	 * @return true if the file needs more data, false if it has been written completely
+	 * @throws IOException if the data cannot be written to the file
+	 */
+	private boolean writeBundleData(FileStatus status, byte[] chunk, int offset, int length) throws IOException
+	{
+		String path = new File(status.saveFilePath, status.saveFileName).getAbsolutePath();
+		
+		synchronized(writeLock)
+		{
+			int result = 0;
+			
+			try
+			{
+				result = fsa.addChunk(path, Arrays.copyOfRange(chunk, offset, offset + length), status.numBytesSent, 
+						length);
+			} 
+			finally
+			{
+				if (result == 0)
+				{
+					fsa.closeFile(path);
+				}
+			}
+			
+			if (result == 0)
+			{
+				throw new IOException("failed to write " + path);
+			}
+		}
+		
+		synchronized(status)
+		{
+			if (status.fileDigest != null)
+			{
+				status.fileDigest.update(chunk, offset, length);
+			}
+			status.numBytesSent += length;
+			status.numBytesOnWire += length;
+			status.numBytesDigested = status.numBytesSent;
+			
+			if (status.numBytesSent < status.length)
+			{
+				return true;
+			}
+		}
+		
+		fsa.closeFile(path);
+		return false;
+	}
+	
+	/**
+	 * nextBundleFile()
+	 * is a private helper function called by handleBundleChunk() that records the completion of the
+	 * current file of the bundle and moves on to the header of the next file.
+	 * 
+	 * @param bundle  specifies the bundle being received
+	 * @param statusCode  specifies the status code the current file completed with
+	 * @param completedFiles  specifies the list of completed files to add the current file to
+	 * @param completedStatusCodes  specifies the list of status codes to add the status code to
+	 */
+	private void nextBundleFile(BundleStatus bundle, int statusCode, ArrayList<FileStatus> completedFiles,
+			ArrayList<Integer> completedStatusCodes)
+	{
+		completedFiles.add(bundle.files.get(bundle.fileIndex));
+		completedStatusCodes.add(statusCode);
+		bundle.fileIndex++;
+		bundle.numHeaderBytes = 0;
+	}
+	
+	/** 
+	 * handleInlineContent()
+	 * is called when the contents of a small file are received along with an offer or a directed
+	 * announcement. Contents that do not exceed the inline threshold and match the file ID are kept
+	 * until the file is requested. When the kept contents exceed MAX_INLINE_CACHE_BYTES, the oldest
+	 * are discarded.
+	 * 
+	 * @param fileID  specifies the id of the file
+	 * @param content  specifies the contents of the file
+	 * @param peer  specifies the peer that sent the contents
+	 * @return OK, INVALID if the contents do not match the file ID, or REQUEST_DENIED if the 
+	 * contents exceed the inline threshold
+	 */
+	@Override
+	public int handleInlineContent(byte[] fileID, byte[] content, String peer)
+	{
+		synchronized(inlineContents)
+		{
+			if (content.length > inlineThreshold)
+			{
+				return StatusCode.REQUEST_DENIED;
+			}
+		}
+		
+		if (!Arrays.equals(BlockHashes.createDigest().digest(content), fileID))
+		{
+			Logger.log("inline content does not match its file ID");
+			return StatusCode.INVALID;
+		}
+		
+		synchronized(inlineContents)
+		{
+			byte[] previousContent = inlineContents.put(Arrays.toString(fileID), content);
+			numInlineBytes += content.length - ((previousContent == null) ? 0 : previousContent.length);
+			
+			Iterator<byte[]> iterator = inlineContents.values().iterator();
+			
+			while (numInlineBytes > MAX_INLINE_CACHE_BYTES)
+			{
+				numInlineBytes -= iterator.next().length;
+				iterator.remove();
+			}
+		}
+		return StatusCode.OK;
+	}
+	
+	/**
+	 * takeInlineContent()
+	 * is a private helper function called by requestFile() that removes and returns the contents
+	 * received inline for the specified file.
+	 * 
+	 * @param fileID  specifies the id of the file
+	 * @return contents of the file, null if none have been received
+	 */
+	private byte[] takeInlineContent(byte[] fileID)
+	{
+		synchronized(inlineContents)
+		{
+			byte[] content = inlineContents.remove(Arrays.toString(fileID));
+			
+			if (content != null)
+			{
+				numInlineBytes -= content.length;
+			}
+			return content;
+		}
+	}
+	
+	/**
+	 * saveInlineFile()
+	 * is a private helper function called by requestFile() that saves a file from the contents
+	 * received inline and calls the file completed listener.
+	 * 
+	 * @param file  specifies the file descriptor of the file
+	 * @param saveFileName  specifies the name to save the file as
+	 * @param saveDirectory  specifies the directory to save the file
+	 * @param content  specifies the contents of the file
+	 * @return OK, INSUFFICIENT_SPACE or BAD_FILE_PATH
+	 */
+	private int saveInlineFile(FileDescriptor file, String saveFileName, String saveDirectory, byte[] content)
+	{
+		FileStatus status = buildStatus(file, saveFileName, saveDirectory);
+		String path = new File(status.saveFilePath, saveFileName).getAbsolutePath();
+		
+		if (!fsa.hasSpace(path, content.length))
+		{
+			return StatusCode.INSUFFICIENT_SPACE;
+		}
+		
+		synchronized(writeLock)
+		{
+			try
+			{
+				if (fsa.addChunk(path, content, 0, content.length) == 0)
+				{
+					return StatusCode.BAD_FILE_PATH;
+				}
+			} 
+			catch (Exception e)
+			{
+				Logger.log(e.toString());
+				return StatusCode.BAD_FILE_PATH;
+			}
+			finally
+			{
+				fsa.closeFile(path);
+			}
+		}
+		
+		Logger.log("saved " + content.length + " byte file from inline content");
+		fireCompletedListener(saveFileName, StatusCode.OK);
+		return StatusCode.OK;
+	}
+	
+	/** 
+	 * handleCopyBlocks()
+	 * is called when the owner of a file requested as a delta replies with the ranges of the file
+	 * that match blocks of the older local copy. Each range is read from the older copy and queued
+	 * in the write pipeline like a received chunk, except that it is not acknowledged. The ranges
+	 * that remain missing are then requested from the owner. Ranges that do not fit the file or the
+	 * older copy are ignored, and if the older copy cannot be read the rest of the file is requested.
+	 * 
+	 * @param fileID  specifies the id of the file
+	 * @param targetOffsets  specifies the offset in the file of each run of blocks
+	 * @param basisBlocks  specifies the first block of the older copy of each run
+	 * @param numBlocks  specifies the number of blocks of each run
+	 * @param peer  specifies the peer that sent the reply
+	 */
+	@Override
+	public void handleCopyBlocks(byte[] fileID, long[] targetOffsets, int[] basisBlocks, int[] numBlocks, 
+			String peer)
+	{
+		FileStatus status = getFileStatus(fileID);
+		String basisPath = null;
+		int blockSize = 0;
+		
+		if (status == null)
+		{
+			Logger.log("copy blocks received for unknown file");
+			return;
+		}
+		
+		synchronized(status)
+		{
+			if ((status.basisPath == null) || !peer.equals(status.peer))
+			{
+				Logger.log("unexpected copy blocks received");
+				return;
+			}
+			
+			basisPath = status.basisPath;
+			blockSize = status.deltaBlockSize;
+			status.basisPath = null;
+		}
+		
+		long basisLength = new File(basisPath).length();
+		long numCopiedBytes = 0;
+		int numRuns = ((targetOffsets.length == basisBlocks.length) && (targetOffsets.length == numBlocks.length))
+				? targetOffsets.length : 0;
+		
+		try
+		{
+			for (int i = 0; (i < numRuns) && (getFileStatus(fileID) == status); i++)
+			{
+				long targetOffset = targetOffsets[i];
+				long basisOffset = (long) basisBlocks[i] * blockSize;
+				long runLength = (long) numBlocks[i] * blockSize;
+				
+				if ((targetOffset < 0) || (basisOffset < 0) || (runLength <= 0) 
+						|| ((targetOffset + runLength) > status.length) || ((basisOffset + runLength) > basisLength))
+				{
+					Logger.log("invalid copy run received");
+					continue;
+				}
+				
+				for (long offset = 0; offset < runLength; offset += MAX_COALESCED_BYTES)
+				{
+					int chunkLength = (int) Math.min(MAX_COALESCED_BYTES, runLength - offset);
+					byte[] chunk = new byte[chunkLength];
+					fsa.getChunk(basisPath, chunk, basisOffset + offset, chunkLength);
+					
+					long numNewBytes = 0;
+					
+					synchronized(status)
+					{
+						numNewBytes = status.receivedRanges.add(targetOffset + offset, targetOffset + offset + chunkLength);
+						status.numBytesSent += numNewBytes;
+					}
+					
+					if (numNewBytes > 0)
+					{
+						queueWrite(new PendingWrite(status, null, targetOffset + offset, chunkLength, chunk));
+						numCopiedBytes += chunkLength;
+					}
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			Logger.log(e.toString());
+		}
+		finally
+		{
+			fsa.closeFile(basisPath);
+		}
+		
+		Logger.log("copied " + numCopiedBytes + " bytes from older copy");
+		
+		boolean isCovered = false;
+		
+		synchronized(status)
+		{
+			isCovered = status.receivedRanges.covers(0, status.length);
+		}
+		
+		if (!isCovered && (getFileStatus(fileID) == status))
+		{
+			sendFileRequests(status, peer, true);
+		}
+	}
+	
+	/**
+	 * requestRemainingChunks()
+	 * is a private function called by handleFileChunk() when the Chunk Size Tuner changes the
+	 * chunk length of a peer. The remaining range of every incomplete transfer from the peer is
+	 * requested again so the sender switches to the new chunk length. Chunks already on their
+	 * way are still accepted, and any that are sent twice are ignored. For a swarm download only
+	 * the unreceived end of the range the peer is working on is requested again.
+	 * 
+	 * @param peer  specifies the peer whose chunk length changed
+	 */
+	private void requestRemainingChunks(String peer)
+	{
+		ArrayList<FileStatus> statuses = new ArrayList<FileStatus>();
+		
+		synchronized(fileStatuses)
+		{
+			statuses.addAll(fileStatuses.values());
+		}
+		
+		for (FileStatus status : statuses)
+		{
+			boolean isSinglePeer = false;
+			ArrayList<long[]> ranges = new ArrayList<long[]>();
+			
+			synchronized(status)
+			{
+				if (status.receivedRanges.covers(0, status.length))
+				{
+					continue;
+				}
+				
+				if (status.rangeRequests == null)
+				{
+					isSinglePeer = peer.equals(status.peer);
+				}
+				else
+				{
+					for (RangeRequest rangeRequest : status.rangeRequests)
+					{
+						long startByte = status.receivedRanges.getFirstMissing(rangeRequest.startByte);
+						
+						if (rangeRequest.isActive && peer.equals(rangeRequest.peer) 
+								&& (startByte < rangeRequest.endByte))
+						{
+							ranges.add(new long[] { startByte, rangeRequest.endByte - startByte });
+						}
+					}
+				}
+			}
+			
+			if (isSinglePeer)
+			{
+				dispatcher.insertAction(buildDataRequestAction(status));
+			}
+			
+			for (long[] range : ranges)
+			{
+				dispatcher.insertAction(buildRangeRequestAction(status, peer, range[0], range[1]));
+			}
+		}
+	}
+	
+	/**
+	 * queueWrite()
+	 * is a private function called by handleFileChunk() that adds the received chunk to the write
+	 * pipeline and schedules the writer thread if it is not already running. The calling thread
+	 * waits while the pipeline holds MAX_QUEUED_WRITE_BYTES.
+	 * 
+	 * @param pendingWrite  specifies the chunk to be written
+	 */
+	private void queueWrite(PendingWrite pendingWrite)
+	{
+		synchronized(pendingWrites)
+		{
+			while ((numQueuedWriteBytes > 0) 
+					&& ((numQueuedWriteBytes + pendingWrite.length) > MAX_QUEUED_WRITE_BYTES))
+			{
+				try
+				{
+					pendingWrites.wait();
+				}
+				catch (InterruptedException e)
+				{
+					Logger.log(e.toString());
+					break;
+				}
+			}
+			
+			pendingWrites.add(pendingWrite);
+			numQueuedWriteBytes += pendingWrite.length;
+			
+			if (isWriterScheduled)
+			{
+				return;
+			}
+			isWriterScheduled = true;
+		}
+		
+		writeExecutor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writePendingChunks();
+			}
+		});
+	}
+	
+	/**
+	 * writePendingChunks()
+	 * is a private function executed on the writer thread that drains the write pipeline. Each
+	 * pass takes the chunk at the head of the pipeline together with the chunks queued behind it
+	 * that continue the same file at the next byte, up to MAX_COALESCED_BYTES, and saves them with
+	 * a single write. The writer thread stops once the pipeline is empty.
+	 */
+	private void writePendingChunks()
+	{
+		while (true)
+		{
+			ArrayList<PendingWrite> batch = new ArrayList<PendingWrite>();
+			int batchLength = 0;
+			
+			synchronized(pendingWrites)
+			{
+				PendingWrite pendingWrite = pendingWrites.poll();
+				
+				if (pendingWrite == null)
+				{
+					isWriterScheduled = false;
+					return;
+				}
+				
+				batch.add(pendingWrite);
+				batchLength = pendingWrite.length;
+				
+				PendingWrite nextWrite = pendingWrites.peek();
+				
+				while ((nextWrite != null) && (nextWrite.status == pendingWrite.status)
+						&& ((nextWrite.peer == null) ? (pendingWrite.peer == null) 
+								: nextWrite.peer.equals(pendingWrite.peer))
+						&& (nextWrite.startByte == (pendingWrite.startByte + batchLength))
+						&& ((batchLength + nextWrite.length) <= MAX_COALESCED_BYTES))
+				{
+					batch.add(pendingWrites.poll());
+					batchLength += nextWrite.length;
+					nextWrite = pendingWrites.peek();
+				}
+				
+				writingStatus = pendingWrite.status;
+			}
+			
+			try
+			{
+				writeChunks(batch, batchLength);
+			}
+			catch (Exception e)
+			{
+				Logger.log(e.toString());
+			}
+			
+			synchronized(pendingWrites)
+			{
+				numQueuedWriteBytes -= batchLength;
+				writingStatus = null;
+				pendingWrites.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * writeChunks()
+	 * is a private function called by writePendingChunks() that saves a run of adjacent chunks
+	 * of the same file with one call to the FileSystemAbstraction, acknowledges the run to the
+	 * sender and completes the transfer once the written ranges cover the whole file. The written
+	 * ranges are recorded in the journal, and when the requested range of a resumed transfer has
+	 * been written the next missing range is requested. When a swarm download completes, every
+	 * peer is told to stop since duplicated ranges may still be on their way. Chunks of a transfer
+	 * that has been cancelled are dropped. Ranges copied from the older copy of a delta transfer
+	 * have no peer and are not acknowledged. When block verification is enabled, the blocks
+	 * completed by the run are verified before the transfer can complete, and if one of them is
+	 * corrupt it is requested again. The run is then added to the digest of the file, which is
+	 * compared with the file ID once the transfer completes. If the run cannot be written, the
+	 * transfer fails without the run being recorded or acknowledged.
+	 * 
+	 * @param batch  specifies the adjacent chunks to be written
+	 * @param batchLength  specifies the total length of the chunks
+	 */
+	private void writeChunks(ArrayList<PendingWrite> batch, int batchLength)
+	{
+		PendingWrite firstWrite = batch.get(0);
+		FileStatus status = firstWrite.status;
+		String path = new File(status.saveFilePath, status.saveFileName).getAbsolutePath();
+		byte[] data = firstWrite.chunk;
+		
+		if (batch.size() > 1)
+		{
+			data = new byte[batchLength];
+			int offset = 0;
+			
+			for (PendingWrite pendingWrite : batch)
+			{
+				System.arraycopy(pendingWrite.chunk, 0, data, offset, pendingWrite.length);
+				offset += pendingWrite.length;
+			}
+		}
+		
+		boolean isWritten = false;
+		
+		synchronized(writeLock)
+		{
+			if (getFileStatus(status.fileId) != status)
+			{
+				return;
+			}
+			
+			try
+			{
+				isWritten = fsa.addChunk(path, data, firstWrite.startByte, batchLength) != 0;
+			} 
+			catch (Exception e)
+			{
+				Logger.log(e.toString());
+			}
+		}
+		
+		if (!isWritten)
+		{
+			failTransfer(status, path, firstWrite.startByte, batchLength);
+			return;
+		}
+		
+		boolean isCompleted = false;
+		boolean isRequestCompleted = false;
+		boolean isSwarm = false;
+		boolean isCorrupt = false;
+		
+		synchronized(status)
+		{
+			status.writtenRanges.add(firstWrite.startByte, firstWrite.startByte + batchLength);
+		}
+		
+		if (status.blockHashes != null)
+		{
+			isCorrupt = !verifyBlocks(status, path, data, firstWrite.startByte, batchLength);
+		}
+		
+		updateFileDigest(status, path, data, firstWrite.startByte, batchLength);
+		
+		synchronized(status)
+		{
+			isCompleted = status.writtenRanges.covers(0, status.length);
+			isSwarm = status.rangeRequests != null;
+			isRequestCompleted = !isSwarm && (status.numBytesRequested > 0)
+					&& status.writtenRanges.covers(status.startByte, status.startByte + status.numBytesRequested)
+					&& !status.receivedRanges.covers(0, status.length);
+			transferJournal.update(status);
+		}
+		
+		if (firstWrite.peer != null)
+		{
+			dispatcher.insertAction(buildDataChunkAckAction(status.fileId, firstWrite.startByte, batchLength, 
+					firstWrite.peer));
+		}
+		
+		if (isCompleted)
+		{
+			if (isSwarm)
+			{
+				for (String peer : getTransferPeers(status))
+				{
+					dispatcher.insertAction(buildStopXferAction(status.fileId, peer));
+				}
+			}
+			
+			transferJournal.remove(status.fileId);
+			
+			Logger.log("transfer completed, " + status.numBytesOnWire + " bytes received for " 
+					+ status.length + " byte file");
+			
+			synchronized(fileStatuses)
+			{
+				fileStatuses.remove(Arrays.toString(status.fileId));
+			}
+			
+			fsa.closeFile(path);
+			
+			fireCompletedListener(status.saveFileName, getCompletedStatusCode(status));
+		}
+		else if (isRequestCompleted || (isCorrupt && !isSwarm))
+		{
+			dispatcher.insertAction(buildDataRequestAction(status));
+		}
+		else if (isCorrupt)
+		{
+			for (Action action : scheduleRangeRequests(status))
+			{
+				dispatcher.insertAction(action);
+			}
+		}
+	}
+	
+	/**
+	 * failTransfer()
+	 * is a private function called by writeChunks() when a run of chunks cannot be written to the
+	 * file. The run is removed from the received ranges, every peer sending the file is told to
+	 * stop and the transfer completes with BAD_FILE_PATH. The journal keeps the ranges already
+	 * written so the transfer can be resumed by requesting the file again.
+	 * 
+	 * @param status  specifies the file status of the transfer
+	 * @param path  specifies the path of the file being written
+	 * @param startByte  specifies the offset of the run in the file
+	 * @param length  specifies the length of the run
+	 */
+	private void failTransfer(FileStatus status, String path, long startByte, int length)
+	{
+		synchronized(fileStatuses)
+		{
+			if (fileStatuses.get(Arrays.toString(status.fileId)) != status)
+			{
+				return;
+			}
+			fileStatuses.remove(Arrays.toString(status.fileId));
+		}
+		
+		ArrayList<String> peers = getTransferPeers(status);
+		
+		synchronized(status)
+		{
+			status.numBytesSent -= status.receivedRanges.remove(startByte, startByte + length);
+			status.rangeRequests = null;
+			status.basisPath = null;
+		}
+		
+		for (String peer : peers)
+		{
+			dispatcher.insertAction(buildStopXferAction(status.fileId, peer));
+		}
+		
+		Logger.log("failed to write " + length + " bytes at " + startByte + ", dropping transfer");
+		
+		transferJournal.checkpoint();
+		fsa.closeFile(path);
+		fireCompletedListener(status.saveFileName, StatusCode.BAD_FILE_PATH);
+	}
+	
+	/**
+	 * verifyBlocks()
+	 * is a private function called by writeChunks() that verifies the blocks of the file that
+	 * overlap the specified written run and have now been written completely. A block that lies
+	 * within the run is hashed from the written data, otherwise it is read back from the file. A
+	 * block that does not match its hash is removed from the received and written ranges so it is
+	 * requested again. If the block had already been added to the digest of the file, the digest
+	 * is started over.
+	 * 
+	 * @param status  specifies the file status of the transfer
+	 * @param path  specifies the path of the file being written
+	 * @param data  specifies the data of the run
+	 * @param startByte  specifies the offset of the run in the file
+	 * @param length  specifies the length of the run
+	 * @return true if every completed block is valid, false if a corrupt block was found
+	 */
+	private boolean verifyBlocks(FileStatus status, String path, byte[] data, long startByte, int length)
+	{
+		if (length == 0)
+		{
+			return true;
+		}
+		
+		int blockSize = BlockHashes.getBlockSize(status.length);
+		int firstBlock = (int) (startByte / blockSize);
+		int lastBlock = (int) ((startByte + length - 1) / blockSize);
+		boolean isValid = true;
+		
+		for (int block = firstBlock; block <= lastBlock; block++)
+		{
+			long blockStart = (long) block * blockSize;
+			long blockEnd = Math.min(status.length, blockStart + blockSize);
+			
+			synchronized(status)
+			{
+				if (!status.writtenRanges.covers(blockStart, blockEnd))
+				{
+					continue;
+				}
+			}
+			
+			byte[] hash = null;
+			
+			if ((blockStart >= startByte) && (blockEnd <= (startByte + length)))
+			{
+				hash = BlockHashes.hash(data, (int) (blockStart - startByte), (int) (blockEnd - blockStart));
+			}
+			else
+			{
+				hash = hashWrittenBlock(path, blockStart, blockEnd);
+			}
+			
+			if ((hash != null) && BlockHashes.matches(status.blockHashes, block, hash))
+			{
+				continue;
+			}
+			
+			Logger.log("block " + block + " failed verification, requesting it again");
+			
+			synchronized(status)
+			{
+				status.writtenRanges.remove(blockStart, blockEnd);
+				status.numBytesSent -= status.receivedRanges.remove(blockStart, blockEnd);
+				
+				if ((status.fileDigest != null) && (blockStart < status.numBytesDigested))
+				{
+					status.fileDigest.reset();
+					status.numBytesDigested = 0;
+				}
+			}
+			isValid = false;
+		}
+		return isValid;
+	}
+	
+	/**
+	 * updateFileDigest()
+	 * is a private function called by writeChunks() that advances the digest of the file over
+	 * the written prefix of the file. The bytes of the prefix that belong to the specified run are
+	 * taken from its data, and any other bytes, written earlier out of order, are read back from
+	 * the file. If the file cannot be read the digest is abandoned and the file is not verified.
+	 * 
+	 * @param status  specifies the file status of the transfer
+	 * @param path  specifies the path of the file being written
+	 * @param data  specifies the data of the run
+	 * @param startByte  specifies the offset of the run in the file
+	 * @param length  specifies the length of the run
+	 */
+	private void updateFileDigest(FileStatus status, String path, byte[] data, long startByte, int length)
+	{
+		long offset = 0;
+		long prefixEnd = 0;
+		
+		synchronized(status)
+		{
+			if (status.fileDigest == null)
+			{
+				return;
+			}
+			offset = status.numBytesDigested;
+			prefixEnd = status.writtenRanges.getFirstMissing(offset);
+		}
+		
+		long endByte = startByte + length;
+		byte[] buffer = null;
+		
+		try
+		{
+			while (offset < prefixEnd)
+			{
+				if ((offset >= startByte) && (offset < endByte))
+				{
+					int numBytes = (int) (Math.min(endByte, prefixEnd) - offset);
+					status.fileDigest.update(data, (int) (offset - startByte), numBytes);
+					offset += numBytes;
+					continue;
+				}
+				
+				long readEnd = (offset < startByte) ? Math.min(startByte, prefixEnd) : prefixEnd;
+				
+				if (buffer == null)
+				{
+					buffer = new byte[MAX_COALESCED_BYTES];
+				}
+				
+				int numBytes = (int) Math.min(buffer.length, readEnd - offset);
+				
+				if (fsa.getChunk(path, buffer, offset, numBytes) != numBytes)
+				{
+					throw new Exception("unable to read back " + path);
+				}
+				status.fileDigest.update(buffer, 0, numBytes);
+				offset += numBytes;
+			}
+		}
+		catch (Exception e)
+		{
+			Logger.log(e.toString() + ", file will not be verified");
+			
+			synchronized(status)
+			{
+				status.fileDigest = null;
+			}
+			return;
+		}
+		
+		synchronized(status)
+		{
+			status.numBytesDigested = offset;
+		}
+	}
+	
+	/**
+	 * getCompletedStatusCode()
+	 * is a private helper function called by writeChunks() when a transfer completes. This
+	 * function compares the digest of the file with its file ID.
+	 * 
+	 * @param status  specifies the file status of the completed transfer
+	 * @return OK if the file matches its file ID or could not be verified, FILE_ID_MISMATCH otherwise
+	 */
+	private int getCompletedStatusCode(FileStatus status)
+	{
+		synchronized(status)
+		{
+			if ((status.fileDigest == null) || (status.numBytesDigested != status.length))
+			{
+				Logger.log("completed file could not be verified");
+				return StatusCode.OK;
+			}
+			
+			if (!Arrays.equals(status.fileDigest.digest(), status.fileId))
+			{
+				Logger.log("completed file does not match its file ID");
+				return StatusCode.FILE_ID_MISMATCH;
+			}
+			return StatusCode.OK;
+		}
+	}
+	
+	/**
+	 * hashWrittenBlock()
+	 * is a private helper function called by verifyBlocks() that reads the specified block back
+	 * from the file in pieces of MAX_COALESCED_BYTES and returns its hash.
+	 * 
+	 * @param path  specifies the path of the file being written
+	 * @param blockStart  specifies the first byte of the block
+	 * @param blockEnd  specifies the byte after the last byte of the block
+	 * @return hash of the block, null if the block could not be read
+	 */
+	private byte[] hashWrittenBlock(String path, long blockStart, long blockEnd)
+	{
+		MessageDigest digest = BlockHashes.createDigest();
+		byte[] buffer = new byte[(int) Math.min(MAX_COALESCED_BYTES, blockEnd - blockStart)];
+		
+		try
+		{
+			for (long offset = blockStart; offset < blockEnd; offset += buffer.length)
+			{
+				int length = (int) Math.min(buffer.length, blockEnd - offset);
+				
+				if (fsa.getChunk(path, buffer, offset, length) != length)
+				{
+					return null;
+				}
+				digest.update(buffer, 0, length);
+			}
+		}
+		catch (Exception e)
+		{
+			Logger.log(e.toString());
+			return null;
+		}
+		return digest.digest();
+	}
+	
+	/**
+	 * flushWrites()
+	 * is a private function that blocks until every queued chunk of the specified transfer has
+	 * been written. This is called before a transfer is paused or cancelled so the temporary file
+	 * holds every chunk that has been received.
+	 * 
+	 * @param status  specifies the file status of the transfer
+	 */
+	private void flushWrites(FileStatus status)
+	{
+		synchronized(pendingWrites)
+		{
+			while (hasPendingWrites(status))
+			{
+				try
+				{
+					pendingWrites.wait();
+				}
+				catch (InterruptedException e)
+				{
+					Logger.log(e.toString());
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * hasPendingWrites()
+	 * is a private function that returns true if chunks of the specified transfer are queued or
+	 * being written. The caller must hold the pendingWrites lock.
+	 * 
+	 * @param status  specifies the file status of the transfer
+	 * @return true if chunks are waiting to be written, false otherwise
+	 */
+	private boolean hasPendingWrites(FileStatus status)
+	{
+		if (writingStatus == status)
+		{
+			return true;
+		}
+		
+		for (PendingWrite pendingWrite : pendingWrites)
+		{
+			if (pendingWrite.status == status)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** 
+	 * handleDataXferCancelled()
+	 * is called when the sender cancels a file transfer and sends the DataXferCancelled
+	 * signal to notify the remote peer of the cancellation. This function will check to
+	 * ensure that file was truly cancelled and then notify the user that the transfer has
+	 * been completed. When the file is downloaded from several peers, only the cancelling peer
+	 * is dropped and its range is requested from the remaining peers.
+	 * <p>
+	 * Note: transfers cancelled by the sender do not cause the temporary
+	 * files to be deleted. The temporary files are saved so the transfer can be resumed
+	 * at a later time. 	  			 
+	 * 
+	 * @param fileID  specifies the ID of file being cancelled
+	 * @param peer  specifies peer who cancelled the transfer
+	 */
+	@Override
+	public void handleDataXferCancelled(byte[] fileID, String peer)
+	{		
+		FileStatus status = getFileStatus(fileID);		
+
+		if (status != null)
+		{
+			boolean isSwarmActive = false;
+			
+			synchronized(status)
+			{
+				removeRangeRequests(status, peer);
+				isSwarmActive = (status.rangeRequests != null) && !status.rangeRequests.isEmpty();
+			}
+			
+			if (isSwarmActive)
+			{
+				for (Action action : scheduleRangeRequests(status))
+				{
+					dispatcher.insertAction(action);
+				}
+				return;
+			}
+			
+			String filename = status.saveFileName;
+			
+			transferJournal.checkpoint();
+			fsa.closeFile(new File(status.saveFilePath, status.saveFileName).getAbsolutePath());
+			fireCompletedListener(filename, StatusCode.CANCELLED);
+		}		
+	}
+
+	/** 
+	 * pauseFile()
+	 * is called when the receiver wishes to pause a file transfer. The function will first
+	 * check to see if the provided file ID matches a pending file transfer. If it does not,
+	 * the function will return BAD_FILE_ID. Otherwise, the function will build a STOP_XFER
+	 * action to be sent to every peer sending the file, wait for the chunks already received to be written
+	 * and return the status code OK. 	  			 
+	 * 
+	 * @param fileID  specifies the fileId of the file to pause
+	 * @return OK or BAD_FILE_ID
+	 */
+	public int pauseFile(byte[] fileID)
+	{		
+		FileStatus status = getFileStatus(fileID);
+		
+		if (status == null)
+		{
+			return StatusCode.BAD_FILE_ID;
+		}
+		
+		ArrayList<String> peers = getTransferPeers(status);
+		
+		synchronized(status)
+		{
+			status.rangeRequests = null;
+			status.basisPath = null;
+		}
+		
+		for (String peer : peers)
+		{
+			dispatcher.insertAction(buildStopXferAction(fileID, peer));
+		}
+		
+		flushWrites(status);
+		transferJournal.checkpoint();
+		fsa.closeFile(new File(status.saveFilePath, status.saveFileName).getAbsolutePath());
+		
+		return StatusCode.OK;
+	}
 
 	/**
 	 * buildStopXferAction()
 	 * is a private function called by pauseFile(). This function will build a STOP_XFER
 	 * action to be sent to the file sender. This will notify the sender that the receiver
-	 * wishes to pause the transfer.
+	 * wishes to pause the transfer. It is also used to stop a corrupt bundle, in which case
+	 * the bundle ID takes the place of the file ID.
 	 * <p>
 	 * Note: all temporary files are saved in memory so the file transfer can be resumed
 	 * at a later time.
 	 * 
 	 * @param fileID  specifies the fileId for the file the receiver wishes to pause
-	 * @param status  instance of file status object
+	 * @param peer  specifies the peer sending the file
 	 * @return STOP_XFER action
 	 */
-	private Action buildStopXferAction(byte[] fileID, FileStatus status)
+	private Action buildStopXferAction(byte[] fileID, String peer)
 	{
 		Action action = new Action();
 		action.actionType = ActionType.STOP_XFER;
 		action.parameters.add(fileID);
-		action.peer = status.peer;
+		action.peer = peer;
 		return action;
 	}
 
@@ -489,7 +3037,12 @@ public class ReceiveManager implements ReceiveManagerListener
 		}		
 		
 		String path = new File(status.saveFilePath, status.saveFileName).getAbsolutePath();
-		fsa.delete(path);
+		
+		synchronized(writeLock)
+		{
+			fsa.delete(path);
+		}
+		transferJournal.remove(fileID);
 		
 		return StatusCode.OK;
 	}
@@ -533,10 +3086,35 @@ public class ReceiveManager implements ReceiveManagerListener
 	 * resetState()
 	 * is called by the File Transfer Module when the user specifies a new AllJoyn
 	 * session to be used. This function clears the hash map storing the file transfer 
-	 * records. 
+	 * records, forgets the bundles being received and the contents received inline, and
+	 * discards the chunks waiting in the write pipeline. The journal keeps the progress of
+	 * the interrupted transfers so they can be resumed by requesting them again. 
 	 */
 	public void resetState()
 	{
-		fileStatuses.clear();		
+		transferJournal.checkpoint();
+		chunkSizeTuner.resetState();
+		fileStatuses.clear();
+		
+		synchronized(bundles)
+		{
+			bundles.clear();
+		}
+		
+		synchronized(inlineContents)
+		{
+			inlineContents.clear();
+			numInlineBytes = 0;
+		}
+		
+		synchronized(pendingWrites)
+		{
+			for (PendingWrite pendingWrite : pendingWrites)
+			{
+				numQueuedWriteBytes -= pendingWrite.length;
+			}
+			pendingWrites.clear();
+			pendingWrites.notifyAll();
+		}
 	}
 }
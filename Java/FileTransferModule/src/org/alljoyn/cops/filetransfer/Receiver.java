@@ -186,10 +186,116 @@ public class Receiver
 		
 		if (!peer.equals(localBusID))
 		{
-			receiveManagerListener.handleFileChunk(fileID, startByte, chunkLength, chunk);
+			receiveManagerListener.handleFileChunk(fileID, startByte, chunkLength, chunk, peer);
 		}		
 	}	
 	
+	/**
+	 * dataChunk()
+	 * is triggered when you receive a chunk that starts beyond the first 2 GB of a file from a
+	 * session peer. The chunk is handled in the same way as a chunk received through the
+	 * original Data Transfer interface.
+	 * 
+	 * @param fileID  specifies the file ID of the file the data belongs to
+	 * @param startByte  specifies the starting byte of the chunk relative to the file
+	 * @param chunkLength  specifies the length of data chunk
+	 * @param chunk  specifies the file data chunk
+	 */
+	@BusSignalHandler(iface="org.alljoyn.Cops.DataTransferV2", signal="dataChunk")
+	public void dataChunk(byte[] fileID, long startByte, int chunkLength, byte[] chunk)
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		if (!peer.equals(localBusID))
+		{
+			receiveManagerListener.handleFileChunk(fileID, startByte, chunkLength, chunk, peer);
+		}		
+	}
+	
+	/**
+	 * compressedDataChunk()
+	 * is triggered when you receive a compressed chunk of a file from a session peer. This
+	 * happens when the file was requested with a compression level and the chunk got smaller
+	 * when compressed. The chunk is passed to the ReceiveManager to be decompressed.
+	 * 
+	 * @param fileID  specifies the file ID of the file the data belongs to
+	 * @param startByte  specifies the starting byte of the chunk relative to the file
+	 * @param chunkLength  specifies the length of the chunk before compression
+	 * @param compressedChunk  specifies the compressed file data
+	 */
+	@BusSignalHandler(iface="org.alljoyn.Cops.CompressedDataTransfer", signal="compressedDataChunk")
+	public void compressedDataChunk(byte[] fileID, long startByte, int chunkLength, byte[] compressedChunk)
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		if (!peer.equals(localBusID))
+		{
+			receiveManagerListener.handleCompressedFileChunk(fileID, startByte, chunkLength, compressedChunk, 
+					peer);
+		}		
+	}
+	
+	/**
+	 * copyBlocks()
+	 * is triggered when the sender of a delta transfer replies with the ranges of the file that
+	 * can be copied from the older copy held locally. The reply is passed to the ReceiveManager.
+	 * 
+	 * @param fileID  specifies the file ID of the file
+	 * @param targetOffsets  specifies the offset in the file of each run of blocks
+	 * @param basisBlocks  specifies the first block of the older copy of each run
+	 * @param numBlocks  specifies the number of blocks of each run
+	 */
+	@BusSignalHandler(iface="org.alljoyn.Cops.DeltaTransfer", signal="copyBlocks")
+	public void copyBlocks(byte[] fileID, long[] targetOffsets, int[] basisBlocks, int[] numBlocks)
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		if (!peer.equals(localBusID))
+		{
+			receiveManagerListener.handleCopyBlocks(fileID, targetOffsets, basisBlocks, numBlocks, peer);
+		}		
+	}
+	
+	/**
+	 * bundleChunk()
+	 * is triggered when you receive a chunk of a bundle of files requested from a session peer.
+	 * The chunk is passed to the ReceiveManager to be split into the files of the bundle.
+	 * 
+	 * @param bundleID  specifies the ID of the bundle the data belongs to
+	 * @param startByte  specifies the starting byte of the chunk relative to the bundle
+	 * @param chunk  specifies the bundle data
+	 */
+	@BusSignalHandler(iface="org.alljoyn.Cops.BundleTransfer", signal="bundleChunk")
+	public void bundleChunk(byte[] bundleID, long startByte, byte[] chunk)
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		if (!peer.equals(localBusID))
+		{
+			receiveManagerListener.handleBundleChunk(bundleID, startByte, chunk, peer);
+		}		
+	}
+	
+	/**
+	 * inlineContent()
+	 * is triggered when you receive the contents of a small file that a session peer has just
+	 * announced to you. The contents are passed to the ReceiveManager to be kept until the file
+	 * is requested.
+	 * 
+	 * @param fileID  specifies the ID of the file
+	 * @param content  specifies the contents of the file
+	 */
+	@BusSignalHandler(iface="org.alljoyn.Cops.InlineTransfer", signal="inlineContent")
+	public void inlineContent(byte[] fileID, byte[] content)
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		if (!peer.equals(localBusID))
+		{
+			receiveManagerListener.handleInlineContent(fileID, content, peer);
+		}		
+	}
+	
 	/**
 	 * stopDataXfer()
 	 * is triggered when the file transfer receiver wishes to pause or cancel the current file
@@ -232,6 +338,48 @@ public class Receiver
 		}		
 	}
 
+	/**
+	 * dataChunkAck()
+	 * is triggered when the receiver of a file acknowledges that a data chunk has been saved.
+	 * This function notifies the SendManager so the send window for the transfer matching the
+	 * file ID can slide and the next chunks can be queued.
+	 *  
+	 * @param fileID  specifies the ID of file being transferred
+	 * @param startByte  specifies the starting byte of the acknowledged chunk relative to the file
+	 * @param chunkLength  specifies the length of the acknowledged chunk
+	 */
+	@BusSignalHandler(iface="org.alljoyn.Cops.DataTransfer", signal="dataChunkAck")
+	public void dataChunkAck(byte[] fileID, int startByte, int chunkLength)
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		if (!peer.equals(localBusID))
+		{
+			sendManagerListener.handleDataChunkAck(fileID, startByte, chunkLength, peer);
+		}		
+	}
+	
+	/**
+	 * dataChunkAck()
+	 * is triggered when the receiver of a file acknowledges that a data chunk starting beyond
+	 * the first 2 GB of the file has been saved. The acknowledgement is handled in the same way
+	 * as one received through the original Data Transfer interface.
+	 *  
+	 * @param fileID  specifies the ID of file being transferred
+	 * @param startByte  specifies the starting byte of the acknowledged chunk relative to the file
+	 * @param chunkLength  specifies the length of the acknowledged chunk
+	 */
+	@BusSignalHandler(iface="org.alljoyn.Cops.DataTransferV2", signal="dataChunkAck")
+	public void dataChunkAck(byte[] fileID, long startByte, int chunkLength)
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		if (!peer.equals(localBusID))
+		{
+			sendManagerListener.handleDataChunkAck(fileID, startByte, chunkLength, peer);
+		}		
+	}
+
 	/**
 	 * resetState()
 	 * is called by the File Transfer Module when specifies a new AllJoyn session to be used.
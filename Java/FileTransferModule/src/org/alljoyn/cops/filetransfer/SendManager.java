@@ -16,8 +16,20 @@
 
 package org.alljoyn.cops.filetransfer;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.alljoyn.cops.filetransfer.data.Action;
 import org.alljoyn.cops.filetransfer.data.Action.ActionType;
@@ -28,6 +40,9 @@ import org.alljoyn.cops.filetransfer.data.ProgressDescriptor.State;
 import org.alljoyn.cops.filetransfer.data.StatusCode;
 import org.alljoyn.cops.filetransfer.listener.RequestDataReceivedListener;
 import org.alljoyn.cops.filetransfer.listener.SendManagerListener;
+import org.alljoyn.cops.filetransfer.utility.BlockSignatures;
+import org.alljoyn.cops.filetransfer.utility.BundleFrame;
+import org.alljoyn.cops.filetransfer.utility.ChunkCompressor;
 import org.alljoyn.cops.filetransfer.utility.Logger;
 
 /**
@@ -38,19 +53,89 @@ import org.alljoyn.cops.filetransfer.utility.Logger;
  * perspective, this module is the driving force behind sending files to other session 
  * peers. 
  * <p>
+ * Concurrent transfers share the Dispatcher using deficit round robin scheduling. Peers
+ * are served in turn, each receiving an equal share of bytes regardless of the chunk size
+ * it requested, and the transfers of each peer are served in turn within that share. 
+ * A receiver may request several ranges of the same file at once. Each range is tracked
+ * as its own transfer, so the ranges are served in parallel, and a new request replaces
+ * the transfers of the same file to the same peer whose ranges it overlaps.
+ * <p>
+ * The scheduler queues at most MAX_QUEUED_CHUNKS chunks in the Dispatcher, and only while the
+ * queued chunks fit in the memory budget of the Dispatcher. When either limit is reached the
+ * transfers are deferred until a queued chunk has been sent.
+ * <p>
+ * The bandwidth limits of the Dispatcher are applied by the scheduler. A transfer that is over
+ * its global, peer or transfer limit is passed over until its limit allows it to send again, and
+ * the scheduler is woken up at that time, so chunks never wait for the limits in the Dispatcher
+ * where they would hold up control messages and other transfers.
+ * <p>
+ * File chunks are read ahead of time on a background thread so the Dispatcher is not
+ * held up by disk reads. Each transfer prefetches up to a configurable number of chunks,
+ * and the total size of all prefetched chunks is bounded by a configurable memory limit.
+ * <p>
+ * A receiver may ask for the chunks to be compressed. Each chunk is then deflated on the
+ * prefetch thread and sent as a compressed chunk, unless it does not get smaller, in which
+ * case it is sent as it is. Files that are already compressed, such as archives, images
+ * and video, are never compressed.
+ * <p>
+ * A receiver that holds an older copy of a file may send the signatures of its blocks. The
+ * file is then scanned on a separate thread with a rolling checksum, and the receiver is told
+ * which ranges of the file match blocks of its copy, so it only requests the remaining ranges.
+ * Files are scanned one at a time and at most MAX_PENDING_DELTAS scans wait their turn.
+ * <p>
+ * A receiver may request many small files at once as a bundle. The files are streamed back to
+ * back from a separate thread in chunks that each carry several files, framed as described by
+ * {@link BundleFrame}. Bundles bypass the scheduler and are held back only by the memory budget
+ * of the Dispatcher and the bandwidth limits. Bundles are streamed one at a time, at most
+ * MAX_PENDING_BUNDLES bundles wait their turn, and a bundle is stopped by a stopDataXfer signal
+ * carrying its bundle ID.
+ * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
  * {@link FileTransferModule} class.
  */
 public class SendManager implements SendManagerListener
 {
+	/** Class Constant **/
+	private static final int DEFAULT_WINDOW_SIZE = 4;
+	private static final int MAX_QUEUED_CHUNKS = 4;
+	private static final int SCHEDULER_QUANTUM = 1024;
+	private static final int DEFAULT_PREFETCH_DEPTH = 2;
+	private static final int DEFAULT_PREFETCH_MEMORY_LIMIT = 1048576;
+	private static final int MAX_DELTA_BLOCK_SIZE = 16777216;
+	private static final int MAX_COPY_RUNS = 4096;
+	private static final int DELTA_SCAN_BUFFER_SIZE = 262144;
+	private static final int MAX_BUNDLE_FILES = 4096;
+	private static final int MAX_BUNDLE_CHUNK_LENGTH = ChunkSizeTuner.DEFAULT_MAX_CHUNK_SIZE;
+	private static final int MAX_PENDING_BUNDLES = 16;
+	private static final int MAX_PENDING_DELTAS = 16;
+	private static final long MAX_THROTTLE_DELAY = 100;
+	
 	/** Member Variables **/
-	private ArrayList<FileStatus> sendingFiles;
+	private LinkedHashMap<String, FileStatus> sendingFiles;
+	private HashMap<String, ArrayDeque<FileStatus>> peerTransfers;
+	private HashMap<String, Integer> peerDeficits;
+	private ArrayDeque<String> peerSchedule;
+	private String servingPeer;
+	private int numQueuedChunks;
+	private boolean isQueueBudgetExhausted;
+	private long throttleDelay;
+	private boolean isThrottleRetryPending;
+	private ScheduledExecutorService throttleExecutor;
 	private FileSystemAbstraction fsa;
 	private Dispatcher dispatcher;
 	private PermissionsManager permissionsManager;
 	private RequestDataReceivedListener requestDataReceivedListener;	
     private final Object requestDataReceivedListenerLock;
+    private int windowSize;
+    private ExecutorService prefetchExecutor;
+    private int prefetchDepth;
+    private int prefetchMemoryLimit;
+    private int prefetchMemoryUsed;
+    private HashSet<String> sendingBundles;
+    private ExecutorService bundleExecutor;
+    private ExecutorService deltaExecutor;
+    private final Object deltaLock;
     
 	/*------------------------------------------------------------------------*
      * Constructor
@@ -83,16 +168,76 @@ public class SendManager implements SendManagerListener
 	public SendManager(Dispatcher dispatcher, FileSystemAbstraction fsa, 
 			PermissionsManager pm)
 	{
-		this.sendingFiles = new ArrayList<FileStatus>();
+		this.sendingFiles = new LinkedHashMap<String, FileStatus>();
+		this.peerTransfers = new HashMap<String, ArrayDeque<FileStatus>>();
+		this.peerDeficits = new HashMap<String, Integer>();
+		this.peerSchedule = new ArrayDeque<String>();
+		this.servingPeer = null;
+		this.numQueuedChunks = 0;
+		this.isQueueBudgetExhausted = false;
+		this.throttleDelay = Long.MAX_VALUE;
+		this.isThrottleRetryPending = false;
 		this.fsa = fsa;
 		this.dispatcher = dispatcher;
 
 		this.requestDataReceivedListener = null;
 		this.permissionsManager = pm;
+		this.windowSize = DEFAULT_WINDOW_SIZE;
+		this.prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+		this.prefetchMemoryLimit = DEFAULT_PREFETCH_MEMORY_LIMIT;
+		this.prefetchMemoryUsed = 0;
+		this.prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread prefetchThread = new Thread(runnable);
+				prefetchThread.setDaemon(true);
+				return prefetchThread;
+			}
+		});
+		this.throttleExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread throttleThread = new Thread(runnable);
+				throttleThread.setDaemon(true);
+				return throttleThread;
+			}
+		});
+		this.sendingBundles = new HashSet<String>();
+		this.bundleExecutor = createWorkerExecutor(MAX_PENDING_BUNDLES);
+		this.deltaExecutor = createWorkerExecutor(MAX_PENDING_DELTAS);
+		this.deltaLock = new Object();
 
         this.requestDataReceivedListenerLock = new Object();
 	}   
 	
+	/**
+	 * createWorkerExecutor()
+	 * is a private helper function that creates an executor running its tasks one at a time on
+	 * a daemon thread. Tasks submitted while the specified number of tasks are already waiting
+	 * are rejected.
+	 * 
+	 * @param maxPendingTasks  specifies the number of tasks that may wait for the thread
+	 * @return the executor
+	 */
+	private static ExecutorService createWorkerExecutor(int maxPendingTasks)
+	{
+		return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(maxPendingTasks), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread workerThread = new Thread(runnable);
+				workerThread.setDaemon(true);
+				return workerThread;
+			}
+		});
+	}
+	
 	/**
 	 * handleFileRequest()
 	 * is called when a session peer wants to request an announced or shared file. If the specified
@@ -107,9 +252,29 @@ public class SendManager implements SendManagerListener
 	 * @param maxChunkLength  specifies the maximum chunk size
 	 * @return OK or BAD_FILE_ID
 	 */
-	public int handleFileRequest(byte[] fileID, int startByte, int length, String peer, int maxChunkLength)
+	public int handleFileRequest(byte[] fileID, long startByte, long length, String peer, int maxChunkLength)
+	{		
+		return startSendingFile(fileID, startByte, length, peer, maxChunkLength, 0);
+	}
+	
+	/**
+	 * handleFileRequest()
+	 * is called when a session peer requests an announced or shared file and asks for the file
+	 * chunks to be compressed. See the uncompressed version for an explanation of how the request
+	 * is handled. The compression level is ignored if the file is already compressed.
+	 * 
+	 * @param fileID  specifies the file ID of the file being requested
+	 * @param startByte  specifies the starting position within the file (usually zero)
+	 * @param length  specifies the number of bytes to be sent (usually the length of the file)
+	 * @param peer  specifies the intended recipient of the file
+	 * @param maxChunkLength  specifies the maximum chunk size
+	 * @param compressionLevel  specifies the compression level, zero for none
+	 * @return OK or BAD_FILE_ID
+	 */
+	public int handleFileRequest(byte[] fileID, long startByte, long length, String peer, int maxChunkLength,
+			int compressionLevel)
 	{		
-		return startSendingFile(fileID, startByte, length, peer, maxChunkLength);
+		return startSendingFile(fileID, startByte, length, peer, maxChunkLength, compressionLevel);
 	}
 
 	/**
@@ -122,17 +287,25 @@ public class SendManager implements SendManagerListener
 	 * @param length  specifies the number of bytes to be sent (usually the length of the file)
 	 * @param peer  specifies the intended recipient of the file
 	 * @param maxChunkLength  specifies the maximum chunk size
+	 * @param compressionLevel  specifies the compression level, zero for none
 	 * @return OK or BAD_FILE_ID
 	 */
-	private int startSendingFile(byte[] fileID, int startByte, int length,
-			String peer, int maxChunkLength)
+	private int startSendingFile(byte[] fileID, long startByte, long length,
+			String peer, int maxChunkLength, int compressionLevel)
 	{
 		FileDescriptor fileDescriptor = permissionsManager.getLocalFileDescriptor(fileID);
 		
 		if(fileDescriptor != null)
 		{
+			if (ChunkCompressor.isCompressedFileType(fileDescriptor.filename))
+			{
+				compressionLevel = 0;
+			}
+			compressionLevel = Math.min(Math.max(compressionLevel, 0), ChunkCompressor.BEST_COMPRESSION);
+			
 			String path = fsa.buildPathFromDescriptor(fileDescriptor);
-			getFileChunkAndQueueDataAction(fileID, startByte, length, peer, maxChunkLength, path, fileDescriptor);
+			getFileChunkAndQueueDataAction(fileID, startByte, length, peer, maxChunkLength, compressionLevel,
+					path, fileDescriptor);
 			
 			synchronized(requestDataReceivedListenerLock)
 			{
@@ -151,63 +324,93 @@ public class SendManager implements SendManagerListener
 	
 	/**
 	 * getFileChunkAndQueueDataAction()
-	 * is a private function called by startSendingFile(). This function takes the input parameters
-	 * and gets the next available file chunk and inserts a DATA_CHUNK action into the dispatcher
-	 * for processing. The file chunk is sent to the specified peer.
+	 * is a private function called by startSendingFile(). This function creates a file status for
+	 * the requested transfer and hands it to the scheduler, which inserts DATA_CHUNK actions into the
+	 * dispatcher as the transfer's turn comes up. The file chunks are sent to the specified peer.
 	 * 
 	 * @param fileID  specifies the file ID of the file being requested
 	 * @param startByte  specifies the starting position within the file (usually zero)
 	 * @param length  specifies the number of bytes to be sent (usually the length of the file)
 	 * @param peer  specifies the intended recipient of the file
 	 * @param maxChunkLength  specifies the maximum chunk size
+	 * @param compressionLevel  specifies the compression level, zero for none
 	 * @param path  specifies the path of the offered file
 	 * @param fileDescriptor  specifies the file descriptor for the file being offered
 	 */
-	private void getFileChunkAndQueueDataAction(byte[] fileID, int startByte, int length, String peer, 
-			int maxChunkLength, String path, FileDescriptor fileDescriptor)
+	private void getFileChunkAndQueueDataAction(byte[] fileID, long startByte, long length, String peer, 
+			int maxChunkLength, int compressionLevel, String path, FileDescriptor fileDescriptor)
 	{
-		if (length <= maxChunkLength)
-		{
-			byte[] chunk = getFileChunk(path, startByte, length);
-			Action action = createAction(fileDescriptor, peer, startByte, length, chunk);				
-			dispatcher.insertAction(action);
-		}
-		else
-		{
-			byte[] chunk = getFileChunk(path, startByte, maxChunkLength);
-			Action action = createAction(fileDescriptor, peer, startByte, maxChunkLength, chunk);
-			createFileStatus(fileDescriptor, startByte, length, peer, maxChunkLength);
-			dispatcher.insertAction(action);				
-		}
+		createFileStatus(fileDescriptor, startByte, length, peer, maxChunkLength, compressionLevel);
+		scheduleChunks();
 	}
 	
 	/**
 	 * getFileChunk()
 	 * is a private function that is called by getFileChunkAndQueueDataAction(). This function calls
 	 * getChunk() in the FileSystemAbstraction to get the next chunk of a file and returns the file
-	 * chunk as a byte array.
+	 * chunk as a byte array. The chunk buffer is taken from the BufferPool and is returned to the
+	 * pool by the Dispatcher once the chunk has been transmitted. If the chunk cannot be read in
+	 * full, the buffer is returned to the pool right away so none of its stale contents are sent.
 	 * 
 	 * @param path  specifies the path to the file being transferred
 	 * @param startByte  specifies the starting position for the file data
 	 * @param chunkLength  specifies the number of bytes in the chunk
-	 * @return file chunk
+	 * @return file chunk, or null if the chunk could not be read
 	 */
-	private byte[] getFileChunk(String path, int startByte, int chunkLength)
+	private byte[] getFileChunk(String path, long startByte, int chunkLength)
 	{
-		byte[] chunk = new byte[chunkLength];
+		byte[] chunk = BufferPool.getInstance().acquire(chunkLength);
+		int numBytesRead = -1;
 		
 		try
 		{
-			fsa.getChunk(path, chunk, startByte, chunkLength);
+			numBytesRead = fsa.getChunk(path, chunk, startByte, chunkLength);
 		}
 		catch (Exception e) 
 		{  
 			Logger.log(e.toString());
 		}
 		
+		if (numBytesRead != chunkLength)
+		{
+			Logger.log("read " + numBytesRead + " of " + chunkLength + " bytes at offset " + startByte 
+					+ " of " + path);
+			BufferPool.getInstance().release(chunk);
+			return null;
+		}
+		
 		return chunk;
 	}
 	
+	/**
+	 * compressChunk()
+	 * is a private function that compresses the specified chunk at the compression level of the
+	 * transfer. If the compressed chunk is smaller, the chunk buffer is returned to the BufferPool
+	 * and the compressed chunk is returned. Otherwise the chunk itself is returned. A compressed
+	 * chunk can therefore be recognized by being shorter than the data it holds.
+	 * 
+	 * @param sendingFile  instance of FileStatus object matching the file being sent
+	 * @param chunk  specifies the chunk to compress
+	 * @return compressed chunk, or the chunk itself if it was not compressed
+	 */
+	private byte[] compressChunk(FileStatus sendingFile, byte[] chunk)
+	{
+		if ((sendingFile.compressionLevel == 0) || (chunk == null))
+		{
+			return chunk;
+		}
+		
+		byte[] compressedChunk = ChunkCompressor.compress(chunk, chunk.length, sendingFile.compressionLevel);
+		
+		if (compressedChunk == null)
+		{
+			return chunk;
+		}
+		
+		BufferPool.getInstance().release(chunk);
+		return compressedChunk;
+	}
+	
 	/**
 	 * createAction()
 	 * is a private function that is called by getFileChunkAndQueueDataAction(). This function
@@ -218,10 +421,11 @@ public class SendManager implements SendManagerListener
 	 * @param startByte  specifies the starting position of the data 
 	 * @param length  specifies the number of bytes being sent
 	 * @param chunk  specifies the chunk of the file being sent
+	 * @param isCompressed  specifies whether the chunk is compressed
 	 * @return reference to DATA_CHUNK Action
 	 */
-	private Action createAction(FileDescriptor fileDescriptor, String peer, int startByte, int length, 
-			byte[] chunk)
+	private Action createAction(FileDescriptor fileDescriptor, String peer, long startByte, int length, 
+			byte[] chunk, boolean isCompressed)
 	{
 		Action action = new Action();
 		action.actionType = ActionType.DATA_CHUNK;
@@ -230,6 +434,7 @@ public class SendManager implements SendManagerListener
 		action.parameters.add(startByte);
 		action.parameters.add(length);
 		action.parameters.add(chunk);
+		action.parameters.add(isCompressed);
 		
 		return action;
 	}
@@ -237,29 +442,55 @@ public class SendManager implements SendManagerListener
 	/**
 	 * createFileStatus()
 	 * is a private function that is called by getFileChunkAndQueueDataAction(). This function creates
-	 * a file status object so we can monitor the sending progress of the file. 
+	 * a file status object so we can monitor the sending progress of the file and adds the transfer
+	 * to the schedule of the receiving peer. Previous transfers of the same file to the same peer are
+	 * replaced if their ranges overlap the new range.
 	 *  
 	 * @param fileDescriptor  specifies the file descriptor for the file being transfered
 	 * @param startByte  specifies the starting position for the file data
 	 * @param length  specifies the length of the file
 	 * @param peer  specifies the recipient of the file
 	 * @param chunkLength  specifies the length of each file chunk
+	 * @param compressionLevel  specifies the compression level, zero for none
+	 * @return the file status object that was created
 	 */
-	private void createFileStatus(FileDescriptor fileDescriptor, int startByte, int length, String peer, 
-			int chunkLength)
+	private FileStatus createFileStatus(FileDescriptor fileDescriptor, long startByte, long length, String peer, 
+			int chunkLength, int compressionLevel)
 	{
 		FileStatus fileStatus = new FileStatus();
 		fileStatus.fileId = fileDescriptor.fileID;
 		fileStatus.startByte = startByte;
 		fileStatus.length = length;
 		fileStatus.peer = peer;
-		fileStatus.numBytesSent = chunkLength;
+		fileStatus.numBytesSent = 0;
 		fileStatus.chunkLength = chunkLength;
+		fileStatus.numBytesTransmitted = 0;
+		fileStatus.numBytesAcked = 0;
+		fileStatus.isAckEnabled = false;
+		fileStatus.numBytesPrefetched = 0;
+		fileStatus.prefetchedChunks = new ArrayDeque<byte[]>();
+		fileStatus.compressionLevel = compressionLevel;
+		fileStatus.numBytesOnWire = 0;
 		
 		synchronized(sendingFiles)
 		{
-		    sendingFiles.add(fileStatus);
+			removeOverlappingTransfers(fileStatus.fileId, peer, startByte, startByte + length);
+			sendingFiles.put(getTransferKey(fileStatus.fileId, peer, startByte), fileStatus);
+			
+			ArrayDeque<FileStatus> transfers = peerTransfers.get(peer);
+			
+			if (transfers == null)
+			{
+				transfers = new ArrayDeque<FileStatus>();
+				peerTransfers.put(peer, transfers);
+				peerDeficits.put(peer, 0);
+				peerSchedule.add(peer);
+			}
+			
+			transfers.add(fileStatus);
 		}
+		
+		return fileStatus;
 	}
 	
 	/**
@@ -273,188 +504,1254 @@ public class SendManager implements SendManagerListener
 	 * @param length  specifies the length of the file
 	 * @param peer  specifies the recipient of the file
 	 * @param maxChunkLength  specifies the length of each file chunk
+	 * @param compressionLevel  specifies the compression level, zero for none
 	 */
 	@Override
-	public int sendFile(byte[] fileID, int startByte, int length, String peer,
-			int maxChunkLength)
+	public int sendFile(byte[] fileID, long startByte, long length, String peer,
+			int maxChunkLength, int compressionLevel)
 	{
-		return startSendingFile(fileID, startByte, length, peer, maxChunkLength);		
+		return startSendingFile(fileID, startByte, length, peer, maxChunkLength, compressionLevel);		
 	}
 	
 	/**
-	 * dataSent()
-	 * is the function implemented for the SendManagerListener interface. Its sole responsibility
-	 * is to call queueNextChunk() if there is an incomplete file transfer inside the sendingFiles
-	 * list.
+	 * sendDelta()
+	 * is a function implemented for the SendManagerListener interface. This function validates
+	 * the block signatures sent by a peer that holds an older copy of the file and submits a scan
+	 * of the file for the blocks of that copy to the delta thread. The matching ranges are sent to
+	 * the peer in a COPY_BLOCKS action once the scan is complete. If too many scans are waiting the
+	 * request is refused and the peer requests the whole file.
+	 * 
+	 * @param fileID  specifies the ID of the file
+	 * @param blockSize  specifies the size of the blocks of the older copy
+	 * @param weakChecksums  specifies the weak rolling checksum of each block
+	 * @param strongHashes  specifies the strong hash of each block
+	 * @param peer  specifies the peer requesting the file
+	 * @return OK, BAD_FILE_ID, INVALID or REQUEST_DENIED
 	 */
 	@Override
-	public void dataSent()
-	{
-	    FileStatus sendingFile = null;
-	    
-	    synchronized (sendingFiles)
-	    {
-	        if (sendingFiles.size() > 0)
-	        {
-	            sendingFile = sendingFiles.get(0);
-	        }
-        }
-	    
-		if (sendingFile != null)
+	public int sendDelta(byte[] fileID, int blockSize, int[] weakChecksums, byte[] strongHashes, final String peer)
+	{
+		final FileDescriptor fileDescriptor = permissionsManager.getLocalFileDescriptor(fileID);
+		
+		if (fileDescriptor == null)
 		{
-			queueNextChunk(sendingFile);
+			return StatusCode.BAD_FILE_ID;
+		}
+		else if ((blockSize <= 0) || (blockSize > MAX_DELTA_BLOCK_SIZE) || (weakChecksums == null) 
+				|| (strongHashes == null) 
+				|| (strongHashes.length != (weakChecksums.length * BlockSignatures.STRONG_HASH_LENGTH)))
+		{
+			return StatusCode.INVALID;
+		}
+		
+		final BlockSignatures signatures = new BlockSignatures(blockSize, weakChecksums, strongHashes);
+		
+		synchronized(deltaLock)
+		{
+			try
+			{
+				deltaExecutor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						queueCopyBlocksAction(fileDescriptor, signatures, peer);
+					}
+				});
+			}
+			catch (RejectedExecutionException e)
+			{
+				Logger.log("too many delta scans waiting, refusing delta request");
+				return StatusCode.REQUEST_DENIED;
+			}
 		}
+		return StatusCode.OK;
 	}
 	
 	/**
-	* queueNextChunk()
-	* is a private function called by dataSent() method. This function takes the first file status object
-	* from the sendingFiles list and inserts the next file chunk into the Dispatcher for transmission.
-	* 
-	* @param sendingFile  instance of FileStatus object matching the file being sent
-	**/
-	private void queueNextChunk(FileStatus sendingFile)
+	 * queueCopyBlocksAction()
+	 * is a private function called on the delta thread by sendDelta(). This function finds the
+	 * ranges of the file that match blocks of the older copy held by the peer and inserts a
+	 * COPY_BLOCKS action into the Dispatcher. If the file cannot be read, the ranges found so far
+	 * are sent and the peer requests the rest of the file. Nothing is sent if the scan is
+	 * interrupted because the state was reset.
+	 * 
+	 * @param fileDescriptor  specifies the file descriptor of the file
+	 * @param signatures  specifies the block signatures of the older copy
+	 * @param peer  specifies the peer requesting the file
+	 */
+	private void queueCopyBlocksAction(FileDescriptor fileDescriptor, BlockSignatures signatures, String peer)
 	{
-		FileDescriptor fileDescriptor = permissionsManager.getLocalFileDescriptor(sendingFile.fileId);
+		ArrayList<long[]> runs = new ArrayList<long[]>();
 		
-		if (fileDescriptor != null)
+		try
 		{
-			String path = fsa.buildPathFromDescriptor(fileDescriptor);
-			String peer = sendingFile.peer;
+			findCopyRuns(fsa.buildPathFromDescriptor(fileDescriptor), fileDescriptor.getSize(), signatures, runs);
+		}
+		catch (InterruptedException e)
+		{
+			Logger.log(e.toString());
+			return;
+		}
+		catch (Exception e)
+		{
+			Logger.log(e.toString());
+		}
+		
+		long[] targetOffsets = new long[runs.size()];
+		int[] basisBlocks = new int[runs.size()];
+		int[] numBlocks = new int[runs.size()];
+		
+		for (int i = 0; i < runs.size(); i++)
+		{
+			targetOffsets[i] = runs.get(i)[0];
+			basisBlocks[i] = (int) runs.get(i)[1];
+			numBlocks[i] = (int) runs.get(i)[2];
+		}
+		
+		Logger.log("found " + runs.size() + " matching runs for delta transfer");
+		
+		Action action = new Action();
+		action.actionType = ActionType.COPY_BLOCKS;
+		action.peer = peer;
+		action.parameters.add(fileDescriptor.fileID);
+		action.parameters.add(targetOffsets);
+		action.parameters.add(basisBlocks);
+		action.parameters.add(numBlocks);
+		dispatcher.insertAction(action);
+	}
+	
+	/**
+	 * findCopyRuns()
+	 * is a private function that slides a window of one block over the specified file and looks
+	 * up the rolling checksum of the window in the block signatures. When a block matches, the
+	 * window jumps past it, otherwise it moves forward by one byte. Matches that continue the
+	 * previous run in both files extend that run. At most MAX_COPY_RUNS runs are found so the
+	 * reply fits in a single AllJoyn message. The scan stops when the thread is interrupted.
+	 * 
+	 * @param path  specifies the path of the file
+	 * @param length  specifies the length of the file
+	 * @param signatures  specifies the block signatures of the older copy
+	 * @param runs  receives the runs as arrays of target offset, first block and number of blocks
+	 * @throws Exception  thrown if the file cannot be read or is shorter than expected, or the scan
+	 * is interrupted
+	 */
+	private void findCopyRuns(String path, long length, BlockSignatures signatures, ArrayList<long[]> runs) 
+			throws Exception
+	{
+		int blockSize = signatures.getBlockSize();
+		
+		if ((signatures.getNumBlocks() == 0) || (length < blockSize))
+		{
+			return;
+		}
+		
+		byte[] buffer = new byte[Math.max(DELTA_SCAN_BUFFER_SIZE, 2 * blockSize)];
+		long bufferStart = 0;
+		int bufferLength = 0;
+		long position = 0;
+		int checksum = 0;
+		boolean isChecksumValid = false;
+		
+		while (((position + blockSize) <= length) && (runs.size() < MAX_COPY_RUNS))
+		{
+			int offset = (int) (position - bufferStart);
+			boolean hasNextByte = (position + blockSize) < length;
 			
-			if ((sendingFile.length - sendingFile.numBytesSent) <= sendingFile.chunkLength)
+			if ((offset + blockSize + (hasNextByte ? 1 : 0)) > bufferLength)
 			{
-				int startByte = sendingFile.numBytesSent + sendingFile.startByte;
-				int length = (sendingFile.length - sendingFile.numBytesSent);
+				if (Thread.interrupted())
+				{
+					throw new InterruptedException();
+				}
 				
-				byte[] chunk = getFileChunk(path, startByte, length);
-				Action action = createAction(fileDescriptor, peer, startByte, length, chunk);
-				deleteFileStatus(sendingFile.fileId);
-				dispatcher.insertAction(action);			
+				bufferStart = position;
+				bufferLength = (int) Math.min(buffer.length, length - position);
+				offset = 0;
+				
+				if (fsa.getChunk(path, buffer, position, bufferLength) != bufferLength)
+				{
+					throw new Exception("unable to read " + path);
+				}
+			}
+			
+			if (!isChecksumValid)
+			{
+				checksum = BlockSignatures.weakChecksum(buffer, offset, blockSize);
+				isChecksumValid = true;
+			}
+			
+			int block = signatures.findBlock(checksum, buffer, offset);
+			
+			if (block >= 0)
+			{
+				addCopyRun(runs, position, block, blockSize);
+				position += blockSize;
+				isChecksumValid = false;
 			}
 			else
 			{
-				int startByte = sendingFile.numBytesSent + sendingFile.startByte;
-				byte[] chunk = getFileChunk(path, startByte, sendingFile.chunkLength);
-				Action action = createAction(fileDescriptor, peer, startByte, sendingFile.chunkLength, chunk);
-				sendingFile.numBytesSent += sendingFile.chunkLength;
-				dispatcher.insertAction(action);			
+				if (hasNextByte)
+				{
+					checksum = BlockSignatures.rollChecksum(checksum, buffer[offset], buffer[offset + blockSize], 
+							blockSize);
+				}
+				position++;
 			}
 		}
 	}
 	
 	/**
-	 * cancelFile()
-	 * is called when the sender wishes to cancel a file transfer that matches the specified file ID.
-	 * This method will iterate over the list of pending file transfers to try and match the file ID.
-	 * If a match is found, a cancel action is queued into the Dispatcher to notify the receiver that
-	 * the sender has cancelled the file transfer. If a match is not found, the fileId does not match
-	 * any current file transfers so we return FILE_NOT_BEING_TRANSFERRED.
-	 *          
-	 * @param fileID  specifies the file ID of the file being cancelled
-	 * @return OK or FILE_NOT_BEING_TRANSFERRED
+	 * addCopyRun()
+	 * is a private helper function called by findCopyRuns() that records a matching block. The
+	 * block extends the last run if it follows that run in both the file and the older copy.
+	 * 
+	 * @param runs  specifies the runs found so far
+	 * @param targetOffset  specifies the offset of the block in the file
+	 * @param block  specifies the index of the matching block of the older copy
+	 * @param blockSize  specifies the size of the blocks
 	 */
-	public int cancelFile(byte[] fileID)
+	private void addCopyRun(ArrayList<long[]> runs, long targetOffset, int block, int blockSize)
 	{
-		String peer = deleteFileStatus(fileID);
-
-		if (peer != null)
+		if (!runs.isEmpty())
 		{
-			queueCancelAction(fileID, peer);
-			return StatusCode.OK;
-		}
-		else
-		{
-			return StatusCode.FILE_NOT_BEING_TRANSFERRED;
+			long[] lastRun = runs.get(runs.size() - 1);
+			
+			if (((lastRun[0] + (lastRun[2] * blockSize)) == targetOffset) && ((lastRun[1] + lastRun[2]) == block))
+			{
+				lastRun[2]++;
+				return;
+			}
 		}
+		runs.add(new long[] { targetOffset, block, 1 });
 	}
-
+	
 	/**
-	 * handleStopDataXfer()
-	 * is called when the receiver wishes to pause or cancel a file transfer. This function will
-	 * look at at all current file transfers and delete the file status that matches the specified
-	 * file ID. 
-	 *          
-	 * @param fileID  specifies the file ID of the file being requested
-	 * @param peer  specifies the peer receiving the file
-	 */ 
-	public void handleStopDataXfer(byte[] fileID, String peer)
+	 * sendBundle()
+	 * is a function implemented for the SendManagerListener interface. This function validates a
+	 * request for several files as a single bundle and submits it to the bundle thread, which
+	 * streams the files to the peer in BUNDLE_CHUNK actions. Files that are not announced or shared
+	 * are framed as unavailable so the peer can tell which files it did not get. The chunk length
+	 * is limited to MAX_BUNDLE_CHUNK_LENGTH. REQUEST_DENIED is returned if too many bundles are
+	 * already waiting, so the peer requests the files one at a time instead.
+	 * 
+	 * @param bundleID  specifies the ID of the bundle chosen by the peer
+	 * @param fileIDs  specifies the file IDs of the requested files, one after the other
+	 * @param maxChunkLength  specifies the max length of each chunk of the bundle
+	 * @param peer  specifies the peer requesting the files
+	 * @return OK, BAD_FILE_ID, REQUEST_DENIED or INVALID
+	 */
+	@Override
+	public int sendBundle(final byte[] bundleID, byte[] fileIDs, int maxChunkLength, final String peer)
 	{
-		deleteFileStatus(fileID);
+		if ((bundleID == null) || (fileIDs == null) || (fileIDs.length == 0) || (maxChunkLength <= 0)
+				|| ((fileIDs.length % BundleFrame.FILE_ID_LENGTH) != 0)
+				|| ((fileIDs.length / BundleFrame.FILE_ID_LENGTH) > MAX_BUNDLE_FILES))
+		{
+			return StatusCode.INVALID;
+		}
+		
+		final ArrayList<byte[]> files = new ArrayList<byte[]>();
+		boolean isAnyFileShared = false;
+		
+		for (int i = 0; i < (fileIDs.length / BundleFrame.FILE_ID_LENGTH); i++)
+		{
+			files.add(BundleFrame.getFileID(fileIDs, i));
+			isAnyFileShared |= (permissionsManager.getLocalFileDescriptor(files.get(i)) != null);
+		}
+		
+		if (!isAnyFileShared)
+		{
+			return StatusCode.BAD_FILE_ID;
+		}
+		
+		final int chunkLength = Math.min(maxChunkLength, MAX_BUNDLE_CHUNK_LENGTH);
+		final String bundleKey = getTransferKey(bundleID, peer, 0);
+		
+		synchronized(sendingBundles)
+		{
+			if (!sendingBundles.add(bundleKey))
+			{
+				return StatusCode.INVALID;
+			}
+			
+			try
+			{
+				bundleExecutor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							streamBundle(bundleID, files, chunkLength, peer);
+						}
+						catch (InterruptedException e)
+						{
+							Logger.log(e.toString());
+						}
+						finally
+						{
+							synchronized(sendingBundles)
+							{
+								sendingBundles.remove(bundleKey);
+							}
+						}
+					}
+				});
+			}
+			catch (RejectedExecutionException e)
+			{
+				Logger.log("too many bundles waiting, refusing bundle");
+				sendingBundles.remove(bundleKey);
+				return StatusCode.REQUEST_DENIED;
+			}
+		}
+		return StatusCode.OK;
 	}
 	
 	/**
-	 * deleteFileStatus()
-	 * is a private method called by handleStopDataXfer() and cancelFile(). Its main function is
-	 * to iterate over the sendingFiles list to find the file status object that matches the
-	 * specified file ID. If a match is found, the file status object is deleted from the sendingFiles
-	 * list. This effectively cancels that file transfer.
+	 * streamBundle()
+	 * is a private function called on the bundle thread by sendBundle(). This function writes the
+	 * header and data of each file into chunks of the bundle and inserts each full chunk into the
+	 * Dispatcher, waiting for room in its memory budget first. If a file cannot be read, the rest
+	 * of its frame is filled with zeros so the stream stays aligned, and the peer rejects the file
+	 * since it no longer matches its file ID. Streaming ends as soon as the bundle is stopped.
 	 * 
-	 * @param fileID  specifies the file ID for the file being cancelled
-	 * @return String  specifies the peer we are transferring the file to
+	 * @param bundleID  specifies the ID of the bundle
+	 * @param fileIDs  specifies the file IDs of the requested files
+	 * @param maxChunkLength  specifies the max length of each chunk of the bundle
+	 * @param peer  specifies the peer requesting the files
+	 * @throws InterruptedException  if the thread is interrupted while waiting for the Dispatcher
 	 */
-	private String deleteFileStatus(byte[] fileID)
+	private void streamBundle(byte[] bundleID, ArrayList<byte[]> fileIDs, int maxChunkLength, String peer) 
+			throws InterruptedException
 	{
-		String peer = null;
+		byte[] chunk = new byte[maxChunkLength];
+		byte[] readBuffer = new byte[maxChunkLength];
+		int chunkOffset = 0;
+		long streamOffset = 0;
 		
-		synchronized(sendingFiles)
+		for (byte[] fileID : fileIDs)
 		{
-    		for (int i = 0; (i < sendingFiles.size()) && (peer == null ); i++)
-    		{
-    			FileStatus fileStatus = sendingFiles.get(i);
-    			
-    			if (Arrays.equals(fileID, fileStatus.fileId))
+			FileDescriptor fileDescriptor = permissionsManager.getLocalFileDescriptor(fileID);
+			long length = (fileDescriptor == null) ? BundleFrame.UNAVAILABLE : fileDescriptor.getSize();
+			byte[] header = BundleFrame.writeHeader(fileID, length);
+			
+			for (int headerOffset = 0; headerOffset < header.length; )
+			{
+				int numBytes = Math.min(header.length - headerOffset, maxChunkLength - chunkOffset);
+				System.arraycopy(header, headerOffset, chunk, chunkOffset, numBytes);
+				headerOffset += numBytes;
+				chunkOffset += numBytes;
+				
+				if (chunkOffset == maxChunkLength)
+				{
+					if (!queueBundleChunk(bundleID, streamOffset, chunk, chunkOffset, peer))
+					{
+						return;
+					}
+					streamOffset += chunkOffset;
+					chunkOffset = 0;
+				}
+			}
+			
+			if (fileDescriptor == null)
+			{
+				continue;
+			}
+			
+			String path = fsa.buildPathFromDescriptor(fileDescriptor);
+			
+			for (long fileOffset = 0; fileOffset < length; )
+			{
+				int numBytes = (int) Math.min(length - fileOffset, maxChunkLength - chunkOffset);
+				
+				try
+				{
+					if (fsa.getChunk(path, readBuffer, fileOffset, numBytes) != numBytes)
+					{
+						Arrays.fill(readBuffer, 0, numBytes, (byte) 0);
+					}
+				}
+				catch (Exception e)
+				{
+					Logger.log(e.toString());
+					Arrays.fill(readBuffer, 0, numBytes, (byte) 0);
+				}
+				
+				System.arraycopy(readBuffer, 0, chunk, chunkOffset, numBytes);
+				fileOffset += numBytes;
+				chunkOffset += numBytes;
+				
+				if (chunkOffset == maxChunkLength)
+				{
+					if (!queueBundleChunk(bundleID, streamOffset, chunk, chunkOffset, peer))
+					{
+						return;
+					}
+					streamOffset += chunkOffset;
+					chunkOffset = 0;
+				}
+			}
+			
+			synchronized(sendingFiles)
+			{
+				closeFileIfUnused(fileID);
+			}
+			
+			synchronized(requestDataReceivedListenerLock)
+			{
+    			if (requestDataReceivedListener != null)
     			{
-    				peer = fileStatus.peer;
-    				sendingFiles.remove(i);
+    				requestDataReceivedListener.fileRequestReceived(fileDescriptor.filename);
     			}
-    		}
+			}
 		}
 		
-		return peer;
+		if (chunkOffset > 0)
+		{
+			queueBundleChunk(bundleID, streamOffset, chunk, chunkOffset, peer);
+		}
 	}
 	
 	/**
-	 * queueCancelAction()
-	 * is a private function called by cancelFile() and will insert a XFER_CANCELLED
-	 * action into the Dispatcher. This will alert the receiver that the sender has 
-	 * cancelled the file transfer.
+	 * queueBundleChunk()
+	 * is a private function called by streamBundle(). This function waits until the Dispatcher has
+	 * room for the specified chunk of the bundle and the bandwidth limits allow it to be sent, and
+	 * inserts a copy of it in a BUNDLE_CHUNK action, unless the bundle has been stopped in the
+	 * meantime.
 	 * 
-	 * @param fileID  specifies the file ID for the file being cancelled
-	 * @param peer  specifies the recipient of the XFER_CANCELLED action
+	 * @param bundleID  specifies the ID of the bundle
+	 * @param startByte  specifies the starting position of the chunk within the bundle
+	 * @param chunk  specifies the buffer holding the chunk
+	 * @param length  specifies the length of the chunk
+	 * @param peer  specifies the recipient of the bundle
+	 * @return true if the chunk was queued, false if the bundle has been stopped
+	 * @throws InterruptedException  if the thread is interrupted while waiting for the Dispatcher
 	 */
-	private void queueCancelAction(byte[] fileID, String peer)
+	private boolean queueBundleChunk(byte[] bundleID, long startByte, byte[] chunk, int length, String peer) 
+			throws InterruptedException
 	{
+		dispatcher.awaitQueueCapacity(length);
+		dispatcher.getBandwidthLimiter().acquire(peer, bundleID, length);
+		
 		Action action = new Action();
-		action.actionType = ActionType.XFER_CANCELLED;
-		action.parameters.add(fileID);
+		action.actionType = ActionType.BUNDLE_CHUNK;
 		action.peer = peer;
+		action.parameters.add(bundleID);
+		action.parameters.add(startByte);
+		action.parameters.add(Arrays.copyOf(chunk, length));
 		
-		dispatcher.insertAction(action);
+		synchronized(sendingBundles)
+		{
+			if (!sendingBundles.contains(getTransferKey(bundleID, peer, 0)))
+			{
+				return false;
+			}
+			dispatcher.insertAction(action);
+		}
+		
+		return true;
 	}
 	
-	/** 
-	 * getProgressList()
-	 * compiles a list of all the current file transfers. The progress descriptor object details
-	 * the fileId of the file, the length of the file, the total number of bytes that have been
-	 * transferred, and the state of the transfer (will always be IN_PROGRESS).	 
-	 *           			 
-	 * @return array of progress descriptors
+	/**
+	 * getFileSize()
+	 * is a function implemented for the SendManagerListener interface. This function returns the
+	 * size of the announced or shared file matching the specified file ID. It is called when a
+	 * receiver could not learn the size of a file of 2 GB or more from its file descriptor.
+	 * 
+	 * @param fileID  specifies the file ID of the file
+	 * @return size of the file in bytes, -1 if the file is not announced or shared
 	 */
-	public ArrayList<ProgressDescriptor> getProgressList()
+	@Override
+	public long getFileSize(byte[] fileID)
 	{
-		ArrayList<ProgressDescriptor> progressList = new ArrayList<ProgressDescriptor>();
-		ProgressDescriptor descriptor;
+		FileDescriptor fileDescriptor = permissionsManager.getLocalFileDescriptor(fileID);
 		
-		synchronized(sendingFiles)
-		{
-    		for (FileStatus fileStatus : sendingFiles)
-    		{
-    			descriptor = new ProgressDescriptor();
-    			descriptor.fileID = fileStatus.fileId;
-    			descriptor.fileSize = fileStatus.length;
-    			descriptor.bytesTransferred = fileStatus.numBytesSent;
-    			descriptor.state = State.IN_PROGRESS;
+		return (fileDescriptor == null) ? -1 : fileDescriptor.getSize();
+	}
+	
+	/**
+	 * getBlockHashes()
+	 * is a function implemented for the SendManagerListener interface. This function returns the
+	 * hashes of the blocks of the announced or shared file matching the specified file ID, which
+	 * the File System Abstraction keeps with the file ID in its attribute cache.
+	 * 
+	 * @param fileID  specifies the file ID of the file
+	 * @return hashes of the blocks, empty if the file is not announced or shared or cannot be read
+	 */
+	@Override
+	public byte[] getBlockHashes(byte[] fileID)
+	{
+		FileDescriptor fileDescriptor = permissionsManager.getLocalFileDescriptor(fileID);
+		byte[] blockHashes = null;
+		
+		if (fileDescriptor != null)
+		{
+			blockHashes = fsa.getBlockHashes(fsa.buildPathFromDescriptor(fileDescriptor));
+		}
+		return (blockHashes == null) ? new byte[0] : blockHashes;
+	}
+	
+	/**
+	 * dataSent()
+	 * is the function implemented for the SendManagerListener interface. This function records
+	 * that the oldest queued chunk of the matching transfer has been handed to the transmitter,
+	 * which frees a slot in the Dispatcher for the scheduler. Until the receiver has acknowledged
+	 * a chunk, the send window also slides on this event so peers that do not send acknowledgements
+	 * are still served.
+	 * 
+	 * @param fileID  specifies the ID of the file the chunk belongs to
+	 * @param startByte  specifies the starting byte of the chunk
+	 * @param peer  specifies the peer the chunk was sent to
+	 */
+	@Override
+	public void dataSent(byte[] fileID, long startByte, String peer)
+	{
+		synchronized(sendingFiles)
+		{
+			numQueuedChunks = Math.max(numQueuedChunks - 1, 0);
+			
+			for (FileStatus sendingFile : getTransfers(fileID, peer, startByte, startByte + 1))
+			{
+				long queuedBytes = sendingFile.numBytesSent - sendingFile.numBytesTransmitted;
+				sendingFile.numBytesTransmitted += Math.min(sendingFile.chunkLength, queuedBytes);
+			}
+		}
+		
+		scheduleChunks();
+	}
+	
+	/**
+	 * queueCapacityReleased()
+	 * is the function implemented for the SendManagerListener interface. This function is called
+	 * by the Dispatcher when a bundle chunk has been transmitted. The bytes of the chunk have left
+	 * the memory budget of the Dispatcher, so the transfers deferred by the budget are scheduled.
+	 */
+	@Override
+	public void queueCapacityReleased()
+	{
+		scheduleChunks();
+	}
+	
+	/**
+	 * handleDataChunkAck()
+	 * is the function implemented for the SendManagerListener interface. This function is called
+	 * when the receiver acknowledges a saved chunk. The first acknowledgement switches the transfer
+	 * to acknowledgement driven flow control, after which the window only slides as the receiver
+	 * confirms data. An acknowledgement that spans adjacent ranges of the file is applied to the
+	 * transfer of each range.
+	 * 
+	 * @param fileID  specifies the ID of the file
+	 * @param startByte  specifies the starting byte of the acknowledged chunk
+	 * @param chunkLength  specifies the length of the acknowledged chunk
+	 * @param peer  specifies the peer receiving the file
+	 */
+	@Override
+	public void handleDataChunkAck(byte[] fileID, long startByte, int chunkLength, String peer)
+	{
+		synchronized(sendingFiles)
+		{
+			for (FileStatus sendingFile : getTransfers(fileID, peer, startByte, startByte + chunkLength))
+			{
+				long ackedBytes = Math.min((startByte + chunkLength) - sendingFile.startByte, sendingFile.length);
+				sendingFile.numBytesAcked = Math.max(sendingFile.numBytesAcked, ackedBytes);
+				sendingFile.isAckEnabled = true;
+			}
+		}
+		
+		scheduleChunks();
+	}
+	
+	/**
+	 * scheduleChunks()
+	 * is a private function that fills the free Dispatcher slots with chunks from the active
+	 * transfers using deficit round robin. A slot is free when fewer than MAX_QUEUED_CHUNKS chunks
+	 * are queued and the next chunk fits in the memory budget of the Dispatcher. Each visit adds a quantum of bytes to the deficit of
+	 * a peer, and the transfers of that peer take turns queueing chunks while the deficit covers
+	 * them. A peer with no transfer ready to send forfeits its deficit. When the slots fill up in the
+	 * middle of a turn, the peer stays at the head of the schedule and resumes its turn as soon as a
+	 * slot is freed. Scheduling stops when the slots are full or no transfer has an open send window.
+	 * If transfers were passed over because of the bandwidth limits, scheduling is retried once the
+	 * first of them may send again.
+	 */
+	private void scheduleChunks()
+	{
+		synchronized(sendingFiles)
+		{
+			boolean hasReadyTransfer = true;
+			isQueueBudgetExhausted = false;
+			throttleDelay = Long.MAX_VALUE;
+			
+			while (hasReadyTransfer && !isDispatcherFull())
+			{
+				hasReadyTransfer = false;
+				
+				for (int i = peerSchedule.size(); (i > 0) && !isDispatcherFull(); i--)
+				{
+					String peer = peerSchedule.poll();
+					ArrayDeque<FileStatus> transfers = peerTransfers.get(peer);
+					
+					int deficit = peerDeficits.get(peer);
+					
+					if (!peer.equals(servingPeer))
+					{
+						deficit += SCHEDULER_QUANTUM;
+					}
+					servingPeer = null;
+					
+					if (transfers.isEmpty())
+					{
+						peerTransfers.remove(peer);
+						peerDeficits.remove(peer);
+						continue;
+					}
+					
+					deficit = servePeer(transfers, deficit);
+					hasReadyTransfer |= (deficit >= 0);
+					peerDeficits.put(peer, Math.max(deficit, 0));
+					
+					if ((deficit > 0) && isDispatcherFull())
+					{
+						servingPeer = peer;
+						peerSchedule.addFirst(peer);
+					}
+					else
+					{
+						peerSchedule.add(peer);
+					}
+				}
+			}
+			
+			if (throttleDelay != Long.MAX_VALUE)
+			{
+				scheduleThrottleRetry();
+			}
+		}
+	}
+	
+	/**
+	 * scheduleThrottleRetry()
+	 * is a private function called by scheduleChunks() that runs the scheduler again once the
+	 * first transfer passed over because of the bandwidth limits may send. The retry happens
+	 * after at most MAX_THROTTLE_DELAY milliseconds so a change of the limits takes effect
+	 * quickly. Only one retry is pending at a time. The caller must hold the sendingFiles lock.
+	 */
+	private void scheduleThrottleRetry()
+	{
+		if (isThrottleRetryPending)
+		{
+			return;
+		}
+		
+		isThrottleRetryPending = true;
+		throttleExecutor.schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				synchronized(sendingFiles)
+				{
+					isThrottleRetryPending = false;
+				}
+				scheduleChunks();
+			}
+		}, Math.min(throttleDelay, MAX_THROTTLE_DELAY), TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * servePeer()
+	 * is a private function called by scheduleChunks(). This function lets the transfers of a single
+	 * peer take turns queueing chunks until the deficit no longer covers the next chunk, the Dispatcher
+	 * slots are full, or none of the transfers are ready to send. Completed transfers leave the rotation.
+	 * 
+	 * @param transfers  the transfers to the peer being served, in round robin order
+	 * @param deficit  the number of bytes the peer may queue during this visit
+	 * @return the remaining deficit, or -1 if none of the transfers were ready to send
+	 */
+	private int servePeer(ArrayDeque<FileStatus> transfers, int deficit)
+	{
+		boolean isPeerReady = false;
+		int numIdleTransfers = 0;
+		
+		while ((numIdleTransfers < transfers.size()) && !isDispatcherFull())
+		{
+			FileStatus sendingFile = transfers.peek();
+			
+			if (!isWindowOpen(sendingFile) || !isChunkReady(sendingFile) || isThrottled(sendingFile))
+			{
+				transfers.add(transfers.poll());
+				numIdleTransfers++;
+				continue;
+			}
+			
+			isPeerReady = true;
+			int chunkLength = (int) Math.min(sendingFile.chunkLength, sendingFile.length - sendingFile.numBytesSent);
+			
+			if (chunkLength > deficit)
+			{
+				break;
+			}
+			else if (!dispatcher.hasQueueCapacity(chunkLength))
+			{
+				isQueueBudgetExhausted = true;
+				break;
+			}
+			
+			transfers.poll();
+			numIdleTransfers = 0;
+			
+			if (queueNextChunk(sendingFile))
+			{
+				deficit -= chunkLength;
+				numQueuedChunks++;
+				
+				if (sendingFile.numBytesSent < sendingFile.length)
+				{
+					transfers.add(sendingFile);
+				}
+			}
+			else if (sendingFiles.containsKey(getTransferKey(sendingFile.fileId, sendingFile.peer, 
+					sendingFile.startByte)))
+			{
+				Logger.log("file is no longer shared, dropping transfer");
+				removeTransfer(sendingFile);
+			}
+		}
+		
+		return isPeerReady ? deficit : -1;
+	}
+	
+	/**
+	 * isDispatcherFull()
+	 * is a private function that determines whether the scheduler must stop queueing chunks,
+	 * either because MAX_QUEUED_CHUNKS chunks are queued or because the last chunk considered did
+	 * not fit in the memory budget of the Dispatcher. The caller must hold the sendingFiles lock.
+	 * 
+	 * @return true if no more chunks may be queued, false otherwise
+	 */
+	private boolean isDispatcherFull()
+	{
+		return isQueueBudgetExhausted || (numQueuedChunks >= MAX_QUEUED_CHUNKS);
+	}
+	
+	/**
+	 * isWindowOpen()
+	 * is a private function that determines whether the specified transfer may queue another chunk.
+	 * Bytes are in flight from the time they are queued until they are acknowledged by the receiver,
+	 * or until they are transmitted if the receiver does not send acknowledgements.
+	 * 
+	 * @param sendingFile  instance of FileStatus object matching the file being sent
+	 * @return true if the transfer has data left to send and room in its send window
+	 */
+	private boolean isWindowOpen(FileStatus sendingFile)
+	{
+		long completedBytes = sendingFile.isAckEnabled ? sendingFile.numBytesAcked 
+				: sendingFile.numBytesTransmitted;
+		long bytesInFlight = sendingFile.numBytesSent - completedBytes;
+		
+		return (sendingFile.numBytesSent < sendingFile.length) 
+				&& (bytesInFlight < (windowSize * sendingFile.chunkLength));
+	}
+	
+	/**
+	 * isThrottled()
+	 * is a private function that determines whether the specified transfer must wait before
+	 * sending because it is over its global, peer or transfer bandwidth limit. The shortest wait
+	 * of the transfers passed over is recorded so the scheduler can be retried in time. The
+	 * caller must hold the sendingFiles lock.
+	 * 
+	 * @param sendingFile  instance of FileStatus object matching the file being sent
+	 * @return true if the transfer must wait, false if it may send now
+	 */
+	private boolean isThrottled(FileStatus sendingFile)
+	{
+		long waitTime = dispatcher.getBandwidthLimiter().getWaitTime(sendingFile.peer, sendingFile.fileId);
+		
+		if (waitTime <= 0)
+		{
+			return false;
+		}
+		
+		throttleDelay = Math.min(throttleDelay, waitTime);
+		return true;
+	}
+	
+	/**
+	 * isChunkReady()
+	 * is a private function that determines whether the next chunk of the specified transfer can
+	 * be queued without waiting for the disk. The chunk is ready if it has been prefetched, or if
+	 * prefetching is disabled and no prefetched reads are outstanding. Otherwise the prefetch of
+	 * the chunk is started if necessary.
+	 * 
+	 * @param sendingFile  instance of FileStatus object matching the file being sent
+	 * @return true if the next chunk is ready to be queued
+	 */
+	private boolean isChunkReady(FileStatus sendingFile)
+	{
+		if (!sendingFile.prefetchedChunks.isEmpty())
+		{
+			return true;
+		}
+		else if (sendingFile.numBytesPrefetched > sendingFile.numBytesSent)
+		{
+			return false;
+		}
+		else if (prefetchDepth == 0)
+		{
+			return true;
+		}
+		
+		fillPrefetch(sendingFile);
+		return false;
+	}
+	
+	/**
+	 * fillPrefetch()
+	 * is a private function that submits reads of the upcoming chunks of the specified transfer to
+	 * the prefetch thread until the transfer has prefetchDepth chunks read ahead or the memory limit
+	 * is reached. A transfer with nothing read ahead may always prefetch one chunk so every transfer
+	 * can make progress. The caller must hold the sendingFiles lock.
+	 * 
+	 * @param sendingFile  instance of FileStatus object matching the file being sent
+	 */
+	private void fillPrefetch(final FileStatus sendingFile)
+	{
+		while ((sendingFile.numBytesPrefetched < sendingFile.length) 
+				&& ((sendingFile.numBytesPrefetched - sendingFile.numBytesSent) 
+						< (prefetchDepth * sendingFile.chunkLength)))
+		{
+			final int length = (int) Math.min(sendingFile.chunkLength, 
+					sendingFile.length - sendingFile.numBytesPrefetched);
+			
+			if ((sendingFile.numBytesPrefetched > sendingFile.numBytesSent) 
+					&& ((prefetchMemoryUsed + length) > prefetchMemoryLimit))
+			{
+				return;
+			}
+			
+			final long startByte = sendingFile.startByte + sendingFile.numBytesPrefetched;
+			sendingFile.numBytesPrefetched += length;
+			prefetchMemoryUsed += length;
+			
+			prefetchExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					prefetchChunk(sendingFile, startByte, length);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * prefetchChunk()
+	 * is a private function that runs on the prefetch thread. This function reads the specified
+	 * chunk from disk, compresses it if the transfer is compressed, and stores it with the transfer,
+	 * then gives the scheduler a chance to queue it. Chunks read for a transfer that has since been
+	 * stopped are discarded. If the chunk could not be read, the transfer is aborted.
+	 * 
+	 * @param sendingFile  instance of FileStatus object matching the file being sent
+	 * @param startByte  specifies the starting position of the chunk within the file
+	 * @param length  specifies the length of the chunk
+	 */
+	private void prefetchChunk(FileStatus sendingFile, long startByte, int length)
+	{
+		FileDescriptor fileDescriptor = permissionsManager.getLocalFileDescriptor(sendingFile.fileId);
+		byte[] chunk = null;
+		
+		if (fileDescriptor != null)
+		{
+			chunk = compressChunk(sendingFile, 
+					getFileChunk(fsa.buildPathFromDescriptor(fileDescriptor), startByte, length));
+		}
+		
+		synchronized(sendingFiles)
+		{
+			if (sendingFiles.get(getTransferKey(sendingFile.fileId, sendingFile.peer, sendingFile.startByte)) 
+					!= sendingFile)
+			{
+				BufferPool.getInstance().release(chunk);
+				return;
+			}
+			else if (chunk == null)
+			{
+				abortTransfer(sendingFile);
+				return;
+			}
+			
+			sendingFile.prefetchedChunks.add(chunk);
+		}
+		
+		scheduleChunks();
+	}
+	
+	/**
+	* queueNextChunk()
+	* is a private function called by servePeer(). This function takes the file status object
+	* and inserts the next file chunk into the Dispatcher for transmission. The file status is
+	* removed once the final chunk has been queued. The bytes the chunk puts on the wire are drawn
+	* from the bandwidth limits. The transfer is aborted if the next chunk cannot be read.
+	* 
+	* @param sendingFile  instance of FileStatus object matching the file being sent
+	* @return true if a chunk was queued, false otherwise
+	**/
+	private boolean queueNextChunk(FileStatus sendingFile)
+	{
+		FileDescriptor fileDescriptor = permissionsManager.getLocalFileDescriptor(sendingFile.fileId);
+		
+		if (fileDescriptor != null)
+		{
+			String path = fsa.buildPathFromDescriptor(fileDescriptor);
+			String peer = sendingFile.peer;
+			
+			if ((sendingFile.length - sendingFile.numBytesSent) <= sendingFile.chunkLength)
+			{
+				long startByte = sendingFile.numBytesSent + sendingFile.startByte;
+				int length = (int) (sendingFile.length - sendingFile.numBytesSent);
+				
+				byte[] chunk = getNextChunk(sendingFile, path, startByte, length);
+				
+				if (chunk == null)
+				{
+					abortTransfer(sendingFile);
+					return false;
+				}
+				
+				Action action = createAction(fileDescriptor, peer, startByte, length, chunk, chunk.length < length);
+				sendingFile.numBytesSent += length;
+				sendingFile.numBytesOnWire += chunk.length;
+				dispatcher.getBandwidthLimiter().draw(peer, sendingFile.fileId, chunk.length);
+				sendingFiles.remove(getTransferKey(sendingFile.fileId, peer, sendingFile.startByte));
+				closeFileIfUnused(sendingFile.fileId);
+				dispatcher.insertAction(action);			
+			}
+			else
+			{
+				long startByte = sendingFile.numBytesSent + sendingFile.startByte;
+				byte[] chunk = getNextChunk(sendingFile, path, startByte, sendingFile.chunkLength);
+				
+				if (chunk == null)
+				{
+					abortTransfer(sendingFile);
+					return false;
+				}
+				
+				Action action = createAction(fileDescriptor, peer, startByte, sendingFile.chunkLength, chunk,
+						chunk.length < sendingFile.chunkLength);
+				sendingFile.numBytesSent += sendingFile.chunkLength;
+				sendingFile.numBytesOnWire += chunk.length;
+				dispatcher.getBandwidthLimiter().draw(peer, sendingFile.fileId, chunk.length);
+				fillPrefetch(sendingFile);
+				dispatcher.insertAction(action);			
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * getNextChunk()
+	 * is a private function called by queueNextChunk(). This function returns the next prefetched
+	 * chunk of the transfer and releases its share of the prefetch memory. If the chunk has not been
+	 * prefetched, it is read from disk and compressed if the transfer is compressed.
+	 * 
+	 * @param sendingFile  instance of FileStatus object matching the file being sent
+	 * @param path  specifies the path to the file being transferred
+	 * @param startByte  specifies the starting position for the file data
+	 * @param chunkLength  specifies the number of bytes in the chunk
+	 * @return file chunk, or null if the chunk could not be read
+	 */
+	private byte[] getNextChunk(FileStatus sendingFile, String path, long startByte, int chunkLength)
+	{
+		byte[] chunk = sendingFile.prefetchedChunks.poll();
+		
+		if (chunk == null)
+		{
+			sendingFile.numBytesPrefetched += chunkLength;
+			return compressChunk(sendingFile, getFileChunk(path, startByte, chunkLength));
+		}
+		
+		prefetchMemoryUsed -= chunkLength;
+		return chunk;
+	}
+	
+	/**
+	 * cancelFile()
+	 * is called when the sender wishes to cancel a file transfer that matches the specified file ID.
+	 * This method will look through the pending file transfers to try and match the file ID. For
+	 * each match, the queued chunks are purged and a cancel action is queued into the Dispatcher to
+	 * notify the receiver that the sender has cancelled the file transfer. If a match is not found,
+	 * the fileId does not match any current file transfers so we return FILE_NOT_BEING_TRANSFERRED.
+	 *          
+	 * @param fileID  specifies the file ID of the file being cancelled
+	 * @return OK or FILE_NOT_BEING_TRANSFERRED
+	 */
+	public int cancelFile(byte[] fileID)
+	{
+		ArrayList<String> peers = new ArrayList<String>();
+		
+		synchronized(sendingFiles)
+		{
+			for (FileStatus fileStatus : sendingFiles.values())
+			{
+				if (Arrays.equals(fileID, fileStatus.fileId))
+				{
+					peers.add(fileStatus.peer);
+				}
+			}
+			
+			for (String peer : peers)
+			{
+				removeFileStatus(fileID, peer);
+			}
+		}
+
+		for (String peer : peers)
+		{
+			queueCancelAction(fileID, peer);
+		}
+		
+		scheduleChunks();
+		
+		return peers.isEmpty() ? StatusCode.FILE_NOT_BEING_TRANSFERRED : StatusCode.OK;
+	}
+
+	/**
+	 * handleStopDataXfer()
+	 * is called when the receiver wishes to pause or cancel a file transfer. This function will
+	 * delete the file status of the transfer of the specified file to the specified peer and
+	 * purge any of its chunks still waiting in the Dispatcher. If the ID is that of a bundle
+	 * being sent to the peer, the bundle is stopped and its queued chunks are purged instead.
+	 *          
+	 * @param fileID  specifies the file ID of the file being requested
+	 * @param peer  specifies the peer receiving the file
+	 */ 
+	public void handleStopDataXfer(byte[] fileID, String peer)
+	{
+		synchronized(sendingBundles)
+		{
+			if (sendingBundles.remove(getTransferKey(fileID, peer, 0)))
+			{
+				dispatcher.removeActions(ActionType.BUNDLE_CHUNK, fileID, peer);
+			}
+		}
+		
+		synchronized(sendingFiles)
+		{
+			removeFileStatus(fileID, peer);
+		}
+		
+		scheduleChunks();
+	}
+	
+	/**
+	 * removeFileStatus()
+	 * is a private method called by handleStopDataXfer() and cancelFile(). Its main function is
+	 * to delete the file status of every transfer of the specified file to the specified peer and
+	 * remove the transfers from the schedule. The chunks of the transfers still waiting in the
+	 * Dispatcher are purged so they are not sent. This effectively cancels that file transfer. The
+	 * caller must hold the sendingFiles lock.
+	 * 
+	 * @param fileID  specifies the file ID for the file being cancelled
+	 * @param peer  specifies the peer we are transferring the file to
+	 */
+	private void removeFileStatus(byte[] fileID, String peer)
+	{
+		for (FileStatus fileStatus : getTransfers(fileID, peer, 0, Long.MAX_VALUE))
+		{
+			removeTransfer(fileStatus);
+		}
+		
+		int numPurged = dispatcher.removeActions(ActionType.DATA_CHUNK, fileID, peer);
+		numQueuedChunks = Math.max(numQueuedChunks - numPurged, 0);
+	}
+	
+	/**
+	 * removeOverlappingTransfers()
+	 * is a private method called by createFileStatus() that deletes the transfers of the specified
+	 * file to the specified peer whose ranges overlap the specified range, and purges their chunks
+	 * still waiting in the Dispatcher. Transfers of other ranges of the file are not affected. The
+	 * caller must hold the sendingFiles lock.
+	 * 
+	 * @param fileID  specifies the file ID of the file
+	 * @param peer  specifies the peer we are transferring the file to
+	 * @param startByte  specifies the first byte of the range
+	 * @param endByte  specifies the byte after the last byte of the range
+	 */
+	private void removeOverlappingTransfers(byte[] fileID, String peer, long startByte, long endByte)
+	{
+		for (FileStatus fileStatus : getTransfers(fileID, peer, startByte, Math.max(endByte, startByte + 1)))
+		{
+			removeTransfer(fileStatus);
+			
+			int numPurged = dispatcher.removeActions(fileID, peer, fileStatus.startByte, 
+					fileStatus.startByte + fileStatus.length);
+			numQueuedChunks = Math.max(numQueuedChunks - numPurged, 0);
+		}
+	}
+	
+	/**
+	 * removeTransfer()
+	 * is a private method that deletes the file status of the specified transfer, removes the
+	 * transfer from the schedule and releases its prefetched chunks. The caller must hold the
+	 * sendingFiles lock.
+	 * 
+	 * @param fileStatus  specifies the file status of the transfer
+	 */
+	private void removeTransfer(FileStatus fileStatus)
+	{
+		if (sendingFiles.remove(getTransferKey(fileStatus.fileId, fileStatus.peer, fileStatus.startByte)) == null)
+		{
+			return;
+		}
+		
+		peerTransfers.get(fileStatus.peer).remove(fileStatus);
+		prefetchMemoryUsed -= (fileStatus.numBytesPrefetched - fileStatus.numBytesSent);
+		
+		for (byte[] chunk : fileStatus.prefetchedChunks)
+		{
+			// compressed chunks are always shorter and were not taken from the pool
+			if (chunk.length == fileStatus.chunkLength)
+			{
+				BufferPool.getInstance().release(chunk);
+			}
+		}
+		fileStatus.prefetchedChunks.clear();
+		closeFileIfUnused(fileStatus.fileId);
+	}
+	
+	/**
+	 * abortTransfer()
+	 * is a private method called when a chunk of the specified transfer cannot be read from disk.
+	 * The transfer is removed and a XFER_CANCELLED action is queued so the receiver stops waiting
+	 * for the rest of the file. The caller must hold the sendingFiles lock.
+	 * 
+	 * @param fileStatus  specifies the file status of the transfer
+	 */
+	private void abortTransfer(FileStatus fileStatus)
+	{
+		Logger.log("failed to read file, aborting transfer");
+		removeTransfer(fileStatus);
+		queueCancelAction(fileStatus.fileId, fileStatus.peer);
+	}
+	
+	/**
+	 * getTransfers()
+	 * is a private method that returns the transfers of the specified file to the specified peer
+	 * whose ranges overlap the specified range. The caller must hold the sendingFiles lock.
+	 * 
+	 * @param fileID  specifies the file ID of the file
+	 * @param peer  specifies the peer receiving the file
+	 * @param startByte  specifies the first byte of the range
+	 * @param endByte  specifies the byte after the last byte of the range
+	 * @return list of matching transfers
+	 */
+	private ArrayList<FileStatus> getTransfers(byte[] fileID, String peer, long startByte, long endByte)
+	{
+		ArrayList<FileStatus> transfers = new ArrayList<FileStatus>();
+		
+		for (FileStatus fileStatus : sendingFiles.values())
+		{
+			if (Arrays.equals(fileID, fileStatus.fileId) && fileStatus.peer.equals(peer)
+					&& (fileStatus.startByte < endByte) 
+					&& (startByte < (fileStatus.startByte + Math.max(fileStatus.length, 1))))
+			{
+				transfers.add(fileStatus);
+			}
+		}
+		return transfers;
+	}
+	
+	/**
+	 * closeFileIfUnused()
+	 * is a private method that closes the open handle of the specified file in the
+	 * FileSystemAbstraction unless another transfer is still sending the file. The
+	 * caller must hold the sendingFiles lock.
+	 * 
+	 * @param fileID  specifies the file ID of the file
+	 */
+	private void closeFileIfUnused(byte[] fileID)
+	{
+		for (FileStatus fileStatus : sendingFiles.values())
+		{
+			if (Arrays.equals(fileID, fileStatus.fileId))
+			{
+				return;
+			}
+		}
+		
+		FileDescriptor fileDescriptor = permissionsManager.getLocalFileDescriptor(fileID);
+		
+		if (fileDescriptor != null)
+		{
+			fsa.closeFile(fsa.buildPathFromDescriptor(fileDescriptor));
+		}
+	}
+	
+	/**
+	 * getTransferKey()
+	 * is a private method that builds the key used to store the file status of the transfer
+	 * of the range of the specified file starting at the specified byte to the specified peer.
+	 * 
+	 * @param fileID  specifies the file ID of the file being sent
+	 * @param peer  specifies the peer receiving the file
+	 * @param startByte  specifies the first byte of the range being sent
+	 * @return the transfer key
+	 */
+	private String getTransferKey(byte[] fileID, String peer, long startByte)
+	{
+		return Arrays.toString(fileID) + peer + ":" + startByte;
+	}
+	
+	/**
+	 * queueCancelAction()
+	 * is a private function called by cancelFile() and will insert a XFER_CANCELLED
+	 * action into the Dispatcher. This will alert the receiver that the sender has 
+	 * cancelled the file transfer.
+	 * 
+	 * @param fileID  specifies the file ID for the file being cancelled
+	 * @param peer  specifies the recipient of the XFER_CANCELLED action
+	 */
+	private void queueCancelAction(byte[] fileID, String peer)
+	{
+		Action action = new Action();
+		action.actionType = ActionType.XFER_CANCELLED;
+		action.parameters.add(fileID);
+		action.peer = peer;
+		
+		dispatcher.insertAction(action);
+	}
+	
+	/** 
+	 * getProgressList()
+	 * compiles a list of all the current file transfers. The progress descriptor object details
+	 * the fileId of the file, the length of the file, the total number of bytes that have been
+	 * transferred, the rate at which it is being sent, and the state of the transfer (will always 
+	 * be IN_PROGRESS).	 
+	 *           			 
+	 * @return array of progress descriptors
+	 */
+	public ArrayList<ProgressDescriptor> getProgressList()
+	{
+		ArrayList<ProgressDescriptor> progressList = new ArrayList<ProgressDescriptor>();
+		ProgressDescriptor descriptor;
+		
+		synchronized(sendingFiles)
+		{
+    		for (FileStatus fileStatus : sendingFiles.values())
+    		{
+    			descriptor = new ProgressDescriptor();
+    			descriptor.fileID = fileStatus.fileId;
+    			descriptor.fileSize = fileStatus.length;
+    			descriptor.bytesTransferred = fileStatus.numBytesSent;
+    			descriptor.chunkSize = fileStatus.chunkLength;
+    			descriptor.bytesOnWire = fileStatus.numBytesOnWire;
+    			descriptor.sendRate = dispatcher.getBandwidthLimiter().getTransferRate(fileStatus.fileId, 
+    					fileStatus.peer);
+    			descriptor.state = State.IN_PROGRESS;
     			
     			progressList.add(descriptor);
     		}
@@ -463,6 +1760,101 @@ public class SendManager implements SendManagerListener
 		return progressList;
 	}
 	
+	/** 
+	 * setWindowSize()
+	 * allows the user to specify the maximum number of chunks that each transfer may have in
+	 * flight. The window size must be greater than zero. The default window size is 4.
+	 * 
+	 * @param windowSize  specifies the number of chunks in flight per transfer
+	 * @return OK or INVALID
+	 */
+	public int setWindowSize(int windowSize)
+	{
+		if (windowSize > 0)
+		{
+			this.windowSize = windowSize;
+			return StatusCode.OK;
+		}
+		return StatusCode.INVALID;
+	}
+	
+	/** 
+	 * getWindowSize()
+	 * returns the maximum number of chunks that each transfer may have in flight.
+	 * 
+	 * @return window size
+	 */
+	public int getWindowSize()
+	{
+		return windowSize;
+	}
+	
+	/** 
+	 * setPrefetchDepth()
+	 * allows the user to specify the number of chunks each transfer reads ahead of the
+	 * Dispatcher. Specifying zero disables prefetching so chunks are read from disk as they
+	 * are queued. The default prefetch depth is 2.
+	 * 
+	 * @param prefetchDepth  specifies the number of chunks to read ahead per transfer
+	 * @return OK or INVALID
+	 */
+	public int setPrefetchDepth(int prefetchDepth)
+	{
+		if (prefetchDepth >= 0)
+		{
+			synchronized(sendingFiles)
+			{
+				this.prefetchDepth = prefetchDepth;
+			}
+			return StatusCode.OK;
+		}
+		return StatusCode.INVALID;
+	}
+	
+	/** 
+	 * getPrefetchDepth()
+	 * returns the number of chunks each transfer reads ahead of the Dispatcher.
+	 * 
+	 * @return prefetch depth
+	 */
+	public int getPrefetchDepth()
+	{
+		return prefetchDepth;
+	}
+	
+	/** 
+	 * setPrefetchMemoryLimit()
+	 * allows the user to specify the maximum number of bytes held in prefetched chunks across
+	 * all transfers. Each transfer may still read one chunk ahead when the limit is reached.
+	 * The default limit is 1 MB.
+	 * 
+	 * @param prefetchMemoryLimit  specifies the limit in bytes
+	 * @return OK or INVALID
+	 */
+	public int setPrefetchMemoryLimit(int prefetchMemoryLimit)
+	{
+		if (prefetchMemoryLimit > 0)
+		{
+			synchronized(sendingFiles)
+			{
+				this.prefetchMemoryLimit = prefetchMemoryLimit;
+			}
+			return StatusCode.OK;
+		}
+		return StatusCode.INVALID;
+	}
+	
+	/** 
+	 * getPrefetchMemoryLimit()
+	 * returns the maximum number of bytes held in prefetched chunks across all transfers.
+	 * 
+	 * @return prefetch memory limit in bytes
+	 */
+	public int getPrefetchMemoryLimit()
+	{
+		return prefetchMemoryLimit;
+	}
+	
 	/** 
 	 * setRequestDataListener()
 	 * registers the listener that will notify the user when a file request has been received. 	 
@@ -481,10 +1873,32 @@ public class SendManager implements SendManagerListener
 	 * resetState()
 	 * is called by the File Transfer Module when the user specifies a new AllJoyn
 	 * session to be used. This function clears the hash map storing the file transfer 
-	 * records. 
+	 * records, stops the bundles being sent or waiting to be sent and drops the delta scans.
 	 */
 	public void resetState()
 	{
-		sendingFiles.clear();		
+		synchronized(deltaLock)
+		{
+			deltaExecutor.shutdownNow();
+			deltaExecutor = createWorkerExecutor(MAX_PENDING_DELTAS);
+		}
+		
+		synchronized(sendingBundles)
+		{
+			sendingBundles.clear();
+			bundleExecutor.shutdownNow();
+			bundleExecutor = createWorkerExecutor(MAX_PENDING_BUNDLES);
+		}
+		
+		synchronized(sendingFiles)
+		{
+			sendingFiles.clear();
+			peerTransfers.clear();
+			peerDeficits.clear();
+			peerSchedule.clear();
+			servingPeer = null;
+			numQueuedChunks = 0;
+			prefetchMemoryUsed = 0;
+		}
 	}
 }
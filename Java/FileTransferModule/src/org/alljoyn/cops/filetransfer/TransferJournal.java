@@ -0,0 +1,282 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.alljoyn.cops.filetransfer.data.FileStatus;
+import org.alljoyn.cops.filetransfer.data.StatusCode;
+import org.alljoyn.cops.filetransfer.utility.Logger;
+import org.alljoyn.cops.filetransfer.utility.RangeSet;
+
+/**
+ * The Transfer Journal keeps an on-disk record of the files that are being received so an
+ * interrupted download can be resumed after the application restarts or the session is
+ * re-established. For each file the journal records the file ID, the peer sending the file,
+ * where the file is being saved and the ranges of the file that have been written. The
+ * Receive Manager updates the journal after every write, but the journal is only written to
+ * disk once every CHECKPOINT_INTERVAL milliseconds, or immediately when a transfer is paused,
+ * cancelled or completed. Each checkpoint is written to a temporary file which then replaces
+ * the journal file, so a crash during a checkpoint leaves the previous checkpoint intact.
+ * Before a checkpoint is written, the files being received are forced to disk, and the
+ * temporary file is forced to disk before it replaces the journal file, so the journal never
+ * records ranges that could be lost in a crash or power loss.
+ * <p>
+ * Note: journaling is disabled until a journal file is specified.
+ * <p>
+ * Note: This class is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link FileTransferModule} class.
+ */
+public class TransferJournal
+{
+	//Internal Static class to store the record of one file in the journal
+	private static class JournalEntry implements Serializable
+	{
+		private static final long serialVersionUID = 2L;
+
+		public byte[] fileID;
+		public String peer;
+		public String saveFilePath;
+		public String saveFileName;
+		public long length;
+		public RangeSet writtenRanges;
+
+		public JournalEntry(FileStatus status)
+		{
+			this.fileID = status.fileId;
+			this.peer = status.peer;
+			this.saveFilePath = status.saveFilePath;
+			this.saveFileName = status.saveFileName;
+			this.length = status.length;
+			this.writtenRanges = new RangeSet(status.writtenRanges);
+		}
+	};
+
+	/** Class Constant **/
+	private static final long CHECKPOINT_INTERVAL = 1000;
+
+	/** Member Variables **/
+	private FileSystemAbstraction fsa;
+	private File journalFile;
+	private HashMap<String, JournalEntry> entries;
+	private boolean isDirty;
+	private long lastCheckpoint;
+
+	/*------------------------------------------------------------------------*
+     * Constructor
+     *------------------------------------------------------------------------*/
+	/**
+	 * TransferJournal()
+	 * constructs an instance of the Transfer Journal class with journaling disabled.
+	 *
+	 * @param fsa  instance of the File System Abstraction used to force the journaled files to disk
+	 */
+	public TransferJournal(FileSystemAbstraction fsa)
+	{
+		this.fsa = fsa;
+		journalFile = null;
+		entries = new HashMap<String, JournalEntry>();
+		isDirty = false;
+		lastCheckpoint = 0;
+	}
+
+	/*------------------------------------------------------------------------*
+     * API Methods
+     *------------------------------------------------------------------------*/
+	/**
+	 * setJournalFile()
+	 * specifies the file used to store the journal. Pending changes are written to the old
+	 * journal file and the entries are replaced by the contents of the new file, if any.
+	 * Passing in null disables journaling.
+	 *
+	 * @param file  specifies the journal file, can be null to disable journaling
+	 */
+	public synchronized void setJournalFile(File file)
+	{
+		if ((journalFile != null) && journalFile.equals(file))
+		{
+			return;
+		}
+
+		checkpoint();
+		entries.clear();
+		journalFile = file;
+
+		if (file != null)
+		{
+			readJournalFromFile(file);
+		}
+	}
+
+	/**
+	 * update()
+	 * records the current written ranges of the specified transfer. The journal is written to
+	 * disk if the last checkpoint is older than CHECKPOINT_INTERVAL. The caller must hold the
+	 * lock of the file status.
+	 *
+	 * @param status  specifies the file status of the transfer
+	 */
+	public synchronized void update(FileStatus status)
+	{
+		if (journalFile == null)
+		{
+			return;
+		}
+
+		entries.put(Arrays.toString(status.fileId), new JournalEntry(status));
+		isDirty = true;
+
+		if ((System.currentTimeMillis() - lastCheckpoint) >= CHECKPOINT_INTERVAL)
+		{
+			checkpoint();
+		}
+	}
+
+	/**
+	 * remove()
+	 * removes the record of the specified file from the journal and writes the journal to disk.
+	 * This is called when a transfer completes or is cancelled.
+	 *
+	 * @param fileID  specifies the file ID of the file
+	 */
+	public synchronized void remove(byte[] fileID)
+	{
+		if (entries.remove(Arrays.toString(fileID)) != null)
+		{
+			isDirty = true;
+			checkpoint();
+		}
+	}
+
+	/**
+	 * restore()
+	 * restores the written ranges of the specified transfer from the journal. The record is only
+	 * used if it describes a file of the same length saved at the same location and the partially
+	 * written file still exists. The file may be resumed from any peer that offers it since the file
+	 * ID identifies the contents of the file.
+	 *
+	 * @param status  specifies the file status of the new transfer
+	 * @return true if the transfer was restored, false otherwise
+	 */
+	public synchronized boolean restore(FileStatus status)
+	{
+		JournalEntry entry = entries.get(Arrays.toString(status.fileId));
+
+		if ((entry == null) || (entry.length != status.length)
+				|| !entry.saveFilePath.equals(status.saveFilePath)
+				|| !entry.saveFileName.equals(status.saveFileName))
+		{
+			return false;
+		}
+
+		if (!new File(entry.saveFilePath, entry.saveFileName).exists())
+		{
+			remove(status.fileId);
+			return false;
+		}
+
+		status.writtenRanges = new RangeSet(entry.writtenRanges);
+		status.receivedRanges = new RangeSet(entry.writtenRanges);
+		status.numBytesSent = entry.writtenRanges.getNumBytesCovered();
+		return true;
+	}
+
+	/**
+	 * checkpoint()
+	 * writes the journal to disk if it has changed since the last checkpoint. The journaled
+	 * files are forced to disk first, and the journal file is only replaced once the new
+	 * checkpoint has been forced to disk. If a journaled file cannot be forced to disk, the
+	 * previous checkpoint is kept and the checkpoint is retried after CHECKPOINT_INTERVAL.
+	 */
+	public synchronized void checkpoint()
+	{
+		if (!isDirty || (journalFile == null))
+		{
+			return;
+		}
+
+		File tempFile = new File(journalFile.getPath() + ".tmp");
+
+		for (JournalEntry entry : entries.values())
+		{
+			if (fsa.sync(new File(entry.saveFilePath, entry.saveFileName).getAbsolutePath()) != StatusCode.OK)
+			{
+				Logger.log("failed to sync received file, keeping previous checkpoint");
+				lastCheckpoint = System.currentTimeMillis();
+				return;
+			}
+		}
+
+		try
+		{
+			FileOutputStream fos = new FileOutputStream(tempFile);
+			ObjectOutputStream oos = new ObjectOutputStream(fos);
+			oos.writeObject(entries);
+			oos.flush();
+			fos.getFD().sync();
+			oos.close();
+
+			if (!tempFile.renameTo(journalFile))
+			{
+				Logger.log("failed to replace journal file");
+			}
+		}
+		catch (Exception e)
+		{
+			Logger.log(e.toString());
+		}
+
+		isDirty = false;
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	/**
+	 * readJournalFromFile()
+	 * is a private helper function used by setJournalFile() to read the stored journal entries,
+	 * if the file exists.
+	 *
+	 * @param file  specifies the file to read the journal from
+	 */
+	@SuppressWarnings("unchecked")
+	private void readJournalFromFile(File file)
+	{
+		if (!file.exists() || !file.canRead())
+		{
+			return;
+		}
+
+		try
+		{
+			ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file));
+			entries = (HashMap<String, JournalEntry>) ois.readObject();
+			ois.close();
+		}
+		catch (Exception e)
+		{
+			entries = new HashMap<String, JournalEntry>();
+			Logger.log(e.toString());
+		}
+	}
+}
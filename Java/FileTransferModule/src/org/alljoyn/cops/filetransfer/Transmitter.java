@@ -16,13 +16,23 @@
 
 package org.alljoyn.cops.filetransfer;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.alljoyn.bus.BusAttachment;
+import org.alljoyn.bus.BusException;
 import org.alljoyn.bus.ProxyBusObject;
 import org.alljoyn.bus.SignalEmitter;
 import org.alljoyn.bus.Status;
+import org.alljoyn.cops.filetransfer.alljoyn.BlockVerificationInterface;
+import org.alljoyn.cops.filetransfer.alljoyn.BundleTransferInterface;
+import org.alljoyn.cops.filetransfer.alljoyn.CompressedDataTransferInterface;
 import org.alljoyn.cops.filetransfer.alljoyn.FileDiscoveryInterface;
 import org.alljoyn.cops.filetransfer.alljoyn.FileTransferBusObject;
+import org.alljoyn.cops.filetransfer.alljoyn.InlineTransferInterface;
 import org.alljoyn.cops.filetransfer.alljoyn.DataTransferInterface;
+import org.alljoyn.cops.filetransfer.alljoyn.DataTransferInterfaceV2;
+import org.alljoyn.cops.filetransfer.alljoyn.DeltaTransferInterface;
 import org.alljoyn.cops.filetransfer.data.Action;
 import org.alljoyn.cops.filetransfer.data.FileDescriptor;
 import org.alljoyn.cops.filetransfer.data.StatusCode;
@@ -36,6 +46,33 @@ import org.alljoyn.cops.filetransfer.utility.Logger;
  * Furthermore, this module is the driving force behind communicating with peers
  * within your AllJoyn session.  
  * <p>
+ * The signal emitters and proxy bus objects used to reach each peer are cached for the
+ * lifetime of the Transmitter, which is replaced whenever a new AllJoyn session is
+ * specified. The caches are bounded and evict the least recently used peer. The cached
+ * objects for a peer are discarded whenever a transmission to that peer fails or the peer
+ * leaves the session, and every cached object is discarded when the session is lost.
+ * <p>
+ * File offsets and lengths are carried through the original Data Transfer interface
+ * whenever they fit in 32 bits, so peers that predate large file support keep working.
+ * Only ranges beyond the first 2 GB of a file use the Data Transfer V2 interface.
+ * <p>
+ * Compression is negotiated per request. A request that asks for compressed chunks is sent
+ * through the Compressed Data Transfer interface and falls back to an uncompressed request
+ * if the peer does not implement it. Compressed chunks are sent through the same interface.
+ * <p>
+ * Delta transfers use the Delta Transfer interface. REQUEST_DENIED is returned for a delta
+ * request if the peer does not implement it, so the file can be requested in full instead.
+ * Block hashes are requested through the Block Verification interface in the same way.
+ * <p>
+ * Bundles of small files are requested and sent through the Bundle Transfer interface. A bundle
+ * request returns REQUEST_DENIED if the peer does not implement it, so the files can be requested
+ * one at a time instead.
+ * <p>
+ * An offer carrying the contents of a small file is sent through the Inline Transfer interface.
+ * If the peer does not implement it, or declines inline content, the file is offered without its
+ * contents instead. The contents of small files announced to a single peer follow the announcement
+ * in an inline content signal, which peers without the interface ignore.
+ * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
  * {@link FileTransferModule} class.
@@ -48,10 +85,15 @@ public class Transmitter
 	    System.loadLibrary("alljoyn_java");
 	}	
 	
+	/** Class Constant **/
+	private static final int MAX_CACHED_PEERS = 32;
+	
 	/** Member Variables **/
 	private int sessionID;
 	private BusAttachment bus;
 	private FileTransferBusObject localBusObject;
+	private LinkedHashMap<String, SignalEmitter> signalEmitters;
+	private LinkedHashMap<String, ProxyBusObject> proxyBusObjects;
 	
 	/*------------------------------------------------------------------------*
      * Constructor
@@ -73,6 +115,33 @@ public class Transmitter
 		this.bus = bus;		
 		this.localBusObject = localBusObject;
 		
+		this.signalEmitters = new LinkedHashMap<String, SignalEmitter>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SignalEmitter> eldest)
+			{
+				return size() > MAX_CACHED_PEERS;
+			}
+		};
+		
+		this.proxyBusObjects = new LinkedHashMap<String, ProxyBusObject>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ProxyBusObject> eldest)
+			{
+				if (size() > MAX_CACHED_PEERS)
+				{
+					eldest.getValue().release();
+					return true;
+				}
+				return false;
+			}
+		};
+		
 		if (bus != null)
 		{
 			Status status = bus.registerBusObject(localBusObject, FileTransferBusObject.OBJECT_PATH);		
@@ -88,7 +157,8 @@ public class Transmitter
 	 * is called when actions are dequeued from the dispatcher. This function
 	 * will call various private helper functions based on the action type. If
 	 * there is no AllJoyn session specified this function will the Status Code
-	 * NO_AJ_CONNECTION.
+	 * NO_AJ_CONNECTION. If the transmission fails, the cached signal emitter and
+	 * proxy bus object for the peer are discarded before the exception is rethrown.
 	 * 
 	 * @param action  specifies the action to be transmitted
 	 * @return success or failure of transmitted action
@@ -102,26 +172,97 @@ public class Transmitter
 			return StatusCode.NO_AJ_CONNECTION;
 		}		
 		
-		switch (action.actionType)
+		try
+		{
+			switch (action.actionType)
+			{
+				case ANNOUNCE:
+					return sendAnnounceSignal(action);			
+				case REQUEST_DATA:
+					return sendRequestData(action);
+				case REQUEST_FILE_SIZE:
+					return sendRequestFileSize(action);
+				case REQUEST_DELTA:
+					return sendRequestDelta(action);
+				case COPY_BLOCKS:
+					return sendCopyBlocks(action);
+				case REQUEST_BLOCK_HASHES:
+					return sendRequestBlockHashes(action);
+				case REQUEST_BUNDLE:
+					return sendRequestBundle(action);
+				case DATA_CHUNK:
+					return sendDataChunk(action);
+				case DATA_CHUNK_ACK:
+					return sendDataChunkAck(action);
+				case BUNDLE_CHUNK:
+					return sendBundleChunk(action);
+				case OFFER_FILE:
+					return sendOfferFile(action);
+				case INLINE_CONTENT:
+					return sendInlineContent(action);
+				case REQUEST_ANNOUNCE:
+					return sendAnnouncementRequest(action);
+				case REQUEST_OFFER:
+					return sendRequestOffer(action);
+				case STOP_XFER:
+					return sendStopDataXfer(action);
+				case XFER_CANCELLED:
+					return sendXferCancelled(action);
+				default:
+					throw new Exception("Cannot transmit unknown ActionType");
+			}
+		}
+		catch (Exception e)
 		{
-			case ANNOUNCE:
-				return sendAnnounceSignal(action);			
-			case REQUEST_DATA:
-				return sendRequestData(action);
-			case DATA_CHUNK:
-				return sendDataChunk(action);
-			case OFFER_FILE:
-				return sendOfferFile(action);
-			case REQUEST_ANNOUNCE:
-				return sendAnnouncementRequest(action);
-			case REQUEST_OFFER:
-				return sendRequestOffer(action);
-			case STOP_XFER:
-				return sendStopDataXfer(action);
-			case XFER_CANCELLED:
-				return sendXferCancelled(action);
-			default:
-				throw new Exception("Cannot transmit unknown ActionType");
+			invalidatePeer(action.peer);
+			throw e;
+		}
+	}
+	
+	/**
+	 * invalidatePeer()
+	 * discards the cached signal emitter and proxy bus object for the specified peer. The
+	 * next transmission to the peer will create new instances.
+	 * 
+	 * @param peer  specifies the bus id of the peer, null for the broadcast signal emitter
+	 */
+	public void invalidatePeer(String peer)
+	{
+		synchronized(signalEmitters)
+		{
+			signalEmitters.remove(peer);
+		}
+		
+		synchronized(proxyBusObjects)
+		{
+			ProxyBusObject proxy = proxyBusObjects.remove(peer);
+			
+			if (proxy != null)
+			{
+				proxy.release();
+			}
+		}
+	}
+	
+	/**
+	 * clearCache()
+	 * discards every cached signal emitter and proxy bus object. This is called by the
+	 * Dispatcher when the AllJoyn session is replaced or lost.
+	 */
+	public void clearCache()
+	{
+		synchronized(signalEmitters)
+		{
+			signalEmitters.clear();
+		}
+		
+		synchronized(proxyBusObjects)
+		{
+			for (ProxyBusObject proxy : proxyBusObjects.values())
+			{
+				proxy.release();
+			}
+			proxyBusObjects.clear();
 		}
 	}
 	
@@ -154,29 +295,213 @@ public class Transmitter
 	 * is called when the Transmit() method encounters REQUEST_DATA action. This function
 	 * calls requestData() on the proxy bus object for the specified peer. This function 
 	 * will eventually get triggered when requestFile() is called on the FileTransferModule.
+	 * A request that does not fit in 32 bits is sent through the Data Transfer V2 interface
+	 * and FILE_TOO_LARGE is returned if the peer does not implement it. A request carrying a
+	 * compression level is sent through the Compressed Data Transfer interface first.
 	 * 
 	 * @param action  specifies the action
-	 * @return OK or BAD_FILE_ID
+	 * @return OK, BAD_FILE_ID or FILE_TOO_LARGE
 	 * @throws Exception
 	 */
 	private int sendRequestData(Action action) throws Exception
 	{
 		byte[] fileId = (byte[]) action.parameters.get(0);
-		int startByte = (Integer) action.parameters.get(1);
-		int length = (Integer) action.parameters.get(2);
+		long startByte = (Long) action.parameters.get(1);
+		long length = (Long) action.parameters.get(2);
 		int maxChunkSize = (Integer) action.parameters.get(3);		
+		int compressionLevel = (action.parameters.size() > 4) ? (Integer) action.parameters.get(4) : 0;
+		
+		ProxyBusObject proxy = getProxyBusObject(action.peer);
+		
+		if (compressionLevel > 0)
+		{
+			try
+			{
+				return proxy.getInterface(CompressedDataTransferInterface.class).requestCompressedData(fileId, 
+						startByte, length, maxChunkSize, compressionLevel);
+			}
+			catch (BusException e)
+			{
+				Logger.log("peer does not support compression: " + e.toString());
+			}
+		}
+		
+		if (fitsInInt(startByte + length))
+		{
+			return proxy.getInterface(DataTransferInterface.class).requestData(fileId, (int) startByte, 
+					(int) length, maxChunkSize);
+		}
+		
+		try
+		{
+			return proxy.getInterface(DataTransferInterfaceV2.class).requestData(fileId, startByte, length, maxChunkSize);
+		}
+		catch (BusException e)
+		{
+			Logger.log("peer does not support large files: " + e.toString());
+			return StatusCode.FILE_TOO_LARGE;
+		}
+	}
+	
+	/**
+	 * sendRequestFileSize()
+	 * is called when the Transmit() method encounters REQUEST_FILE_SIZE action. This function
+	 * calls requestFileSize() on the proxy bus object for the specified peer and appends the
+	 * size returned by the peer to the parameters of the action. This is used when a file
+	 * descriptor could not describe the size of a file of 2 GB or more.
+	 * 
+	 * @param action  specifies the action
+	 * @return OK, BAD_FILE_ID or FILE_TOO_LARGE
+	 * @throws Exception
+	 */
+	private int sendRequestFileSize(Action action) throws Exception
+	{
+		byte[] fileId = (byte[]) action.parameters.get(0);
+		long size;
+		
+		ProxyBusObject proxy = getProxyBusObject(action.peer);
+		
+		try
+		{
+			size = proxy.getInterface(DataTransferInterfaceV2.class).requestFileSize(fileId);
+		}
+		catch (BusException e)
+		{
+			Logger.log("peer does not support large files: " + e.toString());
+			return StatusCode.FILE_TOO_LARGE;
+		}
 		
-		ProxyBusObject proxy = bus.getProxyBusObject(action.peer, FileTransferBusObject.OBJECT_PATH, 
-				sessionID, new Class[] { DataTransferInterface.class });
-		return proxy.getInterface(DataTransferInterface.class).requestData(fileId, startByte, length, maxChunkSize);
+		if (size < 0)
+		{
+			return StatusCode.BAD_FILE_ID;
+		}
+		action.parameters.add(size);
+		return StatusCode.OK;
 	}
 
+	/**
+	 * sendRequestDelta()
+	 * is called when the Transmit() method encounters REQUEST_DELTA action. This function
+	 * calls requestDelta() on the proxy bus object for the specified peer with the block
+	 * signatures of the older copy of the file.
+	 * 
+	 * @param action  specifies the action
+	 * @return OK, BAD_FILE_ID, INVALID or REQUEST_DENIED
+	 * @throws Exception
+	 */
+	private int sendRequestDelta(Action action) throws Exception
+	{
+		byte[] fileId = (byte[]) action.parameters.get(0);
+		int blockSize = (Integer) action.parameters.get(1);
+		int[] weakChecksums = (int[]) action.parameters.get(2);
+		byte[] strongHashes = (byte[]) action.parameters.get(3);
+		
+		ProxyBusObject proxy = getProxyBusObject(action.peer);
+		
+		try
+		{
+			return proxy.getInterface(DeltaTransferInterface.class).requestDelta(fileId, blockSize, 
+					weakChecksums, strongHashes);
+		}
+		catch (BusException e)
+		{
+			Logger.log("peer does not support delta transfers: " + e.toString());
+			return StatusCode.REQUEST_DENIED;
+		}
+	}
+	
+	/**
+	 * sendRequestBlockHashes()
+	 * is called when the Transmit() method encounters REQUEST_BLOCK_HASHES action. This function
+	 * calls requestBlockHashes() on the proxy bus object for the specified peer and appends the
+	 * returned hashes to the parameters of the action.
+	 * 
+	 * @param action  specifies the action
+	 * @return OK or REQUEST_DENIED
+	 * @throws Exception
+	 */
+	private int sendRequestBlockHashes(Action action) throws Exception
+	{
+		byte[] fileId = (byte[]) action.parameters.get(0);
+		byte[] blockHashes;
+		
+		ProxyBusObject proxy = getProxyBusObject(action.peer);
+		
+		try
+		{
+			blockHashes = proxy.getInterface(BlockVerificationInterface.class).requestBlockHashes(fileId);
+		}
+		catch (BusException e)
+		{
+			Logger.log("peer does not support block verification: " + e.toString());
+			return StatusCode.REQUEST_DENIED;
+		}
+		
+		action.parameters.add(blockHashes);
+		return StatusCode.OK;
+	}
+	
+	/**
+	 * sendRequestBundle()
+	 * is called when the Transmit() method encounters REQUEST_BUNDLE action. This function calls
+	 * requestBundle() on the proxy bus object for the specified peer with the list of requested
+	 * file IDs.
+	 * 
+	 * @param action  specifies the action
+	 * @return OK, BAD_FILE_ID, INVALID or REQUEST_DENIED
+	 * @throws Exception
+	 */
+	private int sendRequestBundle(Action action) throws Exception
+	{
+		byte[] bundleId = (byte[]) action.parameters.get(0);
+		byte[] fileIds = (byte[]) action.parameters.get(1);
+		int maxChunkLength = (Integer) action.parameters.get(2);
+		
+		ProxyBusObject proxy = getProxyBusObject(action.peer);
+		
+		try
+		{
+			return proxy.getInterface(BundleTransferInterface.class).requestBundle(bundleId, fileIds, 
+					maxChunkLength);
+		}
+		catch (BusException e)
+		{
+			Logger.log("peer does not support bundle transfers: " + e.toString());
+			return StatusCode.REQUEST_DENIED;
+		}
+	}
+	
+	/**
+	 * sendCopyBlocks()
+	 * is called when the Transmit() method encounters COPY_BLOCKS action. This function sends
+	 * a directed signal telling the receiver of a delta transfer which ranges of the file it
+	 * can copy from its older copy.
+	 * 
+	 * @param action  specifies the action
+	 * @return OK
+	 * @throws Exception
+	 */
+	private int sendCopyBlocks(Action action) throws Exception
+	{
+		byte[] fileId = (byte[]) action.parameters.get(0);
+		long[] targetOffsets = (long[]) action.parameters.get(1);
+		int[] basisBlocks = (int[]) action.parameters.get(2);
+		int[] numBlocks = (int[]) action.parameters.get(3);
+		
+		SignalEmitter emitter = getSignalEmitter(action.peer);
+		emitter.getInterface(DeltaTransferInterface.class).copyBlocks(fileId, targetOffsets, basisBlocks, 
+				numBlocks);
+		return StatusCode.OK;
+	}
+	
 	/**
 	 * sendDataChunk()
 	 * is called when the Transmit() method encounters DATA_CHUNK action. This function
 	 * sends a directed signal with the file chunk to the specified peer. This function 
 	 * is triggered when you grant a file request from a peer. All file chunks are sent 
-	 * via this signal to session peers.
+	 * via this signal to session peers. Chunks that end beyond the first 2 GB of the file
+	 * are sent through the Data Transfer V2 interface and compressed chunks are sent through
+	 * the Compressed Data Transfer interface.
 	 * 
 	 * @param action  specifies the action
 	 * @return OK
@@ -185,12 +510,77 @@ public class Transmitter
 	private int sendDataChunk(Action action) throws Exception
 	{
 		byte[] fileId = (byte[]) action.parameters.get(0);		
-		int startByte = (Integer) action.parameters.get(1);
+		long startByte = (Long) action.parameters.get(1);
 		int chunkLength = (Integer) action.parameters.get(2);
 		byte[] chunk = (byte[]) action.parameters.get(3);
+		boolean isCompressed = (action.parameters.size() > 4) && (Boolean) action.parameters.get(4);
 		
 		SignalEmitter emitter = getSignalEmitter(action.peer);		
-		emitter.getInterface(DataTransferInterface.class).dataChunk(fileId, startByte, chunkLength, chunk);		
+		
+		if (isCompressed)
+		{
+			emitter.getInterface(CompressedDataTransferInterface.class).compressedDataChunk(fileId, startByte, 
+					chunkLength, chunk);
+		}
+		else if (fitsInInt(startByte + chunkLength))
+		{
+			emitter.getInterface(DataTransferInterface.class).dataChunk(fileId, (int) startByte, chunkLength, chunk);
+		}
+		else
+		{
+			emitter.getInterface(DataTransferInterfaceV2.class).dataChunk(fileId, startByte, chunkLength, chunk);
+		}
+		return StatusCode.OK;
+	}
+	
+	/**
+	 * sendBundleChunk()
+	 * is called when the Transmit() method encounters BUNDLE_CHUNK action. This function sends
+	 * a directed signal with a chunk of a bundle of files to the specified peer.
+	 * 
+	 * @param action  specifies the action
+	 * @return OK
+	 * @throws Exception
+	 */
+	private int sendBundleChunk(Action action) throws Exception
+	{
+		byte[] bundleId = (byte[]) action.parameters.get(0);
+		long startByte = (Long) action.parameters.get(1);
+		byte[] chunk = (byte[]) action.parameters.get(2);
+		
+		SignalEmitter emitter = getSignalEmitter(action.peer);
+		emitter.getInterface(BundleTransferInterface.class).bundleChunk(bundleId, startByte, chunk);
+		return StatusCode.OK;
+	}
+	
+	/**
+	 * sendDataChunkAck()
+	 * is called when the Transmit() method encounters DATA_CHUNK_ACK action. This function
+	 * sends a directed signal to the file sender acknowledging that the specified chunk
+	 * has been received and saved. The sender uses the acknowledgement to slide its send
+	 * window. Chunks that end beyond the first 2 GB of the file are acknowledged through the
+	 * Data Transfer V2 interface.
+	 * 
+	 * @param action  specifies the action
+	 * @return OK
+	 * @throws Exception
+	 */
+	private int sendDataChunkAck(Action action) throws Exception
+	{
+		byte[] fileId = (byte[]) action.parameters.get(0);		
+		long startByte = (Long) action.parameters.get(1);
+		int chunkLength = (Integer) action.parameters.get(2);
+		
+		SignalEmitter emitter = getSignalEmitter(action.peer);		
+		
+		if (fitsInInt(startByte + chunkLength))
+		{
+			emitter.getInterface(DataTransferInterface.class).dataChunkAck(fileId, (int) startByte, chunkLength);
+		}
+		else
+		{
+			emitter.getInterface(DataTransferInterfaceV2.class).dataChunkAck(fileId, startByte, chunkLength);
+		}
 		return StatusCode.OK;
 	}
 	
@@ -198,10 +588,12 @@ public class Transmitter
 	 * sendOfferFile()
 	 * is called when the Transmit() function encounters an OFFER_FILE action. This function
 	 * calls offerFile() on the specified peers proxy bus object to formally send the file
-	 * offer. 
+	 * offer. When the action carries the contents of the file, the contents are offered through
+	 * the Inline Transfer interface first, and OK is returned if the peer accepted and saved the
+	 * file. 
 	 * 
 	 * @param action  specifies the action
-	 * @return OK, BAD_FILE_ID, OFFER_REJECTED, or OFFER_TIMEOUT
+	 * @return OK, BAD_FILE_ID, OFFER_ACCEPTED, OFFER_REJECTED, or OFFER_TIMEOUT
 	 * @throws Exception
 	 */
 	private int sendOfferFile(Action action) throws Exception
@@ -210,9 +602,46 @@ public class Transmitter
 		
 		Logger.log("sending offer method to " + action.peer);		
 		
-		ProxyBusObject proxy = bus.getProxyBusObject(action.peer, FileTransferBusObject.OBJECT_PATH, 
-				sessionID, new Class[] { FileDiscoveryInterface.class });
+		ProxyBusObject proxy = getProxyBusObject(action.peer);
+		
+		if (action.parameters.size() > 1)
+		{
+			try
+			{
+				int status = proxy.getInterface(InlineTransferInterface.class).offerInlineFile(file, 
+						(byte[]) action.parameters.get(1));
+				
+				if (status != StatusCode.REQUEST_DENIED)
+				{
+					return status;
+				}
+			}
+			catch (BusException e)
+			{
+				Logger.log("peer does not support inline transfers: " + e.toString());
+			}
+		}
 		return proxy.getInterface(FileDiscoveryInterface.class).offerFile(file);
+	}
+	
+	/**
+	 * sendInlineContent()
+	 * is called when the Transmit() function encounters an INLINE_CONTENT action. This function
+	 * sends a directed signal carrying the contents of a small file that has just been announced
+	 * to the peer.
+	 * 
+	 * @param action  specifies the action
+	 * @return OK
+	 * @throws Exception
+	 */
+	private int sendInlineContent(Action action) throws Exception
+	{
+		byte[] fileId = (byte[]) action.parameters.get(0);
+		byte[] content = (byte[]) action.parameters.get(1);
+		
+		SignalEmitter emitter = getSignalEmitter(action.peer);
+		emitter.getInterface(InlineTransferInterface.class).inlineContent(fileId, content);
+		return StatusCode.OK;
 	}	
 
 	/**
@@ -292,30 +721,101 @@ public class Transmitter
 		
 		Logger.log("sending file id request signal");		
 		
-		ProxyBusObject proxy = bus.getProxyBusObject(action.peer, FileTransferBusObject.OBJECT_PATH, 
-				sessionID, new Class[] { FileDiscoveryInterface.class });
+		ProxyBusObject proxy = getProxyBusObject(action.peer);
 		return proxy.getInterface(FileDiscoveryInterface.class).requestOffer(filepath);
 	}
 	
+	/**
+	 * fitsInInt()
+	 * is a private helper function that determines whether the end of a range of a file can
+	 * be carried by the original Data Transfer interface.
+	 * 
+	 * @param end  specifies the byte after the last byte of the range
+	 * @return true if the range fits in 32 bits, false otherwise
+	 */
+	private boolean fitsInInt(long end)
+	{
+		return end <= Integer.MAX_VALUE;
+	}
+	
 	/**
 	 * getSignalEmitter()
 	 * is called when an AllJoyn signal needs to be constructed and sent. This function will
-	 * return a new instance of SignalEmitter. If the the destinationBusId parameter is not
-	 * null, the function will return a directed signal emitter so the AllJoyn signal can be
-	 * directed at a specific session peer. Otherwise, the function will return a broadcast
-	 * signal emitter that will be received by every session peer.
+	 * return the cached SignalEmitter for the destination, creating one if necessary. If the 
+	 * the destinationBusId parameter is not null, the function will return a directed signal 
+	 * emitter so the AllJoyn signal can be directed at a specific session peer. Otherwise, the
+	 * function will return a broadcast signal emitter that will be received by every session peer.
 	 * 
 	 * @param destinationBusId  specifies the bus id for a given session peer
 	 * @return SignalEmitter
 	 */
 	private SignalEmitter getSignalEmitter(String destinationBusId)
 	{
-		if (destinationBusId == null)
+		synchronized(signalEmitters)
 		{
-			//broadcast signal emitter
-			return new SignalEmitter(localBusObject, sessionID, SignalEmitter.GlobalBroadcast.On);
-		}		
-		//directed signal emitter
-		return new SignalEmitter(localBusObject, destinationBusId, sessionID, SignalEmitter.GlobalBroadcast.On);
+			SignalEmitter emitter = signalEmitters.get(destinationBusId);
+			
+			if (emitter == null)
+			{
+				if (destinationBusId == null)
+				{
+					//broadcast signal emitter
+					emitter = new SignalEmitter(localBusObject, sessionID, SignalEmitter.GlobalBroadcast.On);
+				}
+				else
+				{
+					//directed signal emitter
+					emitter = new SignalEmitter(localBusObject, destinationBusId, sessionID, 
+							SignalEmitter.GlobalBroadcast.On);
+				}
+				signalEmitters.put(destinationBusId, emitter);
+			}
+			
+			return emitter;
+		}
+	}
+	
+	/**
+	 * getProxyInterfaces()
+	 * returns the interfaces implemented by the proxy bus objects created for session peers. A
+	 * proxy bus object can only be cast to the interfaces it was created with, so every
+	 * interface whose methods are called on a peer must be listed.
+	 * 
+	 * @return the interfaces of the proxy bus objects
+	 */
+	public static Class<?>[] getProxyInterfaces()
+	{
+		return new Class<?>[] { DataTransferInterface.class, DataTransferInterfaceV2.class, 
+				CompressedDataTransferInterface.class, DeltaTransferInterface.class, 
+				BlockVerificationInterface.class, BundleTransferInterface.class, InlineTransferInterface.class, 
+				FileDiscoveryInterface.class };
+	}
+	
+	/**
+	 * getProxyBusObject()
+	 * is called when an AllJoyn method needs to be called on a session peer. This function
+	 * will return the cached ProxyBusObject for the peer, creating one if necessary. The proxy
+	 * bus object implements the data transfer, data transfer V2, compressed data transfer, delta
+	 * transfer, block verification, bundle transfer, inline transfer and file discovery interfaces
+	 * listed by getProxyInterfaces().
+	 * 
+	 * @param peer  specifies the bus id for a given session peer
+	 * @return ProxyBusObject
+	 */
+	private ProxyBusObject getProxyBusObject(String peer)
+	{
+		synchronized(proxyBusObjects)
+		{
+			ProxyBusObject proxy = proxyBusObjects.get(peer);
+			
+			if (proxy == null)
+			{
+				proxy = bus.getProxyBusObject(peer, FileTransferBusObject.OBJECT_PATH, sessionID, 
+						getProxyInterfaces());
+				proxyBusObjects.put(peer, proxy);
+			}
+			
+			return proxy;
+		}
 	}
 }
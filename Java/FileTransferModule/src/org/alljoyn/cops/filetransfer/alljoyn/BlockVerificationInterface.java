@@ -0,0 +1,47 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.alljoyn;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.annotation.BusInterface;
+import org.alljoyn.bus.annotation.BusMethod;
+
+/**
+ * The Block Verification Interface specifies the AllJoyn method used to fetch the hashes of
+ * the blocks of a file from its owner. A receiver that verifies the blocks it writes asks for
+ * the hashes before requesting the file. If the owner does not implement this interface, the
+ * method call fails and the file is received without block verification.
+ * <p>
+ * Note: This interface is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link org.alljoyn.cops.filetransfer.FileTransferModule} class.
+*/
+@BusInterface(name="org.alljoyn.Cops.BlockVerification")
+public interface BlockVerificationInterface
+{
+	/**
+	 * requestBlockHashes()
+	 * is specified as an AllJoyn method and is used to ask a remote session peer for the
+	 * hashes of the blocks of a file.
+	 * 
+	 * @param fileID  specifies the file ID of the file
+	 * @return hashes of the blocks one after the other, empty if the file is not available
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusMethod
+	public byte[] requestBlockHashes(byte[] fileID) throws BusException;
+}
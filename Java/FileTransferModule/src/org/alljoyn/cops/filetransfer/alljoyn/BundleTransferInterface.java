@@ -0,0 +1,63 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+package org.alljoyn.cops.filetransfer.alljoyn;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.annotation.BusInterface;
+import org.alljoyn.bus.annotation.BusMethod;
+import org.alljoyn.bus.annotation.BusSignal;
+
+/**
+ * The Bundle Transfer Interface specifies the AllJoyn method and signal used to transfer
+ * many small files at once. The receiver requests a list of files in a single method call
+ * and the sender streams them back to back as one bundle, framed as described by
+ * {@link org.alljoyn.cops.filetransfer.utility.BundleFrame}, so many files share each chunk.
+ * If the sender does not implement this interface, the method call fails and the receiver
+ * requests the files one at a time.
+ * <p>
+ * Note: This interface is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link org.alljoyn.cops.filetransfer.FileTransferModule} class.
+*/
+@BusInterface(name="org.alljoyn.Cops.BundleTransfer")
+public interface BundleTransferInterface
+{
+	/**
+	 * requestBundle()
+	 * is specified as an AllJoyn method and is used to request several files from a remote
+	 * session peer as a single bundle.
+	 *
+	 * @param bundleID  specifies the ID chosen by the receiver to identify the bundle
+	 * @param fileIDs  specifies the file IDs of the requested files, one after the other
+	 * @param maxChunkLength  specifies the max length of each chunk of the bundle
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusMethod
+	public int requestBundle(byte[] bundleID, byte[] fileIDs, int maxChunkLength) throws BusException;
+
+	/**
+	 * bundleChunk()
+	 * is specified as an AllJoyn signal and is used to send a chunk of a bundle to a remote
+	 * session peer.
+	 *
+	 * @param bundleID  specifies the ID of the bundle the data belongs to
+	 * @param startByte  specifies the starting byte of the chunk relative to the bundle
+	 * @param chunk  specifies the bundle data
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusSignal
+	public void bundleChunk(byte[] bundleID, long startByte, byte[] chunk) throws BusException;
+}
@@ -0,0 +1,70 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.alljoyn;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.annotation.BusInterface;
+import org.alljoyn.bus.annotation.BusMethod;
+import org.alljoyn.bus.annotation.BusSignal;
+
+/**
+ * The Compressed Data Transfer Interface specifies the AllJoyn method and signal used to
+ * negotiate compression of a transfer. A receiver that wants compressed chunks requests
+ * the data through this interface. If the sender does not implement it, the method call
+ * fails and the receiver falls back to an uncompressed request. The sender may still send
+ * any chunk uncompressed through the Data Transfer interfaces, for example when the chunk
+ * does not get smaller or the file is already compressed.
+ * <p>
+ * Note: This interface is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link org.alljoyn.cops.filetransfer.FileTransferModule} class.
+*/
+@BusInterface(name="org.alljoyn.Cops.CompressedDataTransfer")
+public interface CompressedDataTransferInterface
+{
+	/**
+	 * requestCompressedData()
+	 * is specified as an AllJoyn method and is used to request a range of a file from a
+	 * remote session peer, allowing the peer to compress the chunks at the specified
+	 * compression level.
+	 *
+	 * @param fileID  specifies the file ID of the requested file
+	 * @param startByte  specifies the starting byte of the request relative to the file
+	 * @param length  specifies the length of file request in bytes
+	 * @param maxChunkLength  specifies the max chunk length before compression
+	 * @param compressionLevel  specifies the Deflater compression level
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusMethod
+	public int requestCompressedData(byte[] fileID, long startByte, long length, int maxChunkLength,
+			int compressionLevel) throws BusException;
+
+	/**
+	 * compressedDataChunk()
+	 * is specified as an AllJoyn signal and is used to send a compressed file chunk to a
+	 * remote session peer.
+	 *
+	 * @param fileID  specifies the fileId of the file the data belongs to
+	 * @param startByte  specifies the starting byte of the chunk relative to the file
+	 * @param chunkLength  specifies the length of the chunk before compression
+	 * @param compressedChunk  specifies the compressed file data
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusSignal
+	public void compressedDataChunk(byte[] fileID, long startByte, int chunkLength,
+			byte[] compressedChunk) throws BusException;
+}
@@ -87,4 +87,19 @@ public interface DataTransferInterface
 	 */
 	@BusSignal
 	public void dataXferCancelled(byte[] fileID) throws BusException;
+
+	/**
+	 * dataChunkAck()
+	 * is specified as an AllJoyn signal and is sent by the file receiver after a data chunk
+	 * has been saved. The acknowledgement allows the sender to slide its send window and
+	 * keep a bounded number of chunks in flight. Peers that do not send this signal are
+	 * served using the local send window only.
+	 * 
+	 * @param fileID  specifies the ID of file being transferred
+	 * @param startByte  specifies the starting byte of the acknowledged chunk relative to the file
+	 * @param chunkLength  specifies the length of the acknowledged chunk
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusSignal
+	public void dataChunkAck(byte[] fileID, int startByte, int chunkLength) throws BusException;
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.alljoyn;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.annotation.BusInterface;
+import org.alljoyn.bus.annotation.BusMethod;
+import org.alljoyn.bus.annotation.BusSignal;
+
+/**
+ * The Data Transfer V2 Interface specifies the AllJoyn signals and methods used to
+ * transfer files of 2 GB or more. The members mirror those of the Data Transfer
+ * Interface but carry 64 bit offsets and lengths. Peers that only implement the
+ * original interface are never sent these members unless a file is too large for
+ * it, in which case the method call fails and the transfer is refused with
+ * FILE_TOO_LARGE. Transfers that fit in 32 bits keep using the original interface
+ * so every peer can take part in them.
+ * <p>
+ * Note: This interface is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link org.alljoyn.cops.filetransfer.FileTransferModule} class.
+*/
+@BusInterface(name="org.alljoyn.Cops.DataTransferV2")
+public interface DataTransferInterfaceV2
+{
+	/**
+	 * requestFileSize()
+	 * is specified as an AllJoyn method and is used to ask a remote session peer for the
+	 * size of a file whose file descriptor could not describe it.
+	 * 
+	 * @param fileID  specifies the file ID of the file
+	 * @return size of the file in bytes, -1 if the file is not available
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusMethod
+	public long requestFileSize(byte[] fileID) throws BusException;
+	
+	/**
+	 * requestData()
+	 * is specified as an AllJoyn method and is used to request a range of a file that
+	 * does not fit in 32 bits from a remote session peer. The method handler will
+	 * delegate to the SendManager to handle the file request.
+	 *  
+	 * @param fileID  specifies the file ID of the requested file
+	 * @param startByte  specifies the starting byte of the request relative to the file
+	 * @param length  specifies the length of file request in bytes
+	 * @param maxChunkLength  specifies the max chunk length
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusMethod
+	public int requestData(byte[] fileID, long startByte, long length, int maxChunkLength) throws BusException;
+	
+	/**
+	 * dataChunk()
+	 * is specified as an AllJoyn signal and is used to send file chunks that start beyond
+	 * the first 2 GB of a file to remote session peers.
+	 * 
+	 * @param fileID  specifies the fileId of the file the data belongs to
+	 * @param startByte  specifies the starting byte of the chunk relative to the file
+	 * @param chunkLength  specifies the length of data chunk
+	 * @param chunk  specifies the file data chunk
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusSignal
+	public void dataChunk(byte[] fileID, long startByte, int chunkLength, byte[] chunk) throws BusException;
+	
+	/**
+	 * dataChunkAck()
+	 * is specified as an AllJoyn signal and is sent by the file receiver after a data chunk
+	 * that starts beyond the first 2 GB of a file has been saved.
+	 * 
+	 * @param fileID  specifies the ID of file being transferred
+	 * @param startByte  specifies the starting byte of the acknowledged chunk relative to the file
+	 * @param chunkLength  specifies the length of the acknowledged chunk
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusSignal
+	public void dataChunkAck(byte[] fileID, long startByte, int chunkLength) throws BusException;
+}
@@ -0,0 +1,68 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.alljoyn;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.annotation.BusInterface;
+import org.alljoyn.bus.annotation.BusMethod;
+import org.alljoyn.bus.annotation.BusSignal;
+
+/**
+ * The Delta Transfer Interface specifies the AllJoyn method and signal used to transfer
+ * only the parts of a file that differ from an older copy held by the receiver. The
+ * receiver sends the signatures of the blocks of its older copy and the sender answers
+ * with the ranges of the new file that can be copied from those blocks. The remaining
+ * ranges are requested through the Data Transfer interfaces.
+ * <p>
+ * Note: This interface is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link org.alljoyn.cops.filetransfer.FileTransferModule} class.
+*/
+@BusInterface(name="org.alljoyn.Cops.DeltaTransfer")
+public interface DeltaTransferInterface
+{
+	/**
+	 * requestDelta()
+	 * is specified as an AllJoyn method and is used to send the block signatures of an older
+	 * copy of a file to a remote session peer. The peer answers with the copyBlocks signal.
+	 *
+	 * @param fileID  specifies the file ID of the requested file
+	 * @param blockSize  specifies the size of the blocks of the older copy
+	 * @param weakChecksums  specifies the weak rolling checksum of each block
+	 * @param strongHashes  specifies the strong hash of each block, one after the other
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusMethod
+	public int requestDelta(byte[] fileID, int blockSize, int[] weakChecksums,
+			byte[] strongHashes) throws BusException;
+
+	/**
+	 * copyBlocks()
+	 * is specified as an AllJoyn signal and is used to tell the receiver of a delta transfer
+	 * which ranges of the file can be copied from its older copy. Each run copies numBlocks
+	 * consecutive blocks, starting with basisBlock, to the specified offset of the file.
+	 *
+	 * @param fileID  specifies the file ID of the file
+	 * @param targetOffsets  specifies the offset in the file of each run
+	 * @param basisBlocks  specifies the first block of the older copy of each run
+	 * @param numBlocks  specifies the number of blocks of each run
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusSignal
+	public void copyBlocks(byte[] fileID, long[] targetOffsets, int[] basisBlocks,
+			int[] numBlocks) throws BusException;
+}
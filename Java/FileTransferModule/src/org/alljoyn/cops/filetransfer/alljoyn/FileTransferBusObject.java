@@ -24,21 +24,26 @@ import org.alljoyn.cops.filetransfer.data.StatusCode;
 import org.alljoyn.cops.filetransfer.listener.DirectedAnnouncementManagerListener;
 import org.alljoyn.cops.filetransfer.listener.OfferManagerListener;
 import org.alljoyn.cops.filetransfer.listener.SendManagerListener;
+import org.alljoyn.cops.filetransfer.utility.BundleFrame;
 import org.alljoyn.cops.filetransfer.utility.Logger;
 
 /**
  * The File Transfer Bus Object is registered with the AllJoyn Bus Attachment and exposes
- * the Data Transfer and File Discovery interfaces to remote session peers. This object
- * listens and responds to remote method calls (not to be confused with signals) made by
+ * the Data Transfer, Data Transfer V2, Compressed Data Transfer, Delta Transfer, Block Verification,
+ * Bundle Transfer, Inline Transfer and File Discovery interfaces to remote session peers. This
+ * object listens and responds to remote method calls (not to be confused with signals) made by
  * AllJoyn session peers. Methods are used when a response is needed quickly since signals
- * are too slow. The three methods handled by the bus object are: requestData, requestOffer,
- * and offerFile.
+ * are too slow. The methods handled by the bus object are: requestData, requestFileSize,
+ * requestDelta, requestBlockHashes, requestBundle, requestOffer, offerFile, and offerInlineFile.
+ * Both versions of requestData, as well as requestCompressedData, are served by the same handler.
  * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
  * {@link org.alljoyn.cops.filetransfer.FileTransferModule} class.
  */
-public class FileTransferBusObject implements DataTransferInterface, FileDiscoveryInterface, BusObject
+public class FileTransferBusObject implements DataTransferInterface, DataTransferInterfaceV2,
+		CompressedDataTransferInterface, DeltaTransferInterface, BlockVerificationInterface, BundleTransferInterface,
+		InlineTransferInterface, FileDiscoveryInterface, BusObject
 {
 	/** Object Path - used by AllJoyn to find the correct Bus Object **/
 	public static final String OBJECT_PATH = "/filetransfer";
@@ -84,17 +89,142 @@ public class FileTransferBusObject implements DataTransferInterface, FileDiscove
 	public int requestData(byte[] fileID, int startByte, int length, 
 			int maxChunkLength) throws BusException
 	{		
+		return requestData(fileID, (long) startByte, (long) length, maxChunkLength);
+	}
+	
+	/**
+	 * requestData()
+	 * is triggered by AllJoyn when the 64 bit version of requestData() is called by the
+	 * Transmitter. See the 32 bit version for an explanation of how the request is handled.
+	 *  
+	 * @param fileID  file ID of the file being requested
+	 * @param startByte  starting byte of the request relative to the file
+	 * @param length  length of request in bytes
+	 * @param maxChunkLength  specifies the max chunk size
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public int requestData(byte[] fileID, long startByte, long length, 
+			int maxChunkLength) throws BusException
+	{
+		return requestCompressedData(fileID, startByte, length, maxChunkLength, 0);
+	}
+	
+	/**
+	 * requestCompressedData()
+	 * is triggered by AllJoyn when the requestCompressedData() method is called by the
+	 * Transmitter. The request is handled like requestData() except that the chunks may
+	 * be compressed at the specified compression level. A compression level of zero
+	 * requests uncompressed chunks.
+	 *  
+	 * @param fileID  file ID of the file being requested
+	 * @param startByte  starting byte of the request relative to the file
+	 * @param length  length of request in bytes
+	 * @param maxChunkLength  specifies the max chunk size
+	 * @param compressionLevel  specifies the compression level
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public int requestCompressedData(byte[] fileID, long startByte, long length, 
+			int maxChunkLength, int compressionLevel) throws BusException
+	{
 		String peer = bus.getMessageContext().sender;
 		
 		Logger.log("got file request from: " + peer + " for " + length + " bytes");
 		
 		if (offerManagerListener != null && offerManagerListener.isOfferPending(fileID))
 		{
-			return offerManagerListener.handleFileRequest(fileID, startByte, length, peer, maxChunkLength);
+			return offerManagerListener.handleFileRequest(fileID, startByte, length, peer, maxChunkLength,
+					compressionLevel);
 		}
 		else if (sendManagerListener != null)
 		{
-			return sendManagerListener.sendFile(fileID, startByte, length, peer, maxChunkLength);
+			return sendManagerListener.sendFile(fileID, startByte, length, peer, maxChunkLength,
+					compressionLevel);
+		}
+		return StatusCode.FILE_NOT_BEING_TRANSFERRED;
+	}
+	
+	/**
+	 * requestDelta()
+	 * is triggered by AllJoyn when the requestDelta() method is called by the Transmitter.
+	 * This function passes the block signatures of the older copy of the file held by the
+	 * peer to the Send Manager, which answers with the ranges the peer can copy locally.
+	 *  
+	 * @param fileID  file ID of the file being requested
+	 * @param blockSize  size of the blocks of the older copy
+	 * @param weakChecksums  weak rolling checksum of each block
+	 * @param strongHashes  strong hash of each block
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public int requestDelta(byte[] fileID, int blockSize, int[] weakChecksums, 
+			byte[] strongHashes) throws BusException
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		Logger.log("got delta request from: " + peer + " for " + weakChecksums.length + " blocks");
+		
+		if (sendManagerListener != null)
+		{
+			return sendManagerListener.sendDelta(fileID, blockSize, weakChecksums, strongHashes, peer);
+		}
+		return StatusCode.FILE_NOT_BEING_TRANSFERRED;
+	}
+	
+	/**
+	 * requestFileSize()
+	 * is triggered by AllJoyn when the requestFileSize() method is called by the Transmitter.
+	 * This function asks the Send Manager for the size of the file matching the file ID.
+	 *  
+	 * @param fileID  file ID of the file
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public long requestFileSize(byte[] fileID) throws BusException
+	{
+		if (sendManagerListener != null)
+		{
+			return sendManagerListener.getFileSize(fileID);
+		}
+		return -1;
+	}
+	
+	/**
+	 * requestBlockHashes()
+	 * is triggered by AllJoyn when the requestBlockHashes() method is called by the Transmitter.
+	 * This function asks the Send Manager for the hashes of the blocks of the file matching the
+	 * file ID.
+	 *  
+	 * @param fileID  file ID of the file
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public byte[] requestBlockHashes(byte[] fileID) throws BusException
+	{
+		if (sendManagerListener != null)
+		{
+			return sendManagerListener.getBlockHashes(fileID);
+		}
+		return new byte[0];
+	}
+	
+	/**
+	 * requestBundle()
+	 * is triggered by AllJoyn when the requestBundle() method is called by the Transmitter.
+	 * This function passes the list of requested files to the Send Manager, which streams
+	 * them to the peer as a single bundle.
+	 *  
+	 * @param bundleID  ID of the bundle chosen by the peer
+	 * @param fileIDs  file IDs of the requested files, one after the other
+	 * @param maxChunkLength  max length of each chunk of the bundle
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public int requestBundle(byte[] bundleID, byte[] fileIDs, int maxChunkLength) throws BusException
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		Logger.log("got bundle request from: " + peer + " for " + (fileIDs.length / BundleFrame.FILE_ID_LENGTH) 
+				+ " files");
+		
+		if (sendManagerListener != null)
+		{
+			return sendManagerListener.sendBundle(bundleID, fileIDs, maxChunkLength, peer);
 		}
 		return StatusCode.FILE_NOT_BEING_TRANSFERRED;
 	}
@@ -144,6 +274,40 @@ public class FileTransferBusObject implements DataTransferInterface, FileDiscove
 		return StatusCode.OFFER_REJECTED;
 	}
 	
+	/**
+	 * offerInlineFile()
+	 * is triggered by AllJoyn when the offerInlineFile() method is called by the Transmitter.
+	 * This function notifies the Offer Manager via the Offer Listener to handle the offer
+	 * of a small file whose contents came with the offer.
+	 * 
+	 * @param file  file descriptor of offered file
+	 * @param content  contents of the offered file
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public int offerInlineFile(FileDescriptor file, byte[] content) throws BusException
+	{
+		String peer = bus.getMessageContext().sender;
+		
+		Logger.log("got inline offer from: " + peer);
+		
+		if (offerManagerListener != null)
+		{
+			return offerManagerListener.handleInlineOffer(file, content, peer);					
+		}
+		return StatusCode.REQUEST_DENIED;
+	}
+	
+	/**
+	 * inlineContent()
+	 * is an AllJoyn signal. See Receiver for implementation	  			 
+	 * 
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public void inlineContent(byte[] fileID, byte[] content) throws BusException
+	{
+		// intentionally left blank		
+	}
+	
 	/**
 	 * requestAnnouncement()
 	 * is an AllJoyn signal. See Receiver for implementation	  			 
@@ -177,6 +341,53 @@ public class FileTransferBusObject implements DataTransferInterface, FileDiscove
 	{
 		// intentionally left blank			
 	}
+	
+	/**
+	 * dataChunk()
+	 * is an AllJoyn signal. See Receiver for implementation
+	 * 	  			 
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public void dataChunk(byte[] fileID, long startByte, int chunkLength,
+			byte[] chunk) throws BusException
+	{
+		// intentionally left blank			
+	}
+
+	/**
+	 * compressedDataChunk()
+	 * is an AllJoyn signal. See Receiver for implementation
+	 * 	  			 
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public void compressedDataChunk(byte[] fileID, long startByte, int chunkLength,
+			byte[] compressedChunk) throws BusException
+	{
+		// intentionally left blank			
+	}
+
+	/**
+	 * bundleChunk()
+	 * is an AllJoyn signal. See Receiver for implementation
+	 * 	  			 
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public void bundleChunk(byte[] bundleID, long startByte, byte[] chunk) throws BusException
+	{
+		// intentionally left blank			
+	}
+
+	/**
+	 * copyBlocks()
+	 * is an AllJoyn signal. See Receiver for implementation
+	 * 	  			 
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public void copyBlocks(byte[] fileID, long[] targetOffsets, int[] basisBlocks,
+			int[] numBlocks) throws BusException
+	{
+		// intentionally left blank			
+	}
 
 	/**
 	 * offerRejected()
@@ -210,6 +421,28 @@ public class FileTransferBusObject implements DataTransferInterface, FileDiscove
 	{
 		// intentionally left blank			
 	}
+
+	/**
+	 * dataChunkAck()
+	 * is an AllJoyn signal. See Receiver for implementation
+	 * 	  			 
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public void dataChunkAck(byte[] fileID, int startByte, int chunkLength) throws BusException
+	{
+		// intentionally left blank			
+	}
+	
+	/**
+	 * dataChunkAck()
+	 * is an AllJoyn signal. See Receiver for implementation
+	 * 	  			 
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	public void dataChunkAck(byte[] fileID, long startByte, int chunkLength) throws BusException
+	{
+		// intentionally left blank			
+	}
 	
 	/**
 	 * setSendManagerListener()
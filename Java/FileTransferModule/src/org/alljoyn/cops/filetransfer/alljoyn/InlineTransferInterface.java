@@ -0,0 +1,62 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+package org.alljoyn.cops.filetransfer.alljoyn;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.annotation.BusInterface;
+import org.alljoyn.bus.annotation.BusMethod;
+import org.alljoyn.bus.annotation.BusSignal;
+import org.alljoyn.cops.filetransfer.data.FileDescriptor;
+
+/**
+ * The Inline Transfer Interface specifies the AllJoyn method and signal used to send the
+ * contents of small files along with their offer or directed announcement, so the receiver
+ * can save the file without requesting it. A receiver that does not implement this interface,
+ * or does not accept inline content of that size, is sent an ordinary offer instead.
+ * <p>
+ * Note: This interface is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link org.alljoyn.cops.filetransfer.FileTransferModule} class.
+*/
+@BusInterface(name="org.alljoyn.Cops.InlineTransfer")
+public interface InlineTransferInterface
+{
+	/**
+	 * offerInlineFile()
+	 * is specified as an AllJoyn method and is used to offer a small file to a session peer
+	 * together with its contents. If the offer is accepted the file is saved by the peer
+	 * before the method returns.
+	 *
+	 * @param file  file descriptor of offered file
+	 * @param content  specifies the contents of the file
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusMethod
+	public int offerInlineFile(FileDescriptor file, byte[] content) throws BusException;
+
+	/**
+	 * inlineContent()
+	 * is specified as an AllJoyn signal and is sent after a directed announcement of a small
+	 * file to deliver its contents. The peer keeps the contents so that a request for the file
+	 * completes without contacting the sender.
+	 *
+	 * @param fileID  specifies the ID of the file
+	 * @param content  specifies the contents of the file
+	 * @throws BusException  thrown in the case of an AllJoyn error
+	 */
+	@BusSignal
+	public void inlineContent(byte[] fileID, byte[] content) throws BusException;
+}
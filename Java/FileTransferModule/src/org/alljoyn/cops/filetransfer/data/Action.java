@@ -21,7 +21,7 @@ import java.util.ArrayList;
 /**
  * The action class defines the different action types that tell the
  * Transmitter which action needs to be taken. This class defines an
- * enumerated type that defines 10 different actions. This class
+ * enumerated type that defines 18 different actions. This class
  * also includes an array of objects because different actions require
  * different parameters to execute the action and the data types vary
  * dramatically. Lastly, the action object contains a variable for peer.
@@ -44,8 +44,16 @@ public class Action
 		REQUEST_ANNOUNCE, 
 		REQUEST_OFFER, 
 		REQUEST_DATA,
+		REQUEST_FILE_SIZE,
+		REQUEST_DELTA,
+		COPY_BLOCKS,
+		REQUEST_BLOCK_HASHES,
+		REQUEST_BUNDLE,
 		DATA_CHUNK,
+		BUNDLE_CHUNK,
+		DATA_CHUNK_ACK,
 		OFFER_FILE,
+		INLINE_CONTENT,
 		STOP_XFER,
 		XFER_CANCELLED,
 		FILE_ID_RESPONSE,
@@ -27,12 +27,22 @@ import org.alljoyn.bus.annotation.Position;
  * available) and the file ID. The file ID is the most important piece of data
  * because this is how most file transfers are initiated.
  * <p>
+ * The size field is marshalled as a 32 bit integer so the descriptor stays compatible
+ * with peers that only implement the original interfaces. The full 64 bit size is kept
+ * in a private field, which AllJoyn does not marshal, and is read and written through
+ * getSize() and setSize(). A file of 2 GB or more is sent with a size of SIZE_TOO_LARGE
+ * and receivers that support large files ask the owner for the real size before the
+ * transfer starts.
+ * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
  * {@link org.alljoyn.cops.filetransfer.FileTransferModule} class.
  */
 public class FileDescriptor
 {
+	// Class Constant
+	private static final int SIZE_TOO_LARGE = -1;
+	
 	// Member Variables
 	@Position(0)
 	public String owner;
@@ -52,6 +62,8 @@ public class FileDescriptor
 	@Position(5)
 	public int size;
 	
+	private long largeSize = -1;
+	
 	/*------------------------------------------------------------------------*
      * Constructor
      *------------------------------------------------------------------------*/
@@ -80,6 +92,47 @@ public class FileDescriptor
 		filename = copy.filename;
 		fileID = copy.fileID;
 		size = copy.size;
+		largeSize = copy.largeSize;
+	}
+	
+	/*------------------------------------------------------------------------*
+     * API Methods
+     *------------------------------------------------------------------------*/
+	/**
+	 * getSize()
+	 * returns the size of the file. The size is negative if the descriptor was received
+	 * from a peer and the file is too large to be described by the marshalled size.
+	 * 
+	 * @return size of the file in bytes, negative if unknown
+	 */
+	public long getSize()
+	{
+		return (largeSize >= 0) ? largeSize : size;
+	}
+	
+	/**
+	 * setSize()
+	 * sets the size of the file. The marshalled size is set to SIZE_TOO_LARGE if the size
+	 * does not fit in 32 bits.
+	 * 
+	 * @param size  specifies the size of the file in bytes
+	 */
+	public void setSize(long size)
+	{
+		this.largeSize = size;
+		this.size = (size > Integer.MAX_VALUE) ? SIZE_TOO_LARGE : (int) size;
+	}
+	
+	/**
+	 * isSizeKnown()
+	 * returns false if the descriptor was received from a peer and the file is too large
+	 * to be described by the marshalled size.
+	 * 
+	 * @return true if the size of the file is known, false otherwise
+	 */
+	public boolean isSizeKnown()
+	{
+		return getSize() >= 0;
 	}
 
 	/**
@@ -100,7 +153,7 @@ public class FileDescriptor
 				+ ((relativePath == null) ? 0 : relativePath.hashCode());
 		result = prime * result
 				+ ((sharedPath == null) ? 0 : sharedPath.hashCode());
-		result = prime * result + size;
+		result = prime * result + (int) (getSize() ^ (getSize() >>> 32));
 		return result;
 	}	
 	
@@ -129,6 +182,6 @@ public class FileDescriptor
 		FileDescriptor other = (FileDescriptor) obj;
 		
 		return owner.equals(other.owner) && sharedPath.equals(other.sharedPath) && relativePath.equals(other.relativePath)
-				&& filename.equals(other.filename) && Arrays.equals(fileID, other.fileID) && size == other.size;
+				&& filename.equals(other.filename) && Arrays.equals(fileID, other.fileID) && getSize() == other.getSize();
 	}
 }
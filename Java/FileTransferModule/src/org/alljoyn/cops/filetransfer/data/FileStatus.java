@@ -16,6 +16,12 @@
 
 package org.alljoyn.cops.filetransfer.data;
 
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import org.alljoyn.cops.filetransfer.utility.RangeSet;
+
 /**
  * The File Status object is used by the File Transfer Manager and the File
  * Receive Manager to monitor the progress of files that are being sent and
@@ -25,7 +31,24 @@ package org.alljoyn.cops.filetransfer.data;
  * length specified by the receiver. From the receivers perspective, all of 
  * same data is monitored by the receiver with a few additions. The receiver
  * also keeps track of the save file name and the save file path. This is 
- * essential so the file chunks can be appended to the correct file.  
+ * essential so the file chunks can be appended to the correct file. The sender
+ * additionally tracks how many bytes have been handed to the transmitter and how
+ * many bytes the receiver has acknowledged, which bounds the send window, and
+ * holds the chunks that have been read ahead of the Dispatcher. The receiver additionally
+ * tracks which ranges of the file have been received and which have been written, so chunks
+ * can arrive in any order and the transfer completes once the whole file has been written.
+ * The receiver requests one missing range of the file at a time, starting at startByte.
+ * When the file is downloaded from several peers at once, the range requests hold the range
+ * currently requested from each peer instead.
+ * Offsets and lengths are 64 bit so files larger than 2 GB can be transferred.
+ * Both sides count the bytes that actually crossed the network, which is smaller than the
+ * number of bytes transferred when the chunks are compressed at the negotiated compression level.
+ * A delta transfer records the older local copy of the file and the block size of its signatures
+ * until the sender has replied with the ranges that can be copied from it.
+ * When block verification is enabled, the receiver holds the hashes of the blocks of the file
+ * sent by its owner. The receiver also digests the written prefix of the file as it grows so
+ * the completed file can be checked against its file ID. The receiver notes whether it created
+ * the file by preallocating it, so the file can be removed if the transfer cannot be requested.
  * <p>
  * Note: This class is not intended to be used directly. All of the supported
  * functionality of this library is intended to be accessed through the
@@ -35,13 +58,30 @@ public class FileStatus
 {
 	// Member Variables
 	public byte[] fileId;	
-	public int startByte;	
-	public int length;	
+	public long startByte;	
+	public long length;	
 	public String peer;	
-	public int numBytesSent;	
+	public long numBytesSent;	
 	public String saveFileName;
 	public String saveFilePath;	
 	public int chunkLength;
+	public long numBytesTransmitted;
+	public long numBytesAcked;
+	public boolean isAckEnabled;
+	public long numBytesPrefetched;
+	public ArrayDeque<byte[]> prefetchedChunks;
+	public RangeSet receivedRanges;
+	public RangeSet writtenRanges;
+	public long numBytesRequested;
+	public ArrayList<RangeRequest> rangeRequests;
+	public int compressionLevel;
+	public long numBytesOnWire;
+	public String basisPath;
+	public int deltaBlockSize;
+	public byte[] blockHashes;
+	public MessageDigest fileDigest;
+	public long numBytesDigested;
+	public boolean isPreallocated;
 	
 	/*------------------------------------------------------------------------*
      * Constructor
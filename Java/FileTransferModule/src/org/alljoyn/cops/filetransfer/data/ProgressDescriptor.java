@@ -21,7 +21,13 @@ package org.alljoyn.cops.filetransfer.data;
  * updates from either the sender or the receiver. This class will outline all of
  * the files that are being transferred by specifying how many bytes have already been
  * sent or received and give the total length of the file. This will allow the user to
- * see the current progress of each file transfer.
+ * see the current progress of each file transfer. The descriptor also gives the chunk
+ * length currently used by the transfer, which changes over time when adaptive chunk
+ * sizing is enabled. When the transfer is compressed, bytesOnWire gives the number of
+ * bytes that crossed the network, so bytesTransferred divided by bytesOnWire is the
+ * compression ratio of the transfer. For outgoing transfers, sendRate gives the rate in
+ * bytes per second at which the file was sent during the last second, to be compared with
+ * the bandwidth limits of the File Transfer Module.
  * <p>
  * See {@link org.alljoyn.cops.filetransfer.FileTransferModule#getSendingProgressList}
  * and {@link org.alljoyn.cops.filetransfer.FileTransferModule#getReceiveProgressList}
@@ -43,8 +49,11 @@ public class ProgressDescriptor
 	// Member Variables
 	public byte[] fileID;	
 	public State state;	
-	public int bytesTransferred;	
-	public int fileSize;
+	public long bytesTransferred;	
+	public long fileSize;
+	public int chunkSize;
+	public long bytesOnWire;
+	public long sendRate;
 	
 	/*------------------------------------------------------------------------*
      * Constructor
@@ -0,0 +1,62 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.data;
+
+/**
+ * The Range Request object is used by the Receive Manager to track one range of a
+ * file that has been requested from a peer while the file is downloaded from several
+ * peers at once. The range request specifies the peer, the range of the file that was
+ * requested, when it was requested and whether the peer is still working on it. The
+ * throughput the peer achieved on its last completed range is used to size the next
+ * range requested from it. A range request marked as a duplicate covers the unreceived
+ * end of a range that was already requested from another peer.
+ * <p>
+ * Note: This class is not intended to be used directly. All of the supported
+ * functionality of this library is intended to be accessed through the
+ * {@link org.alljoyn.cops.filetransfer.FileTransferModule} class.
+ */
+public class RangeRequest
+{
+	// Member Variables
+	public String peer;
+	public long startByte;
+	public long endByte;
+	public long requestTime;
+	public long throughput;
+	public boolean isActive;
+	public boolean isDuplicate;
+
+	/*------------------------------------------------------------------------*
+     * Constructor
+     *------------------------------------------------------------------------*/
+	/**
+	 * RangeRequest()
+	 * creates an idle instance of the RangeRequest class for the specified peer.
+	 *
+	 * @param peer  specifies the peer the ranges are requested from
+	 */
+	public RangeRequest(String peer)
+	{
+		this.peer = peer;
+		this.startByte = 0;
+		this.endByte = 0;
+		this.requestTime = 0;
+		this.throughput = 0;
+		this.isActive = false;
+		this.isDuplicate = false;
+	}
+}
@@ -50,4 +50,7 @@ public class StatusCode
 	public static final int INVALID = 15;
 	public static final int OUTSTANDING_FILE_ID_REQUEST = 16; //Unused
 	public static final int NO_AJ_CONNECTION = 17;
+	public static final int FILE_TOO_LARGE = 18;
+	public static final int FILE_ID_MISMATCH = 19;
+	public static final int INSUFFICIENT_SPACE = 20;
 }
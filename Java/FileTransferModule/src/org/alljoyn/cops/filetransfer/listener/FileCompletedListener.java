@@ -19,7 +19,8 @@ package org.alljoyn.cops.filetransfer.listener;
 /**
  * The FileCompletedListener can be utilized so that the developer can be notified when
  * a file transfer has been completed. This event will be triggered by the 
- * ReceiveManager when a file transfer has completed or been cancelled.
+ * ReceiveManager when a file transfer has completed or been cancelled. A completed file
+ * whose contents do not match its file ID is reported with FILE_ID_MISMATCH.
  * <p>
  * See {@link org.alljoyn.cops.filetransfer.FileTransferModule#setFileCompletedListener}
  */
@@ -31,7 +32,8 @@ public interface FileCompletedListener
 	 * triggered on cancellation as well as successful completion.
 	 * 
 	 * @param filename  the name of the file that completed transmission
-	 * @param statusCode  OK if completely transfered, CANCELLED otherwise 
+	 * @param statusCode  OK if completely transfered, FILE_ID_MISMATCH if the file is corrupt,
+	 * CANCELLED otherwise 
 	 */
 	public void fileCompleted(String filename, int statusCode);	
 }
\ No newline at end of file
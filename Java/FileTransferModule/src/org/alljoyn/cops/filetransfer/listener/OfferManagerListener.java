@@ -40,10 +40,11 @@ public interface OfferManagerListener
 	 * @param length  length of request in bytes
 	 * @param peer  specifies the peer making the file request
 	 * @param maxChunkLength  specifies the max chunk size
+	 * @param compressionLevel  specifies the compression level requested by the peer, zero for none
 	 * @return OK or BAD_FILE_ID
 	 */
-	public int handleFileRequest(byte[] fileID, int startByte, int length,
-			String peer, int maxChunkLength);
+	public int handleFileRequest(byte[] fileID, long startByte, long length,
+			String peer, int maxChunkLength, int compressionLevel);
 	
 	/**
 	 * handleOffer()
@@ -56,6 +57,18 @@ public interface OfferManagerListener
 	 */
 	public int handleOffer(FileDescriptor file, String peer);
 	
+	/**
+	 * handleInlineOffer()
+	 * is triggered by the bus object to notify the Offer Manager when a file offer
+	 * carrying the contents of the file has been received from a remote session peer.
+	 * 
+	 * @param file  specifies the file descriptor for the file being offered
+	 * @param content  specifies the contents of the file
+	 * @param peer  specifies the peer offering the file
+	 * @return OK, OFFER_REJECTED or REQUEST_DENIED
+	 */
+	public int handleInlineOffer(FileDescriptor file, byte[] content, String peer);
+	
 	/**
 	 * isOfferPending()
 	 * is triggered by the bus object to query the Offer Manager to see if
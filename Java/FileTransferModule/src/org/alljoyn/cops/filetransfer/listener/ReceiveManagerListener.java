@@ -58,13 +58,68 @@ public interface ReceiveManagerListener
 	/** 
 	 * handleFileChunk()
 	 * is called when a chunk of a given file is received from a remote peer. This function determines
-	 * which temporary file this chunk belongs to, updates the sending progress, and sends the chunk
-	 * to the FileSystemAbstraction to be appended to the appropriate temporary file.			 
+	 * which temporary file this chunk belongs to, updates the receiving progress, and queues the chunk
+	 * to be appended to the appropriate temporary file by the writer thread.			 
 	 * 
 	 * @param fileID  specifies the id of the file the chunk belongs to
 	 * @param startByte  specifies the starting index of chunk relative to file
 	 * @param chunkLength  specifies the length of chunk
 	 * @param chunk  actual file data
+	 * @param peer  specifies the peer that sent the chunk
 	 */
-	public void handleFileChunk(byte[] fileID, int startByte, int chunkLength, byte[] chunk);
+	public void handleFileChunk(byte[] fileID, long startByte, int chunkLength, byte[] chunk, String peer);
+	
+	/** 
+	 * handleCompressedFileChunk()
+	 * is called when a compressed chunk of a given file is received from a remote peer. The chunk
+	 * is decompressed and then handled like any other file chunk.
+	 * 
+	 * @param fileID  specifies the id of the file the chunk belongs to
+	 * @param startByte  specifies the starting index of chunk relative to file
+	 * @param chunkLength  specifies the length of chunk before compression
+	 * @param compressedChunk  compressed file data
+	 * @param peer  specifies the peer that sent the chunk
+	 */
+	public void handleCompressedFileChunk(byte[] fileID, long startByte, int chunkLength, byte[] compressedChunk,
+			String peer);
+	
+	/** 
+	 * handleCopyBlocks()
+	 * is called when the sender of a delta transfer replies with the ranges of the file that
+	 * can be copied from the older local copy. The ranges are copied and the rest of the file
+	 * is requested from the sender.
+	 * 
+	 * @param fileID  specifies the id of the file
+	 * @param targetOffsets  specifies the offset in the file of each run of blocks
+	 * @param basisBlocks  specifies the first block of the older copy of each run
+	 * @param numBlocks  specifies the number of blocks of each run
+	 * @param peer  specifies the peer that sent the reply
+	 */
+	public void handleCopyBlocks(byte[] fileID, long[] targetOffsets, int[] basisBlocks, int[] numBlocks, 
+			String peer);
+	
+	/**
+	 * handleBundleChunk()
+	 * is called when a chunk of a bundle of files is received from a remote peer. The files
+	 * framed in the chunk are written and completed in order.
+	 * 
+	 * @param bundleID  specifies the id of the bundle
+	 * @param startByte  specifies the starting byte of the chunk relative to the bundle
+	 * @param chunk  specifies the bundle data
+	 * @param peer  specifies the peer that sent the chunk
+	 */
+	public void handleBundleChunk(byte[] bundleID, long startByte, byte[] chunk, String peer);
+	
+	/**
+	 * handleInlineContent()
+	 * is called when the contents of a small file are received from a remote peer along with
+	 * an offer or a directed announcement. The contents are kept so a request for the file can
+	 * be completed without contacting the peer.
+	 * 
+	 * @param fileID  specifies the id of the file
+	 * @param content  specifies the contents of the file
+	 * @param peer  specifies the peer that sent the contents
+	 * @return OK, INVALID or REQUEST_DENIED
+	 */
+	public int handleInlineContent(byte[] fileID, byte[] content, String peer);
 }
@@ -37,17 +37,90 @@ public interface SendManagerListener
 	 * @param length  specifies the length of data chunk
 	 * @param peer  specifies the peer to send the file to
 	 * @param maxChunkLength  specifies the maximum chunk size
+	 * @param compressionLevel  specifies the compression level requested by the peer, zero for none
 	 * @return OK or BAD_FILE_ID
 	 */
-	public int sendFile(byte[] fileID, int startByte, int length, String peer, int maxChunkLength);
+	public int sendFile(byte[] fileID, long startByte, long length, String peer, int maxChunkLength,
+			int compressionLevel);
+	
+	/**
+	 * sendDelta()
+	 * is triggered by the bus object when a peer that holds an older copy of a file asks
+	 * which ranges of the file it can copy from that copy.
+	 * 
+	 * @param fileID  specifies the ID of the file
+	 * @param blockSize  specifies the size of the blocks of the older copy
+	 * @param weakChecksums  specifies the weak rolling checksum of each block
+	 * @param strongHashes  specifies the strong hash of each block
+	 * @param peer  specifies the peer requesting the file
+	 * @return OK, BAD_FILE_ID or INVALID
+	 */
+	public int sendDelta(byte[] fileID, int blockSize, int[] weakChecksums, byte[] strongHashes, String peer);
+	
+	/**
+	 * sendBundle()
+	 * is triggered by the bus object when a peer requests several files as a single bundle.
+	 * 
+	 * @param bundleID  specifies the ID of the bundle chosen by the peer
+	 * @param fileIDs  specifies the file IDs of the requested files, one after the other
+	 * @param maxChunkLength  specifies the max length of each chunk of the bundle
+	 * @param peer  specifies the peer requesting the files
+	 * @return OK, BAD_FILE_ID or INVALID
+	 */
+	public int sendBundle(byte[] bundleID, byte[] fileIDs, int maxChunkLength, String peer);
+	
+	/**
+	 * getFileSize()
+	 * is triggered by the bus object when a peer asks for the size of a file that is too
+	 * large to be described by the marshalled size of the file descriptor.
+	 * 
+	 * @param fileID  specifies the ID of the file
+	 * @return size of the file in bytes, -1 if the file is not available to the peer
+	 */
+	public long getFileSize(byte[] fileID);
+	
+	/**
+	 * getBlockHashes()
+	 * is triggered by the bus object when a peer asks for the hashes of the blocks of a file
+	 * so it can verify each block as it is written.
+	 * 
+	 * @param fileID  specifies the ID of the file
+	 * @return hashes of the blocks one after the other, empty if the file is not available to the peer
+	 */
+	public byte[] getBlockHashes(byte[] fileID);
 	
 	/**
 	 * dataSent()
 	 * is triggered by the dispatcher when a data chunk action has been 
 	 * sent to the transmitter and to notify the Send Manager to queue the
 	 * next data chunk if available.
+	 * 
+	 * @param fileID  specifies the ID of the file the chunk belongs to
+	 * @param startByte  specifies the starting byte of the chunk
+	 * @param peer  specifies the peer the chunk was sent to
+	 */
+	public void dataSent(byte[] fileID, long startByte, String peer);
+	
+	/**
+	 * queueCapacityReleased()
+	 * is triggered by the dispatcher when a bundle chunk has been sent to the
+	 * transmitter and its bytes have left the memory budget of the queue, so
+	 * transfers deferred by the budget can be scheduled again.
+	 */
+	public void queueCapacityReleased();
+	
+	/**
+	 * handleDataChunkAck()
+	 * is triggered by the Receiver when a dataChunkAck signal is received from the
+	 * file receiver. This callback notifies the Send Manager that the chunk has been
+	 * saved by the receiver so the send window of the transfer can slide.
+	 * 
+	 * @param fileID  specifies the ID of the file
+	 * @param startByte  specifies the starting byte of the acknowledged chunk
+	 * @param chunkLength  specifies the length of the acknowledged chunk
+	 * @param peer  specifies the peer receiving the file
 	 */
-	public void dataSent();
+	public void handleDataChunkAck(byte[] fileID, long startByte, int chunkLength, String peer);
 	
 	/**
 	 * handleStopDataXfer()
@@ -0,0 +1,134 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.utility;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class that describes how a file is split into blocks for verification and computes
+ * the hash of each block. The owner of a file hashes every block when it computes the file ID,
+ * and a receiver that has the list of block hashes can verify each block as soon as it has been
+ * written, so a corrupt block is requested again on its own instead of the whole file. The
+ * block size is a power of two chosen so the file has at most MAX_BLOCKS blocks, which keeps
+ * the list of hashes small enough for a single message. Both peers derive the block size from
+ * the length of the file, so it is never exchanged.
+ */
+public class BlockHashes
+{
+	/** Class Constant **/
+	public static final int HASH_LENGTH = 20;
+	public static final int MIN_BLOCK_SIZE = 65536;
+	public static final int MAX_BLOCKS = 2048;
+	private static final int MAX_BLOCK_SIZE = 1073741824;
+
+	/**
+	 * getBlockSize()
+	 * returns the size of the blocks of a file of the specified length.
+	 *
+	 * @param fileLength  specifies the length of the file
+	 * @return block size in bytes
+	 */
+	public static int getBlockSize(long fileLength)
+	{
+		int blockSize = MIN_BLOCK_SIZE;
+
+		while ((blockSize < MAX_BLOCK_SIZE) && (((long) blockSize * MAX_BLOCKS) < fileLength))
+		{
+			blockSize *= 2;
+		}
+		return blockSize;
+	}
+
+	/**
+	 * getNumBlocks()
+	 * returns the number of blocks of a file of the specified length. The last block is
+	 * shorter than the others unless the length is a multiple of the block size.
+	 *
+	 * @param fileLength  specifies the length of the file
+	 * @return number of blocks
+	 */
+	public static int getNumBlocks(long fileLength)
+	{
+		int blockSize = getBlockSize(fileLength);
+		return (int) ((fileLength + blockSize - 1) / blockSize);
+	}
+
+	/**
+	 * createDigest()
+	 * returns a new message digest for the hash of a block, for callers that hash a block
+	 * in several pieces.
+	 *
+	 * @return message digest
+	 */
+	public static MessageDigest createDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * hash()
+	 * returns the hash of the specified bytes.
+	 *
+	 * @param data  specifies the buffer
+	 * @param offset  specifies the offset of the first byte
+	 * @param length  specifies the number of bytes
+	 * @return hash of HASH_LENGTH bytes
+	 */
+	public static byte[] hash(byte[] data, int offset, int length)
+	{
+		MessageDigest digest = createDigest();
+		digest.update(data, offset, length);
+		return digest.digest();
+	}
+
+	/**
+	 * matches()
+	 * returns true if the specified hash is the hash of the specified block in the list of
+	 * block hashes.
+	 *
+	 * @param blockHashes  specifies the hashes of the blocks, one after the other
+	 * @param block  specifies the index of the block
+	 * @param hash  specifies the hash to compare
+	 * @return true if the hashes are equal, false otherwise
+	 */
+	public static boolean matches(byte[] blockHashes, int block, byte[] hash)
+	{
+		int offset = block * HASH_LENGTH;
+
+		if ((hash.length != HASH_LENGTH) || ((offset + HASH_LENGTH) > blockHashes.length))
+		{
+			return false;
+		}
+
+		for (int i = 0; i < HASH_LENGTH; i++)
+		{
+			if (blockHashes[offset + i] != hash[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,294 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.utility;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The Block Signatures class holds the signatures of the fixed size blocks of a file, as used
+ * by delta transfers. Each block is described by a weak rolling checksum and the first
+ * STRONG_HASH_LENGTH bytes of its MD5 hash. The receiver computes the signatures of an older
+ * copy of a file, and the sender slides a window over the new file, updating the rolling
+ * checksum one byte at a time, to find the blocks of the older copy that appear anywhere in
+ * the new file. The strong hash is only computed when the weak checksum matches.
+ * <p>
+ * The weak checksum is the checksum used by rsync: the low 16 bits hold the sum of the bytes
+ * of the block and the high 16 bits hold the sum of the running sums.
+ */
+public class BlockSignatures
+{
+	/** Class Constant **/
+	public static final int STRONG_HASH_LENGTH = 8;
+	private static final int TAG_TABLE_SIZE = 65536;
+
+	/** Member Variables **/
+	private int blockSize;
+	private int[] weakChecksums;
+	private byte[] strongHashes;
+	private boolean[] tagTable;
+	private HashMap<Integer, int[]> blockIndex;
+
+	/*------------------------------------------------------------------------*
+     * Constructor
+     *------------------------------------------------------------------------*/
+	/**
+	 * BlockSignatures()
+	 * creates an instance of the BlockSignatures class for the specified number of blocks. The
+	 * signature of each block is set with setBlock().
+	 *
+	 * @param blockSize  specifies the size of each block
+	 * @param numBlocks  specifies the number of blocks
+	 */
+	public BlockSignatures(int blockSize, int numBlocks)
+	{
+		this(blockSize, new int[numBlocks], new byte[numBlocks * STRONG_HASH_LENGTH]);
+	}
+
+	/**
+	 * BlockSignatures()
+	 * creates an instance of the BlockSignatures class from signatures received from a peer.
+	 * The strong hashes must hold STRONG_HASH_LENGTH bytes for each weak checksum.
+	 *
+	 * @param blockSize  specifies the size of each block
+	 * @param weakChecksums  specifies the weak checksum of each block
+	 * @param strongHashes  specifies the strong hashes of the blocks, one after the other
+	 */
+	public BlockSignatures(int blockSize, int[] weakChecksums, byte[] strongHashes)
+	{
+		this.blockSize = blockSize;
+		this.weakChecksums = weakChecksums;
+		this.strongHashes = strongHashes;
+		this.tagTable = null;
+		this.blockIndex = null;
+	}
+
+	/*------------------------------------------------------------------------*
+     * API Methods
+     *------------------------------------------------------------------------*/
+	/**
+	 * setBlock()
+	 * computes and stores the signature of the specified block.
+	 *
+	 * @param index  specifies the index of the block
+	 * @param data  specifies the buffer holding the block
+	 * @param offset  specifies the offset of the block in the buffer
+	 */
+	public void setBlock(int index, byte[] data, int offset)
+	{
+		weakChecksums[index] = weakChecksum(data, offset, blockSize);
+		System.arraycopy(strongHash(data, offset, blockSize), 0, strongHashes,
+				index * STRONG_HASH_LENGTH, STRONG_HASH_LENGTH);
+		blockIndex = null;
+	}
+
+	/**
+	 * findBlock()
+	 * returns the index of a block whose signature matches the block at the specified offset
+	 * of the buffer. The weak checksum of the block must be supplied by the caller, which
+	 * usually maintains it with rollChecksum().
+	 *
+	 * @param weakChecksum  specifies the weak checksum of the block in the buffer
+	 * @param data  specifies the buffer holding the block
+	 * @param offset  specifies the offset of the block in the buffer
+	 * @return index of the matching block, -1 if no block matches
+	 */
+	public int findBlock(int weakChecksum, byte[] data, int offset)
+	{
+		if (blockIndex == null)
+		{
+			buildIndex();
+		}
+
+		if (!tagTable[getTag(weakChecksum)])
+		{
+			return -1;
+		}
+
+		int[] candidates = blockIndex.get(weakChecksum);
+
+		if (candidates == null)
+		{
+			return -1;
+		}
+
+		byte[] strongHash = strongHash(data, offset, blockSize);
+
+		for (int candidate : candidates)
+		{
+			int hashOffset = candidate * STRONG_HASH_LENGTH;
+
+			if (Arrays.equals(strongHash, Arrays.copyOfRange(strongHashes, hashOffset,
+					hashOffset + STRONG_HASH_LENGTH)))
+			{
+				return candidate;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * getBlockSize()
+	 * returns the size of each block.
+	 *
+	 * @return block size in bytes
+	 */
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	/**
+	 * getNumBlocks()
+	 * returns the number of blocks.
+	 *
+	 * @return number of blocks
+	 */
+	public int getNumBlocks()
+	{
+		return weakChecksums.length;
+	}
+
+	/**
+	 * getWeakChecksums()
+	 * returns the weak checksum of each block.
+	 *
+	 * @return array of weak checksums
+	 */
+	public int[] getWeakChecksums()
+	{
+		return weakChecksums;
+	}
+
+	/**
+	 * getStrongHashes()
+	 * returns the strong hashes of the blocks, STRONG_HASH_LENGTH bytes per block.
+	 *
+	 * @return strong hashes
+	 */
+	public byte[] getStrongHashes()
+	{
+		return strongHashes;
+	}
+
+	/**
+	 * weakChecksum()
+	 * computes the weak rolling checksum of the specified bytes.
+	 *
+	 * @param data  specifies the buffer
+	 * @param offset  specifies the offset of the first byte
+	 * @param length  specifies the number of bytes
+	 * @return weak checksum
+	 */
+	public static int weakChecksum(byte[] data, int offset, int length)
+	{
+		int a = 0;
+		int b = 0;
+
+		for (int i = 0; i < length; i++)
+		{
+			int value = data[offset + i] & 0xff;
+			a += value;
+			b += (length - i) * value;
+		}
+		return (a & 0xffff) | ((b & 0xffff) << 16);
+	}
+
+	/**
+	 * rollChecksum()
+	 * moves the window of a weak checksum forward by one byte.
+	 *
+	 * @param checksum  specifies the weak checksum of the current window
+	 * @param outByte  specifies the first byte of the current window
+	 * @param inByte  specifies the byte following the current window
+	 * @param blockSize  specifies the size of the window
+	 * @return weak checksum of the next window
+	 */
+	public static int rollChecksum(int checksum, byte outByte, byte inByte, int blockSize)
+	{
+		int a = ((checksum & 0xffff) - (outByte & 0xff) + (inByte & 0xff)) & 0xffff;
+		int b = ((checksum >>> 16) - (blockSize * (outByte & 0xff)) + a) & 0xffff;
+		return a | (b << 16);
+	}
+
+	/**
+	 * strongHash()
+	 * is a private helper function that returns the first STRONG_HASH_LENGTH bytes of the MD5
+	 * hash of the specified bytes.
+	 *
+	 * @param data  specifies the buffer
+	 * @param offset  specifies the offset of the first byte
+	 * @param length  specifies the number of bytes
+	 * @return strong hash
+	 */
+	private static byte[] strongHash(byte[] data, int offset, int length)
+	{
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			md.update(data, offset, length);
+			return Arrays.copyOf(md.digest(), STRONG_HASH_LENGTH);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * buildIndex()
+	 * is a private helper function that indexes the blocks by weak checksum. A table of 16 bit
+	 * tags lets most windows of the new file be rejected without a hash table lookup.
+	 */
+	private void buildIndex()
+	{
+		tagTable = new boolean[TAG_TABLE_SIZE];
+		blockIndex = new HashMap<Integer, int[]>();
+
+		for (int i = 0; i < weakChecksums.length; i++)
+		{
+			int[] candidates = blockIndex.get(weakChecksums[i]);
+
+			if (candidates == null)
+			{
+				candidates = new int[] { i };
+			}
+			else
+			{
+				candidates = Arrays.copyOf(candidates, candidates.length + 1);
+				candidates[candidates.length - 1] = i;
+			}
+
+			blockIndex.put(weakChecksums[i], candidates);
+			tagTable[getTag(weakChecksums[i])] = true;
+		}
+	}
+
+	/**
+	 * getTag()
+	 * is a private helper function that folds a weak checksum into 16 bits.
+	 *
+	 * @param weakChecksum  specifies the weak checksum
+	 * @return tag of the checksum
+	 */
+	private static int getTag(int weakChecksum)
+	{
+		return ((weakChecksum >>> 16) ^ weakChecksum) & 0xffff;
+	}
+}
@@ -0,0 +1,89 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+package org.alljoyn.cops.filetransfer.utility;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Utility class that describes the framing of a bundle transfer. A bundle carries several
+ * files back to back in a single stream of chunks. Each file is preceded by a header of
+ * HEADER_LENGTH bytes that holds the file ID and the length of the file as a big endian
+ * 64 bit integer, followed by the data of the file. A file the sender cannot serve has a
+ * length of UNAVAILABLE and no data. The files appear in the order they were requested, and
+ * a header may be split between two chunks.
+ */
+public class BundleFrame
+{
+	/** Class Constant **/
+	public static final int FILE_ID_LENGTH = 20;
+	public static final int HEADER_LENGTH = FILE_ID_LENGTH + 8;
+	public static final long UNAVAILABLE = -1;
+
+	/**
+	 * writeHeader()
+	 * returns the header that precedes the specified file in a bundle.
+	 *
+	 * @param fileID  specifies the file ID of the file
+	 * @param length  specifies the length of the file, or UNAVAILABLE
+	 * @return header of the file
+	 */
+	public static byte[] writeHeader(byte[] fileID, long length)
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.put(Arrays.copyOf(fileID, FILE_ID_LENGTH));
+		header.putLong(length);
+		return header.array();
+	}
+
+	/**
+	 * readFileID()
+	 * returns the file ID held by the specified header.
+	 *
+	 * @param header  specifies the header
+	 * @return file ID of the file
+	 */
+	public static byte[] readFileID(byte[] header)
+	{
+		return Arrays.copyOf(header, FILE_ID_LENGTH);
+	}
+
+	/**
+	 * readLength()
+	 * returns the length of the file held by the specified header.
+	 *
+	 * @param header  specifies the header
+	 * @return length of the file, or UNAVAILABLE
+	 */
+	public static long readLength(byte[] header)
+	{
+		return ByteBuffer.wrap(header, FILE_ID_LENGTH, 8).getLong();
+	}
+
+	/**
+	 * getFileID()
+	 * returns the file ID at the specified position of a list of file IDs stored one after
+	 * the other, as they are sent in a bundle request.
+	 *
+	 * @param fileIDs  specifies the list of file IDs
+	 * @param index  specifies the position of the file ID in the list
+	 * @return file ID
+	 */
+	public static byte[] getFileID(byte[] fileIDs, int index)
+	{
+		return Arrays.copyOfRange(fileIDs, index * FILE_ID_LENGTH, (index + 1) * FILE_ID_LENGTH);
+	}
+}
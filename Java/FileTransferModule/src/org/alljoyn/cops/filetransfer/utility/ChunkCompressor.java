@@ -0,0 +1,138 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.utility;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Utility class that compresses and decompresses file chunks with the Deflate algorithm
+ * of java.util.zip. Each chunk is compressed on its own so chunks can still be received
+ * in any order. A chunk that does not get smaller when compressed is left as it is, and
+ * files whose type is already compressed can be recognized by their extension so they
+ * are never compressed at all.
+ */
+public class ChunkCompressor
+{
+	/** Class Constant **/
+	public static final int NO_COMPRESSION = 0;
+	public static final int BEST_SPEED = Deflater.BEST_SPEED;
+	public static final int BEST_COMPRESSION = Deflater.BEST_COMPRESSION;
+	private static final HashSet<String> COMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList(
+			"zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "jar", "apk", "docx", "xlsx", "pptx",
+			"jpg", "jpeg", "png", "gif", "webp", "mp3", "m4a", "aac", "ogg", "flac",
+			"mp4", "m4v", "mkv", "avi", "mov", "webm", "3gp"));
+
+	/**
+	 * compress()
+	 * compresses the first length bytes of the specified chunk at the specified compression
+	 * level. If the compressed data would not be smaller than the chunk, null is returned and
+	 * the chunk should be sent as it is. A compressed chunk is therefore always shorter than the
+	 * data it holds.
+	 *
+	 * @param chunk  specifies the chunk to compress
+	 * @param length  specifies the number of bytes of the chunk to compress
+	 * @param level  specifies the Deflater compression level, from BEST_SPEED to BEST_COMPRESSION
+	 * @return compressed chunk, or null if compression does not make the chunk smaller
+	 */
+	public static byte[] compress(byte[] chunk, int length, int level)
+	{
+		Deflater deflater = new Deflater(level);
+		byte[] buffer = new byte[Math.max(length - 1, 0)];
+
+		try
+		{
+			deflater.setInput(chunk, 0, length);
+			deflater.finish();
+			int compressedLength = deflater.deflate(buffer);
+
+			if (!deflater.finished())
+			{
+				return null;
+			}
+			return Arrays.copyOf(buffer, compressedLength);
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	/**
+	 * decompress()
+	 * restores a chunk compressed by compress(). The chunk must decompress to exactly the
+	 * specified length, otherwise null is returned.
+	 *
+	 * @param compressedChunk  specifies the compressed chunk
+	 * @param length  specifies the length of the original chunk
+	 * @return original chunk, or null if the compressed chunk is invalid
+	 */
+	public static byte[] decompress(byte[] compressedChunk, int length)
+	{
+		Inflater inflater = new Inflater();
+		byte[] chunk = new byte[length];
+
+		try
+		{
+			inflater.setInput(compressedChunk);
+			int chunkLength = inflater.inflate(chunk);
+
+			if (!inflater.finished() || (chunkLength != length))
+			{
+				return null;
+			}
+			return chunk;
+		}
+		catch (DataFormatException e)
+		{
+			Logger.log(e.toString());
+			return null;
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	/**
+	 * isCompressedFileType()
+	 * returns true if the extension of the specified file name belongs to a file format that
+	 * is already compressed, such as archives, images, audio and video. Compressing these files
+	 * again only costs time.
+	 *
+	 * @param filename  specifies the name of the file
+	 * @return true if the file is already compressed, false otherwise
+	 */
+	public static boolean isCompressedFileType(String filename)
+	{
+		if (filename == null)
+		{
+			return false;
+		}
+
+		int index = filename.lastIndexOf('.');
+
+		if (index < 0)
+		{
+			return false;
+		}
+		return COMPRESSED_EXTENSIONS.contains(filename.substring(index + 1).toLowerCase());
+	}
+}
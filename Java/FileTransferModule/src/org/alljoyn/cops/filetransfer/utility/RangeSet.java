@@ -0,0 +1,243 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.utility;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Utility class that keeps a compact set of non-overlapping byte ranges of a file.
+ * Adjacent and overlapping ranges are merged as they are added, so a file received
+ * in order is always described by a single range no matter how many chunks it took.
+ * Ranges are half open: a range covers the bytes from its start up to, but not
+ * including, its end. This class is not thread safe.
+ */
+public class RangeSet implements Serializable
+{
+	/** Class Constant **/
+	private static final long serialVersionUID = 1L;
+	
+	/** Member Variables **/
+	private TreeMap<Long, Long> ranges;
+	private long numBytesCovered;
+
+	/*------------------------------------------------------------------------*
+     * Constructor
+     *------------------------------------------------------------------------*/
+	/**
+	 * RangeSet()
+	 * creates an empty instance of the RangeSet class.
+	 */
+	public RangeSet()
+	{
+		ranges = new TreeMap<Long, Long>();
+		numBytesCovered = 0;
+	}
+
+	/**
+	 * RangeSet()
+	 * creates a copy of the specified RangeSet.
+	 *
+	 * @param rangeSet  specifies the set to copy
+	 */
+	public RangeSet(RangeSet rangeSet)
+	{
+		ranges = new TreeMap<Long, Long>(rangeSet.ranges);
+		numBytesCovered = rangeSet.numBytesCovered;
+	}
+
+	/*------------------------------------------------------------------------*
+     * API Methods
+     *------------------------------------------------------------------------*/
+	/**
+	 * add()
+	 * adds the specified range to the set, merging it with any ranges it overlaps or
+	 * touches. The function returns how many of the bytes in the range were not already
+	 * covered, so zero means the range was a duplicate.
+	 *
+	 * @param start  specifies the first byte of the range
+	 * @param end  specifies the byte after the last byte of the range
+	 * @return number of bytes newly covered by the set
+	 */
+	public long add(long start, long end)
+	{
+		if (end <= start)
+		{
+			return 0;
+		}
+
+		long numBytesBefore = numBytesCovered;
+		long mergedStart = start;
+		long mergedEnd = end;
+
+		Map.Entry<Long, Long> entry = ranges.floorEntry(start);
+
+		if ((entry == null) || (entry.getValue() < start))
+		{
+			entry = ranges.ceilingEntry(start);
+		}
+
+		while ((entry != null) && (entry.getKey() <= end))
+		{
+			mergedStart = Math.min(mergedStart, entry.getKey());
+			mergedEnd = Math.max(mergedEnd, entry.getValue());
+			numBytesCovered -= entry.getValue() - entry.getKey();
+			ranges.remove(entry.getKey());
+			entry = ranges.ceilingEntry(entry.getKey());
+		}
+
+		ranges.put(mergedStart, mergedEnd);
+		numBytesCovered += mergedEnd - mergedStart;
+
+		return numBytesCovered - numBytesBefore;
+	}
+
+	/**
+	 * remove()
+	 * removes the specified range from the set. Ranges that partly overlap it are trimmed
+	 * and a range that contains it is split in two.
+	 *
+	 * @param start  specifies the first byte of the range
+	 * @param end  specifies the byte after the last byte of the range
+	 * @return number of bytes that were removed from the set
+	 */
+	public long remove(long start, long end)
+	{
+		if (end <= start)
+		{
+			return 0;
+		}
+
+		long numBytesBefore = numBytesCovered;
+		Map.Entry<Long, Long> entry = ranges.lowerEntry(end);
+
+		while ((entry != null) && (entry.getValue() > start))
+		{
+			long rangeStart = entry.getKey();
+			long rangeEnd = entry.getValue();
+
+			ranges.remove(rangeStart);
+			numBytesCovered -= rangeEnd - rangeStart;
+
+			if (rangeStart < start)
+			{
+				ranges.put(rangeStart, start);
+				numBytesCovered += start - rangeStart;
+			}
+
+			if (rangeEnd > end)
+			{
+				ranges.put(end, rangeEnd);
+				numBytesCovered += rangeEnd - end;
+			}
+
+			entry = ranges.lowerEntry(rangeStart);
+		}
+
+		return numBytesBefore - numBytesCovered;
+	}
+
+	/**
+	 * covers()
+	 * returns true if every byte of the specified range is in the set.
+	 *
+	 * @param start  specifies the first byte of the range
+	 * @param end  specifies the byte after the last byte of the range
+	 * @return true if the range is covered, false otherwise
+	 */
+	public boolean covers(long start, long end)
+	{
+		if (end <= start)
+		{
+			return true;
+		}
+
+		Map.Entry<Long, Long> entry = ranges.floorEntry(start);
+		return (entry != null) && (entry.getValue() >= end);
+	}
+
+	/**
+	 * getFirstMissing()
+	 * returns the first byte at or after the specified offset that is not in the set.
+	 *
+	 * @param offset  specifies where to start looking
+	 * @return first missing byte
+	 */
+	public long getFirstMissing(long offset)
+	{
+		Map.Entry<Long, Long> entry = ranges.floorEntry(offset);
+
+		if ((entry != null) && (entry.getValue() > offset))
+		{
+			return entry.getValue();
+		}
+		return offset;
+	}
+
+	/**
+	 * getMissingEnd()
+	 * returns the end of the gap that starts at the specified missing byte, which is the
+	 * start of the next range in the set or the limit if no range follows before it.
+	 *
+	 * @param start  specifies a byte that is not in the set
+	 * @param limit  specifies the largest value to return
+	 * @return the byte after the last missing byte of the gap
+	 */
+	public long getMissingEnd(long start, long limit)
+	{
+		Long nextStart = ranges.higherKey(start);
+
+		if ((nextStart == null) || (nextStart > limit))
+		{
+			return limit;
+		}
+		return nextStart;
+	}
+
+	/**
+	 * getNumBytesCovered()
+	 * returns the total number of bytes covered by the set.
+	 *
+	 * @return number of bytes covered
+	 */
+	public long getNumBytesCovered()
+	{
+		return numBytesCovered;
+	}
+
+	/**
+	 * getNumRanges()
+	 * returns the number of disjoint ranges in the set.
+	 *
+	 * @return number of ranges
+	 */
+	public int getNumRanges()
+	{
+		return ranges.size();
+	}
+
+	/**
+	 * clear()
+	 * removes every range from the set.
+	 */
+	public void clear()
+	{
+		ranges.clear();
+		numBytesCovered = 0;
+	}
+}
@@ -48,6 +48,7 @@ public class AlljoynManager
 	private ConnectionState connectionState;
 	private ConnectionListener connectionListener;
 	private ArrayList<String> peers;
+	private SessionListener sessionListener;
 	
 	/*
 	 * The AllJoyn Manager facilitates establishing and maintaining an AllJoyn Connection	   
@@ -56,6 +57,35 @@ public class AlljoynManager
 	{
 		bus = new BusAttachment("FileTransfer", BusAttachment.RemoteMessage.Receive);
 		peers = new ArrayList<String>();
+		
+		sessionListener = new SessionListener()
+		{
+			@Override
+			public void sessionMemberAdded(int sessionId, String busId)
+			{
+				peers.add(busId);
+			}
+			
+			@Override
+			public void sessionMemberRemoved(int sessionId, String busId)
+			{
+				peers.remove(busId);
+				if (connectionListener != null)
+				{
+					connectionListener.PeerRemoved(busId);
+				}
+			}
+			
+			@Override
+			public void sessionLost(int sessionId)
+			{
+				peers.clear();
+				if (connectionListener != null)
+				{
+					connectionListener.SessionLost();
+				}
+			}
+		};
 	}
 	
 	/*
@@ -103,6 +133,7 @@ public class AlljoynManager
 		    	sessionId = id;
 		    	
 		    	peers.add(joiner);
+		    	bus.setSessionListener(id, sessionListener);
 		    	
 		    	connectionState = ConnectionState.CONNECTED;
 		    	if (connectionListener != null)
@@ -158,14 +189,7 @@ public class AlljoynManager
 		SessionOpts sessionOpts = new SessionOpts();
 		Mutable.IntegerValue mutableSessionId = new Mutable.IntegerValue();
 
-		Status status = bus.joinSession(name, CONTACT_PORT, mutableSessionId, sessionOpts, new SessionListener()
-		{
-			@Override
-			public void sessionMemberAdded(int sessionId, String busId)
-			{
-				peers.add(busId);
-			}
-		});     	  
+		Status status = bus.joinSession(name, CONTACT_PORT, mutableSessionId, sessionOpts, sessionListener);     	  
 		Logger.log("join returned: " + status.toString());
 
 		sessionId = mutableSessionId.value;
@@ -23,4 +23,14 @@ public interface ConnectionListener
 	 * Triggered by the AllJoyn Manager when the connection state changes
 	 */
 	public void ConnectionChanged(ConnectionState connectionState);
+	
+	/*
+	 * Triggered by the AllJoyn Manager when a peer leaves the session
+	 */
+	public void PeerRemoved(String busId);
+	
+	/*
+	 * Triggered by the AllJoyn Manager when the session is lost
+	 */
+	public void SessionLost();
 }
@@ -322,6 +322,30 @@ public class FileTransferSampleAppActivity extends Activity implements Connectio
             }.start();                      
 		}
 	}
+	
+	/*
+	 * Lets the File Transfer Module drop what it cached to reach a peer that left the session.
+	 * Triggered by the AllJoyn Manager.
+	 */
+	public void PeerRemoved(String busId)
+	{
+		if (ftModule != null)
+		{
+			ftModule.sessionMemberRemoved(busId);
+		}
+	}
+	
+	/*
+	 * Lets the File Transfer Module drop what it cached to reach the peers of the lost session.
+	 * Triggered by the AllJoyn Manager.
+	 */
+	public void SessionLost()
+	{
+		if (ftModule != null)
+		{
+			ftModule.sessionLost();
+		}
+	}
     
 	/*
 	 * Start hosting and advertising an AllJoyn File Transfer Session
@@ -0,0 +1,138 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.test;
+
+import org.alljoyn.cops.filetransfer.BandwidthLimiter;
+import org.alljoyn.cops.filetransfer.data.StatusCode;
+
+import android.test.AndroidTestCase;
+
+public class BandwidthLimiterTest extends AndroidTestCase
+{
+	private static final String PEER = "peer";
+	private static final byte[] FILE_ID = new byte[] { 1 };
+	private static final byte[] OTHER_FILE_ID = new byte[] { 2 };
+	
+	private BandwidthLimiter limiter;
+	
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		
+		limiter = new BandwidthLimiter();
+	}
+	
+	public void testSetLimits()
+	{
+		assertEquals(0, limiter.getGlobalLimit());
+		assertEquals(0, limiter.getPeerLimit());
+		assertEquals(0, limiter.getTransferLimit());
+		
+		assertEquals(StatusCode.INVALID, limiter.setLimits(-1, 0, 0));
+		assertEquals(StatusCode.INVALID, limiter.setLimits(0, 0, -1));
+		assertEquals(StatusCode.OK, limiter.setLimits(300000, 200000, 100000));
+		
+		assertEquals(300000, limiter.getGlobalLimit());
+		assertEquals(200000, limiter.getPeerLimit());
+		assertEquals(100000, limiter.getTransferLimit());
+	}
+	
+	public void testUnlimited() throws InterruptedException
+	{
+		long startTime = System.currentTimeMillis();
+		
+		for (int i = 0; i < 100; i++)
+		{
+			limiter.acquire(PEER, FILE_ID, 65536);
+		}
+		
+		assertTrue((System.currentTimeMillis() - startTime) < 200);
+	}
+	
+	public void testTransferLimit() throws InterruptedException
+	{
+		limiter.setLimits(0, 0, 100000);
+		
+		// the first chunk is sent at once, each following chunk waits for its tokens
+		long startTime = System.currentTimeMillis();
+		
+		for (int i = 0; i < 15; i++)
+		{
+			limiter.acquire(PEER, FILE_ID, 10000);
+		}
+		
+		long elapsedTime = System.currentTimeMillis() - startTime;
+		assertTrue(elapsedTime >= 1300);
+		assertTrue(elapsedTime < 2000);
+		
+		// the achieved rate is close to the limit
+		long rate = limiter.getTransferRate(FILE_ID, PEER);
+		assertTrue(rate > 80000);
+		assertTrue(rate < 120000);
+		assertEquals(rate, limiter.getPeerRate(PEER));
+		assertEquals(0, limiter.getTransferRate(OTHER_FILE_ID, PEER));
+		
+		// another transfer to the same peer has its own bucket
+		startTime = System.currentTimeMillis();
+		limiter.acquire(PEER, OTHER_FILE_ID, 10000);
+		assertTrue((System.currentTimeMillis() - startTime) < 50);
+	}
+	
+	public void testPeerLimit() throws InterruptedException
+	{
+		limiter.setLimits(0, 100000, 0);
+		
+		// transfers of different files to the same peer share the peer limit
+		long startTime = System.currentTimeMillis();
+		
+		for (int i = 0; i < 6; i++)
+		{
+			limiter.acquire(PEER, (i % 2 == 0) ? FILE_ID : OTHER_FILE_ID, 10000);
+		}
+		
+		assertTrue((System.currentTimeMillis() - startTime) >= 450);
+		
+		// other peers are not affected
+		startTime = System.currentTimeMillis();
+		limiter.acquire("other", FILE_ID, 10000);
+		assertTrue((System.currentTimeMillis() - startTime) < 50);
+		
+		// lifting the limit releases the peer
+		limiter.setLimits(0, 0, 0);
+		startTime = System.currentTimeMillis();
+		limiter.acquire(PEER, FILE_ID, 10000);
+		assertTrue((System.currentTimeMillis() - startTime) < 50);
+	}
+	
+	public void testWaitTime()
+	{
+		limiter.setLimits(0, 0, 100000);
+		assertTrue(limiter.getWaitTime(PEER, FILE_ID) <= 0);
+		
+		// drawing tokens never blocks, the transfer waits until its debt is repaid
+		long startTime = System.currentTimeMillis();
+		limiter.draw(PEER, FILE_ID, 20000);
+		assertTrue((System.currentTimeMillis() - startTime) < 50);
+		
+		long waitTime = limiter.getWaitTime(PEER, FILE_ID);
+		assertTrue(waitTime > 100);
+		assertTrue(waitTime <= 200);
+		
+		// other transfers are not affected
+		assertTrue(limiter.getWaitTime(PEER, OTHER_FILE_ID) <= 0);
+	}
+}
@@ -0,0 +1,79 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.test;
+
+import org.alljoyn.cops.filetransfer.BufferPool;
+
+import android.test.AndroidTestCase;
+
+public class BufferPoolTest extends AndroidTestCase
+{
+	private BufferPool bufferPool;
+	
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		
+		bufferPool = BufferPool.getInstance();
+		bufferPool.clear();
+	}
+	
+	protected void tearDown() throws Exception
+	{
+		bufferPool.clear();
+		
+		super.tearDown();
+	}
+	
+	public void testAcquireRelease()
+	{
+		byte[] buffer = bufferPool.acquire(1024);
+		assertEquals(1024, buffer.length);
+		assertEquals(1, bufferPool.getNumAllocations());
+		assertEquals(0, bufferPool.getNumReuses());
+		
+		bufferPool.release(buffer);
+		assertEquals(1024, bufferPool.getNumPooledBytes());
+		
+		// a buffer of a different size must not be served from the pool
+		byte[] smallBuffer = bufferPool.acquire(512);
+		assertEquals(512, smallBuffer.length);
+		assertEquals(2, bufferPool.getNumAllocations());
+		
+		byte[] reusedBuffer = bufferPool.acquire(1024);
+		assertSame(buffer, reusedBuffer);
+		assertEquals(1, bufferPool.getNumReuses());
+		assertEquals(0, bufferPool.getNumPooledBytes());
+		
+		bufferPool.release(null);
+		assertEquals(0, bufferPool.getNumPooledBytes());
+	}
+	
+	public void testSteadyState()
+	{
+		for (int i = 0; i < 100; i++)
+		{
+			byte[] first = bufferPool.acquire(1024);
+			byte[] second = bufferPool.acquire(1024);
+			bufferPool.release(first);
+			bufferPool.release(second);
+		}
+		
+		assertEquals(2, bufferPool.getNumAllocations());
+		assertEquals(198, bufferPool.getNumReuses());
+	}
+}
@@ -0,0 +1,94 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.test;
+
+import org.alljoyn.cops.filetransfer.ChunkSizeTuner;
+import org.alljoyn.cops.filetransfer.data.StatusCode;
+
+import android.test.AndroidTestCase;
+
+public class ChunkSizeTunerTest extends AndroidTestCase
+{
+	private static final String PEER = "peer";
+	
+	private ChunkSizeTuner tuner;
+	
+	protected void setUp() throws Exception
+	{
+		super.setUp();
+		
+		tuner = new ChunkSizeTuner();
+	}
+	
+	public void testBounds()
+	{
+		assertEquals(StatusCode.INVALID, tuner.setBounds(0, 1024));
+		assertEquals(StatusCode.INVALID, tuner.setBounds(4096, 1024));
+		assertEquals(StatusCode.OK, tuner.setBounds(2048, 8192));
+		
+		// the initial chunk size is clamped to the bounds
+		assertEquals(2048, tuner.getChunkSize(PEER, 1024));
+		assertEquals(8192, tuner.getChunkSize("other", 65536));
+		
+		assertEquals(StatusCode.OK, tuner.setBounds(1024, 4096));
+		assertEquals(4096, tuner.getChunkSize("other", 65536));
+	}
+	
+	public void testAdjustChunkSize() throws InterruptedException
+	{
+		tuner.setBounds(1024, 8192);
+		assertEquals(1024, tuner.getChunkSize(PEER, 1024));
+		
+		// chunks from an unknown peer are ignored
+		assertFalse(tuner.chunkReceived("unknown", 1024));
+		
+		tuner.requestSent(PEER);
+		Thread.sleep(20);
+		
+		// a full window of steady throughput grows the chunk size
+		assertTrue(receiveWindow(10, 65536));
+		assertEquals(2048, tuner.getChunkSize(PEER, 1024));
+		assertTrue(tuner.getRoundTripTime(PEER) >= 20);
+		
+		// throughput that holds up keeps growing the chunk size
+		assertTrue(receiveWindow(10, 65536));
+		assertEquals(4096, tuner.getChunkSize(PEER, 1024));
+		
+		// a drop in throughput reverses the direction
+		assertTrue(receiveWindow(10, 1024));
+		assertEquals(2048, tuner.getChunkSize(PEER, 1024));
+	}
+	
+	/**
+	 * receiveWindow()
+	 * feeds chunks of the specified length to the tuner every interval milliseconds until
+	 * the tuner closes a measurement window.
+	 */
+	private boolean receiveWindow(int interval, int length) throws InterruptedException
+	{
+		for (int i = 0; i < 200; i++)
+		{
+			Thread.sleep(interval);
+			
+			if (tuner.chunkReceived(PEER, length))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
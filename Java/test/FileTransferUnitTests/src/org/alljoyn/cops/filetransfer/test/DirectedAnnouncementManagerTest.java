@@ -143,6 +143,42 @@ public class DirectedAnnouncementManagerTest extends AndroidTestCase
 		directedAnnouncementManager.generateFileDescriptor(action);
 	}
 	
+	public void testInlineContent() 
+	{
+		mockPM.addAnnouncedLocalFiles(generateKnownAnnouncedDummyDescriptorArray("Adam"));
+		directedAnnouncementManager.setInlineThreshold(100);
+		
+		final ArrayList<Action> actions = new ArrayList<Action>();
+		mockDispatcher.setTestListener(new TestListener()
+		{
+			public void sendBackAction(Action action)
+			{
+				actions.add(action);
+			}
+		});
+		
+		//verify the contents of a small file follow its announcement
+		int statusCode = directedAnnouncementManager.handleOfferRequest("sdcard/reports/animals.txt", "Adam");
+		assertEquals(StatusCode.OK, statusCode);
+		assertEquals(2, actions.size());
+		assertEquals(ActionType.ANNOUNCE, actions.get(0).actionType);
+		assertEquals(ActionType.INLINE_CONTENT, actions.get(1).actionType);
+		assertEquals("Adam", actions.get(1).peer);
+		assertEquals(4, ((byte[]) actions.get(1).parameters.get(0))[0]);
+		assertEquals(100, ((byte[]) actions.get(1).parameters.get(1)).length);
+		
+		//verify larger files are announced without their contents
+		actions.clear();
+		
+		Action action = new Action();
+		action.parameters.add("sdcard/testFile/test.txt");
+		action.parameters.add("Adam");
+		directedAnnouncementManager.generateFileDescriptor(action);
+		
+		assertEquals(1, actions.size());
+		assertEquals(ActionType.ANNOUNCE, actions.get(0).actionType);
+	}
+	
 	private FileDescriptor generateSingleDescriptor()
 	{
 		FileDescriptor descriptor = new FileDescriptor();
@@ -295,7 +331,13 @@ public class DirectedAnnouncementManagerTest extends AndroidTestCase
 			}
 			
 			return fda;
-		}		
+		}
+		
+		@Override
+		public int getChunk(String path, byte[] chunk, long startOffset, int length)
+		{
+			return length;
+		}
 	}
 	
 	//MockDispatcher
@@ -16,12 +16,18 @@
 
 package org.alljoyn.cops.filetransfer.test;
 
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.alljoyn.cops.filetransfer.DirectedAnnouncementManager;
 import org.alljoyn.cops.filetransfer.Dispatcher;
+import org.alljoyn.cops.filetransfer.Dispatcher.Lane;
 import org.alljoyn.cops.filetransfer.SendManager;
 import org.alljoyn.cops.filetransfer.Transmitter;
 import org.alljoyn.cops.filetransfer.data.Action;
 import org.alljoyn.cops.filetransfer.data.Action.ActionType;
+import org.alljoyn.cops.filetransfer.data.StatusCode;
 import org.alljoyn.cops.filetransfer.listener.DirectedAnnouncementManagerListener;
 import org.alljoyn.cops.filetransfer.listener.SendManagerListener;
 
@@ -228,6 +234,241 @@ public class DispatcherTest extends AndroidTestCase
 		}
 	}
 	
+	public void testPriorityLanes()
+	{
+		final ArrayList<ActionType> sentActions = new ArrayList<ActionType>();
+		MockTransmitter transmitter = new MockTransmitter();
+		Dispatcher laneDispatcher = new Dispatcher(transmitter);
+		laneDispatcher.setSendManagerListener(new MockSendManager(laneDispatcher));
+		
+		transmitter.setTestListener(new TestListener()
+		{
+			public void sendBackAction(Action action)
+			{
+				sentActions.add(action.actionType);
+			}
+		});
+		
+		for (int i = 0; i < 20; i++)
+		{
+			laneDispatcher.insertAction(createDataChunkAction());
+		}		
+		laneDispatcher.insertAction(createAnnounceAction());
+		laneDispatcher.insertAction(createStopXferAction());
+		
+		Action shutdownAction = new Action();
+		shutdownAction.actionType = ActionType.SHUTDOWN_THREAD;
+		laneDispatcher.insertAction(shutdownAction);
+		
+		assertEquals(1, laneDispatcher.getQueueDepth(Lane.CONTROL));
+		assertEquals(1, laneDispatcher.getQueueDepth(Lane.DISCOVERY));
+		assertEquals(21, laneDispatcher.getQueueDepth(Lane.BULK));
+		
+		//verify control and discovery actions overtake queued data
+		laneDispatcher.run();
+		
+		assertEquals(22, sentActions.size());
+		assertEquals(ActionType.STOP_XFER, sentActions.get(0));
+		assertEquals(ActionType.ANNOUNCE, sentActions.get(1));
+		assertEquals(ActionType.DATA_CHUNK, sentActions.get(2));
+		assertEquals(0, laneDispatcher.getQueueDepth(Lane.BULK));
+	}
+	
+	public void testLaneStarvation()
+	{
+		final ArrayList<ActionType> sentActions = new ArrayList<ActionType>();
+		MockTransmitter transmitter = new MockTransmitter();
+		Dispatcher laneDispatcher = new Dispatcher(transmitter);
+		laneDispatcher.setSendManagerListener(new MockSendManager(laneDispatcher));
+		
+		transmitter.setTestListener(new TestListener()
+		{
+			public void sendBackAction(Action action)
+			{
+				sentActions.add(action.actionType);
+			}
+		});
+		
+		laneDispatcher.insertAction(createDataChunkAction());
+		
+		for (int i = 0; i < 40; i++)
+		{
+			laneDispatcher.insertAction(createAnnounceAction());
+		}
+		
+		Action shutdownAction = new Action();
+		shutdownAction.actionType = ActionType.SHUTDOWN_THREAD;
+		laneDispatcher.insertAction(shutdownAction);
+		
+		//verify data is serviced after being passed over sixteen times
+		laneDispatcher.run();
+		
+		assertEquals(ActionType.ANNOUNCE, sentActions.get(15));
+		assertEquals(ActionType.DATA_CHUNK, sentActions.get(16));
+		
+		//verify the shutdown action waiting behind the data is not starved either
+		assertEquals(33, sentActions.size());
+	}
+	
+	public void testQueuedBytes()
+	{
+		MockTransmitter transmitter = new MockTransmitter();
+		Dispatcher budgetDispatcher = new Dispatcher(transmitter);
+		budgetDispatcher.setSendManagerListener(new MockSendManager(budgetDispatcher));
+		
+		assertEquals(StatusCode.INVALID, budgetDispatcher.setMaxQueuedBytes(0));
+		assertEquals(StatusCode.OK, budgetDispatcher.setMaxQueuedBytes(2500));
+		assertEquals(2500, budgetDispatcher.getMaxQueuedBytes());
+		
+		//verify a chunk is always admitted into an empty queue
+		assertTrue(budgetDispatcher.hasQueueCapacity(4000));
+		
+		for (int i = 0; i < 2; i++)
+		{
+			budgetDispatcher.insertAction(createDataChunkAction(i * 1000, 1000));
+		}
+		budgetDispatcher.insertAction(createAnnounceAction());
+		
+		//verify only the bytes of data chunks count against the budget
+		assertEquals(2000, budgetDispatcher.getQueuedBytes());
+		assertTrue(budgetDispatcher.hasQueueCapacity(500));
+		assertFalse(budgetDispatcher.hasQueueCapacity(501));
+		
+		Action shutdownAction = new Action();
+		shutdownAction.actionType = ActionType.SHUTDOWN_THREAD;
+		budgetDispatcher.insertAction(shutdownAction);
+		
+		//verify sent chunks release their bytes and the high-water mark remains
+		budgetDispatcher.run();
+		
+		assertEquals(0, budgetDispatcher.getQueuedBytes());
+		assertEquals(2000, budgetDispatcher.getQueuedBytesHighWater());
+		
+		budgetDispatcher.resetQueuedBytesHighWater();
+		assertEquals(0, budgetDispatcher.getQueuedBytesHighWater());
+	}
+	
+	public void testFailedTransmit()
+	{
+		MockTransmitter transmitter = new MockTransmitter();
+		Dispatcher failingDispatcher = new Dispatcher(transmitter);
+		failingDispatcher.setSendManagerListener(new MockSendManager(failingDispatcher));
+		
+		transmitter.setTestListener(new TestListener()
+		{
+			public void sendBackAction(Action action)
+			{
+				throw new RuntimeException("transmission failed");
+			}
+		});
+		
+		for (int i = 0; i < 2; i++)
+		{
+			failingDispatcher.insertAction(createDataChunkAction(i * 1000, 1000));
+		}
+		assertEquals(2000, failingDispatcher.getQueuedBytes());
+		
+		Action shutdownAction = new Action();
+		shutdownAction.actionType = ActionType.SHUTDOWN_THREAD;
+		failingDispatcher.insertAction(shutdownAction);
+		
+		//verify chunks that fail to send still release their bytes
+		failingDispatcher.run();
+		
+		assertEquals(0, failingDispatcher.getQueuedBytes());
+	}
+	
+	public void testInvalidatePeer()
+	{
+		MockTransmitter transmitter = new MockTransmitter();
+		Dispatcher peerDispatcher = new Dispatcher(transmitter);
+		
+		//verify the cache of a peer leaving the session is dropped
+		peerDispatcher.invalidatePeer("peer");
+		assertEquals(1, transmitter.invalidatedPeers.size());
+		assertEquals("peer", transmitter.invalidatedPeers.get(0));
+		
+		//verify the whole cache is dropped when the session is lost
+		peerDispatcher.invalidatePeers();
+		assertEquals(1, transmitter.numCacheClears);
+	}
+	
+	public void testBundleChunkReleased()
+	{
+		MockTransmitter transmitter = new MockTransmitter();
+		Dispatcher bundleDispatcher = new Dispatcher(transmitter);
+		MockSendManager sendManager = new MockSendManager(bundleDispatcher);
+		bundleDispatcher.setSendManagerListener(sendManager);
+		
+		Action bundleAction = new Action();
+		bundleAction.actionType = ActionType.BUNDLE_CHUNK;
+		bundleAction.peer = "peer";
+		bundleAction.parameters.add(new byte[] { 1 });
+		bundleAction.parameters.add(0L);
+		bundleAction.parameters.add(new byte[1000]);
+		bundleDispatcher.insertAction(bundleAction);
+		assertEquals(1000, bundleDispatcher.getQueuedBytes());
+		
+		Action shutdownAction = new Action();
+		shutdownAction.actionType = ActionType.SHUTDOWN_THREAD;
+		bundleDispatcher.insertAction(shutdownAction);
+		
+		//verify the Send Manager is told when a bundle chunk frees its bytes
+		bundleDispatcher.run();
+		
+		assertEquals(0, bundleDispatcher.getQueuedBytes());
+		assertEquals(1, sendManager.getNumCapacityReleases());
+	}
+	
+	public void testParallelPeers() throws InterruptedException
+	{
+		final CountDownLatch slowPeerReleased = new CountDownLatch(1);
+		final CountDownLatch fastPeerSent = new CountDownLatch(1);
+		MockTransmitter transmitter = new MockTransmitter();
+		Dispatcher parallelDispatcher = new Dispatcher(transmitter, 2);
+		assertEquals(2, parallelDispatcher.getNumThreads());
+		
+		transmitter.setTestListener(new TestListener()
+		{
+			public void sendBackAction(Action action)
+			{
+				try
+				{
+					if ("a".equals(action.peer))
+					{
+						slowPeerReleased.await(5, TimeUnit.SECONDS);
+					}
+					else
+					{
+						fastPeerSent.countDown();
+					}
+				}
+				catch (InterruptedException ex)
+				{
+					
+				}
+			}
+		});
+		new Thread(parallelDispatcher).start();
+		
+		//peers "a" and "b" are serviced by different threads
+		Action slowAction = createStopXferAction();
+		slowAction.peer = "a";
+		parallelDispatcher.insertAction(slowAction);
+		
+		Action fastAction = createStopXferAction();
+		fastAction.peer = "b";
+		parallelDispatcher.insertAction(fastAction);
+		
+		//verify a blocked peer does not hold up other peers
+		assertTrue(fastPeerSent.await(5, TimeUnit.SECONDS));
+		slowPeerReleased.countDown();
+		
+		Action shutdownAction = new Action();
+		shutdownAction.actionType = ActionType.SHUTDOWN_THREAD;
+		parallelDispatcher.insertAction(shutdownAction);
+	}
+	
 	private Action createAnnounceAction()
 	{
 		Action action = new Action();
@@ -268,6 +509,19 @@ public class DispatcherTest extends AndroidTestCase
 		return action;
 	}
 	
+	private Action createDataChunkAction(long startByte, int length)
+	{
+		Action action = createDataChunkAction();
+		action.peer = "peer";
+		action.parameters.add(new byte[] { 1 });
+		action.parameters.add(startByte);
+		action.parameters.add(length);
+		action.parameters.add(new byte[length]);
+		action.parameters.add(false);
+		
+		return action;
+	}
+	
 	private Action createOfferFileAction()
 	{
 		Action action = new Action();
@@ -314,6 +568,8 @@ public class DispatcherTest extends AndroidTestCase
 	private class MockTransmitter extends Transmitter
 	{
 		TestListener listener;
+		ArrayList<String> invalidatedPeers = new ArrayList<String>();
+		int numCacheClears;
 		
 		public MockTransmitter() 
 		{
@@ -324,6 +580,18 @@ public class DispatcherTest extends AndroidTestCase
 		{
 			this.listener = listener;
 		}
+		
+		@Override
+		public void invalidatePeer(String peer)
+		{
+			invalidatedPeers.add(peer);
+		}
+		
+		@Override
+		public void clearCache()
+		{
+			numCacheClears++;
+		}
 
 		@Override
 		public int transmit(Action action)
@@ -356,14 +624,26 @@ public class DispatcherTest extends AndroidTestCase
 	
 	private class MockSendManager extends SendManager implements SendManagerListener
 	{
+		private int numCapacityReleases = 0;
 
 		public MockSendManager(Dispatcher dispatcher) 
 		{
 			super(dispatcher, null);
 		}
 		
+		public int getNumCapacityReleases()
+		{
+			return numCapacityReleases;
+		}
+		
+		@Override
+		public void queueCapacityReleased()
+		{
+			numCapacityReleases++;
+		}
+		
 		@Override
-		public void dataSent()
+		public void dataSent(byte[] fileID, long startByte, String peer)
 		{
 			System.out.println("MockFTM - reached dataSent() function on callback");
 		}
@@ -71,4 +71,33 @@ public class FileDescriptorTest extends AndroidTestCase
 		
 		assertSame(hashMap.size(), 1);		
 	}
+	
+	public void testLargeSize()
+	{
+		long largeSize = 5368709120L;
+		
+		FileDescriptor descriptor1 = new FileDescriptor();
+		descriptor1.fileID = new byte[20];
+		descriptor1.filename = "foo";
+		descriptor1.owner = "bar";
+		descriptor1.relativePath = "somePath";
+		descriptor1.sharedPath = "someOtherPath";
+		descriptor1.size = 1337;
+		
+		assertEquals(1337, descriptor1.getSize());
+		assertTrue(descriptor1.isSizeKnown());
+		
+		descriptor1.setSize(largeSize);
+		assertEquals(largeSize, descriptor1.getSize());
+		assertEquals(-1, descriptor1.size);
+		
+		FileDescriptor descriptor2 = new FileDescriptor(descriptor1);
+		assertEquals(largeSize, descriptor2.getSize());
+		assertTrue(descriptor1.equals(descriptor2));
+		
+		//only the marshalled size reaches a remote peer
+		FileDescriptor descriptor3 = new FileDescriptor();
+		descriptor3.size = descriptor1.size;
+		assertFalse(descriptor3.isSizeKnown());
+	}
 }
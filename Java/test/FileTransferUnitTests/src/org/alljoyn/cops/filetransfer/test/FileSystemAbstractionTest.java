@@ -26,6 +26,8 @@ import java.util.Random;
 
 import org.alljoyn.cops.filetransfer.FileSystemAbstraction;
 import org.alljoyn.cops.filetransfer.data.FileDescriptor;
+import org.alljoyn.cops.filetransfer.data.StatusCode;
+import org.alljoyn.cops.filetransfer.utility.BlockHashes;
 import android.test.AndroidTestCase;
 
 /**
@@ -205,6 +207,69 @@ public class FileSystemAbstractionTest extends AndroidTestCase
 		assertEquals(expectedValid, fdArray.length);	
 	}
 
+	/**
+	 * Test method for {@link org.alljoyn.cops.filetransfer.FileSystemAbstraction#getBlockHashes(java.lang.String)}.
+	 */
+	public void testGetBlockHashes() throws Exception
+	{
+		int blockSize = BlockHashes.MIN_BLOCK_SIZE;
+		byte[] contents = new byte[(2 * blockSize) + 100];
+		rand.nextBytes(contents);
+		
+		File testFile = new File(testDir, rand.nextInt() + ".test");
+		FileOutputStream fos = new FileOutputStream(testFile);
+		fos.write(contents);
+		fos.close();
+		
+		byte[] blockHashes = fsa.getBlockHashes(testFile.getAbsolutePath());
+		assertEquals(3 * BlockHashes.HASH_LENGTH, blockHashes.length);
+		
+		for (int block = 0; block < 3; block++)
+		{
+			int offset = block * blockSize;
+			int length = Math.min(blockSize, contents.length - offset);
+			assertTrue(BlockHashes.matches(blockHashes, block, BlockHashes.hash(contents, offset, length)));
+		}
+		
+		// a missing file has no block hashes
+		assertNull(fsa.getBlockHashes(new File(testDir, "missing.test").getAbsolutePath()));
+	}
+
+	/**
+	 * Test method for {@link org.alljoyn.cops.filetransfer.FileSystemAbstraction#preallocate(java.lang.String, long)}.
+	 */
+	public void testPreallocate() throws Exception
+	{
+		File testFile = new File(testDir, rand.nextInt() + ".test");
+		String path = testFile.getAbsolutePath();
+		String missingPath = new File(new File(testDir, "missing"), "missing.test").getAbsolutePath();
+		
+		// a missing file fits, even in a missing directory, but an impossible length does not
+		assertTrue(fsa.hasSpace(path, 4096));
+		assertTrue(fsa.hasSpace(missingPath, 4096));
+		assertFalse(fsa.hasSpace(path, Long.MAX_VALUE));
+		
+		assertEquals(StatusCode.OK, fsa.preallocate(path, 1048576));
+		assertEquals(1048576, testFile.length());
+		
+		// the preallocated bytes are already reserved
+		assertTrue(fsa.hasSpace(path, 1048576));
+		
+		// chunks are written into the preallocated file without growing it
+		byte[] chunk = new byte[1024];
+		rand.nextBytes(chunk);
+		fsa.addChunk(path, chunk, 4096, chunk.length);
+		
+		// a longer file is left untouched
+		assertEquals(StatusCode.OK, fsa.preallocate(path, 1024));
+		fsa.closeFile(path);
+		assertEquals(1048576, testFile.length());
+		
+		byte[] readChunk = new byte[chunk.length];
+		assertEquals(chunk.length, fsa.getChunk(path, readChunk, 4096, readChunk.length));
+		assertTrue(Arrays.equals(chunk, readChunk));
+	}
+
 	/**
 	 * Test method for {@link org.alljoyn.cops.filetransfer.FileSystemAbstraction#getChunk(java.lang.String, byte[], int, int)}.
 	 */
@@ -307,6 +372,151 @@ public class FileSystemAbstractionTest extends AndroidTestCase
 		}
 	}
 
+	/**
+	 * Test method for {@link org.alljoyn.cops.filetransfer.FileSystemAbstraction#closeFile(java.lang.String)}.
+	 */
+	public void testCloseFile()
+	{
+		String filePath = testDir.getAbsolutePath() + "/" + rand.nextInt() + ".test";
+		byte[] readChunk = new byte[4];
+		
+		try
+		{
+			// write and read back through the cached handle
+			assertEquals(1, fsa.addChunk(filePath, new byte[] {1,2,3,4}, 0, 4));
+			assertEquals(4, fsa.getChunk(filePath, readChunk, 0, 4));
+			assertTrue(Arrays.equals(new byte[] {1,2,3,4}, readChunk));
+			
+			// file is reopened after being closed
+			fsa.closeFile(filePath);
+			assertEquals(1, fsa.addChunk(filePath, new byte[] {5,6,7,8}, 4, 4));
+			assertEquals(4, fsa.getChunk(filePath, readChunk, 4, 4));
+			assertTrue(Arrays.equals(new byte[] {5,6,7,8}, readChunk));
+			assertEquals(-1, fsa.getChunk(filePath, readChunk, 8, 4));
+			
+			// written data is forced to disk whether or not the file is open
+			assertEquals(StatusCode.OK, fsa.sync(filePath));
+			fsa.closeFile(filePath);
+			assertEquals(StatusCode.OK, fsa.sync(filePath));
+			fsa.closeFile(filePath);
+		} 
+		catch (Exception e)
+		{
+			fail(e.toString());
+		}
+		
+		assertEquals(8, new File(filePath).length());
+		assertEquals(1, fsa.delete(filePath));
+		
+		// closing a file that is not open has no effect
+		fsa.closeFile(filePath);
+	}
+
+	public void testParallelChunks() throws InterruptedException
+	{
+		final String filePath = testDir.getAbsolutePath() + "/" + rand.nextInt() + ".test";
+		final int chunkLength = 4096;
+		final int numChunks = 64;
+		final boolean[] isFailed = new boolean[1];
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		
+		// each thread writes and reads back its own chunks while the file is closed under it
+		for (int t = 0; t < 4; t++)
+		{
+			final int threadIndex = t;
+			
+			threads.add(new Thread(new Runnable()
+			{
+				public void run()
+				{
+					byte[] chunk = new byte[chunkLength];
+					byte[] readChunk = new byte[chunkLength];
+					Arrays.fill(chunk, (byte) threadIndex);
+					
+					try
+					{
+						for (int i = threadIndex; i < numChunks; i += 4)
+						{
+							if ((fsa.addChunk(filePath, chunk, i * chunkLength, chunkLength) != 1)
+									|| (fsa.getChunk(filePath, readChunk, i * chunkLength, chunkLength) != chunkLength)
+									|| !Arrays.equals(chunk, readChunk))
+							{
+								isFailed[0] = true;
+							}
+							fsa.closeFile(filePath);
+						}
+					}
+					catch (Exception e)
+					{
+						isFailed[0] = true;
+					}
+				}
+			}));
+		}
+		
+		for (Thread thread : threads)
+		{
+			thread.start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		assertFalse(isFailed[0]);
+		assertEquals(chunkLength * numChunks, new File(filePath).length());
+		assertEquals(1, fsa.delete(filePath));
+	}
+	
+	public void testMemoryMappedChunk()
+	{
+		String filePath = testDir.getAbsolutePath() + "/" + rand.nextInt() + ".test";
+		byte[] data = new byte[4096];
+		byte[] readChunk = new byte[1000];
+		rand.nextBytes(data);
+		
+		try
+		{
+			assertEquals(1, fsa.addChunk(filePath, data, 0, data.length));
+			fsa.closeFile(filePath);
+			
+			// files below the threshold are not mapped
+			assertEquals(StatusCode.INVALID, fsa.setMemoryMapThreshold(-1));
+			assertEquals(StatusCode.OK, fsa.setMemoryMapThreshold(data.length + 1));
+			assertEquals(1000, fsa.getChunk(filePath, readChunk, 0, 1000));
+			assertFalse(fsa.isMapped(filePath));
+			
+			assertEquals(StatusCode.OK, fsa.setMemoryMapThreshold(data.length));
+			assertEquals(1000, fsa.getChunk(filePath, readChunk, 1000, 1000));
+			assertTrue(fsa.isMapped(filePath));
+			assertTrue(Arrays.equals(Arrays.copyOfRange(data, 1000, 2000), readChunk));
+			
+			// a short read at the end of the file and end of file
+			assertEquals(96, fsa.getChunk(filePath, readChunk, 4000, 1000));
+			assertTrue(Arrays.equals(Arrays.copyOfRange(data, 4000, 4096), Arrays.copyOf(readChunk, 96)));
+			assertEquals(-1, fsa.getChunk(filePath, readChunk, 4096, 1000));
+			
+			// writing to the file drops the mapping
+			assertEquals(1, fsa.addChunk(filePath, new byte[] {1,2,3,4}, 0, 4));
+			assertFalse(fsa.isMapped(filePath));
+			assertEquals(1000, fsa.getChunk(filePath, readChunk, 0, 1000));
+			assertTrue(Arrays.equals(new byte[] {1,2,3,4}, Arrays.copyOf(readChunk, 4)));
+			
+			fsa.unmapFile(filePath);
+			assertFalse(fsa.isMapped(filePath));
+		} 
+		catch (Exception e)
+		{
+			fail(e.toString());
+		}
+		finally
+		{
+			fsa.setMemoryMapThreshold(0);
+		}
+		
+		assertEquals(1, fsa.delete(filePath));
+	}
+	
 	/**
 	 * Test method for {@link org.alljoyn.cops.filetransfer.FileSystemAbstraction#delete(java.lang.String)}.
 	 */
@@ -132,7 +132,7 @@ public class OfferManagerTest extends AndroidTestCase
 					Thread.sleep(500);
 				} catch (InterruptedException e) {	}
 				
-				offerManager.handleFileRequest(descriptor.fileID, 0, 100, descriptor.owner, 100);
+				offerManager.handleFileRequest(descriptor.fileID, 0, 100, descriptor.owner, 100, 0);
 			}			
 		};
 		
@@ -164,6 +164,32 @@ public class OfferManagerTest extends AndroidTestCase
 		assertEquals(StatusCode.OFFER_TIMEOUT, status);		
 	}
 	
+	public void testInlineOffer()
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		
+		//verify a small file is offered with its contents and completes once accepted
+		offerManager.setInlineThreshold(100);
+		mockTransmitter.setResult(StatusCode.OK);
+		
+		int status = offerManager.offerFile(descriptor.owner, descriptor.sharedPath, 1000);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(2, mockTransmitter.getLastAction().parameters.size());
+		assertEquals(100, ((byte[]) mockTransmitter.getLastAction().parameters.get(1)).length);
+		
+		//verify larger files are offered without their contents
+		offerManager.setInlineThreshold(50);
+		mockTransmitter.setResult(StatusCode.OFFER_REJECTED);
+		
+		status = offerManager.offerFile(descriptor.owner, descriptor.sharedPath, 1000);
+		assertEquals(StatusCode.OFFER_REJECTED, status);
+		assertEquals(1, mockTransmitter.getLastAction().parameters.size());
+		
+		//verify inline offers are declined without a Receive Manager
+		status = offerManager.handleInlineOffer(descriptor, new byte[100], descriptor.owner);
+		assertEquals(StatusCode.REQUEST_DENIED, status);
+	}
+	
 	private FileDescriptor getDummyFileDescriptor()
 	{
 		FileDescriptor descriptor = new FileDescriptor();
@@ -180,6 +206,7 @@ public class OfferManagerTest extends AndroidTestCase
 	private class MockTransmitter extends Transmitter
 	{	
 		private int result = StatusCode.INVALID;
+		private Action lastAction;
 		
 		public MockTransmitter()
 		{
@@ -190,10 +217,16 @@ public class OfferManagerTest extends AndroidTestCase
 		{
 			result = newResult;			
 		}
+		
+		public Action getLastAction()
+		{
+			return lastAction;
+		}
 
 		@Override
 		public int transmit(Action action)
 		{
+			lastAction = action;
 			return result;			
 		}
 	}
@@ -218,6 +251,12 @@ public class OfferManagerTest extends AndroidTestCase
 				ArrayList<String> failedPaths, String localBusId)
 		{
 			return new FileDescriptor[] { getDummyFileDescriptor() };
-		}	
+		}
+		
+		@Override
+		public int getChunk(String path, byte[] chunk, long startOffset, int length)
+		{
+			return length;
+		}
 	}
 }
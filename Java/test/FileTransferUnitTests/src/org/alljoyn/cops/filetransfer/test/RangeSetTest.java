@@ -0,0 +1,100 @@
+/******************************************************************************
+ * Copyright (c) 2013, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.cops.filetransfer.test;
+
+import org.alljoyn.cops.filetransfer.utility.RangeSet;
+
+import android.test.AndroidTestCase;
+
+public class RangeSetTest extends AndroidTestCase
+{
+	public void testAdd()
+	{
+		RangeSet rangeSet = new RangeSet();
+		
+		assertEquals(10, rangeSet.add(20, 30));
+		assertEquals(10, rangeSet.add(0, 10));
+		assertEquals(2, rangeSet.getNumRanges());
+		
+		// duplicates and empty ranges add nothing
+		assertEquals(0, rangeSet.add(20, 30));
+		assertEquals(0, rangeSet.add(22, 25));
+		assertEquals(0, rangeSet.add(5, 5));
+		
+		// an overlapping range only counts its new bytes
+		assertEquals(5, rangeSet.add(25, 35));
+		assertEquals(25, rangeSet.getNumBytesCovered());
+		
+		// filling the gap merges everything into one range
+		assertEquals(10, rangeSet.add(8, 22));
+		assertEquals(1, rangeSet.getNumRanges());
+		assertEquals(35, rangeSet.getNumBytesCovered());
+		
+		// touching ranges are merged as well
+		assertEquals(5, rangeSet.add(35, 40));
+		assertEquals(1, rangeSet.getNumRanges());
+		
+		rangeSet.clear();
+		assertEquals(0, rangeSet.getNumRanges());
+		assertEquals(0, rangeSet.getNumBytesCovered());
+	}
+	
+	public void testCovers()
+	{
+		RangeSet rangeSet = new RangeSet();
+		rangeSet.add(0, 10);
+		rangeSet.add(20, 30);
+		
+		assertTrue(rangeSet.covers(0, 10));
+		assertTrue(rangeSet.covers(22, 28));
+		assertFalse(rangeSet.covers(5, 25));
+		assertFalse(rangeSet.covers(0, 30));
+		assertTrue(rangeSet.covers(15, 15));
+		
+		assertEquals(10, rangeSet.getFirstMissing(0));
+		assertEquals(15, rangeSet.getFirstMissing(15));
+		assertEquals(30, rangeSet.getFirstMissing(20));
+		
+		rangeSet.add(10, 20);
+		assertTrue(rangeSet.covers(0, 30));
+		assertEquals(30, rangeSet.getFirstMissing(0));
+	}
+	
+	public void testRemove()
+	{
+		RangeSet rangeSet = new RangeSet();
+		rangeSet.add(0, 30);
+		rangeSet.add(40, 50);
+		
+		// removing from the middle of a range splits it
+		assertEquals(10, rangeSet.remove(10, 20));
+		assertEquals(3, rangeSet.getNumRanges());
+		assertFalse(rangeSet.covers(10, 20));
+		assertTrue(rangeSet.covers(20, 30));
+		
+		// a removal spanning several ranges trims them
+		assertEquals(10, rangeSet.remove(25, 45));
+		assertEquals(20, rangeSet.getNumBytesCovered());
+		assertEquals(25, rangeSet.getFirstMissing(20));
+		assertTrue(rangeSet.covers(45, 50));
+		
+		// missing and empty ranges remove nothing
+		assertEquals(0, rangeSet.remove(10, 20));
+		assertEquals(0, rangeSet.remove(5, 5));
+		assertEquals(20, rangeSet.getNumBytesCovered());
+	}
+}
@@ -17,17 +17,29 @@
 package org.alljoyn.cops.filetransfer.test;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.alljoyn.cops.filetransfer.Dispatcher;
 import org.alljoyn.cops.filetransfer.ReceiveManager;
 import org.alljoyn.cops.filetransfer.FileSystemAbstraction;
 import org.alljoyn.cops.filetransfer.PermissionsManager;
 import org.alljoyn.cops.filetransfer.Transmitter;
 import org.alljoyn.cops.filetransfer.data.Action;
+import org.alljoyn.cops.filetransfer.data.Action.ActionType;
 import org.alljoyn.cops.filetransfer.data.FileDescriptor;
 import org.alljoyn.cops.filetransfer.data.ProgressDescriptor;
 import org.alljoyn.cops.filetransfer.data.StatusCode;
 import org.alljoyn.cops.filetransfer.listener.FileCompletedListener;
+import org.alljoyn.cops.filetransfer.utility.BlockHashes;
+import org.alljoyn.cops.filetransfer.utility.BlockSignatures;
+import org.alljoyn.cops.filetransfer.utility.BundleFrame;
+import org.alljoyn.cops.filetransfer.utility.ChunkCompressor;
 import android.test.AndroidTestCase;
 
 public class ReceiveManagerTest extends AndroidTestCase
@@ -85,6 +97,22 @@ public class ReceiveManagerTest extends AndroidTestCase
 		assertEquals(validNum, receiveManager.getMaxChunkSize());
 	}
 	
+	public void testAdaptiveChunkSize()
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		
+		assertFalse(receiveManager.isAdaptiveChunkSize());
+		assertEquals(StatusCode.INVALID, receiveManager.setChunkSizeBounds(0, 4096));
+		assertEquals(StatusCode.OK, receiveManager.setChunkSizeBounds(4096, 8192));
+		receiveManager.setAdaptiveChunkSize(true);
+		
+		// the requested chunk size starts within the bounds
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(4096, transmitter.getLastAction().parameters.get(3));
+		assertEquals(4096, receiveManager.getProgressList().get(0).chunkSize);
+	}
+	
 	public void testVaildRequestFile()
 	{
 		FileDescriptor file = getDummyFileDescriptor("");
@@ -158,10 +186,11 @@ public class ReceiveManagerTest extends AndroidTestCase
 		
 		mockFsa.setExpectedPath(new File(defaultSaveDirectory, file.filename).getAbsolutePath());
 		
-		receiveManager.handleFileChunk(file.fileID, 0, 0, new byte[1]);	
+		receiveManager.handleFileChunk(file.fileID, 0, 0, new byte[1], file.owner);	
 		
 		mockFsa.setExpectDelete(true);
 		receiveManager.cancelFile(file.fileID);
+		assertEquals(new File(defaultSaveDirectory, file.filename).getAbsolutePath(), mockFsa.getLastPath());
 		
 		//verify specified save directory used, not default
 		String differentSaveDirectory =  "/mnt/sdcard/download/testing";
@@ -171,9 +200,10 @@ public class ReceiveManagerTest extends AndroidTestCase
 		
 		mockFsa.setExpectedPath(new File(differentSaveDirectory, file.filename).getAbsolutePath());
 		
-		receiveManager.handleFileChunk(file.fileID, 0, 0, new byte[1]);
+		receiveManager.handleFileChunk(file.fileID, 0, 0, new byte[1], file.owner);
 		
 		receiveManager.cancelFile(file.fileID);
+		assertEquals(new File(differentSaveDirectory, file.filename).getAbsolutePath(), mockFsa.getLastPath());
 		
 		//verify default save directory used				
 		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
@@ -181,9 +211,10 @@ public class ReceiveManagerTest extends AndroidTestCase
 				
 		mockFsa.setExpectedPath(new File(defaultSaveDirectory, file.filename).getAbsolutePath());
 				
-		receiveManager.handleFileChunk(file.fileID, 0, 0, new byte[1]);	
+		receiveManager.handleFileChunk(file.fileID, 0, 0, new byte[1], file.owner);	
 		
 		receiveManager.cancelFile(file.fileID);
+		assertEquals(new File(defaultSaveDirectory, file.filename).getAbsolutePath(), mockFsa.getLastPath());
 	}
 	
 	public void testGetProgressList()
@@ -193,14 +224,14 @@ public class ReceiveManagerTest extends AndroidTestCase
 		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
 		assertEquals(StatusCode.OK, status);		
 		
-		receiveManager.handleFileChunk(file.fileID, 0, 1, new byte[1]);
+		receiveManager.handleFileChunk(file.fileID, 0, 1, new byte[1], file.owner);
 		
 		ArrayList<ProgressDescriptor> descriptorList = receiveManager.getProgressList();
 		assertSame(1, descriptorList.size());
 		
 		ProgressDescriptor descriptor = descriptorList.get(0);		
-		assertSame(1, descriptor.bytesTransferred);				
-		assertSame(100, descriptor.fileSize);	
+		assertEquals(1, descriptor.bytesTransferred);				
+		assertEquals(100, descriptor.fileSize);	
 	}
 	
 	public void testHandleFileChunk()
@@ -210,26 +241,709 @@ public class ReceiveManagerTest extends AndroidTestCase
 		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
 		assertEquals(StatusCode.OK, status);
 		
-		receiveManager.handleFileChunk(file.fileID, 0, 1, new byte[1]);
-		receiveManager.handleFileChunk(file.fileID, 1, 1, new byte[1]);
-		receiveManager.handleFileChunk(file.fileID, 2, 1, new byte[1]);
+		receiveManager.handleFileChunk(file.fileID, 0, 1, new byte[1], file.owner);
+		receiveManager.handleFileChunk(file.fileID, 1, 1, new byte[1], file.owner);
+		receiveManager.handleFileChunk(file.fileID, 2, 1, new byte[1], file.owner);
 		
-		int bytesReceived = receiveManager.getProgressList().get(0).bytesTransferred;
+		long bytesReceived = receiveManager.getProgressList().get(0).bytesTransferred;
 		assertEquals(3, bytesReceived);
 		
 		//ensure out of order chunk added
-		receiveManager.handleFileChunk(file.fileID, 10, 1, new byte[1]);
+		receiveManager.handleFileChunk(file.fileID, 10, 1, new byte[1], file.owner);
 		
 		bytesReceived = receiveManager.getProgressList().get(0).bytesTransferred;
 		assertEquals(4, bytesReceived);
 		
 		//ensure duplicate chunk not added
-		receiveManager.handleFileChunk(file.fileID, 0, 1, new byte[1]);
+		receiveManager.handleFileChunk(file.fileID, 0, 1, new byte[1], file.owner);
 		
 		bytesReceived = receiveManager.getProgressList().get(0).bytesTransferred;
 		assertEquals(4, bytesReceived);
 	}
 	
+	public void testWritePipeline() throws InterruptedException
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		
+		// hold the writer thread in the first write while the remaining chunks queue up
+		CountDownLatch writeGate = new CountDownLatch(1);
+		mockFsa.setWriteGate(writeGate);
+		
+		for (int i = 0; i < 8; i++)
+		{
+			receiveManager.handleFileChunk(file.fileID, i * 10, 10, new byte[10], file.owner);
+		}
+		assertEquals(80, receiveManager.getProgressList().get(0).bytesTransferred);
+		
+		writeGate.countDown();
+		mockFsa.setExpectDelete(false);
+		receiveManager.pauseFile(file.fileID);
+		
+		// the queued chunks are coalesced into one sequential write
+		assertEquals(80, mockFsa.getNumBytesWritten());
+		assertTrue(mockFsa.getNumWrites() <= 2);
+		assertEquals(80, mockFsa.getLastOffset() + mockFsa.getLastLength());
+		
+		// the final chunk completes the transfer
+		final CountDownLatch completed = new CountDownLatch(1);
+		receiveManager.setFileCompletedListener(new FileCompletedListener()
+		{
+			public void fileCompleted(String filename, int statusCode)
+			{
+				if (statusCode == StatusCode.OK)
+				{
+					completed.countDown();
+				}
+			}			
+		});
+		
+		receiveManager.handleFileChunk(file.fileID, 80, 20, new byte[20], file.owner);
+		completed.await();
+		assertEquals(0, receiveManager.getProgressList().size());
+		assertEquals(100, mockFsa.getNumBytesWritten());
+	}
+	
+	public void testOutOfOrderChunks() throws InterruptedException
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		
+		final CountDownLatch completed = new CountDownLatch(1);
+		receiveManager.setFileCompletedListener(new FileCompletedListener()
+		{
+			public void fileCompleted(String filename, int statusCode)
+			{
+				assertEquals(StatusCode.OK, statusCode);
+				completed.countDown();
+			}			
+		});
+		
+		// deliver the chunks in reverse order with duplicates, a chunk past the end of the
+		// file and an overlapping chunk
+		for (int startByte = 90; startByte >= 10; startByte -= 10)
+		{
+			receiveManager.handleFileChunk(file.fileID, startByte, 10, new byte[10], file.owner);
+			receiveManager.handleFileChunk(file.fileID, startByte, 10, new byte[10], file.owner);
+		}
+		receiveManager.handleFileChunk(file.fileID, 95, 10, new byte[10], file.owner);
+		receiveManager.handleFileChunk(file.fileID, 5, 10, new byte[10], file.owner);
+		
+		assertEquals(1, completed.getCount());
+		assertEquals(95, receiveManager.getProgressList().get(0).bytesTransferred);
+		
+		receiveManager.handleFileChunk(file.fileID, 0, 10, new byte[10], file.owner);
+		completed.await();
+		
+		// duplicates and the chunk past the end are not written, the overlapping chunk is
+		assertEquals(0, receiveManager.getProgressList().size());
+		assertEquals(110, mockFsa.getNumBytesWritten());
+	}
+	
+	public void testResumeFromJournal() throws Exception
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		String saveDirectory = getContext().getFilesDir().getAbsolutePath();
+		File journalFile = new File(saveDirectory, "journal.test");
+		File saveFile = new File(saveDirectory, file.filename);
+		journalFile.delete();
+		saveFile.createNewFile();
+		
+		receiveManager.setJournalFile(journalFile);
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, saveDirectory);
+		assertEquals(StatusCode.OK, status);
+		
+		receiveManager.handleFileChunk(file.fileID, 0, 10, new byte[10], file.owner);
+		receiveManager.handleFileChunk(file.fileID, 10, 10, new byte[10], file.owner);
+		receiveManager.handleFileChunk(file.fileID, 50, 10, new byte[10], file.owner);
+		
+		mockFsa.setExpectDelete(false);
+		receiveManager.pauseFile(file.fileID);
+		
+		// a new receive manager resumes the transfer from the journal
+		receiveManager = new ReceiveManager(dispatcher, mockFsa, mockPm);
+		receiveManager.setJournalFile(journalFile);
+		
+		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, saveDirectory);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(30, receiveManager.getProgressList().get(0).bytesTransferred);
+		
+		// only the first missing range is requested
+		Action request = transmitter.getLastAction();
+		assertEquals(20L, request.parameters.get(1));
+		assertEquals(30L, request.parameters.get(2));
+		
+		final CountDownLatch completed = new CountDownLatch(1);
+		receiveManager.setFileCompletedListener(new FileCompletedListener()
+		{
+			public void fileCompleted(String filename, int statusCode)
+			{
+				completed.countDown();
+			}			
+		});
+		
+		for (int startByte = 20; startByte < 100; startByte += 10)
+		{
+			receiveManager.handleFileChunk(file.fileID, startByte, 10, new byte[10], file.owner);
+		}
+		completed.await();
+		
+		// the completed transfer is removed from the journal
+		receiveManager = new ReceiveManager(dispatcher, mockFsa, mockPm);
+		receiveManager.setJournalFile(journalFile);
+		
+		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, saveDirectory);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(0, receiveManager.getProgressList().get(0).bytesTransferred);
+		
+		receiveManager.setJournalFile((File) null);
+		journalFile.delete();
+		saveFile.delete();
+	}
+	
+	public void testLargeFile()
+	{
+		long largeSize = 5368709120L;
+		
+		//a descriptor received from a peer cannot describe a file of 2 GB or more
+		FileDescriptor file = getDummyFileDescriptor("");
+		file.fileID = new byte[20];
+		file.size = -1;
+		mockPm.updateAnnouncedRemoteFiles(new FileDescriptor[] { file }, file.owner);
+		
+		//verify peers without large file support are refused
+		transmitter.setResponse(StatusCode.FILE_TOO_LARGE);
+		
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.FILE_TOO_LARGE, status);
+		assertEquals(ActionType.REQUEST_FILE_SIZE, transmitter.getLastAction().actionType);
+		assertEquals(0, receiveManager.getProgressList().size());
+		
+		//verify the size is requested from the owner and the whole file is requested
+		transmitter.setResponse(StatusCode.OK);
+		transmitter.setFileSize(largeSize);
+		
+		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(largeSize, receiveManager.getProgressList().get(0).fileSize);
+		
+		Action request = transmitter.getLastAction();
+		assertEquals(ActionType.REQUEST_DATA, request.actionType);
+		assertEquals(0L, request.parameters.get(1));
+		assertEquals(largeSize, request.parameters.get(2));
+		
+		//verify chunks beyond 4 GB are written at their offset
+		long startByte = largeSize - 10;
+		receiveManager.handleFileChunk(file.fileID, startByte, 10, new byte[10], file.owner);
+		assertEquals(10, receiveManager.getProgressList().get(0).bytesTransferred);
+		
+		receiveManager.pauseFile(file.fileID);
+		assertEquals(startByte, mockFsa.getLastOffset());
+		assertEquals(10, mockFsa.getLastLength());
+	}
+	
+	public void testSwarmDownload() throws InterruptedException
+	{
+		//the same file is announced by two peers
+		FileDescriptor file = getDummyFileDescriptor("");
+		file.size = 200000;
+		file.fileID = getZeroFileID(file.size);
+		FileDescriptor copy = new FileDescriptor(file);
+		copy.owner = "baz";
+		mockPm.updateAnnouncedRemoteFiles(new FileDescriptor[] { file }, file.owner);
+		mockPm.updateAnnouncedRemoteFiles(new FileDescriptor[] { copy }, copy.owner);
+		
+		final AtomicInteger numCompleted = new AtomicInteger(0);
+		final CountDownLatch completed = new CountDownLatch(1);
+		receiveManager.setFileCompletedListener(new FileCompletedListener()
+		{
+			public void fileCompleted(String filename, int statusCode)
+			{
+				assertEquals(StatusCode.OK, statusCode);
+				numCompleted.incrementAndGet();
+				completed.countDown();
+			}			
+		});
+		
+		int status = receiveManager.requestFileFromSwarm(file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		
+		//verify each peer is asked for a different range
+		ArrayList<Action> requests = transmitter.getActions();
+		assertEquals(2, requests.size());
+		String fastPeer = requests.get(0).peer;
+		String slowPeer = requests.get(1).peer;
+		assertFalse(fastPeer.equals(slowPeer));
+		assertEquals(0L, requests.get(0).parameters.get(1));
+		assertEquals(65536L, requests.get(0).parameters.get(2));
+		assertEquals(65536L, requests.get(1).parameters.get(1));
+		assertEquals(65536L, requests.get(1).parameters.get(2));
+		
+		//verify the peer that finishes first is given the rest of the file
+		receiveRange(file.fileID, 65536, 98304, slowPeer);
+		receiveRange(file.fileID, 0, 65536, fastPeer);
+		
+		ArrayList<Action> nextRequests = dispatcher.getInsertedActions(ActionType.REQUEST_DATA);
+		assertEquals(1, nextRequests.size());
+		assertEquals(fastPeer, nextRequests.get(0).peer);
+		assertEquals(131072L, nextRequests.get(0).parameters.get(1));
+		assertEquals(68928L, nextRequests.get(0).parameters.get(2));
+		
+		//verify the idle peer duplicates the unreceived end of the slow range
+		receiveRange(file.fileID, 131072, 200000, fastPeer);
+		
+		nextRequests = dispatcher.getInsertedActions(ActionType.REQUEST_DATA);
+		assertEquals(2, nextRequests.size());
+		assertEquals(fastPeer, nextRequests.get(1).peer);
+		assertEquals(98304L, nextRequests.get(1).parameters.get(1));
+		assertEquals(32768L, nextRequests.get(1).parameters.get(2));
+		
+		//verify the transfer completes once and every peer is told to stop
+		receiveRange(file.fileID, 98304, 131072, fastPeer);
+		completed.await();
+		receiveRange(file.fileID, 98304, 131072, slowPeer);
+		
+		assertEquals(1, numCompleted.get());
+		assertEquals(200000, mockFsa.getNumBytesWritten());
+		assertEquals(2, dispatcher.getInsertedActions(ActionType.STOP_XFER).size());
+		
+		//verify chunks are acknowledged to the peer that sent them
+		boolean isSlowPeerAcked = false;
+		
+		for (Action ack : dispatcher.getInsertedActions(ActionType.DATA_CHUNK_ACK))
+		{
+			long startByte = (Long) ack.parameters.get(1);
+			boolean isSlowRange = (startByte >= 65536) && (startByte < 98304);
+			assertEquals(isSlowRange ? slowPeer : fastPeer, ack.peer);
+			isSlowPeerAcked |= isSlowRange;
+		}
+		assertTrue(isSlowPeerAcked);
+	}
+	
+	public void testParallelRanges()
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		file.size = 200000;
+		mockPm.updateAnnouncedRemoteFiles(new FileDescriptor[] { file }, file.owner);
+		
+		assertEquals(StatusCode.INVALID, receiveManager.setNumParallelRanges(0));
+		assertEquals(StatusCode.OK, receiveManager.setNumParallelRanges(3));
+		assertEquals(3, receiveManager.getNumParallelRanges());
+		
+		//verify the file is requested from the owner as three ranges
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		
+		ArrayList<Action> requests = transmitter.getActions();
+		assertEquals(3, requests.size());
+		
+		for (int i = 0; i < 3; i++)
+		{
+			assertEquals(file.owner, requests.get(i).peer);
+			assertEquals(i * 65536L, requests.get(i).parameters.get(1));
+			assertEquals(65536L, requests.get(i).parameters.get(2));
+		}
+		
+		//verify the rest of the file is requested once a range has been received
+		receiveRange(file.fileID, 65536, 131072, file.owner);
+		
+		ArrayList<Action> nextRequests = dispatcher.getInsertedActions(ActionType.REQUEST_DATA);
+		assertEquals(1, nextRequests.size());
+		assertEquals(196608L, nextRequests.get(0).parameters.get(1));
+		assertEquals(3392L, nextRequests.get(0).parameters.get(2));
+		
+		//verify a small file is requested as a single range
+		mockPm.updateAnnouncedRemoteFiles(new FileDescriptor[] { getDummyFileDescriptor("") }, file.owner);
+		mockFsa.setExpectDelete(true);
+		receiveManager.cancelFile(file.fileID);
+		
+		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(4, transmitter.getActions().size());
+		assertEquals(100L, transmitter.getLastAction().parameters.get(2));
+	}
+	
+	public void testCompression()
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		
+		assertEquals(StatusCode.INVALID, receiveManager.setCompressionLevel(10));
+		assertEquals(StatusCode.OK, receiveManager.setCompressionLevel(6));
+		assertEquals(6, receiveManager.getCompressionLevel());
+		
+		//verify the request carries the compression level
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(6, transmitter.getLastAction().parameters.get(4));
+		
+		//verify a compressed chunk is received and the bytes on the wire are counted
+		byte[] compressedChunk = ChunkCompressor.compress(new byte[50], 50, 6);
+		assertNotNull(compressedChunk);
+		
+		receiveManager.handleCompressedFileChunk(file.fileID, 0, 50, compressedChunk, file.owner);
+		
+		ProgressDescriptor progress = receiveManager.getProgressList().get(0);
+		assertEquals(50, progress.bytesTransferred);
+		assertEquals(compressedChunk.length, progress.bytesOnWire);
+		
+		//verify a corrupt chunk is dropped
+		receiveManager.handleCompressedFileChunk(file.fileID, 50, 50, new byte[] { 1, 2, 3 }, file.owner);
+		
+		progress = receiveManager.getProgressList().get(0);
+		assertEquals(50, progress.bytesTransferred);
+	}
+	
+	public void testDeltaTransfer() throws Exception
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		file.size = 8192;
+		mockPm.updateAnnouncedRemoteFiles(new FileDescriptor[] { file }, file.owner);
+		
+		File basis = File.createTempFile("basis", null);
+		basis.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(basis);
+		byte[] contents = new byte[8192];
+		
+		for (int i = 0; i < contents.length; i++)
+		{
+			contents[i] = (byte) (i / 2048);
+		}
+		out.write(contents);
+		out.close();
+		
+		//verify the signatures of the older copy are sent to the owner
+		int status = receiveManager.requestFileDelta(file.owner, file.fileID, file.filename, null, basis.getPath());
+		assertEquals(StatusCode.OK, status);
+		
+		Action request = transmitter.getLastAction();
+		assertEquals(ActionType.REQUEST_DELTA, request.actionType);
+		assertEquals(2048, request.parameters.get(1));
+		assertEquals(4, ((int[]) request.parameters.get(2)).length);
+		assertEquals(4 * BlockSignatures.STRONG_HASH_LENGTH, ((byte[]) request.parameters.get(3)).length);
+		
+		//verify matching blocks are copied and only the missing range is requested
+		receiveManager.handleCopyBlocks(file.fileID, new long[] { 0, 4096 }, new int[] { 0, 2 }, 
+				new int[] { 1, 2 }, file.owner);
+		
+		ProgressDescriptor progress = receiveManager.getProgressList().get(0);
+		assertEquals(6144, progress.bytesTransferred);
+		assertEquals(0, progress.bytesOnWire);
+		
+		ArrayList<Action> nextRequests = dispatcher.getInsertedActions(ActionType.REQUEST_DATA);
+		assertEquals(1, nextRequests.size());
+		assertEquals(2048L, nextRequests.get(0).parameters.get(1));
+		assertEquals(2048L, nextRequests.get(0).parameters.get(2));
+		
+		//verify a repeated reply is ignored
+		receiveManager.handleCopyBlocks(file.fileID, new long[] { 2048 }, new int[] { 1 }, new int[] { 1 }, 
+				file.owner);
+		assertEquals(6144, receiveManager.getProgressList().get(0).bytesTransferred);
+		assertEquals(1, dispatcher.getInsertedActions(ActionType.REQUEST_DATA).size());
+		
+		receiveManager.pauseFile(file.fileID);
+		assertEquals(6144, mockFsa.getNumBytesWritten());
+	}
+	
+	public void testBlockVerification() throws InterruptedException
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		
+		receiveManager.setBlockVerification(true);
+		assertTrue(receiveManager.isBlockVerification());
+		transmitter.setBlockHashes(BlockHashes.hash(new byte[100], 0, 100));
+		
+		//verify the block hashes are requested before the file
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(ActionType.REQUEST_BLOCK_HASHES, transmitter.getActions().get(0).actionType);
+		assertEquals(ActionType.REQUEST_DATA, transmitter.getLastAction().actionType);
+		
+		//verify a corrupt block is dropped and requested again
+		byte[] corruptChunk = new byte[100];
+		corruptChunk[50] = 1;
+		receiveManager.handleFileChunk(file.fileID, 0, 100, corruptChunk, file.owner);
+		
+		mockFsa.setExpectDelete(false);
+		receiveManager.pauseFile(file.fileID);
+		assertEquals(0, receiveManager.getProgressList().get(0).bytesTransferred);
+		
+		ArrayList<Action> nextRequests = dispatcher.getInsertedActions(ActionType.REQUEST_DATA);
+		assertEquals(1, nextRequests.size());
+		assertEquals(0L, nextRequests.get(0).parameters.get(1));
+		assertEquals(100L, nextRequests.get(0).parameters.get(2));
+		
+		//verify the valid block completes the transfer
+		final CountDownLatch completed = new CountDownLatch(1);
+		receiveManager.setFileCompletedListener(new FileCompletedListener()
+		{
+			public void fileCompleted(String filename, int statusCode)
+			{
+				if (statusCode == StatusCode.OK)
+				{
+					completed.countDown();
+				}
+			}			
+		});
+		
+		receiveManager.handleFileChunk(file.fileID, 0, 100, new byte[100], file.owner);
+		completed.await();
+		assertEquals(0, receiveManager.getProgressList().size());
+	}
+	
+	public void testFileIdMismatch() throws InterruptedException
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		file.fileID = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20 };
+		mockPm.updateAnnouncedRemoteFiles(new FileDescriptor[] { file }, file.owner);
+		
+		final AtomicInteger completedStatus = new AtomicInteger(-1);
+		final CountDownLatch completed = new CountDownLatch(1);
+		receiveManager.setFileCompletedListener(new FileCompletedListener()
+		{
+			public void fileCompleted(String filename, int statusCode)
+			{
+				completedStatus.set(statusCode);
+				completed.countDown();
+			}			
+		});
+		
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		
+		//verify a file whose contents do not match its file ID is reported, also when the end of
+		//the file is written first and read back to be digested
+		receiveManager.handleFileChunk(file.fileID, 50, 50, new byte[50], file.owner);
+		receiveManager.handleFileChunk(file.fileID, 0, 50, new byte[50], file.owner);
+		completed.await();
+		
+		assertEquals(StatusCode.FILE_ID_MISMATCH, completedStatus.get());
+		assertEquals(0, receiveManager.getProgressList().size());
+	}
+	
+	public void testBundle()
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		FileDescriptor emptyFile = getDummyFileDescriptor("");
+		emptyFile.filename = "empty";
+		emptyFile.fileID = getZeroFileID(0);
+		emptyFile.size = 0;
+		FileDescriptor removedFile = getDummyFileDescriptor("");
+		removedFile.filename = "removed";
+		removedFile.fileID = getZeroFileID(10);
+		removedFile.size = 10;
+		mockPm.updateAnnouncedRemoteFiles(new FileDescriptor[] { file, emptyFile, removedFile }, file.owner);
+		
+		final ArrayList<String> completedFiles = new ArrayList<String>();
+		receiveManager.setFileCompletedListener(new FileCompletedListener()
+		{
+			public void fileCompleted(String filename, int statusCode)
+			{
+				completedFiles.add(filename + ":" + statusCode);
+			}			
+		});
+		
+		ArrayList<byte[]> fileIDs = new ArrayList<byte[]>();
+		fileIDs.add(file.fileID);
+		fileIDs.add(emptyFile.fileID);
+		fileIDs.add(removedFile.fileID);
+		
+		int status = receiveManager.requestBundle(file.owner, fileIDs, null);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(ActionType.REQUEST_BUNDLE, transmitter.getLastAction().actionType);
+		byte[] bundleID = (byte[]) transmitter.getLastAction().parameters.get(0);
+		assertEquals(60, ((byte[]) transmitter.getLastAction().parameters.get(1)).length);
+		
+		//send the bundle in chunks that split the headers
+		byte[] stream = new byte[BundleFrame.HEADER_LENGTH * 3 + 100];
+		System.arraycopy(BundleFrame.writeHeader(file.fileID, 100), 0, stream, 0, BundleFrame.HEADER_LENGTH);
+		System.arraycopy(BundleFrame.writeHeader(emptyFile.fileID, 0), 0, stream, 
+				BundleFrame.HEADER_LENGTH + 100, BundleFrame.HEADER_LENGTH);
+		System.arraycopy(BundleFrame.writeHeader(removedFile.fileID, BundleFrame.UNAVAILABLE), 0, stream, 
+				BundleFrame.HEADER_LENGTH * 2 + 100, BundleFrame.HEADER_LENGTH);
+		
+		for (int offset = 0; offset < stream.length; offset += 30)
+		{
+			receiveManager.handleBundleChunk(bundleID, offset, 
+					Arrays.copyOfRange(stream, offset, Math.min(offset + 30, stream.length)), file.owner);
+		}
+		
+		assertEquals(3, completedFiles.size());
+		assertEquals("foo:" + StatusCode.OK, completedFiles.get(0));
+		assertEquals("empty:" + StatusCode.OK, completedFiles.get(1));
+		assertEquals("removed:" + StatusCode.BAD_FILE_ID, completedFiles.get(2));
+		assertEquals(100, mockFsa.getNumBytesWritten());
+		
+		//ensure owners without bundle support are sent a request for each file
+		transmitter.setResponse(StatusCode.REQUEST_DENIED);
+		status = receiveManager.requestBundle(file.owner, fileIDs, null);
+		assertEquals(StatusCode.REQUEST_DENIED, status);
+		assertEquals(ActionType.REQUEST_DATA, transmitter.getLastAction().actionType);
+		assertEquals(5, transmitter.getActions().size());
+		
+		//ensure invalid requests properly handled
+		assertEquals(StatusCode.INVALID, receiveManager.requestBundle(file.owner, new ArrayList<byte[]>(), null));
+		fileIDs.add(new byte[20]);
+		assertEquals(StatusCode.BAD_FILE_ID, receiveManager.requestBundle(file.owner, fileIDs, null));
+	}
+	
+	public void testInlineContent()
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		
+		final AtomicInteger completedStatus = new AtomicInteger(-1);
+		receiveManager.setFileCompletedListener(new FileCompletedListener()
+		{
+			public void fileCompleted(String filename, int statusCode)
+			{
+				completedStatus.set(statusCode);
+			}			
+		});
+		
+		//ensure inline contents are declined until a large enough threshold is set
+		assertEquals(StatusCode.INVALID, receiveManager.setInlineThreshold(-1));
+		assertEquals(StatusCode.REQUEST_DENIED, receiveManager.handleInlineContent(file.fileID, new byte[100], 
+				file.owner));
+		assertEquals(StatusCode.OK, receiveManager.setInlineThreshold(100));
+		assertEquals(100, receiveManager.getInlineThreshold());
+		
+		//ensure contents that do not match the file ID are declined
+		byte[] content = new byte[100];
+		content[0] = 1;
+		assertEquals(StatusCode.INVALID, receiveManager.handleInlineContent(file.fileID, content, file.owner));
+		
+		//verify the file is saved from its inline contents without a request
+		assertEquals(StatusCode.OK, receiveManager.handleInlineContent(file.fileID, new byte[100], file.owner));
+		
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(StatusCode.OK, completedStatus.get());
+		assertEquals(100, mockFsa.getNumBytesWritten());
+		assertEquals(0, transmitter.getActions().size());
+		assertEquals(0, receiveManager.getProgressList().size());
+		
+		//verify the contents are used only once
+		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(ActionType.REQUEST_DATA, transmitter.getLastAction().actionType);
+	}
+	
+	public void testWriteFailure() throws InterruptedException
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		
+		final ArrayList<Integer> completedStatuses = new ArrayList<Integer>();
+		final CountDownLatch completed = new CountDownLatch(1);
+		receiveManager.setFileCompletedListener(new FileCompletedListener()
+		{
+			public void fileCompleted(String filename, int statusCode)
+			{
+				synchronized(completedStatuses)
+				{
+					completedStatuses.add(statusCode);
+				}
+				completed.countDown();
+			}			
+		});
+		
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		
+		//verify a run that cannot be written is not acknowledged and fails the transfer
+		mockFsa.setWriteFailing(true);
+		receiveManager.handleFileChunk(file.fileID, 0, 50, new byte[50], file.owner);
+		completed.await();
+		
+		assertEquals(StatusCode.BAD_FILE_PATH, (int) completedStatuses.get(0));
+		assertEquals(0, dispatcher.getInsertedActions(ActionType.DATA_CHUNK_ACK).size());
+		assertEquals(1, dispatcher.getInsertedActions(ActionType.STOP_XFER).size());
+		assertEquals(0, receiveManager.getProgressList().size());
+		
+		//verify a bundle file that cannot be written fails and the bundle is stopped
+		completedStatuses.clear();
+		ArrayList<byte[]> fileIDs = new ArrayList<byte[]>();
+		fileIDs.add(file.fileID);
+		fileIDs.add(file.fileID);
+		
+		status = receiveManager.requestBundle(file.owner, fileIDs, null);
+		assertEquals(StatusCode.OK, status);
+		byte[] bundleID = (byte[]) transmitter.getLastAction().parameters.get(0);
+		
+		byte[] stream = new byte[BundleFrame.HEADER_LENGTH + 100];
+		System.arraycopy(BundleFrame.writeHeader(file.fileID, 100), 0, stream, 0, BundleFrame.HEADER_LENGTH);
+		receiveManager.handleBundleChunk(bundleID, 0, stream, file.owner);
+		
+		assertEquals(2, completedStatuses.size());
+		assertEquals(StatusCode.BAD_FILE_PATH, (int) completedStatuses.get(0));
+		assertEquals(StatusCode.INVALID, (int) completedStatuses.get(1));
+		assertEquals(2, dispatcher.getInsertedActions(ActionType.STOP_XFER).size());
+		
+		//verify inline contents that cannot be saved are reported
+		assertEquals(StatusCode.OK, receiveManager.setInlineThreshold(100));
+		assertEquals(StatusCode.OK, receiveManager.handleInlineContent(file.fileID, new byte[100], file.owner));
+		
+		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.BAD_FILE_PATH, status);
+		assertEquals(0, mockFsa.getNumBytesWritten());
+	}
+	
+	public void testPreallocation()
+	{
+		FileDescriptor file = getDummyFileDescriptor("");
+		
+		//verify a file that does not fit fails before anything is requested
+		mockFsa.setUsableSpace(file.size - 1);
+		
+		int status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.INSUFFICIENT_SPACE, status);
+		assertEquals(0, transmitter.getActions().size());
+		assertEquals(0, receiveManager.getProgressList().size());
+		assertEquals(0, mockFsa.getPreallocatedLength());
+		
+		//verify inline contents that do not fit are not saved
+		assertEquals(StatusCode.OK, receiveManager.setInlineThreshold(100));
+		assertEquals(StatusCode.OK, receiveManager.handleInlineContent(file.fileID, new byte[100], file.owner));
+		
+		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.INSUFFICIENT_SPACE, status);
+		assertEquals(0, mockFsa.getNumBytesWritten());
+		
+		//verify a bundle whose files do not fit together fails before it is requested
+		mockFsa.setUsableSpace(file.size);
+		ArrayList<byte[]> fileIDs = new ArrayList<byte[]>();
+		fileIDs.add(file.fileID);
+		fileIDs.add(file.fileID);
+		
+		status = receiveManager.requestBundle(file.owner, fileIDs, null);
+		assertEquals(StatusCode.INSUFFICIENT_SPACE, status);
+		assertEquals(0, transmitter.getActions().size());
+		
+		//verify the file is preallocated to its full size when enabled
+		mockFsa.setUsableSpace(file.size);
+		assertFalse(receiveManager.isPreallocation());
+		receiveManager.setPreallocation(true);
+		assertTrue(receiveManager.isPreallocation());
+		
+		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(file.size, mockFsa.getPreallocatedLength());
+		assertEquals(ActionType.REQUEST_DATA, transmitter.getLastAction().actionType);
+		
+		//verify a preallocated file is deleted if the transfer cannot be requested
+		mockFsa.setExpectDelete(true);
+		receiveManager.cancelFile(file.fileID);
+		int numDeletes = mockFsa.getNumDeletes();
+		transmitter.setResponse(StatusCode.FILE_NOT_BEING_TRANSFERRED);
+		
+		status = receiveManager.requestFile(file.owner, file.fileID, file.filename, null);
+		assertEquals(StatusCode.FILE_NOT_BEING_TRANSFERRED, status);
+		assertEquals(numDeletes + 1, mockFsa.getNumDeletes());
+		assertEquals(0, receiveManager.getProgressList().size());
+	}
+	
 	public void testDataXferCancelled()
 	{
 		final FileDescriptor file = getDummyFileDescriptor("");
@@ -303,10 +1017,34 @@ public class ReceiveManagerTest extends AndroidTestCase
 		assertEquals(StatusCode.BAD_FILE_ID, status);
 	}
 	
+	private void receiveRange(byte[] fileID, long startByte, long endByte, String peer)
+	{
+		for (long offset = startByte; offset < endByte; offset += 8192)
+		{
+			int length = (int) Math.min(8192, endByte - offset);
+			receiveManager.handleFileChunk(fileID, offset, length, new byte[length], peer);
+		}
+	}
+	
+	private byte[] getZeroFileID(long size)
+	{
+		try
+		{
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			sha1.update(new byte[(int) size]);
+			return sha1.digest();
+		}
+		catch (Exception e)
+		{
+			fail(e.toString());
+			return null;
+		}
+	}
+	
 	private FileDescriptor getDummyFileDescriptor(String relativePath)
 	{
 		FileDescriptor descriptor = new FileDescriptor();
-		descriptor.fileID = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20 };
+		descriptor.fileID = getZeroFileID(100);
 		descriptor.filename = "foo";
 		descriptor.owner = "bar";
 		descriptor.relativePath = relativePath;
@@ -318,15 +1056,45 @@ public class ReceiveManagerTest extends AndroidTestCase
 	
 	private class MockDispatcher extends Dispatcher
 	{
+		private ArrayList<Action> insertedActions = new ArrayList<Action>();
+		
 		public MockDispatcher(Transmitter transmitter)
 		{
 			super(transmitter);
 		}		
+		
+		public synchronized ArrayList<Action> getInsertedActions(ActionType actionType)
+		{
+			ArrayList<Action> actions = new ArrayList<Action>();
+			
+			for (Action action : insertedActions)
+			{
+				if (action.actionType == actionType)
+				{
+					actions.add(action);
+				}
+			}
+			return actions;
+		}
+		
+		@Override
+		public void insertAction(Action action)
+		{
+			synchronized(this)
+			{
+				insertedActions.add(action);
+			}
+			super.insertAction(action);
+		}
 	}
 	
 	private class MockTransmitter extends Transmitter
 	{
 		private int nextResponse;
+		private long fileSize;
+		private byte[] blockHashes = new byte[0];
+		private Action lastAction;
+		private ArrayList<Action> actions = new ArrayList<Action>();
 		
 		public MockTransmitter()
 		{
@@ -338,9 +1106,40 @@ public class ReceiveManagerTest extends AndroidTestCase
 			nextResponse = statusCode;
 		}
 		
+		public void setFileSize(long size)
+		{
+			fileSize = size;
+		}
+		
+		public void setBlockHashes(byte[] hashes)
+		{
+			blockHashes = hashes;
+		}
+		
+		public Action getLastAction()
+		{
+			return lastAction;
+		}
+		
+		public ArrayList<Action> getActions()
+		{
+			return actions;
+		}
+		
 		@Override
 		public int transmit(Action action)
 		{
+			lastAction = action;
+			actions.add(action);
+			
+			if ((action.actionType == ActionType.REQUEST_FILE_SIZE) && (nextResponse == StatusCode.OK))
+			{
+				action.parameters.add(fileSize);
+			}
+			else if ((action.actionType == ActionType.REQUEST_BLOCK_HASHES) && (nextResponse == StatusCode.OK))
+			{
+				action.parameters.add(blockHashes);
+			}
 			return nextResponse;
 		}
 	}
@@ -349,6 +1148,17 @@ public class ReceiveManagerTest extends AndroidTestCase
 	{
 		private String expectedPath;	
 		private boolean expectDelete;
+		private String lastPath;
+		private long lastOffset;
+		private int lastLength;
+		private int numWrites;
+		private int numBytesWritten;
+		private CountDownLatch writeGate;
+		private HashSet<String> writtenPaths = new HashSet<String>();
+		private long usableSpace = Long.MAX_VALUE;
+		private long preallocatedLength;
+		private boolean isWriteFailing;
+		private int numDeletes;
 		
 		@Override
 		public boolean isValid(String dir)
@@ -370,23 +1180,133 @@ public class ReceiveManagerTest extends AndroidTestCase
 			expectDelete = bool;
 		}
 		
+		public void setWriteGate(CountDownLatch gate)
+		{
+			writeGate = gate;
+		}
+		
+		public synchronized String getLastPath()
+		{
+			return lastPath;
+		}
+		
+		public synchronized long getLastOffset()
+		{
+			return lastOffset;
+		}
+		
+		public synchronized int getLastLength()
+		{
+			return lastLength;
+		}
+		
+		public synchronized int getNumWrites()
+		{
+			return numWrites;
+		}
+		
+		public synchronized int getNumBytesWritten()
+		{
+			return numBytesWritten;
+		}
+		
+		public synchronized int getNumDeletes()
+		{
+			return numDeletes;
+		}
+		
+		public synchronized void setWriteFailing(boolean isFailing)
+		{
+			isWriteFailing = isFailing;
+		}
+		
+		public synchronized void setUsableSpace(long space)
+		{
+			usableSpace = space;
+		}
+		
+		public synchronized long getPreallocatedLength()
+		{
+			return preallocatedLength;
+		}
+		
 		@Override()
-		public int addChunk(String path, byte[] chunk, int startOffset, int length) 
+		public synchronized boolean hasSpace(String path, long length)
+		{
+			return length <= usableSpace;
+		}
+		
+		@Override()
+		public synchronized int preallocate(String path, long length)
 		{
 			if (expectedPath != null)
 			{
 				assertEquals(expectedPath, path);
 			}
+			preallocatedLength = length;
 			return StatusCode.OK;
 		}
 		
 		@Override()
-		public int delete(String path)
+		public int addChunk(String path, byte[] chunk, long startOffset, int length) 
+		{
+			if (writeGate != null)
+			{
+				try
+				{
+					writeGate.await();
+				}
+				catch (InterruptedException e)
+				{
+					fail(e.toString());
+				}
+			}
+			
+			synchronized(this)
+			{
+				if (isWriteFailing)
+				{
+					return 0;
+				}
+				
+				if (expectedPath != null)
+				{
+					assertEquals(expectedPath, path);
+				}
+				lastPath = path;
+				lastOffset = startOffset;
+				lastLength = length;
+				numWrites++;
+				numBytesWritten += length;
+				writtenPaths.add(path);
+			}
+			return 1;
+		}
+		
+		@Override()
+		public int getChunk(String path, byte[] chunk, long startOffset, int length) throws IOException
+		{
+			synchronized(this)
+			{
+				if (!writtenPaths.contains(path))
+				{
+					return super.getChunk(path, chunk, startOffset, length);
+				}
+			}
+			
+			//the tests only write zeros
+			Arrays.fill(chunk, 0, length, (byte) 0);
+			return length;
+		}
+		
+		@Override()
+		public synchronized int delete(String path)
 		{
 			if (expectDelete == false)
 			{
 				fail("file deleted unexpectedly");
 			}
+			numDeletes++;
 			return StatusCode.OK;
 		}
 	}
@@ -309,7 +309,8 @@ public class ReceiverTest extends AndroidTestCase
 		}
 		
 		@Override
-		public int sendFile(byte[] fileId, int startByte, int length, String peer, int maxChunkLength)
+		public int sendFile(byte[] fileId, long startByte, long length, String peer, int maxChunkLength,
+				int compressionLevel)
 		{
 			listener.messageReceived();
 			return 0;
@@ -333,7 +334,7 @@ public class ReceiverTest extends AndroidTestCase
 		}		
 		
 		@Override
-		public void handleFileChunk(byte[] fileId, int startByte, int chunkLength, byte[] chunk)
+		public void handleFileChunk(byte[] fileId, long startByte, int chunkLength, byte[] chunk, String peer)
 		{
 			listener.messageReceived();			
 		}
@@ -17,15 +17,21 @@
 package org.alljoyn.cops.filetransfer.test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import org.alljoyn.cops.filetransfer.ChunkSizeTuner;
 import org.alljoyn.cops.filetransfer.Dispatcher;
 import org.alljoyn.cops.filetransfer.FileSystemAbstraction;
 import org.alljoyn.cops.filetransfer.SendManager;
 import org.alljoyn.cops.filetransfer.PermissionsManager;
 import org.alljoyn.cops.filetransfer.Transmitter;
 import org.alljoyn.cops.filetransfer.data.Action;
+import org.alljoyn.cops.filetransfer.data.Action.ActionType;
 import org.alljoyn.cops.filetransfer.data.FileDescriptor;
 import org.alljoyn.cops.filetransfer.data.ProgressDescriptor;
 import org.alljoyn.cops.filetransfer.data.StatusCode;
+import org.alljoyn.cops.filetransfer.utility.BlockSignatures;
+import org.alljoyn.cops.filetransfer.utility.BundleFrame;
 
 import android.test.AndroidTestCase;
 
@@ -48,6 +54,8 @@ public class SendManagerTest extends AndroidTestCase
 		mockPermissionsManager.addAnnouncedLocalFiles(new FileDescriptor[] { file });
 		
 		sendManager = new SendManager(mockDispatcher, mockFSA, mockPermissionsManager);
+		sendManager.setWindowSize(1);
+		sendManager.setPrefetchDepth(0);
 		mockDispatcher.setSendManagerListener(sendManager);		
 	}
 	
@@ -72,17 +80,176 @@ public class SendManagerTest extends AndroidTestCase
 		ProgressDescriptor progress = sendManager.getProgressList().get(0);
 		assertEquals(50, progress.bytesTransferred);
 		
-		sendManager.dataSent();
+		sendManager.dataSent(descriptor.fileID, 0, descriptor.owner);
 		
 		progress = sendManager.getProgressList().get(0);
 		assertEquals(100, progress.bytesTransferred);
 		
-		sendManager.dataSent();
+		sendManager.dataSent(descriptor.fileID, 50, descriptor.owner);
 		
 		ArrayList<ProgressDescriptor> progressList = sendManager.getProgressList();
 		assertEquals(0, progressList.size());
 	}
 	
+	public void testDataChunkAck()
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		
+		int status = sendManager.setWindowSize(0);
+		assertEquals(StatusCode.INVALID, status);
+		
+		status = sendManager.setWindowSize(2);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(2, sendManager.getWindowSize());
+		
+		status = sendManager.handleFileRequest(descriptor.fileID, 0, 150, descriptor.owner, 25);
+		assertEquals(StatusCode.OK, status);
+		
+		//verify window is filled
+		ProgressDescriptor progress = sendManager.getProgressList().get(0);
+		assertEquals(50, progress.bytesTransferred);
+		
+		//verify window does not slide on transmit once receiver acknowledges chunks
+		sendManager.handleDataChunkAck(descriptor.fileID, 0, 25, descriptor.owner);
+		
+		progress = sendManager.getProgressList().get(0);
+		assertEquals(75, progress.bytesTransferred);
+		
+		sendManager.dataSent(descriptor.fileID, 0, descriptor.owner);
+		
+		progress = sendManager.getProgressList().get(0);
+		assertEquals(75, progress.bytesTransferred);
+		
+		//verify acknowledgements from other peers are ignored
+		sendManager.handleDataChunkAck(descriptor.fileID, 25, 25, "baz");
+		
+		progress = sendManager.getProgressList().get(0);
+		assertEquals(75, progress.bytesTransferred);
+		
+		sendManager.handleDataChunkAck(descriptor.fileID, 25, 25, descriptor.owner);
+		
+		progress = sendManager.getProgressList().get(0);
+		assertEquals(100, progress.bytesTransferred);
+	}
+	
+	public void testFairScheduling()
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		String otherPeer = "baz";
+		
+		sendManager.setWindowSize(4);
+		
+		//first transfer fills every dispatcher slot
+		int status = sendManager.handleFileRequest(descriptor.fileID, 0, 5000, descriptor.owner, 1000);
+		assertEquals(StatusCode.OK, status);
+		
+		status = sendManager.handleFileRequest(descriptor.fileID, 0, 5000, otherPeer, 1000);
+		assertEquals(StatusCode.OK, status);
+		
+		ArrayList<ProgressDescriptor> progressList = sendManager.getProgressList();
+		assertEquals(2, progressList.size());
+		assertEquals(4000, progressList.get(0).bytesTransferred);
+		assertEquals(0, progressList.get(1).bytesTransferred);
+		
+		//verify freed slots alternate between peers
+		sendManager.dataSent(descriptor.fileID, 0, descriptor.owner);
+		
+		progressList = sendManager.getProgressList();
+		assertEquals(4000, progressList.get(0).bytesTransferred);
+		assertEquals(1000, progressList.get(1).bytesTransferred);
+		
+		sendManager.dataSent(descriptor.fileID, 1000, descriptor.owner);
+		
+		progressList = sendManager.getProgressList();
+		assertEquals(1, progressList.size());
+		assertEquals(1000, progressList.get(0).bytesTransferred);
+		
+		sendManager.dataSent(descriptor.fileID, 2000, descriptor.owner);
+		
+		progressList = sendManager.getProgressList();
+		assertEquals(2000, progressList.get(0).bytesTransferred);
+		
+		//verify stopping a transfer purges its queued chunks and frees their slots
+		sendManager.handleStopDataXfer(descriptor.fileID, otherPeer);
+		
+		progressList = sendManager.getProgressList();
+		assertEquals(0, progressList.size());
+		
+		status = sendManager.handleFileRequest(descriptor.fileID, 0, 5000, otherPeer, 1000);
+		assertEquals(StatusCode.OK, status);
+		
+		//two slots are still held by the chunks of the first transfer
+		progressList = sendManager.getProgressList();
+		assertEquals(2000, progressList.get(0).bytesTransferred);
+	}
+	
+	public void testQueueBudget()
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		
+		sendManager.setWindowSize(4);
+		mockDispatcher.setMaxQueuedBytes(2500);
+		
+		//verify chunks are deferred once the queued chunks use up the budget
+		int status = sendManager.handleFileRequest(descriptor.fileID, 0, 5000, descriptor.owner, 1000);
+		assertEquals(StatusCode.OK, status);
+		
+		ProgressDescriptor progress = sendManager.getProgressList().get(0);
+		assertEquals(2000, progress.bytesTransferred);
+		assertEquals(2000, mockDispatcher.getQueuedBytes());
+		
+		//verify the transfer resumes once a queued chunk releases its bytes
+		mockDispatcher.removeActions(descriptor.fileID, descriptor.owner, 0, 1000);
+		sendManager.dataSent(descriptor.fileID, 0, descriptor.owner);
+		
+		progress = sendManager.getProgressList().get(0);
+		assertEquals(3000, progress.bytesTransferred);
+		assertEquals(2000, mockDispatcher.getQueuedBytes());
+		assertEquals(2000, mockDispatcher.getQueuedBytesHighWater());
+	}
+	
+	public void testPrefetch() throws InterruptedException
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		
+		assertEquals(StatusCode.INVALID, sendManager.setPrefetchDepth(-1));
+		assertEquals(StatusCode.INVALID, sendManager.setPrefetchMemoryLimit(0));
+		assertEquals(StatusCode.OK, sendManager.setPrefetchMemoryLimit(60));
+		assertEquals(StatusCode.OK, sendManager.setPrefetchDepth(2));
+		assertEquals(2, sendManager.getPrefetchDepth());
+		
+		int status = sendManager.handleFileRequest(descriptor.fileID, 0, 101, descriptor.owner, 50);
+		assertEquals(StatusCode.OK, status);
+		
+		//verify chunks are queued as they are read ahead
+		assertTrue(waitForBytesTransferred(50));
+		
+		sendManager.dataSent(descriptor.fileID, 0, descriptor.owner);
+		assertTrue(waitForBytesTransferred(100));
+		
+		sendManager.dataSent(descriptor.fileID, 50, descriptor.owner);
+		assertTrue(waitForBytesTransferred(-1));
+		
+		//verify each chunk was read from disk exactly once
+		assertEquals(3, mockFSA.getNumChunksRead());
+	}
+	
+	private boolean waitForBytesTransferred(int bytesTransferred) throws InterruptedException
+	{
+		for (int i = 0; i < 50; i++)
+		{
+			ArrayList<ProgressDescriptor> progressList = sendManager.getProgressList();
+			
+			if ((progressList.isEmpty() && (bytesTransferred < 0)) 
+					|| (!progressList.isEmpty() && (progressList.get(0).bytesTransferred == bytesTransferred)))
+			{
+				return true;
+			}
+			Thread.sleep(20);
+		}
+		return false;
+	}
+	
 	public void testGetProgressList()
 	{
 		//test progress list starts empty
@@ -139,6 +306,321 @@ public class SendManagerTest extends AndroidTestCase
 		assertEquals(1, progressList.size());
 	}
 	
+	public void testShortRead()
+	{
+		FileDescriptor file = getDummyFileDescriptor();
+		mockFSA.setFileLength(75);
+		
+		int status = sendManager.handleFileRequest(file.fileID, 0, 100, file.owner, 50);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(ActionType.DATA_CHUNK, mockDispatcher.getLastInsertedAction().actionType);
+		
+		//verify the transfer is aborted instead of sending a partially read chunk
+		sendManager.dataSent(file.fileID, 0, file.owner);
+		
+		assertEquals(ActionType.XFER_CANCELLED, mockDispatcher.getLastInsertedAction().actionType);
+		assertEquals(0, sendManager.getProgressList().size());
+	}
+	
+	public void testBandwidthLimit() throws InterruptedException
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		mockDispatcher.getBandwidthLimiter().setLimits(0, 0, 1000);
+		
+		int status = sendManager.handleFileRequest(descriptor.fileID, 0, 100, descriptor.owner, 50);
+		assertEquals(StatusCode.OK, status);
+		assertEquals(50, sendManager.getProgressList().get(0).bytesTransferred);
+		
+		//verify the transfer is passed over while it is over its limit
+		sendManager.dataSent(descriptor.fileID, 0, descriptor.owner);
+		assertEquals(50, sendManager.getProgressList().get(0).bytesTransferred);
+		
+		//verify the transfer is scheduled again once the limit allows it
+		Thread.sleep(300);
+		assertEquals(0, sendManager.getProgressList().size());
+	}
+	
+	public void testParallelRanges()
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		
+		//verify two ranges of the same file to the same peer are served as separate transfers
+		int status = sendManager.handleFileRequest(descriptor.fileID, 0, 150, descriptor.owner, 50);
+		assertEquals(StatusCode.OK, status);
+		
+		status = sendManager.handleFileRequest(descriptor.fileID, 150, 150, descriptor.owner, 50);
+		assertEquals(StatusCode.OK, status);
+		
+		ArrayList<ProgressDescriptor> progressList = sendManager.getProgressList();
+		assertEquals(2, progressList.size());
+		assertEquals(50, progressList.get(0).bytesTransferred);
+		assertEquals(50, progressList.get(1).bytesTransferred);
+		
+		//verify acknowledgements and sent chunks only slide the window of their own range
+		sendManager.handleDataChunkAck(descriptor.fileID, 150, 50, descriptor.owner);
+		
+		progressList = sendManager.getProgressList();
+		assertEquals(50, progressList.get(0).bytesTransferred);
+		assertEquals(100, progressList.get(1).bytesTransferred);
+		
+		sendManager.dataSent(descriptor.fileID, 0, descriptor.owner);
+		
+		progressList = sendManager.getProgressList();
+		assertEquals(100, progressList.get(0).bytesTransferred);
+		assertEquals(100, progressList.get(1).bytesTransferred);
+		
+		//verify a request overlapping a range replaces only that range
+		status = sendManager.handleFileRequest(descriptor.fileID, 100, 50, descriptor.owner, 50);
+		assertEquals(StatusCode.OK, status);
+		
+		progressList = sendManager.getProgressList();
+		assertEquals(1, progressList.size());
+		assertEquals(100, progressList.get(0).bytesTransferred);
+	}
+	
+	public void testLargeFile()
+	{
+		long largeSize = 5368709120L;
+		
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		descriptor.fileID = new byte[20];
+		descriptor.setSize(largeSize);
+		mockPermissionsManager.addAnnouncedLocalFiles(new FileDescriptor[] { descriptor });
+		
+		//verify the size of the file can be requested
+		assertEquals(largeSize, sendManager.getFileSize(descriptor.fileID));
+		assertEquals(-1, sendManager.getFileSize(new byte[] { 1 }));
+		
+		//verify a range beyond 4 GB is sent and acknowledged
+		long startByte = largeSize - 150;
+		
+		int status = sendManager.handleFileRequest(descriptor.fileID, startByte, 150, descriptor.owner, 50);
+		assertEquals(StatusCode.OK, status);
+		
+		ProgressDescriptor progress = sendManager.getProgressList().get(0);
+		assertEquals(50, progress.bytesTransferred);
+		
+		sendManager.handleDataChunkAck(descriptor.fileID, startByte, 50, descriptor.owner);
+		
+		progress = sendManager.getProgressList().get(0);
+		assertEquals(100, progress.bytesTransferred);
+	}
+	
+	public void testCompression()
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		
+		//verify compressible chunks are sent compressed when compression is requested
+		int status = sendManager.handleFileRequest(descriptor.fileID, 0, 100, descriptor.owner, 50, 6);
+		assertEquals(StatusCode.OK, status);
+		
+		Action action = mockDispatcher.getLastInsertedAction();
+		assertEquals(Boolean.TRUE, action.parameters.get(4));
+		assertEquals(50, action.parameters.get(2));
+		assertTrue(((byte[]) action.parameters.get(3)).length < 50);
+		
+		ProgressDescriptor progress = sendManager.getProgressList().get(0);
+		assertEquals(50, progress.bytesTransferred);
+		assertEquals(((byte[]) action.parameters.get(3)).length, progress.bytesOnWire);
+		
+		//verify files that are already compressed are sent uncompressed
+		FileDescriptor archive = getDummyFileDescriptor();
+		archive.fileID = new byte[20];
+		archive.filename = "foo.zip";
+		mockPermissionsManager.addAnnouncedLocalFiles(new FileDescriptor[] { archive });
+		
+		status = sendManager.handleFileRequest(archive.fileID, 0, 100, archive.owner, 50, 6);
+		assertEquals(StatusCode.OK, status);
+		
+		action = mockDispatcher.getLastInsertedAction();
+		assertEquals(Boolean.FALSE, action.parameters.get(4));
+		assertEquals(50, ((byte[]) action.parameters.get(3)).length);
+	}
+	
+	public void testDeltaTransfer() throws InterruptedException
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		
+		BlockSignatures signatures = new BlockSignatures(25, 2);
+		signatures.setBlock(0, new byte[25], 0);
+		signatures.setBlock(1, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 
+				20, 21, 22, 23, 24, 25 }, 0);
+		
+		//verify invalid signatures are refused
+		int status = sendManager.sendDelta(new byte[20], 25, signatures.getWeakChecksums(), 
+				signatures.getStrongHashes(), descriptor.owner);
+		assertEquals(StatusCode.BAD_FILE_ID, status);
+		
+		status = sendManager.sendDelta(descriptor.fileID, 25, signatures.getWeakChecksums(), new byte[1], 
+				descriptor.owner);
+		assertEquals(StatusCode.INVALID, status);
+		
+		//verify every block of the file is found in the older copy
+		status = sendManager.sendDelta(descriptor.fileID, 25, signatures.getWeakChecksums(), 
+				signatures.getStrongHashes(), descriptor.owner);
+		assertEquals(StatusCode.OK, status);
+		
+		Action action = mockDispatcher.getLastInsertedAction();
+		
+		for (int i = 0; (i < 100) && (action == null); i++)
+		{
+			Thread.sleep(20);
+			action = mockDispatcher.getLastInsertedAction();
+		}
+		
+		assertNotNull(action);
+		assertEquals(ActionType.COPY_BLOCKS, action.actionType);
+		assertTrue(Arrays.equals(new long[] { 0, 25, 50, 75 }, (long[]) action.parameters.get(1)));
+		assertTrue(Arrays.equals(new int[] { 0, 0, 0, 0 }, (int[]) action.parameters.get(2)));
+		assertTrue(Arrays.equals(new int[] { 1, 1, 1, 1 }, (int[]) action.parameters.get(3)));
+	}
+	
+	public void testDeltaShortRead() throws InterruptedException
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		mockFSA.setFileLength(60);
+		
+		BlockSignatures signatures = new BlockSignatures(25, 1);
+		signatures.setBlock(0, new byte[25], 0);
+		
+		int status = sendManager.sendDelta(descriptor.fileID, 25, signatures.getWeakChecksums(),
+				signatures.getStrongHashes(), descriptor.owner);
+		assertEquals(StatusCode.OK, status);
+		
+		Action action = mockDispatcher.getLastInsertedAction();
+		
+		for (int i = 0; (i < 100) && (action == null); i++)
+		{
+			Thread.sleep(20);
+			action = mockDispatcher.getLastInsertedAction();
+		}
+		
+		//verify no blocks are matched from bytes that could not be read
+		assertNotNull(action);
+		assertEquals(ActionType.COPY_BLOCKS, action.actionType);
+		assertEquals(0, ((long[]) action.parameters.get(1)).length);
+	}
+	
+	public void testDeltaBacklog() throws InterruptedException
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		
+		BlockSignatures signatures = new BlockSignatures(25, 1);
+		signatures.setBlock(0, new byte[25], 0);
+		
+		//hold the delta thread in its first scan while further scans queue up
+		CountDownLatch readGate = new CountDownLatch(1);
+		mockFSA.setReadGate(readGate);
+		
+		int status = StatusCode.OK;
+		
+		for (int i = 0; (i < 100) && (status == StatusCode.OK); i++)
+		{
+			status = sendManager.sendDelta(descriptor.fileID, 25, signatures.getWeakChecksums(), 
+					signatures.getStrongHashes(), descriptor.owner);
+		}
+		
+		//verify scans beyond the backlog are refused
+		assertEquals(StatusCode.REQUEST_DENIED, status);
+		
+		//verify resetting the state drops the backlog and new scans are accepted
+		sendManager.resetState();
+		mockFSA.setReadGate(null);
+		readGate.countDown();
+		
+		status = sendManager.sendDelta(descriptor.fileID, 25, signatures.getWeakChecksums(), 
+				signatures.getStrongHashes(), descriptor.owner);
+		assertEquals(StatusCode.OK, status);
+		
+		Action action = mockDispatcher.getLastInsertedAction();
+		
+		for (int i = 0; (i < 100) && (action == null); i++)
+		{
+			Thread.sleep(20);
+			action = mockDispatcher.getLastInsertedAction();
+		}
+		
+		assertNotNull(action);
+		assertEquals(ActionType.COPY_BLOCKS, action.actionType);
+	}
+	
+	public void testBundle() throws InterruptedException
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		byte[] fileIDs = new byte[BundleFrame.FILE_ID_LENGTH * 2];
+		System.arraycopy(descriptor.fileID, 0, fileIDs, 0, BundleFrame.FILE_ID_LENGTH);
+		
+		//verify invalid bundles are refused
+		int status = sendManager.sendBundle(new byte[20], new byte[30], 1000, descriptor.owner);
+		assertEquals(StatusCode.INVALID, status);
+		
+		status = sendManager.sendBundle(new byte[20], new byte[20], 1000, descriptor.owner);
+		assertEquals(StatusCode.BAD_FILE_ID, status);
+		
+		//verify the shared file is sent and the unknown file is marked unavailable
+		status = sendManager.sendBundle(new byte[20], fileIDs, 1000, descriptor.owner);
+		assertEquals(StatusCode.OK, status);
+		
+		Action action = mockDispatcher.getLastInsertedAction();
+		
+		for (int i = 0; (i < 100) && (action == null); i++)
+		{
+			Thread.sleep(20);
+			action = mockDispatcher.getLastInsertedAction();
+		}
+		
+		assertNotNull(action);
+		assertEquals(ActionType.BUNDLE_CHUNK, action.actionType);
+		assertEquals(0L, action.parameters.get(1));
+		
+		byte[] chunk = (byte[]) action.parameters.get(2);
+		assertEquals(BundleFrame.HEADER_LENGTH * 2 + 100, chunk.length);
+		
+		byte[] header = Arrays.copyOfRange(chunk, 0, BundleFrame.HEADER_LENGTH);
+		assertTrue(Arrays.equals(descriptor.fileID, BundleFrame.readFileID(header)));
+		assertEquals(100, BundleFrame.readLength(header));
+		
+		header = Arrays.copyOfRange(chunk, BundleFrame.HEADER_LENGTH + 100, chunk.length);
+		assertTrue(Arrays.equals(new byte[20], BundleFrame.readFileID(header)));
+		assertEquals(BundleFrame.UNAVAILABLE, BundleFrame.readLength(header));
+	}
+	
+	public void testStopBundle() throws InterruptedException
+	{
+		FileDescriptor descriptor = getDummyFileDescriptor();
+		byte[] bundleID = new byte[] { 9, 8, 7, 6, 5, 4, 3, 2, 1, 0, 9, 8, 7, 6, 5, 4, 3, 2, 1, 0 };
+		byte[] fileIDs = new byte[BundleFrame.FILE_ID_LENGTH * 1000];
+		
+		for (int i = 0; i < 1000; i++)
+		{
+			System.arraycopy(descriptor.fileID, 0, fileIDs, i * BundleFrame.FILE_ID_LENGTH, 
+					BundleFrame.FILE_ID_LENGTH);
+		}
+		mockDispatcher.setMaxQueuedBytes(ChunkSizeTuner.DEFAULT_MAX_CHUNK_SIZE);
+		
+		int status = sendManager.sendBundle(bundleID, fileIDs, Integer.MAX_VALUE, descriptor.owner);
+		assertEquals(StatusCode.OK, status);
+		
+		Action action = mockDispatcher.getLastInsertedAction();
+		
+		for (int i = 0; (i < 100) && (action == null); i++)
+		{
+			Thread.sleep(20);
+			action = mockDispatcher.getLastInsertedAction();
+		}
+		
+		//verify the chunk length requested by the peer is limited
+		assertNotNull(action);
+		assertEquals(ChunkSizeTuner.DEFAULT_MAX_CHUNK_SIZE, ((byte[]) action.parameters.get(2)).length);
+		
+		//verify stopping the bundle purges its chunks and ends the stream waiting for the budget
+		sendManager.handleStopDataXfer(bundleID, descriptor.owner);
+		Thread.sleep(100);
+		
+		assertEquals(0, mockDispatcher.getQueuedBytes());
+		assertSame(action, mockDispatcher.getLastInsertedAction());
+	}
+	
 	private FileDescriptor getDummyFileDescriptor()
 	{
 		FileDescriptor descriptor = new FileDescriptor();
@@ -154,6 +636,50 @@ public class SendManagerTest extends AndroidTestCase
 	
 	private class MockFileSystemAbstraction extends FileSystemAbstraction
 	{
+		private int numChunksRead = 0;
+		private long fileLength = Long.MAX_VALUE;
+		private volatile CountDownLatch readGate;
+		
+		public synchronized int getNumChunksRead()
+		{
+			return numChunksRead;
+		}
+		
+		public synchronized void setFileLength(long fileLength)
+		{
+			this.fileLength = fileLength;
+		}
+		
+		public void setReadGate(CountDownLatch gate)
+		{
+			readGate = gate;
+		}
+		
+		@Override
+		public int getChunk(String path, byte[] chunk, long startOffset, int length)
+		{
+			CountDownLatch gate = readGate;
+			
+			if (gate != null)
+			{
+				try
+				{
+					gate.await();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			
+			synchronized(this)
+			{
+				numChunksRead++;
+				Arrays.fill(chunk, 0, length, (byte) 0);
+				return (int) Math.min(length, Math.max(fileLength - startOffset, 0));
+			}
+		}
+		
 		@Override
 		public FileDescriptor[] getFileInfo(ArrayList<String> pathList,
 				ArrayList<String> failedPaths, String localBusId)
@@ -164,10 +690,24 @@ public class SendManagerTest extends AndroidTestCase
 
 	private class MockDispatcher extends Dispatcher
 	{
+		private Action lastInsertedAction;
+		
 		public MockDispatcher(Transmitter transmitter)
 		{
 			super(transmitter);
-		}			
+		}
+		
+		@Override
+		public synchronized void insertAction(Action action)
+		{
+			lastInsertedAction = action;
+			super.insertAction(action);
+		}
+		
+		public synchronized Action getLastInsertedAction()
+		{
+			return lastInsertedAction;
+		}
 	}
 
 	private class MockTransmitter extends Transmitter
@@ -21,15 +21,22 @@ import org.alljoyn.bus.BusException;
 import org.alljoyn.bus.BusListener;
 import org.alljoyn.bus.BusObject;
 import org.alljoyn.bus.Mutable;
+import org.alljoyn.bus.ProxyBusObject;
 import org.alljoyn.bus.SessionListener;
 import org.alljoyn.bus.SessionOpts;
 import org.alljoyn.bus.SessionPortListener;
 import org.alljoyn.bus.Status;
 import org.alljoyn.bus.annotation.BusSignalHandler;
 import org.alljoyn.cops.filetransfer.Transmitter;
+import org.alljoyn.cops.filetransfer.alljoyn.BlockVerificationInterface;
+import org.alljoyn.cops.filetransfer.alljoyn.BundleTransferInterface;
+import org.alljoyn.cops.filetransfer.alljoyn.CompressedDataTransferInterface;
 import org.alljoyn.cops.filetransfer.alljoyn.DataTransferInterface;
+import org.alljoyn.cops.filetransfer.alljoyn.DataTransferInterfaceV2;
+import org.alljoyn.cops.filetransfer.alljoyn.DeltaTransferInterface;
 import org.alljoyn.cops.filetransfer.alljoyn.FileDiscoveryInterface;
 import org.alljoyn.cops.filetransfer.alljoyn.FileTransferBusObject;
+import org.alljoyn.cops.filetransfer.alljoyn.InlineTransferInterface;
 import org.alljoyn.cops.filetransfer.data.Action;
 import org.alljoyn.cops.filetransfer.data.FileDescriptor;
 import org.alljoyn.cops.filetransfer.data.Action.ActionType;
@@ -241,6 +248,50 @@ public class TransmitterTest extends AndroidTestCase
 		assertTrue("offer method not received", messageReceived);
 	}
 	
+	public void testProxyInterfaces() throws Exception
+	{
+		Class<?>[] calledInterfaces = new Class<?>[] { DataTransferInterface.class, 
+				DataTransferInterfaceV2.class, CompressedDataTransferInterface.class, DeltaTransferInterface.class, 
+				BlockVerificationInterface.class, BundleTransferInterface.class, InlineTransferInterface.class, 
+				FileDiscoveryInterface.class };
+		
+		ProxyBusObject proxy = hostBus.getProxyBusObject(clientBus.getUniqueName(), 
+				FileTransferBusObject.OBJECT_PATH, sessionId, Transmitter.getProxyInterfaces());
+		
+		//verify the proxy can be cast to every interface whose methods the transmitter calls
+		for (Class<?> intf : calledInterfaces)
+		{
+			assertTrue(intf.getSimpleName() + " missing from proxy", intf.isInstance(proxy.getInterface(intf)));
+		}
+		proxy.release();
+	}
+	
+	public void testInlineOfferFallback() throws Exception
+	{
+		messageReceived = false;
+		
+		clientBusObject.setMethodReceivedListener(new MessageReceivedListener()
+		{			
+			public void messageReceived()
+			{
+				messageReceived = true;								
+			}
+		});
+		
+		//the client does not implement the inline transfer interface
+		Action action = new Action();
+		action.actionType = ActionType.OFFER_FILE;
+		action.parameters.add(getDummyFileDescriptor());
+		action.parameters.add(new byte[10]);
+		action.peer = clientBus.getUniqueName();
+		
+		//verify the failed inline offer falls back to a plain offer
+		assertEquals(0, transmitter.transmit(action));
+		
+		Thread.sleep(WAIT_TIME);
+		assertTrue("offer method not received", messageReceived);
+	}
+	
 	public void testRequestData() throws Exception
 	{
 		messageReceived = false;